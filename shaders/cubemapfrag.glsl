@@ -0,0 +1,11 @@
+#version 450
+
+in vec3 tc;
+out vec4 color;
+
+layout (binding=1) uniform samplerCube s;
+
+void main(void)
+{
+	color = texture(s,tc);
+}
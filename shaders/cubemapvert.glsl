@@ -0,0 +1,35 @@
+#version 450
+
+layout (location = 0) in vec3 position;
+out vec3 tc;
+
+struct PositionalLight
+{
+    vec4 ambient;
+    vec4 diffuse;
+    vec4 specular;
+    vec3 position;
+};
+
+// Frame-constant data, written once per frame (see FrameUniforms).
+layout (std140, binding = 0) uniform FrameData
+{
+    mat4 proj_matrix;
+    mat4 view_matrix;
+    vec4 globalAmbient;
+    PositionalLight light;
+};
+
+uniform vec3 position_scale;
+uniform vec3 position_offset;
+layout (binding=1) uniform samplerCube s;
+
+void main(void)
+{
+	// The cube's vertices are the directions to look up, and only the camera's rotation applies to them.
+	tc = position * position_scale + position_offset;
+	vec4 clipPosition = proj_matrix * mat4(mat3(view_matrix)) * vec4(tc, 1.0);
+
+	// z = w puts the sky at depth 1 after the divide, behind everything else in the scene.
+	gl_Position = clipPosition.xyww;
+}
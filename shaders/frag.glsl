@@ -16,12 +16,14 @@ struct PositionalLight
     vec3 position;
 };
 
-uniform vec4 globalAmbient;
-uniform PositionalLight light;
-uniform mat4 mv_matrix;
-uniform mat4 proj_matrix;
-uniform mat4 norm_matrix; // for transforming normals
-uniform mat4 shadowMVP2;
+// Frame-constant data, written once per frame (see FrameUniforms).
+layout (std140, binding = 0) uniform FrameData
+{
+    mat4 proj_matrix;
+    mat4 view_matrix;
+    vec4 globalAmbient;
+    PositionalLight light;
+};
 layout (binding = 0) uniform sampler2DShadow shTex;
 layout (binding = 1) uniform sampler2D s;
 
@@ -4,12 +4,32 @@ layout (location = 0) in vec3 position;
 layout (location = 1) in vec2 tex_coord;
 out vec2 tc;
 
+struct PositionalLight
+{
+    vec4 ambient;
+    vec4 diffuse;
+    vec4 specular;
+    vec3 position;
+};
+
+// Frame-constant data, written once per frame (see FrameUniforms).
+layout (std140, binding = 0) uniform FrameData
+{
+    mat4 proj_matrix;
+    mat4 view_matrix;
+    vec4 globalAmbient;
+    PositionalLight light;
+};
+
 uniform mat4 mv_matrix;
-uniform mat4 proj_matrix;
+uniform vec3 position_scale;
+uniform vec3 position_offset;
+uniform vec2 tex_coord_scale;
+uniform vec2 tex_coord_offset;
 layout (binding=1) uniform sampler2D s;
 
 void main(void)
 {
-    gl_Position = proj_matrix * mv_matrix * vec4(position,1.0);
-	tc = tex_coord;
+    gl_Position = proj_matrix * mv_matrix * vec4(position * position_scale + position_offset, 1.0);
+	tc = tex_coord * tex_coord_scale + tex_coord_offset;
 }
@@ -1,10 +1,13 @@
 #version 450
 
 layout (location = 0) in vec3 vertPos;
+layout (location = 3) in mat4 instance_matrix; // the identity unless drawn instanced (see InstanceBatch)
 
 uniform mat4 shadowMVP;
+uniform vec3 position_scale;
+uniform vec3 position_offset;
 
 void main(void)
 {
-    gl_Position = shadowMVP * vec4(vertPos, 1.0);
+    gl_Position = shadowMVP * instance_matrix * vec4(vertPos * position_scale + position_offset, 1.0);
 }
\ No newline at end of file
@@ -2,7 +2,8 @@
 
 layout (location = 0) in vec3 position;
 layout (location = 1) in vec2 tex_coord;
-layout (location = 2) in vec3 normal;
+layout (location = 2) in vec4 normal; // xyz, or an octahedral encoding in xy
+layout (location = 3) in mat4 instance_matrix; // the identity unless drawn instanced (see InstanceBatch)
 out vec2 tc;
 out vec3 varyingNormal; // eye-space vertex normal
 out vec3 varyingLightDir; // vector pointing to the light
@@ -18,23 +19,47 @@ struct PositionalLight
     vec3 position;
 };
 
-uniform vec4 globalAmbient;
-uniform PositionalLight light;
+// Frame-constant data, written once per frame (see FrameUniforms).
+layout (std140, binding = 0) uniform FrameData
+{
+    mat4 proj_matrix;
+    mat4 view_matrix;
+    vec4 globalAmbient;
+    PositionalLight light;
+};
 uniform mat4 mv_matrix;
-uniform mat4 proj_matrix;
 uniform mat4 norm_matrix; // for transforming normals
 uniform mat4 shadowMVP2;
+// Dequantization of the mesh's vertex format (identity for float vertices).
+uniform vec3 position_scale;
+uniform vec3 position_offset;
+uniform vec2 tex_coord_scale;
+uniform vec2 tex_coord_offset;
+uniform bool octahedral_normals;
 layout (binding = 0) uniform sampler2DShadow shTex;
 layout (binding = 1) uniform sampler2D s;
 
+vec3 octahedralDecode(vec2 e)
+{
+    vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+    float t = max(-n.z, 0.0);
+    n.xy += vec2(n.x >= 0.0 ? -t : t, n.y >= 0.0 ? -t : t);
+    return normalize(n);
+}
+
 void main(void)
 {
-    varyingVertPos = (mv_matrix * vec4(position, 1.0)).xyz;
+    // Instances are placed relative to the object, before its own matrices apply. Instance matrices only rotate,
+    // translate and scale uniformly, so their upper 3x3 transforms normals as well.
+    vec4 vertPosition = instance_matrix * vec4(position * position_scale + position_offset, 1.0);
+    vec3 vertNormal = mat3(instance_matrix) * (octahedral_normals ? octahedralDecode(normal.xy) : normal.xyz);
+
+    varyingVertPos = (mv_matrix * vertPosition).xyz;
     varyingLightDir = light.position - varyingVertPos;
-    varyingNormal = (norm_matrix * vec4(normal, 1.0)).xyz;
+    varyingNormal = (norm_matrix * vec4(vertNormal, 1.0)).xyz;
     varyingHalfVector = (varyingLightDir + (-varyingVertPos)).xyz;
-    shadowCoordinates = shadowMVP2 * vec4(position, 1.0);
+    shadowCoordinates = shadowMVP2 * vertPosition;
 
-    gl_Position = proj_matrix * mv_matrix * vec4(position, 1.0);
-	tc = tex_coord;
+    gl_Position = proj_matrix * mv_matrix * vertPosition;
+	tc = tex_coord * tex_coord_scale + tex_coord_offset;
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package project3;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API forms of the {@link TransformBatch} operations. Each vector holds the same matrix element of as many
+ * consecutive objects as the CPU's widest float vectors fit, so every arithmetic instruction works on that many
+ * matrices at once; the objects left over after the last full vector go through the scalar loops.
+ * <p>
+ * This source root is compiled separately, with {@code --add-modules jdk.incubator.vector} and {@code src} on the class
+ * path, and {@link TransformBatch} only loads the class when that module is present, so that the rest of the renderer
+ * builds and runs without it.
+ */
+final class VectorTransforms implements TransformKernels
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+	
+	VectorTransforms()
+	{
+	}
+	
+	@Override
+	public int length()
+	{
+		return SPECIES.length();
+	}
+	
+	@Override
+	public void multiply(float[] left, float[][] right, float[][] result, int count)
+	{
+		int bound = SPECIES.loopBound(count);
+		for(int i = 0; i < bound; i += SPECIES.length())
+		{
+			for(int column = 0; column < 16; column += 4)
+			{
+				FloatVector b0 = FloatVector.fromArray(SPECIES, right[column], i);
+				FloatVector b1 = FloatVector.fromArray(SPECIES, right[column + 1], i);
+				FloatVector b2 = FloatVector.fromArray(SPECIES, right[column + 2], i);
+				FloatVector b3 = FloatVector.fromArray(SPECIES, right[column + 3], i);
+				for(int row = 0; row < 4; row++)
+				{
+					b0.mul(left[row]).add(b1.mul(left[4 + row])).add(b2.mul(left[8 + row])).add(b3.mul(left[12 + row]))
+							.intoArray(result[column + row], i);
+				}
+			}
+		}
+		TransformBatch.multiply(left, right, result, bound, count);
+	}
+	
+	@Override
+	public void normalMatrices(float[][] source, float[][] result, int count)
+	{
+		FloatVector zero = FloatVector.zero(SPECIES);
+		FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+		int bound = SPECIES.loopBound(count);
+		for(int i = 0; i < bound; i += SPECIES.length())
+		{
+			FloatVector a = FloatVector.fromArray(SPECIES, source[0], i);
+			FloatVector b = FloatVector.fromArray(SPECIES, source[4], i);
+			FloatVector c = FloatVector.fromArray(SPECIES, source[8], i);
+			FloatVector d = FloatVector.fromArray(SPECIES, source[1], i);
+			FloatVector e = FloatVector.fromArray(SPECIES, source[5], i);
+			FloatVector f = FloatVector.fromArray(SPECIES, source[9], i);
+			FloatVector g = FloatVector.fromArray(SPECIES, source[2], i);
+			FloatVector h = FloatVector.fromArray(SPECIES, source[6], i);
+			FloatVector k = FloatVector.fromArray(SPECIES, source[10], i);
+			
+			// The inverse transpose is the cofactor matrix over the determinant.
+			FloatVector c00 = e.mul(k).sub(f.mul(h));
+			FloatVector c01 = f.mul(g).sub(d.mul(k));
+			FloatVector c02 = d.mul(h).sub(e.mul(g));
+			FloatVector inverseDeterminant = one.div(a.mul(c00).add(b.mul(c01)).add(c.mul(c02)));
+			
+			c00.mul(inverseDeterminant).intoArray(result[0], i);
+			c01.mul(inverseDeterminant).intoArray(result[4], i);
+			c02.mul(inverseDeterminant).intoArray(result[8], i);
+			c.mul(h).sub(b.mul(k)).mul(inverseDeterminant).intoArray(result[1], i);
+			a.mul(k).sub(c.mul(g)).mul(inverseDeterminant).intoArray(result[5], i);
+			b.mul(g).sub(a.mul(h)).mul(inverseDeterminant).intoArray(result[9], i);
+			b.mul(f).sub(c.mul(e)).mul(inverseDeterminant).intoArray(result[2], i);
+			c.mul(d).sub(a.mul(f)).mul(inverseDeterminant).intoArray(result[6], i);
+			a.mul(e).sub(b.mul(d)).mul(inverseDeterminant).intoArray(result[10], i);
+			zero.intoArray(result[3], i);
+			zero.intoArray(result[7], i);
+			zero.intoArray(result[11], i);
+			zero.intoArray(result[12], i);
+			zero.intoArray(result[13], i);
+			zero.intoArray(result[14], i);
+			one.intoArray(result[15], i);
+		}
+		TransformBatch.normalMatrices(source, result, bound, count);
+	}
+}
@@ -0,0 +1,40 @@
+package project3;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the heap bytes the calling thread has allocated, to check that code which runs every frame allocates nothing.
+ * Relies on the HotSpot extension of {@link ThreadMXBean}; on other JVMs every count is -1.
+ */
+final class AllocationCounter
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private com.sun.management.ThreadMXBean m_threads;
+	
+	AllocationCounter()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported())
+		{
+			m_threads = (com.sun.management.ThreadMXBean) threads;
+			m_threads.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+	
+	boolean isSupported()
+	{
+		return m_threads != null;
+	}
+	
+	/**
+	 * Returns how many bytes the calling thread has allocated since it started, or -1 if that is not supported. Calling
+	 * this allocates nothing itself, so the difference of two calls is what the code in between allocated.
+	 */
+	long getAllocatedBytes()
+	{
+		return (m_threads != null) ? m_threads.getCurrentThreadAllocatedBytes() : -1;
+	}
+}
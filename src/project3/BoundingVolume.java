@@ -0,0 +1,139 @@
+package project3;
+
+import java.nio.FloatBuffer;
+
+/**
+ * An axis-aligned bounding box and a bounding sphere around the same geometry, in the geometry's own space. Meshes
+ * compute theirs once when they are uploaded; scene nodes transform them into world space every frame for culling.
+ */
+public final class BoundingVolume
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float[] m_min;
+	private float[] m_max;
+	private float[] m_center;
+	private float m_radius;
+	
+	private BoundingVolume(float[] min, float[] max, float[] center, float radius)
+	{
+		m_min = min;
+		m_max = max;
+		m_center = center;
+		m_radius = radius;
+	}
+	
+	/**
+	 * Bounds the positions of interleaved vertices, the first three of every {@code floatsPerVertex} floats.
+	 */
+	public static BoundingVolume fromVertices(FloatBuffer vertices, int vertexCount, int floatsPerVertex)
+	{
+		float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+		float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		int base = vertices.position();
+		for(int i = 0; i < vertexCount; i++)
+		{
+			for(int axis = 0; axis < 3; axis++)
+			{
+				float value = vertices.get(base + i * floatsPerVertex + axis);
+				min[axis] = Math.min(min[axis], value);
+				max[axis] = Math.max(max[axis], value);
+			}
+		}
+		if(vertexCount == 0)
+		{
+			return new BoundingVolume(new float[3], new float[3], new float[3], 0.0f);
+		}
+		
+		// Centered on the box, which is tight for the symmetric shapes here, with the radius of the farthest vertex.
+		float[] center = {(min[0] + max[0]) * 0.5f, (min[1] + max[1]) * 0.5f, (min[2] + max[2]) * 0.5f};
+		float radiusSquared = 0.0f;
+		for(int i = 0; i < vertexCount; i++)
+		{
+			float dx = vertices.get(base + i * floatsPerVertex) - center[0];
+			float dy = vertices.get(base + i * floatsPerVertex + 1) - center[1];
+			float dz = vertices.get(base + i * floatsPerVertex + 2) - center[2];
+			radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+		}
+		return new BoundingVolume(min, max, center, (float) Math.sqrt(radiusSquared));
+	}
+	
+	/**
+	 * Bounds a box given as min x, y, z and max x, y, z.
+	 */
+	public static BoundingVolume fromBox(float[] box)
+	{
+		float[] min = {box[0], box[1], box[2]};
+		float[] max = {box[3], box[4], box[5]};
+		float[] center = {(min[0] + max[0]) * 0.5f, (min[1] + max[1]) * 0.5f, (min[2] + max[2]) * 0.5f};
+		float dx = max[0] - center[0];
+		float dy = max[1] - center[1];
+		float dz = max[2] - center[2];
+		return new BoundingVolume(min, max, center, (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+	}
+	
+	/**
+	 * Writes the bounding sphere transformed by {@code transform} to {@code sphere} as center x, y, z and radius. The
+	 * radius grows with the largest scale of the transform, so the sphere stays conservative under non-uniform scaling.
+	 */
+	public void transformSphere(Mat4 transform, float[] sphere)
+	{
+		for(int row = 0; row < 3; row++)
+		{
+			sphere[row] = transform.get(row, 0) * m_center[0] + transform.get(row, 1) * m_center[1] + transform.get(row, 2) * m_center[2]
+					+ transform.get(row, 3);
+		}
+		float maxScaleSquared = 0.0f;
+		for(int column = 0; column < 3; column++)
+		{
+			float x = transform.get(0, column);
+			float y = transform.get(1, column);
+			float z = transform.get(2, column);
+			maxScaleSquared = Math.max(maxScaleSquared, x * x + y * y + z * z);
+		}
+		sphere[3] = m_radius * (float) Math.sqrt(maxScaleSquared);
+	}
+	
+	/**
+	 * Writes the axis-aligned box around the bounding box transformed by {@code transform} to {@code box} as min x, y, z
+	 * and max x, y, z (Arvo's method: each output extent sums the contributions of the input axes).
+	 */
+	public void transformBox(Mat4 transform, float[] box)
+	{
+		for(int row = 0; row < 3; row++)
+		{
+			float min = transform.get(row, 3);
+			float max = min;
+			for(int column = 0; column < 3; column++)
+			{
+				float a = transform.get(row, column) * m_min[column];
+				float b = transform.get(row, column) * m_max[column];
+				min += Math.min(a, b);
+				max += Math.max(a, b);
+			}
+			box[row] = min;
+			box[row + 3] = max;
+		}
+	}
+	
+	public float[] getMin()
+	{
+		return m_min;
+	}
+	
+	public float[] getMax()
+	{
+		return m_max;
+	}
+	
+	public float[] getCenter()
+	{
+		return m_center;
+	}
+	
+	public float getRadius()
+	{
+		return m_radius;
+	}
+}
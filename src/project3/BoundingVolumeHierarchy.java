@@ -0,0 +1,487 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy: a binary tree of axis-aligned boxes whose leaves hold one object each, identified
+ * by an int chosen by the caller. It answers frustum, sphere and ray queries in time proportional to what they find
+ * rather than to the number of objects, and objects can move without rebuilding the tree.
+ * <p>
+ * Leaves store a "fat" box, the object's box grown by a margin on every side. Moving an object does nothing while its
+ * box stays inside the fat box; once it leaves it, the leaf gets a new fat box and the boxes of its ancestors are refit
+ * bottom-up, stopping at the first ancestor that does not change. New leaves are placed next to the sibling that grows
+ * the total surface area of the tree least (the surface area heuristic), which keeps queries fast as objects are added.
+ * <p>
+ * Nodes live in parallel primitive arrays, and queries write into a caller-owned {@link IntList}, so neither updates
+ * nor queries create objects.
+ */
+final class BoundingVolumeHierarchy
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	static final int NULL_NODE = -1;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float m_margin;
+	// Per node: box (min x, y, z, max x, y, z), parent, children (NULL_NODE for leaves) and the caller's data.
+	private float[] m_boxes;
+	private int[] m_parents;
+	private int[] m_firstChildren;
+	private int[] m_secondChildren;
+	private int[] m_data;
+	private int m_root;
+	private int m_capacity;
+	// Unused nodes, chained through m_parents.
+	private int m_freeList;
+	private int m_leafCount;
+	// Traversal stacks shared by the queries: the node, and for frustum queries the planes it still straddles.
+	private int[] m_stack;
+	private int[] m_planeStack;
+	private int[] m_subtreeStack;
+	private float[] m_merged;
+	
+	/**
+	 * @param margin how far each object may move in any direction before its leaf has to be refit
+	 */
+	BoundingVolumeHierarchy(float margin)
+	{
+		m_margin = margin;
+		m_root = NULL_NODE;
+		m_freeList = NULL_NODE;
+		m_boxes = new float[0];
+		m_parents = new int[0];
+		m_firstChildren = new int[0];
+		m_secondChildren = new int[0];
+		m_data = new int[0];
+		m_stack = new int[64];
+		m_planeStack = new int[64];
+		m_subtreeStack = new int[64];
+		m_merged = new float[6];
+		grow(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Adds an object with the given box (min x, y, z, max x, y, z).
+	 *
+	 * @return the object's proxy, to pass to {@link #move} and {@link #remove}
+	 */
+	int insert(float[] box, int data)
+	{
+		int leaf = allocateNode();
+		setFatBox(leaf, box);
+		m_data[leaf] = data;
+		insertLeaf(leaf);
+		m_leafCount++;
+		return leaf;
+	}
+	
+	void remove(int proxy)
+	{
+		removeLeaf(proxy);
+		freeNode(proxy);
+		m_leafCount--;
+	}
+	
+	/**
+	 * Updates an object's box after it moved.
+	 *
+	 * @return {@code true} if the tree had to be refit, {@code false} if the object is still inside its fat box
+	 */
+	boolean move(int proxy, float[] box)
+	{
+		int offset = proxy * 6;
+		if(m_boxes[offset] <= box[0] && m_boxes[offset + 1] <= box[1] && m_boxes[offset + 2] <= box[2] && m_boxes[offset + 3] >= box[3]
+				&& m_boxes[offset + 4] >= box[4] && m_boxes[offset + 5] >= box[5])
+		{
+			return false;
+		}
+		setFatBox(proxy, box);
+		refitAncestors(m_parents[proxy]);
+		return true;
+	}
+	
+	int getData(int proxy)
+	{
+		return m_data[proxy];
+	}
+	
+	/**
+	 * Returns the number of objects in the tree.
+	 */
+	int size()
+	{
+		return m_leafCount;
+	}
+	
+	/**
+	 * Returns the number of levels of the tree, 0 if it is empty.
+	 */
+	int getHeight()
+	{
+		return height(m_root);
+	}
+	
+	/**
+	 * Adds the data of every object whose fat box is not entirely outside {@code frustum} to {@code results}. Once a
+	 * node is entirely inside a plane its descendants are not tested against that plane again, and once it is inside all
+	 * of them its objects are added without further tests.
+	 */
+	void queryFrustum(Frustum frustum, IntList results)
+	{
+		if(m_root == NULL_NODE)
+		{
+			return;
+		}
+		int top = push(0, m_root, Frustum.ALL_PLANES);
+		while(top > 0)
+		{
+			top--;
+			int node = m_stack[top];
+			int planes = frustum.classifyBox(m_boxes, node * 6, m_planeStack[top]);
+			if(planes == Frustum.OUTSIDE)
+			{
+				continue;
+			}
+			if(planes == 0 || isLeaf(node))
+			{
+				addSubtree(node, results);
+				continue;
+			}
+			top = push(top, m_firstChildren[node], planes);
+			top = push(top, m_secondChildren[node], planes);
+		}
+	}
+	
+	/**
+	 * Adds the data of every object whose fat box intersects the sphere to {@code results}. Nodes entirely inside the
+	 * sphere add all of their objects without further tests.
+	 */
+	void querySphere(float x, float y, float z, float radius, IntList results)
+	{
+		if(m_root == NULL_NODE)
+		{
+			return;
+		}
+		float radiusSquared = radius * radius;
+		int top = push(0, m_root, 0);
+		while(top > 0)
+		{
+			int node = m_stack[--top];
+			int offset = node * 6;
+			
+			// Squared distance from the center to the nearest point of the box, and to its farthest corner.
+			float near = 0.0f;
+			float far = 0.0f;
+			for(int axis = 0; axis < 3; axis++)
+			{
+				float value = (axis == 0) ? x : (axis == 1) ? y : z;
+				float min = m_boxes[offset + axis];
+				float max = m_boxes[offset + axis + 3];
+				float below = min - value;
+				float above = value - max;
+				float nearAxis = Math.max(Math.max(below, above), 0.0f);
+				float farAxis = Math.max(Math.abs(below), Math.abs(above));
+				near += nearAxis * nearAxis;
+				far += farAxis * farAxis;
+			}
+			if(near > radiusSquared)
+			{
+				continue;
+			}
+			if(far <= radiusSquared || isLeaf(node))
+			{
+				addSubtree(node, results);
+				continue;
+			}
+			top = push(top, m_firstChildren[node], 0);
+			top = push(top, m_secondChildren[node], 0);
+		}
+	}
+	
+	/**
+	 * Adds the data of every object whose fat box the ray from the origin along the direction hits within
+	 * {@code maxDistance} (in multiples of the direction's length) to {@code results}.
+	 */
+	void queryRay(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance, IntList results)
+	{
+		if(m_root == NULL_NODE)
+		{
+			return;
+		}
+		// Infinite for axis-parallel rays, which the slab test handles correctly.
+		float inverseX = 1.0f / directionX;
+		float inverseY = 1.0f / directionY;
+		float inverseZ = 1.0f / directionZ;
+		int top = push(0, m_root, 0);
+		while(top > 0)
+		{
+			int node = m_stack[--top];
+			int offset = node * 6;
+			float tx1 = (m_boxes[offset] - originX) * inverseX;
+			float tx2 = (m_boxes[offset + 3] - originX) * inverseX;
+			float ty1 = (m_boxes[offset + 1] - originY) * inverseY;
+			float ty2 = (m_boxes[offset + 4] - originY) * inverseY;
+			float tz1 = (m_boxes[offset + 2] - originZ) * inverseZ;
+			float tz2 = (m_boxes[offset + 5] - originZ) * inverseZ;
+			float enter = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.max(Math.min(tz1, tz2), 0.0f));
+			float exit = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.min(Math.max(tz1, tz2), maxDistance));
+			if(enter > exit)
+			{
+				continue;
+			}
+			if(isLeaf(node))
+			{
+				results.add(m_data[node]);
+				continue;
+			}
+			top = push(top, m_firstChildren[node], 0);
+			top = push(top, m_secondChildren[node], 0);
+		}
+	}
+	
+	private boolean isLeaf(int node)
+	{
+		return m_firstChildren[node] == NULL_NODE;
+	}
+	
+	/**
+	 * Adds the data of every leaf below {@code node} without testing their boxes.
+	 */
+	private void addSubtree(int node, IntList results)
+	{
+		int top = 0;
+		m_subtreeStack[top++] = node;
+		while(top > 0)
+		{
+			int current = m_subtreeStack[--top];
+			if(isLeaf(current))
+			{
+				results.add(m_data[current]);
+				continue;
+			}
+			if(top + 2 > m_subtreeStack.length)
+			{
+				m_subtreeStack = Arrays.copyOf(m_subtreeStack, m_subtreeStack.length * 2);
+			}
+			m_subtreeStack[top++] = m_firstChildren[current];
+			m_subtreeStack[top++] = m_secondChildren[current];
+		}
+	}
+	
+	private int push(int top, int node, int planes)
+	{
+		if(top == m_stack.length)
+		{
+			m_stack = Arrays.copyOf(m_stack, top * 2);
+			m_planeStack = Arrays.copyOf(m_planeStack, top * 2);
+		}
+		m_stack[top] = node;
+		m_planeStack[top] = planes;
+		return top + 1;
+	}
+	
+	private void insertLeaf(int leaf)
+	{
+		if(m_root == NULL_NODE)
+		{
+			m_root = leaf;
+			m_parents[leaf] = NULL_NODE;
+			return;
+		}
+		
+		// Walk down towards the cheapest sibling: at each node, compare making the leaf its sibling here with the least
+		// cost of descending into either child, where cost is the surface area added to the tree.
+		int leafOffset = leaf * 6;
+		int node = m_root;
+		while(!isLeaf(node))
+		{
+			float area = surfaceArea(m_boxes, node * 6);
+			merge(node * 6, leafOffset);
+			float mergedArea = surfaceArea(m_merged, 0);
+			float siblingCost = 2.0f * mergedArea;
+			float inheritanceCost = 2.0f * (mergedArea - area);
+			float firstCost = descendCost(m_firstChildren[node], leafOffset) + inheritanceCost;
+			float secondCost = descendCost(m_secondChildren[node], leafOffset) + inheritanceCost;
+			if(siblingCost < firstCost && siblingCost < secondCost)
+			{
+				break;
+			}
+			node = (firstCost < secondCost) ? m_firstChildren[node] : m_secondChildren[node];
+		}
+		
+		// Replace the sibling with a new parent of the sibling and the leaf.
+		int sibling = node;
+		int oldParent = m_parents[sibling];
+		int newParent = allocateNode();
+		m_parents[newParent] = oldParent;
+		m_data[newParent] = NULL_NODE;
+		merge(sibling * 6, leafOffset);
+		System.arraycopy(m_merged, 0, m_boxes, newParent * 6, 6);
+		m_firstChildren[newParent] = sibling;
+		m_secondChildren[newParent] = leaf;
+		m_parents[sibling] = newParent;
+		m_parents[leaf] = newParent;
+		if(oldParent == NULL_NODE)
+		{
+			m_root = newParent;
+		}
+		else
+		{
+			if(m_firstChildren[oldParent] == sibling)
+			{
+				m_firstChildren[oldParent] = newParent;
+			}
+			else
+			{
+				m_secondChildren[oldParent] = newParent;
+			}
+			refitAncestors(oldParent);
+		}
+	}
+	
+	private float descendCost(int child, int leafOffset)
+	{
+		merge(child * 6, leafOffset);
+		float mergedArea = surfaceArea(m_merged, 0);
+		return isLeaf(child) ? mergedArea : mergedArea - surfaceArea(m_boxes, child * 6);
+	}
+	
+	private void removeLeaf(int leaf)
+	{
+		if(leaf == m_root)
+		{
+			m_root = NULL_NODE;
+			return;
+		}
+		
+		// The leaf's parent is replaced by the leaf's sibling.
+		int parent = m_parents[leaf];
+		int grandParent = m_parents[parent];
+		int sibling = (m_firstChildren[parent] == leaf) ? m_secondChildren[parent] : m_firstChildren[parent];
+		if(grandParent == NULL_NODE)
+		{
+			m_root = sibling;
+			m_parents[sibling] = NULL_NODE;
+		}
+		else
+		{
+			if(m_firstChildren[grandParent] == parent)
+			{
+				m_firstChildren[grandParent] = sibling;
+			}
+			else
+			{
+				m_secondChildren[grandParent] = sibling;
+			}
+			m_parents[sibling] = grandParent;
+			refitAncestors(grandParent);
+		}
+		freeNode(parent);
+	}
+	
+	/**
+	 * Recomputes the boxes from {@code node} up to the root, stopping early once a box comes out unchanged.
+	 */
+	private void refitAncestors(int node)
+	{
+		while(node != NULL_NODE)
+		{
+			int offset = node * 6;
+			merge(m_firstChildren[node] * 6, m_secondChildren[node] * 6);
+			boolean changed = false;
+			for(int i = 0; i < 6; i++)
+			{
+				if(m_boxes[offset + i] != m_merged[i])
+				{
+					m_boxes[offset + i] = m_merged[i];
+					changed = true;
+				}
+			}
+			if(!changed)
+			{
+				return;
+			}
+			node = m_parents[node];
+		}
+	}
+	
+	private void setFatBox(int node, float[] box)
+	{
+		int offset = node * 6;
+		for(int axis = 0; axis < 3; axis++)
+		{
+			m_boxes[offset + axis] = box[axis] - m_margin;
+			m_boxes[offset + axis + 3] = box[axis + 3] + m_margin;
+		}
+	}
+	
+	/**
+	 * Writes the union of the two boxes at the given offsets of the node boxes to {@link #m_merged}.
+	 */
+	private void merge(int first, int second)
+	{
+		for(int axis = 0; axis < 3; axis++)
+		{
+			m_merged[axis] = Math.min(m_boxes[first + axis], m_boxes[second + axis]);
+			m_merged[axis + 3] = Math.max(m_boxes[first + axis + 3], m_boxes[second + axis + 3]);
+		}
+	}
+	
+	private static float surfaceArea(float[] boxes, int offset)
+	{
+		float x = boxes[offset + 3] - boxes[offset];
+		float y = boxes[offset + 4] - boxes[offset + 1];
+		float z = boxes[offset + 5] - boxes[offset + 2];
+		return 2.0f * (x * y + y * z + z * x);
+	}
+	
+	private int height(int node)
+	{
+		if(node == NULL_NODE)
+		{
+			return 0;
+		}
+		return 1 + Math.max(height(m_firstChildren[node]), height(m_secondChildren[node]));
+	}
+	
+	private int allocateNode()
+	{
+		if(m_freeList == NULL_NODE)
+		{
+			grow(m_capacity * 2);
+		}
+		int node = m_freeList;
+		m_freeList = m_parents[node];
+		m_parents[node] = NULL_NODE;
+		m_firstChildren[node] = NULL_NODE;
+		m_secondChildren[node] = NULL_NODE;
+		return node;
+	}
+	
+	private void freeNode(int node)
+	{
+		m_parents[node] = m_freeList;
+		m_freeList = node;
+	}
+	
+	private void grow(int capacity)
+	{
+		m_boxes = Arrays.copyOf(m_boxes, capacity * 6);
+		m_parents = Arrays.copyOf(m_parents, capacity);
+		m_firstChildren = Arrays.copyOf(m_firstChildren, capacity);
+		m_secondChildren = Arrays.copyOf(m_secondChildren, capacity);
+		m_data = Arrays.copyOf(m_data, capacity);
+		
+		// Chain the new nodes onto the free list.
+		for(int node = capacity - 1; node >= m_capacity; node--)
+		{
+			m_parents[node] = m_freeList;
+			m_freeList = node;
+		}
+		m_capacity = capacity;
+	}
+}
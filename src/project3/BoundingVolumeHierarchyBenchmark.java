@@ -0,0 +1,268 @@
+package project3;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares frustum, sphere and ray queries of a {@link BoundingVolumeHierarchy} with testing every object, for randomly
+ * placed boxes, and checks that both find the same objects once the tree's conservative results are tested exactly.
+ * Also measures refitting the tree when a tenth of the objects move each frame.
+ * <p>
+ * Usage: {@code java project3.BoundingVolumeHierarchyBenchmark [objects...]}
+ */
+public class BoundingVolumeHierarchyBenchmark
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int[] DEFAULT_OBJECT_COUNTS = {1000, 10000, 100000};
+	private static final int ITERATIONS = 50;
+	private static final int WARMUP_ITERATIONS = 20;
+	private static final float WORLD_SIZE = 1000.0f;
+	private static final float MARGIN = 1.0f;
+	private static final float MAX_STEP = 0.5f;
+	private static final long SEED = 16;
+	
+	public static void main(String[] args)
+	{
+		int[] objectCounts = DEFAULT_OBJECT_COUNTS;
+		if(args.length > 0)
+		{
+			objectCounts = Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+		}
+		for(int objectCount : objectCounts)
+		{
+			run(objectCount);
+		}
+	}
+	
+	private static void run(int objectCount)
+	{
+		Random random = new Random(SEED);
+		float[] boxes = new float[objectCount * 6];
+		float[] box = new float[6];
+		BoundingVolumeHierarchy tree = new BoundingVolumeHierarchy(MARGIN);
+		int[] proxies = new int[objectCount];
+		long buildStart = System.nanoTime();
+		for(int i = 0; i < objectCount; i++)
+		{
+			float halfSize = 0.5f + random.nextFloat() * 2.0f;
+			for(int axis = 0; axis < 3; axis++)
+			{
+				float center = (random.nextFloat() - 0.5f) * WORLD_SIZE;
+				boxes[i * 6 + axis] = center - halfSize;
+				boxes[i * 6 + axis + 3] = center + halfSize;
+			}
+			System.arraycopy(boxes, i * 6, box, 0, 6);
+			proxies[i] = tree.insert(box, i);
+		}
+		long buildNanos = System.nanoTime() - buildStart;
+		System.out.printf("%d objects: built in %.2f ms, %d levels%n", objectCount, buildNanos / 1e6, tree.getHeight());
+		
+		// A 60 degree camera at the origin looking down -z, seeing about a twelfth of the world.
+		Frustum frustum = new Frustum();
+		frustum.set(new Mat4().perspective(60.0f, 1.0f, 0.1f, WORLD_SIZE / 2.0f), new Mat4());
+		float sphereX = 100.0f;
+		float sphereY = -50.0f;
+		float sphereZ = 25.0f;
+		float radius = 100.0f;
+		// From a corner of the world through the center of the first object, so that it hits at least one.
+		float[] ray = {-WORLD_SIZE / 2.0f, -WORLD_SIZE / 2.0f, -WORLD_SIZE / 2.0f, 0.0f, 0.0f, 0.0f};
+		for(int axis = 0; axis < 3; axis++)
+		{
+			ray[axis + 3] = ((boxes[axis] + boxes[axis + 3]) / 2.0f - ray[axis]) / WORLD_SIZE;
+		}
+		
+		IntList bruteForce = new IntList();
+		IntList candidates = new IntList();
+		IntList exact = new IntList();
+		
+		// Frustum queries.
+		long bruteNanos = measure(() ->
+		{
+			bruteForce.clear();
+			for(int i = 0; i < objectCount; i++)
+			{
+				if(frustum.classifyBox(boxes, i * 6, Frustum.ALL_PLANES) != Frustum.OUTSIDE)
+				{
+					bruteForce.add(i);
+				}
+			}
+		});
+		long treeNanos = measure(() ->
+		{
+			candidates.clear();
+			tree.queryFrustum(frustum, candidates);
+		});
+		exact.clear();
+		for(int i = 0; i < candidates.size(); i++)
+		{
+			int object = candidates.get(i);
+			if(frustum.classifyBox(boxes, object * 6, Frustum.ALL_PLANES) != Frustum.OUTSIDE)
+			{
+				exact.add(object);
+			}
+		}
+		report("frustum", bruteNanos, treeNanos, bruteForce, candidates, exact);
+		
+		// Sphere queries.
+		bruteNanos = measure(() ->
+		{
+			bruteForce.clear();
+			for(int i = 0; i < objectCount; i++)
+			{
+				if(intersectsSphere(boxes, i * 6, sphereX, sphereY, sphereZ, radius))
+				{
+					bruteForce.add(i);
+				}
+			}
+		});
+		treeNanos = measure(() ->
+		{
+			candidates.clear();
+			tree.querySphere(sphereX, sphereY, sphereZ, radius, candidates);
+		});
+		exact.clear();
+		for(int i = 0; i < candidates.size(); i++)
+		{
+			int object = candidates.get(i);
+			if(intersectsSphere(boxes, object * 6, sphereX, sphereY, sphereZ, radius))
+			{
+				exact.add(object);
+			}
+		}
+		report("sphere", bruteNanos, treeNanos, bruteForce, candidates, exact);
+		
+		// Ray queries.
+		bruteNanos = measure(() ->
+		{
+			bruteForce.clear();
+			for(int i = 0; i < objectCount; i++)
+			{
+				if(intersectsRay(boxes, i * 6, ray))
+				{
+					bruteForce.add(i);
+				}
+			}
+		});
+		treeNanos = measure(() ->
+		{
+			candidates.clear();
+			tree.queryRay(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], WORLD_SIZE, candidates);
+		});
+		exact.clear();
+		for(int i = 0; i < candidates.size(); i++)
+		{
+			int object = candidates.get(i);
+			if(intersectsRay(boxes, object * 6, ray))
+			{
+				exact.add(object);
+			}
+		}
+		report("ray", bruteNanos, treeNanos, bruteForce, candidates, exact);
+		
+		// A tenth of the objects take a small step each frame; most of them stay inside their fat boxes.
+		int movingCount = objectCount / 10;
+		int[] refitCount = new int[1];
+		long moveNanos = measure(() ->
+		{
+			for(int i = 0; i < movingCount; i++)
+			{
+				int offset = i * 6;
+				for(int axis = 0; axis < 3; axis++)
+				{
+					float step = (random.nextFloat() - 0.5f) * MAX_STEP;
+					boxes[offset + axis] += step;
+					boxes[offset + axis + 3] += step;
+				}
+				System.arraycopy(boxes, offset, box, 0, 6);
+				if(tree.move(proxies[i], box))
+				{
+					refitCount[0]++;
+				}
+			}
+		});
+		float refitsPerFrame = refitCount[0] / (float) (ITERATIONS + WARMUP_ITERATIONS);
+		System.out.printf("  %-8s %d moving objects updated in %8.3f ms, %.0f refits per frame%n", "refit", movingCount, moveNanos / 1e6,
+				refitsPerFrame);
+		
+		// The tree must still agree with brute force after the objects moved.
+		candidates.clear();
+		tree.queryFrustum(frustum, candidates);
+		exact.clear();
+		bruteForce.clear();
+		for(int i = 0; i < objectCount; i++)
+		{
+			if(frustum.classifyBox(boxes, i * 6, Frustum.ALL_PLANES) != Frustum.OUTSIDE)
+			{
+				bruteForce.add(i);
+			}
+		}
+		for(int i = 0; i < candidates.size(); i++)
+		{
+			int object = candidates.get(i);
+			if(frustum.classifyBox(boxes, object * 6, Frustum.ALL_PLANES) != Frustum.OUTSIDE)
+			{
+				exact.add(object);
+			}
+		}
+		System.out.println("  after refitting, identical to brute force: " + identical(bruteForce, exact));
+	}
+	
+	/**
+	 * Returns the median time of one run, after warming up.
+	 */
+	private static long measure(Runnable query)
+	{
+		for(int i = 0; i < WARMUP_ITERATIONS; i++)
+		{
+			query.run();
+		}
+		long[] nanos = new long[ITERATIONS];
+		for(int i = 0; i < ITERATIONS; i++)
+		{
+			long start = System.nanoTime();
+			query.run();
+			nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		return nanos[ITERATIONS / 2];
+	}
+	
+	private static void report(String name, long bruteNanos, long treeNanos, IntList bruteForce, IntList candidates, IntList exact)
+	{
+		System.out.printf("  %-8s brute force %8.3f ms, tree %8.3f ms (%5.1fx), %d hits, %d candidates, identical: %b%n", name, bruteNanos / 1e6,
+				treeNanos / 1e6, bruteNanos / (double) treeNanos, bruteForce.size(), candidates.size(), identical(bruteForce, exact));
+	}
+	
+	private static boolean identical(IntList first, IntList second)
+	{
+		int[] a = first.toArray();
+		int[] b = second.toArray();
+		Arrays.sort(a);
+		Arrays.sort(b);
+		return Arrays.equals(a, b);
+	}
+	
+	private static boolean intersectsSphere(float[] boxes, int offset, float x, float y, float z, float radius)
+	{
+		float dx = Math.max(Math.max(boxes[offset] - x, x - boxes[offset + 3]), 0.0f);
+		float dy = Math.max(Math.max(boxes[offset + 1] - y, y - boxes[offset + 4]), 0.0f);
+		float dz = Math.max(Math.max(boxes[offset + 2] - z, z - boxes[offset + 5]), 0.0f);
+		return dx * dx + dy * dy + dz * dz <= radius * radius;
+	}
+	
+	private static boolean intersectsRay(float[] boxes, int offset, float[] ray)
+	{
+		float enter = 0.0f;
+		float exit = WORLD_SIZE;
+		for(int axis = 0; axis < 3; axis++)
+		{
+			float t1 = (boxes[offset + axis] - ray[axis]) / ray[axis + 3];
+			float t2 = (boxes[offset + axis + 3] - ray[axis]) / ray[axis + 3];
+			enter = Math.max(enter, Math.min(t1, t2));
+			exit = Math.min(exit, Math.max(t1, t2));
+		}
+		return enter <= exit;
+	}
+}
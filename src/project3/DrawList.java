@@ -0,0 +1,140 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * The draw items of one pass as a {@link FrameSnapshot} records them: the queued nodes in draw order, the mesh each of
+ * them is drawn with and their per-object matrices, ready for {@code glUniformMatrix4fv}. The GL thread draws from it
+ * without reading the nodes' per-frame state (transforms and levels of detail), which the preparation of the next frame
+ * is already changing; what it does read of a node, its program, texture, winding and instances, is fixed once the
+ * scene is set up.
+ */
+final class DrawList
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private SceneNode[] m_nodes;
+	// The level of detail each node is drawn with, or null for nodes that draw their instances.
+	private Mesh[] m_meshes;
+	// Per-object matrices, 16 floats per item, one array per kind of matrix.
+	private float[][] m_matrices;
+	private int m_size;
+	private int m_culledCount;
+	
+	/**
+	 * @param matrixKinds how many matrices each item has
+	 */
+	DrawList(int matrixKinds)
+	{
+		m_nodes = new SceneNode[INITIAL_CAPACITY];
+		m_meshes = new Mesh[INITIAL_CAPACITY];
+		m_matrices = new float[matrixKinds][0];
+	}
+	
+	/**
+	 * Records the items of {@code queue} in key order (after {@link RenderQueue#sort}), with the meshes their nodes
+	 * currently draw in the pass.
+	 *
+	 * @param depthOnly whether the queue is for a depth-only pass, which draws each node's shadow level of detail
+	 */
+	void set(RenderQueue queue, boolean depthOnly)
+	{
+		int size = queue.size();
+		if(size > m_nodes.length)
+		{
+			m_nodes = Arrays.copyOf(m_nodes, Math.max(size, m_nodes.length * 2));
+			m_meshes = Arrays.copyOf(m_meshes, m_nodes.length);
+		}
+		for(int i = 0; i < size; i++)
+		{
+			SceneNode node = queue.get(i);
+			m_nodes[i] = node;
+			if(node.getInstances() != null)
+			{
+				m_meshes[i] = null;
+			}
+			else
+			{
+				m_meshes[i] = depthOnly ? node.getShadowMesh() : node.getMesh();
+			}
+		}
+		Arrays.fill(m_nodes, size, Math.max(m_size, size), null);
+		Arrays.fill(m_meshes, size, Math.max(m_size, size), null);
+		m_size = size;
+		m_culledCount = queue.getCulledCount();
+	}
+	
+	/**
+	 * Copies the matrices of {@code batch}, which holds one matrix per item in the same order, as matrices of kind
+	 * {@code kind}.
+	 */
+	void setMatrices(int kind, TransformBatch batch)
+	{
+		m_matrices[kind] = batch.getAll(m_matrices[kind]);
+	}
+	
+	/**
+	 * Returns the matrices of kind {@code kind}: item {@code i}'s starts at offset {@code i * 16}.
+	 */
+	float[] getMatrices(int kind)
+	{
+		return m_matrices[kind];
+	}
+	
+	int size()
+	{
+		return m_size;
+	}
+	
+	SceneNode getNode(int i)
+	{
+		return m_nodes[i];
+	}
+	
+	/**
+	 * Returns how many nodes the pass left out because they were outside its frustum.
+	 */
+	int getCulledCount()
+	{
+		return m_culledCount;
+	}
+	
+	/**
+	 * Returns the vertex array item {@code i} is drawn through: its mesh's, or its instance batch's.
+	 */
+	int getVertexArray(int i)
+	{
+		return (m_meshes[i] != null) ? m_meshes[i].getVertexArray() : m_nodes[i].getInstances().getVertexArray();
+	}
+	
+	/**
+	 * Returns the mesh item {@code i} draws, whose dequantization uniforms it needs: its level of detail, or the mesh of
+	 * its instances.
+	 */
+	Mesh getMesh(int i)
+	{
+		return (m_meshes[i] != null) ? m_meshes[i] : m_nodes[i].getInstances().getMesh();
+	}
+	
+	/**
+	 * Draws item {@code i} with the program in use, which must have the item's uniforms and those of its mesh set, and
+	 * with its vertex array bound. Consecutive items mostly share both, so the pass binds them only when they change.
+	 */
+	void draw(int i)
+	{
+		if(m_meshes[i] != null)
+		{
+			m_meshes[i].drawBound();
+		}
+		else
+		{
+			m_nodes[i].getInstances().drawBound();
+		}
+	}
+}
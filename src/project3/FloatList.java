@@ -0,0 +1,73 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive floats, used in place of {@code ArrayList<Float>} so that loading large meshes does not
+ * box every value.
+ */
+final class FloatList
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float[] m_values;
+	private int m_size;
+	
+	FloatList()
+	{
+		this(1024);
+	}
+	
+	FloatList(int initialCapacity)
+	{
+		m_values = new float[Math.max(initialCapacity, 16)];
+	}
+	
+	void add(float value)
+	{
+		if(m_size == m_values.length)
+		{
+			m_values = Arrays.copyOf(m_values, m_size << 1);
+		}
+		m_values[m_size++] = value;
+	}
+	
+	void addAll(FloatList other)
+	{
+		ensureCapacity(m_size + other.m_size);
+		System.arraycopy(other.m_values, 0, m_values, m_size, other.m_size);
+		m_size += other.m_size;
+	}
+	
+	void ensureCapacity(int capacity)
+	{
+		if(capacity > m_values.length)
+		{
+			m_values = Arrays.copyOf(m_values, Math.max(capacity, m_values.length << 1));
+		}
+	}
+	
+	float get(int index)
+	{
+		return m_values[index];
+	}
+	
+	int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Returns the backing array; only the first {@link #size()} entries are meaningful.
+	 */
+	float[] array()
+	{
+		return m_values;
+	}
+	
+	float[] toArray()
+	{
+		return Arrays.copyOf(m_values, m_size);
+	}
+}
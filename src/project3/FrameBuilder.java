@@ -0,0 +1,97 @@
+package project3;
+
+/**
+ * The part of preparing a frame that decides what is drawn and with which matrices: it culls the {@link SceneIndex}
+ * against the light's and the camera's frusta, sorts both passes' {@link RenderQueue}s, computes the per-object
+ * matrices in {@link TransformBatch}es and records it all in the {@link DrawList}s of a {@link FrameSnapshot}. It makes
+ * no GL calls, so it runs on the frame preparation thread, and in {@link RenderLoopAllocationCheck} without a context.
+ * Once its queues, batches and lists have grown to the size of the scene, it allocates nothing.
+ */
+final class FrameBuilder
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private ShaderProgram m_depthOnlyProgram;
+	private RenderQueue m_shadowQueue, m_renderQueue;
+	private Frustum m_lightFrustum, m_viewFrustum;
+	// The light's P x V, and the same mapped from clip space to shadow texture coordinates (m_b x P x V).
+	private Mat4 m_lightVPMatrix;
+	private Mat4 m_shadowVPMatrix;
+	private Mat4 m_b;
+	private TransformBatch m_worldBatch, m_modelViewBatch, m_normalBatch, m_shadowBatch;
+	
+	/**
+	 * @param farPlane         the far plane of both passes, beyond which items are not told apart by depth
+	 * @param depthOnlyProgram the program the shadow casters are drawn with
+	 */
+	FrameBuilder(float farPlane, ShaderProgram depthOnlyProgram)
+	{
+		m_depthOnlyProgram = depthOnlyProgram;
+		m_shadowQueue = new RenderQueue(farPlane);
+		m_renderQueue = new RenderQueue(farPlane);
+		m_lightFrustum = new Frustum();
+		m_viewFrustum = new Frustum();
+		m_lightVPMatrix = new Mat4();
+		m_shadowVPMatrix = new Mat4();
+		// Maps clip space, -1 to 1, to shadow texture coordinates and depths, 0 to 1.
+		m_b = new Mat4().translate(0.5f, 0.5f, 0.5f).scale(0.5f, 0.5f, 0.5f);
+		m_worldBatch = new TransformBatch();
+		m_modelViewBatch = new TransformBatch();
+		m_normalBatch = new TransformBatch();
+		m_shadowBatch = new TransformBatch();
+	}
+	
+	/**
+	 * Records the draws of both passes of the scene in {@code index}, whose world transforms must be up to date, in
+	 * {@code snapshot}, whose projection and view must already be set.
+	 *
+	 * @param lightProjectionScale how many pixels of the shadow map one world unit covers at a light view depth of one
+	 * @param projectionScale      the same for the camera and the canvas
+	 * @see RenderQueue#collect
+	 */
+	void build(SceneIndex index, Mat4 lightProjection, Mat4 lightView, float lightProjectionScale, float projectionScale, FrameSnapshot snapshot)
+	{
+		m_lightVPMatrix.multiply(lightProjection, lightView);
+		m_shadowVPMatrix.multiply(m_b, m_lightVPMatrix);
+		
+		// The shadow casters in the light's frustum, grouped by mesh and nearest first, with their MVP matrices.
+		m_shadowQueue.clear();
+		m_lightFrustum.set(lightProjection, lightView);
+		m_shadowQueue.collect(index, lightView, m_lightFrustum, lightProjectionScale, m_depthOnlyProgram);
+		m_shadowQueue.sort();
+		gatherWorldTransforms(m_shadowQueue);
+		m_shadowBatch.multiply(m_lightVPMatrix, m_worldBatch);
+		snapshot.getShadowDraws().set(m_shadowQueue, true);
+		snapshot.getShadowDraws().setMatrices(FrameSnapshot.SHADOW_MVP, m_shadowBatch);
+		
+		// The objects in the camera's frustum, sorted by program, texture and mesh, with their model-view, normal and
+		// shadow matrices.
+		Mat4 view = snapshot.getView();
+		m_renderQueue.clear();
+		m_viewFrustum.set(snapshot.getProjection(), view);
+		m_renderQueue.collect(index, view, m_viewFrustum, projectionScale, null);
+		m_renderQueue.sort();
+		gatherWorldTransforms(m_renderQueue);
+		m_modelViewBatch.multiply(view, m_worldBatch);
+		m_normalBatch.normalMatrices(m_modelViewBatch);
+		m_shadowBatch.multiply(m_shadowVPMatrix, m_worldBatch);
+		DrawList draws = snapshot.getDraws();
+		draws.set(m_renderQueue, false);
+		draws.setMatrices(FrameSnapshot.MODEL_VIEW, m_modelViewBatch);
+		draws.setMatrices(FrameSnapshot.NORMAL, m_normalBatch);
+		draws.setMatrices(FrameSnapshot.SHADOW, m_shadowBatch);
+	}
+	
+	/**
+	 * Copies the world transforms of the queued nodes, in queue order, to the world batch.
+	 */
+	private void gatherWorldTransforms(RenderQueue queue)
+	{
+		m_worldBatch.clear();
+		for(int i = 0; i < queue.size(); i++)
+		{
+			m_worldBatch.add(queue.get(i).getWorldTransform());
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package project3;
+
+import com.jogamp.opengl.GLAnimatorControl;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.util.Animator;
+import com.jogamp.opengl.util.FPSAnimator;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when frames are drawn, and measures them. The {@link Mode} picks the animator and swap interval:
+ * <ul>
+ * <li>{@link Mode#FIXED}: an {@code FPSAnimator} at the target rate, without vsync.</li>
+ * <li>{@link Mode#VSYNC}: as fast as the display refreshes, with a swap interval of 1.</li>
+ * <li>{@link Mode#UNCAPPED}: as fast as possible, without vsync, to measure throughput.</li>
+ * <li>{@link Mode#ADAPTIVE}: paced here, starting at the target rate and stepping down to a lower rate under sustained
+ * overload, and back up once frames fit well within the faster rate again, so that a frame rate that cannot be held
+ * degrades to a steady lower one instead of an uneven one.</li>
+ * </ul>
+ * In every mode, {@link #beginFrame} and {@link #endFrame} bracket the work of each frame and record two distributions:
+ * the frame time, from the start of one frame to the start of the next, and the work time, how long the GL thread was
+ * busy in between. The headroom a frame has is the difference between the frame period and the work time. Both also
+ * go into a {@link LatencyHistogram} over the whole run, for the rare spikes a window of recent frames forgets.
+ */
+public class FramePacer
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// How many frames the distributions are computed over.
+	private static final int STATS_WINDOW = 512;
+	// The adaptive rates, as fractions of the target rate.
+	private static final float[] ADAPTIVE_RATE_FRACTIONS = {1.0f, 0.75f, 0.5f, 1.0f / 3.0f, 0.25f};
+	// A frame is over budget when its work takes more than this fraction of the period, and an (adaptive) second is
+	// overloaded when more than OVERRUN_FRACTION of its frames were, that is when their 95th percentile was.
+	private static final float OVERLOAD_BUDGET = 0.9f;
+	private static final float OVERRUN_FRACTION = 0.05f;
+	// The next faster rate is only tried again once 95% of the frames worked for less than this fraction of its period.
+	private static final float SPEED_UP_BUDGET = 0.6f;
+	private static final int OVERLOADED_SECONDS_TO_SLOW_DOWN = 2;
+	private static final int UNDERLOADED_SECONDS_TO_SPEED_UP = 3;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private Mode m_mode;
+	private int m_targetRate;
+	private int[] m_rates;
+	private volatile int m_rateIndex;
+	private FrameTimeStats m_frameTimes;
+	private FrameTimeStats m_workTimes;
+	private LatencyHistogram m_frameHistogram;
+	private LatencyHistogram m_workHistogram;
+	private boolean m_started;
+	private long m_frameStartNanos;
+	// When the next frame is due, in adaptive mode.
+	private long m_nextFrameNanos;
+	// Counts for the current second of adaptive mode, and how many seconds in a row were over or under budget.
+	private int m_windowFrames;
+	private int m_overBudgetFrames;
+	private int m_fastEnoughFrames;
+	private int m_overloadedSeconds;
+	private int m_underloadedSeconds;
+	
+	/**
+	 * @param targetRate the frame rate in frames per second of the fixed and adaptive modes
+	 */
+	public FramePacer(Mode mode, int targetRate)
+	{
+		m_mode = mode;
+		m_targetRate = targetRate;
+		m_rates = new int[ADAPTIVE_RATE_FRACTIONS.length];
+		for(int i = 0; i < m_rates.length; i++)
+		{
+			m_rates[i] = Math.max(Math.round(targetRate * ADAPTIVE_RATE_FRACTIONS[i]), 1);
+		}
+		m_frameTimes = new FrameTimeStats(STATS_WINDOW);
+		m_workTimes = new FrameTimeStats(STATS_WINDOW);
+		m_frameHistogram = new LatencyHistogram();
+		m_workHistogram = new LatencyHistogram();
+	}
+	
+	/**
+	 * Creates the animator that drives {@code drawable} in this mode; it still has to be started.
+	 */
+	public GLAnimatorControl createAnimator(GLAutoDrawable drawable)
+	{
+		if(m_mode == Mode.FIXED)
+		{
+			return new FPSAnimator(drawable, m_targetRate);
+		}
+		Animator animator = new Animator(drawable);
+		// Adaptive mode waits in beginFrame(); the others are limited by the swap interval, or not at all.
+		animator.setRunAsFastAsPossible(true);
+		return animator;
+	}
+	
+	/**
+	 * Returns the swap interval to set in the GL context: 1 to wait for vertical blank in vsync mode, 0 otherwise.
+	 */
+	public int getSwapInterval()
+	{
+		return (m_mode == Mode.VSYNC) ? 1 : 0;
+	}
+	
+	/**
+	 * Call first thing in each frame: waits until the frame is due in adaptive mode, and records the last frame time.
+	 */
+	public void beginFrame()
+	{
+		long now = System.nanoTime();
+		if(m_mode == Mode.ADAPTIVE)
+		{
+			long period = getPeriodNanos(m_rates[m_rateIndex]);
+			if(m_started)
+			{
+				while(m_nextFrameNanos - now > 0)
+				{
+					LockSupport.parkNanos(m_nextFrameNanos - now);
+					now = System.nanoTime();
+				}
+			}
+			// The next frame is due a period after this one was, or a period from now if this one is more than a period
+			// late, so that a long frame is not followed by a burst of frames catching up.
+			m_nextFrameNanos = (!m_started || now - m_nextFrameNanos > period) ? now + period : m_nextFrameNanos + period;
+		}
+		if(m_started)
+		{
+			m_frameTimes.record(now - m_frameStartNanos);
+			m_frameHistogram.record(now - m_frameStartNanos);
+		}
+		m_started = true;
+		m_frameStartNanos = now;
+	}
+	
+	/**
+	 * Call last thing in each frame: records its work time, and in adaptive mode changes the rate if the last seconds
+	 * called for it.
+	 */
+	public void endFrame()
+	{
+		long workNanos = System.nanoTime() - m_frameStartNanos;
+		m_workTimes.record(workNanos);
+		m_workHistogram.record(workNanos);
+		if(m_mode == Mode.ADAPTIVE)
+		{
+			adapt(workNanos);
+		}
+	}
+	
+	/**
+	 * Recomputes the percentiles of both distributions; they stay the same between calls.
+	 */
+	public void update()
+	{
+		m_frameTimes.update();
+		m_workTimes.update();
+	}
+	
+	public Mode getMode()
+	{
+		return m_mode;
+	}
+	
+	/**
+	 * Returns the frame rate being aimed at: the target rate in fixed mode, the current rate in adaptive mode, and 0 in
+	 * the modes that are not paced by rate.
+	 */
+	public int getCurrentRate()
+	{
+		switch(m_mode)
+		{
+			case FIXED:
+				return m_targetRate;
+			case ADAPTIVE:
+				return m_rates[m_rateIndex];
+			default:
+				return 0;
+		}
+	}
+	
+	/**
+	 * Returns the distribution of frame times, from the start of one frame to the start of the next, as of the last
+	 * {@link #update}.
+	 */
+	public FrameTimeStats getFrameTimes()
+	{
+		return m_frameTimes;
+	}
+	
+	/**
+	 * Returns the distribution of the time each frame spent between {@link #beginFrame} and {@link #endFrame}, as of the
+	 * last {@link #update}.
+	 */
+	public FrameTimeStats getWorkTimes()
+	{
+		return m_workTimes;
+	}
+	
+	/**
+	 * Returns the histogram of every frame time since the pacer was created.
+	 */
+	public LatencyHistogram getFrameHistogram()
+	{
+		return m_frameHistogram;
+	}
+	
+	/**
+	 * Returns the histogram of every work time since the pacer was created.
+	 */
+	public LatencyHistogram getWorkHistogram()
+	{
+		return m_workHistogram;
+	}
+	
+	private void adapt(long workNanos)
+	{
+		if(workNanos > getPeriodNanos(m_rates[m_rateIndex]) * OVERLOAD_BUDGET)
+		{
+			m_overBudgetFrames++;
+		}
+		if(m_rateIndex > 0 && workNanos < getPeriodNanos(m_rates[m_rateIndex - 1]) * SPEED_UP_BUDGET)
+		{
+			m_fastEnoughFrames++;
+		}
+		if(++m_windowFrames < m_rates[m_rateIndex])
+		{
+			return;
+		}
+		
+		// A second has passed.
+		boolean overloaded = m_overBudgetFrames > m_windowFrames * OVERRUN_FRACTION;
+		boolean underloaded = m_fastEnoughFrames >= m_windowFrames * (1.0f - OVERRUN_FRACTION);
+		m_overloadedSeconds = overloaded ? m_overloadedSeconds + 1 : 0;
+		m_underloadedSeconds = underloaded ? m_underloadedSeconds + 1 : 0;
+		if(m_overloadedSeconds >= OVERLOADED_SECONDS_TO_SLOW_DOWN && m_rateIndex < m_rates.length - 1)
+		{
+			m_rateIndex++;
+			m_overloadedSeconds = 0;
+			m_underloadedSeconds = 0;
+		}
+		else if(m_underloadedSeconds >= UNDERLOADED_SECONDS_TO_SPEED_UP)
+		{
+			m_rateIndex--;
+			m_overloadedSeconds = 0;
+			m_underloadedSeconds = 0;
+		}
+		m_windowFrames = 0;
+		m_overBudgetFrames = 0;
+		m_fastEnoughFrames = 0;
+	}
+	
+	private static long getPeriodNanos(int rate)
+	{
+		return 1_000_000_000L / rate;
+	}
+	
+	/**
+	 * How frames are paced.
+	 */
+	public enum Mode
+	{
+		FIXED, VSYNC, UNCAPPED, ADAPTIVE;
+		
+		/**
+		 * Returns the mode named {@code name}, in any case, or reports it and returns {@link #FIXED} if there is none.
+		 */
+		public static Mode parse(String name)
+		{
+			try
+			{
+				return valueOf(name.trim().toUpperCase(Locale.ROOT));
+			}
+			catch(IllegalArgumentException e)
+			{
+				System.err.println("Unknown frame pacing mode \"" + name + "\", expected one of " + Arrays.toString(values()).toLowerCase(Locale.ROOT)
+						+ "; using fixed.");
+				return FIXED;
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package project3;
+
+/**
+ * Everything the GL thread needs to draw one frame: the camera's matrices, the light's view-space position, the
+ * switches set from the keyboard and the {@link DrawList}s of both passes. A snapshot is written by the frame
+ * preparation thread while it owns it and does not change once it has been published, so the GL thread reads it without
+ * locks.
+ */
+final class FrameSnapshot
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// The matrices of the items of each pass.
+	static final int SHADOW_MVP = 0;
+	static final int MODEL_VIEW = 0;
+	static final int NORMAL = 1;
+	static final int SHADOW = 2;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	// Numbers the snapshots in the order they were prepared, starting at 1; 0 for one that was never prepared.
+	private volatile long m_frame;
+	private Mat4 m_projection;
+	private Mat4 m_view;
+	private Vec3 m_lightViewPosition;
+	private boolean m_lightOn;
+	private boolean m_cubeMapSkybox;
+	private boolean m_profilerOverlay;
+	private DrawList m_shadowDraws;
+	private DrawList m_draws;
+	private long m_allocatedBytes;
+	
+	FrameSnapshot()
+	{
+		m_projection = new Mat4();
+		m_view = new Mat4();
+		m_lightViewPosition = new Vec3();
+		m_shadowDraws = new DrawList(1);
+		m_draws = new DrawList(3);
+	}
+	
+	long getFrame()
+	{
+		return m_frame;
+	}
+	
+	void setFrame(long frame)
+	{
+		m_frame = frame;
+	}
+	
+	Mat4 getProjection()
+	{
+		return m_projection;
+	}
+	
+	Mat4 getView()
+	{
+		return m_view;
+	}
+	
+	Vec3 getLightViewPosition()
+	{
+		return m_lightViewPosition;
+	}
+	
+	boolean isLightOn()
+	{
+		return m_lightOn;
+	}
+	
+	void setLightOn(boolean lightOn)
+	{
+		m_lightOn = lightOn;
+	}
+	
+	boolean isCubeMapSkybox()
+	{
+		return m_cubeMapSkybox;
+	}
+	
+	void setCubeMapSkybox(boolean cubeMapSkybox)
+	{
+		m_cubeMapSkybox = cubeMapSkybox;
+	}
+	
+	boolean isProfilerOverlay()
+	{
+		return m_profilerOverlay;
+	}
+	
+	void setProfilerOverlay(boolean profilerOverlay)
+	{
+		m_profilerOverlay = profilerOverlay;
+	}
+	
+	/**
+	 * Returns the shadow casters to draw from the light's point of view, with their {@link #SHADOW_MVP} matrices.
+	 */
+	DrawList getShadowDraws()
+	{
+		return m_shadowDraws;
+	}
+	
+	/**
+	 * Returns the objects to draw from the camera, with their {@link #MODEL_VIEW}, {@link #NORMAL} and {@link #SHADOW}
+	 * matrices.
+	 */
+	DrawList getDraws()
+	{
+		return m_draws;
+	}
+	
+	/**
+	 * Returns how many bytes preparing the snapshot allocated, or 0 if that cannot be measured.
+	 */
+	long getAllocatedBytes()
+	{
+		return m_allocatedBytes;
+	}
+	
+	void setAllocatedBytes(long allocatedBytes)
+	{
+		m_allocatedBytes = allocatedBytes;
+	}
+}
@@ -0,0 +1,96 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * The distribution of a per-frame duration over the last frames: {@link #record} keeps the most recent samples in a
+ * ring, and {@link #update} computes their 50th, 95th and 99th percentiles and maximum. Percentiles show what averages
+ * hide: a frame rate that looks fine on average can still drop a frame every second, which only the tail reveals.
+ * <p>
+ * Recording and updating allocate nothing and belong to the thread that measures the frames; the results of the last
+ * update may be read from any thread.
+ */
+public final class FrameTimeStats
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private long[] m_samples;
+	private long[] m_sorted;
+	private int m_count;
+	private int m_next;
+	private volatile long m_p50, m_p95, m_p99, m_max;
+	private volatile int m_sampleCount;
+	
+	/**
+	 * @param window how many of the most recent samples the percentiles are computed over
+	 */
+	public FrameTimeStats(int window)
+	{
+		m_samples = new long[window];
+		m_sorted = new long[window];
+	}
+	
+	public void record(long nanos)
+	{
+		m_samples[m_next] = nanos;
+		m_next = (m_next + 1) % m_samples.length;
+		m_count = Math.min(m_count + 1, m_samples.length);
+	}
+	
+	/**
+	 * Recomputes the percentiles of the samples currently in the window.
+	 */
+	public void update()
+	{
+		System.arraycopy(m_samples, 0, m_sorted, 0, m_count);
+		Arrays.sort(m_sorted, 0, m_count);
+		m_p50 = percentile(0.50);
+		m_p95 = percentile(0.95);
+		m_p99 = percentile(0.99);
+		m_max = (m_count > 0) ? m_sorted[m_count - 1] : 0;
+		m_sampleCount = m_count;
+	}
+	
+	/**
+	 * Returns how many samples the last {@link #update} was computed over.
+	 */
+	public int getSampleCount()
+	{
+		return m_sampleCount;
+	}
+	
+	public double getP50Millis()
+	{
+		return m_p50 / 1e6;
+	}
+	
+	public double getP95Millis()
+	{
+		return m_p95 / 1e6;
+	}
+	
+	public double getP99Millis()
+	{
+		return m_p99 / 1e6;
+	}
+	
+	public double getMaxMillis()
+	{
+		return m_max / 1e6;
+	}
+	
+	/**
+	 * Returns the nearest-rank percentile of the sorted samples: the smallest sample that at least {@code fraction} of
+	 * them do not exceed.
+	 */
+	private long percentile(double fraction)
+	{
+		if(m_count == 0)
+		{
+			return 0;
+		}
+		int rank = (int) Math.ceil(fraction * m_count);
+		return m_sorted[Math.max(rank, 1) - 1];
+	}
+}
@@ -0,0 +1,121 @@
+package project3;
+
+import com.jogamp.opengl.GL4;
+import com.jogamp.opengl.GLContext;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * The data that stays the same for every object drawn in a frame, kept in one std140 uniform buffer that is written once
+ * per frame and bound to {@link #BINDING} for all programs. It matches this block in the shaders:
+ * <pre>
+ * layout (std140, binding = 0) uniform FrameData
+ * {
+ *     mat4 proj_matrix;
+ *     mat4 view_matrix;
+ *     vec4 globalAmbient;
+ *     PositionalLight light; // ambient, diffuse, specular, view-space position
+ * };
+ * </pre>
+ */
+public class FrameUniforms
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	public static final int BINDING = 0;
+	// std140 offsets in floats: mat4 is 16, vec4 is 4, and the vec3 at the end of the light struct is padded to 4.
+	private static final int PROJECTION = 0;
+	private static final int VIEW = 16;
+	private static final int GLOBAL_AMBIENT = 32;
+	private static final int LIGHT_AMBIENT = 36;
+	private static final int LIGHT_DIFFUSE = 40;
+	private static final int LIGHT_SPECULAR = 44;
+	private static final int LIGHT_POSITION = 48;
+	private static final int SIZE = 52;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private int[] m_buffer;
+	private FloatBuffer m_data;
+	
+	public FrameUniforms()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_buffer = new int[1];
+		m_data = ByteBuffer.allocateDirect(SIZE * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		
+		gl.glGenBuffers(1, m_buffer, 0);
+		gl.glBindBuffer(GL_UNIFORM_BUFFER, m_buffer[0]);
+		gl.glBufferData(GL_UNIFORM_BUFFER, SIZE * Float.BYTES, null, GL_DYNAMIC_DRAW);
+		gl.glBindBufferBase(GL_UNIFORM_BUFFER, BINDING, m_buffer[0]);
+		RenderStats.get().allocate(RenderStats.Resource.BUFFER, 1, SIZE * Float.BYTES);
+	}
+	
+	public void setProjection(Mat4 projection)
+	{
+		put(PROJECTION, projection.getValues());
+	}
+	
+	public void setView(Mat4 view)
+	{
+		put(VIEW, view.getValues());
+	}
+	
+	public void setGlobalAmbient(float[] ambient)
+	{
+		put(GLOBAL_AMBIENT, ambient);
+	}
+	
+	/**
+	 * Sets the light's colors. They are kept across uploads, so this is only needed when they change.
+	 */
+	public void setLightColors(float[] ambient, float[] diffuse, float[] specular)
+	{
+		put(LIGHT_AMBIENT, ambient);
+		put(LIGHT_DIFFUSE, diffuse);
+		put(LIGHT_SPECULAR, specular);
+	}
+	
+	/**
+	 * Sets the light's position, which the shaders expect in view space.
+	 */
+	public void setLightPosition(float x, float y, float z)
+	{
+		m_data.put(LIGHT_POSITION, x);
+		m_data.put(LIGHT_POSITION + 1, y);
+		m_data.put(LIGHT_POSITION + 2, z);
+	}
+	
+	/**
+	 * Copies everything set since the last upload into the uniform buffer. Call once per frame, before the first draw.
+	 */
+	public void upload()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_data.rewind();
+		gl.glBindBuffer(GL_UNIFORM_BUFFER, m_buffer[0]);
+		gl.glBufferSubData(GL_UNIFORM_BUFFER, 0, SIZE * Float.BYTES, m_data);
+		RenderStats.get().countUpload(RenderStats.Resource.BUFFER, SIZE * Float.BYTES);
+	}
+	
+	public void dispose()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glDeleteBuffers(1, m_buffer, 0);
+		RenderStats.get().free(RenderStats.Resource.BUFFER, 1, SIZE * Float.BYTES);
+	}
+	
+	private void put(int offset, float[] values)
+	{
+		for(int i = 0; i < values.length; i++)
+		{
+			m_data.put(offset + i, values[i]);
+		}
+	}
+}
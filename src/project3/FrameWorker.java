@@ -0,0 +1,81 @@
+package project3;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A daemon thread that runs the same task each time it is {@link #start started}, without locks and without creating
+ * anything per run: requests are counted, and the thread parks while it has caught up with them. Requests made while the
+ * task is running are merged into one more run, so a slow task never builds up a backlog. {@link #stop} ends the thread.
+ */
+final class FrameWorker implements Runnable
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private final Runnable m_task;
+	private final Thread m_thread;
+	private final AtomicLong m_requested;
+	private volatile boolean m_stopped;
+	
+	FrameWorker(String name, Runnable task)
+	{
+		m_task = task;
+		m_requested = new AtomicLong();
+		m_thread = new Thread(this, name);
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+	
+	/**
+	 * Asks for another run of the task, which starts right away if the thread is idle and after the current run
+	 * otherwise.
+	 */
+	void start()
+	{
+		m_requested.incrementAndGet();
+		LockSupport.unpark(m_thread);
+	}
+	
+	/**
+	 * Ends the thread and waits for it, so the task is not running any more once this returns. Requests not yet run are
+	 * dropped.
+	 */
+	void stop()
+	{
+		m_stopped = true;
+		LockSupport.unpark(m_thread);
+		try
+		{
+			m_thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void run()
+	{
+		long completed = 0;
+		while(!m_stopped)
+		{
+			long requested = m_requested.get();
+			if(requested == completed)
+			{
+				LockSupport.park(this);
+				continue;
+			}
+			try
+			{
+				m_task.run();
+			}
+			catch(RuntimeException e)
+			{
+				e.printStackTrace();
+			}
+			completed = requested;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package project3;
+
+/**
+ * The six planes of a view volume, extracted from a projection x view matrix (Gribb and Hartmann), for testing bounding
+ * volumes against it. Plane normals point inwards and are normalized, so plane equations give true distances.
+ */
+public final class Frustum
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int PLANE_COUNT = 6;
+	/** The plane mask of {@link #classifyBox} that tests every plane. */
+	public static final int ALL_PLANES = (1 << PLANE_COUNT) - 1;
+	/** The result of {@link #classifyBox} for a box entirely outside the frustum. */
+	public static final int OUTSIDE = -1;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	// a, b, c, d of each plane: left, right, bottom, top, near, far.
+	private float[] m_planes;
+	private Mat4 m_viewProjection;
+	
+	public Frustum()
+	{
+		m_planes = new float[PLANE_COUNT * 4];
+		m_viewProjection = new Mat4();
+	}
+	
+	/**
+	 * Extracts the planes of {@code projection} x {@code view}, in world space.
+	 */
+	public void set(Mat4 projection, Mat4 view)
+	{
+		Mat4 clip = m_viewProjection.multiply(projection, view);
+		
+		// Each clip plane is the w row plus or minus the x, y or z row.
+		for(int plane = 0; plane < PLANE_COUNT; plane++)
+		{
+			int axis = plane / 2;
+			float sign = (plane % 2 == 0) ? 1.0f : -1.0f;
+			float a = clip.get(3, 0) + sign * clip.get(axis, 0);
+			float b = clip.get(3, 1) + sign * clip.get(axis, 1);
+			float c = clip.get(3, 2) + sign * clip.get(axis, 2);
+			float d = clip.get(3, 3) + sign * clip.get(axis, 3);
+			float length = (float) Math.sqrt(a * a + b * b + c * c);
+			m_planes[plane * 4] = a / length;
+			m_planes[plane * 4 + 1] = b / length;
+			m_planes[plane * 4 + 2] = c / length;
+			m_planes[plane * 4 + 3] = d / length;
+		}
+	}
+	
+	/**
+	 * Returns {@code false} only if the sphere lies entirely outside one of the planes.
+	 */
+	public boolean intersectsSphere(float x, float y, float z, float radius)
+	{
+		for(int plane = 0; plane < PLANE_COUNT; plane++)
+		{
+			int p = plane * 4;
+			if(m_planes[p] * x + m_planes[p + 1] * y + m_planes[p + 2] * z + m_planes[p + 3] < -radius)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns {@code false} only if the box, given as min x, y, z and max x, y, z, lies entirely outside one of the
+	 * planes. For each plane only the corner farthest along its normal is tested.
+	 */
+	public boolean intersectsBox(float[] box)
+	{
+		for(int plane = 0; plane < PLANE_COUNT; plane++)
+		{
+			int p = plane * 4;
+			float x = (m_planes[p] >= 0.0f) ? box[3] : box[0];
+			float y = (m_planes[p + 1] >= 0.0f) ? box[4] : box[1];
+			float z = (m_planes[p + 2] >= 0.0f) ? box[5] : box[2];
+			if(m_planes[p] * x + m_planes[p + 1] * y + m_planes[p + 2] * z + m_planes[p + 3] < 0.0f)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Classifies the box at {@code boxes[offset]} (min x, y, z, max x, y, z) against the planes in {@code planes}, a bit
+	 * mask with bit i set for plane i (see {@link #ALL_PLANES}), for hierarchical culling: a box inside a plane has
+	 * contents inside it too, so the planes it is inside need not be tested for them again.
+	 *
+	 * @return {@link #OUTSIDE} if the box lies entirely outside one of the planes, otherwise the subset of {@code planes}
+	 *         the box straddles; 0 means it is entirely inside the frustum
+	 */
+	public int classifyBox(float[] boxes, int offset, int planes)
+	{
+		int straddled = 0;
+		for(int plane = 0; plane < PLANE_COUNT; plane++)
+		{
+			if((planes & (1 << plane)) == 0)
+			{
+				continue;
+			}
+			int p = plane * 4;
+			// The corners farthest along the normal and against it.
+			boolean positiveX = m_planes[p] >= 0.0f;
+			boolean positiveY = m_planes[p + 1] >= 0.0f;
+			boolean positiveZ = m_planes[p + 2] >= 0.0f;
+			float farX = boxes[offset + (positiveX ? 3 : 0)];
+			float farY = boxes[offset + (positiveY ? 4 : 1)];
+			float farZ = boxes[offset + (positiveZ ? 5 : 2)];
+			if(m_planes[p] * farX + m_planes[p + 1] * farY + m_planes[p + 2] * farZ + m_planes[p + 3] < 0.0f)
+			{
+				return OUTSIDE;
+			}
+			float nearX = boxes[offset + (positiveX ? 0 : 3)];
+			float nearY = boxes[offset + (positiveY ? 1 : 4)];
+			float nearZ = boxes[offset + (positiveZ ? 2 : 5)];
+			if(m_planes[p] * nearX + m_planes[p + 1] * nearY + m_planes[p + 2] * nearZ + m_planes[p + 3] < 0.0f)
+			{
+				straddled |= 1 << plane;
+			}
+		}
+		return straddled;
+	}
+}
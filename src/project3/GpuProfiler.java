@@ -0,0 +1,195 @@
+package project3;
+
+import com.jogamp.opengl.GL4;
+import com.jogamp.opengl.GLContext;
+
+import java.io.PrintStream;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * Measures how long named scopes of a frame take on the GPU. {@link #begin} and {@link #end} each write a GPU timestamp
+ * with {@code glQueryCounter(GL_TIMESTAMP)}, which, unlike {@code GL_TIME_ELAPSED} queries, may nest, so a scope for the
+ * whole frame can contain the scopes of its passes.
+ * <p>
+ * The GPU runs a few frames behind the CPU, so asking for a result right away would wait for it to catch up. Instead
+ * every frame writes its timestamps into its own set of query objects in a ring of {@link #FRAME_LATENCY} sets, and
+ * {@link #beginFrame} reads back the set of the frame that many frames ago, just before reusing it. Its results are
+ * only read if they are available by then; otherwise that frame's measurements are dropped rather than waited for.
+ * Each scope's durations go into a {@link FrameTimeStats}.
+ */
+public class GpuProfiler
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// How many frames old the results are when they are read.
+	private static final int FRAME_LATENCY = 4;
+	private static final int MAX_SCOPES = 16;
+	// How many frames each scope's percentiles are computed over.
+	private static final int STATS_WINDOW = 256;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private String[] m_names;
+	private FrameTimeStats[] m_stats;
+	private int m_scopeCount;
+	// Two timestamp queries per scope per frame of the ring: query (slot * MAX_SCOPES + scope) * 2, and the next one.
+	private int[] m_queries;
+	// Whether each scope of each frame of the ring was measured.
+	private boolean[] m_issued;
+	private long m_frame;
+	private int m_slot;
+	private volatile int m_droppedFrameCount;
+	private int[] m_available;
+	private long[] m_timestamps;
+	
+	public GpuProfiler()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_names = new String[MAX_SCOPES];
+		m_stats = new FrameTimeStats[MAX_SCOPES];
+		m_queries = new int[FRAME_LATENCY * MAX_SCOPES * 2];
+		gl.glGenQueries(m_queries.length, m_queries, 0);
+		m_issued = new boolean[FRAME_LATENCY * MAX_SCOPES];
+		m_frame = -1;
+		m_available = new int[1];
+		m_timestamps = new long[2];
+	}
+	
+	/**
+	 * Adds a scope and returns the number to pass to {@link #begin} and {@link #end}.
+	 */
+	public int addScope(String name)
+	{
+		if(m_scopeCount == MAX_SCOPES)
+		{
+			throw new IllegalStateException("A GPU profiler measures at most " + MAX_SCOPES + " scopes");
+		}
+		m_names[m_scopeCount] = name;
+		m_stats[m_scopeCount] = new FrameTimeStats(STATS_WINDOW);
+		return m_scopeCount++;
+	}
+	
+	/**
+	 * Call at the start of each frame, before any scope: reads back the results of the frame whose queries this one
+	 * reuses.
+	 */
+	public void beginFrame()
+	{
+		m_frame++;
+		m_slot = (int) (m_frame % FRAME_LATENCY);
+		if(m_frame >= FRAME_LATENCY)
+		{
+			collect(m_slot);
+		}
+		for(int scope = 0; scope < m_scopeCount; scope++)
+		{
+			m_issued[m_slot * MAX_SCOPES + scope] = false;
+		}
+	}
+	
+	public void begin(int scope)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glQueryCounter(m_queries[(m_slot * MAX_SCOPES + scope) * 2], GL_TIMESTAMP);
+	}
+	
+	public void end(int scope)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glQueryCounter(m_queries[(m_slot * MAX_SCOPES + scope) * 2 + 1], GL_TIMESTAMP);
+		m_issued[m_slot * MAX_SCOPES + scope] = true;
+	}
+	
+	/**
+	 * Recomputes the percentiles of every scope; they stay the same between calls.
+	 */
+	public void update()
+	{
+		for(int scope = 0; scope < m_scopeCount; scope++)
+		{
+			m_stats[scope].update();
+		}
+	}
+	
+	public int getScopeCount()
+	{
+		return m_scopeCount;
+	}
+	
+	public String getName(int scope)
+	{
+		return m_names[scope];
+	}
+	
+	/**
+	 * Returns the durations of a scope, as of the last {@link #update}.
+	 */
+	public FrameTimeStats getStats(int scope)
+	{
+		return m_stats[scope];
+	}
+	
+	/**
+	 * Returns how many frames' results were dropped because the GPU had not finished the frame when they were read.
+	 */
+	public int getDroppedFrameCount()
+	{
+		return m_droppedFrameCount;
+	}
+	
+	/**
+	 * Prints the percentiles of every scope as of the last {@link #update}; may be called from any thread.
+	 */
+	public void dump(PrintStream out)
+	{
+		out.printf("GPU time per frame in ms over the last %d frames (%d frames dropped):%n", STATS_WINDOW, m_droppedFrameCount);
+		for(int scope = 0; scope < m_scopeCount; scope++)
+		{
+			FrameTimeStats stats = m_stats[scope];
+			out.printf("  %-12s p50 %7.3f  p95 %7.3f  p99 %7.3f  max %7.3f  (%d frames)%n", m_names[scope], stats.getP50Millis(), stats.getP95Millis(),
+					stats.getP99Millis(), stats.getMaxMillis(), stats.getSampleCount());
+		}
+	}
+	
+	public void dispose()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glDeleteQueries(m_queries.length, m_queries, 0);
+	}
+	
+	/**
+	 * Records the durations of the scopes measured in ring slot {@code slot}, if the GPU has finished them.
+	 */
+	private void collect(int slot)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		// A scope's end is written after its beginning, so the scope is complete once its end is available.
+		for(int scope = 0; scope < m_scopeCount; scope++)
+		{
+			if(m_issued[slot * MAX_SCOPES + scope])
+			{
+				gl.glGetQueryObjectiv(m_queries[(slot * MAX_SCOPES + scope) * 2 + 1], GL_QUERY_RESULT_AVAILABLE, m_available, 0);
+				if(m_available[0] == GL_FALSE)
+				{
+					m_droppedFrameCount++;
+					return;
+				}
+			}
+		}
+		for(int scope = 0; scope < m_scopeCount; scope++)
+		{
+			if(!m_issued[slot * MAX_SCOPES + scope])
+			{
+				continue;
+			}
+			int query = (slot * MAX_SCOPES + scope) * 2;
+			gl.glGetQueryObjectui64v(m_queries[query], GL_QUERY_RESULT, m_timestamps, 0);
+			gl.glGetQueryObjectui64v(m_queries[query + 1], GL_QUERY_RESULT, m_timestamps, 1);
+			m_stats[scope].record(m_timestamps[1] - m_timestamps[0]);
+		}
+	}
+}
@@ -3,40 +3,143 @@ package project3;
 import graphicslib3D.Vertex3D;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
 
+/**
+ * A model loaded from an OBJ file, held as a single buffer of interleaved vertices (see {@link Mesh}) ready for
+ * {@code glBufferData}.
+ * <p>
+ * An indexed model holds one vertex per distinct v/vt/vn triplet plus an index buffer, and is meant to be drawn with
+ * {@code glDrawElements}; a model that is not indexed holds three vertices per triangle for {@code glDrawArrays}.
+ * <p>
+ * The first import of a model writes a binary {@link MeshCache} file next to it; later imports map that file instead
+ * of parsing the OBJ text again.
+ */
 public class ImportedModel
 {
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// Models at least this large are scanned on all cores; below it the fork-join overhead is not worth it.
+	private static final long PARALLEL_IMPORT_THRESHOLD = 8L * 1024 * 1024;
+	// Largest vertex count that can still be addressed with GL_UNSIGNED_SHORT indices.
+	private static final int MAX_SHORT_INDEXED_VERTICES = 0x10000;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
 	private Vertex3D[] m_vertices;
 	private int m_numVertices;
+	private FloatBuffer m_interleaved;
+	private IntBuffer m_indices;
+	private int m_numIndices;
+	private final boolean m_indexed;
+	private boolean m_loadedFromCache;
+	private long m_loadTimeNanos;
 	
 	public ImportedModel(String filename)
 	{
-		ModelImporter modelImporter = new ModelImporter();
+		this(filename, false);
+	}
+	
+	public ImportedModel(String filename, boolean indexed)
+	{
+		m_indexed = indexed;
+		RenderEvents.ModelImport event = new RenderEvents.ModelImport();
+		event.begin();
+		long start = System.nanoTime();
+		m_interleaved = FloatBuffer.allocate(0);
 		try
 		{
-			modelImporter.parseOBJ(filename);
-			m_numVertices = modelImporter.getNumVertices();
-			float[] verts = modelImporter.getVertices();
-			float[] tcs = modelImporter.getTextureCoordinates();
-			float[] normals = modelImporter.getNormals();
-			
-			m_vertices = new Vertex3D[m_numVertices];
-			for(int i = 0; i < m_vertices.length; i++)
+			Path source = ModelImporter.getModelPath(filename);
+			MeshCache.Entry cached = (source == null) ? null : MeshCache.read(source, indexed);
+			if(cached != null)
 			{
-				m_vertices[i] = new Vertex3D();
-				m_vertices[i].setLocation(verts[i * 3], verts[i * 3 + 1], verts[i * 3 + 2]);
-				m_vertices[i].setST(tcs[i * 2], tcs[i * 2 + 1]);
-				m_vertices[i].setNormal(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+				m_interleaved = cached.vertices;
+				m_indices = cached.indices;
+				m_numVertices = cached.vertexCount;
+				m_numIndices = cached.indexCount;
+				m_loadedFromCache = true;
+			}
+			else
+			{
+				importOBJ(filename, source);
 			}
 		}
 		catch(IOException e)
 		{
 			e.printStackTrace();
 		}
+		m_loadTimeNanos = System.nanoTime() - start;
+		event.file = filename;
+		event.fromCache = m_loadedFromCache;
+		event.vertices = m_numVertices;
+		event.indices = m_numIndices;
+		event.commit();
 	}
 	
+	private void importOBJ(String filename, Path source) throws IOException
+	{
+		ModelImporter modelImporter = new ModelImporter(m_indexed);
+		if(ModelImporter.getModelSize(filename) >= PARALLEL_IMPORT_THRESHOLD)
+		{
+			modelImporter.parseOBJParallel(filename);
+		}
+		else
+		{
+			modelImporter.parseOBJ(filename);
+		}
+		m_numVertices = modelImporter.getNumVertices();
+		float[] verts = modelImporter.getVertices();
+		float[] tcs = modelImporter.getTextureCoordinates();
+		float[] normals = modelImporter.getNormals();
+		m_interleaved = Mesh.interleave(m_numVertices, verts, tcs, normals);
+		int[] indices = modelImporter.getIndices();
+		if(indices != null)
+		{
+			System.out.println("Vertex cache optimization of " + filename + ": " + modelImporter.getVertexCacheStatistics());
+			m_indices = ByteBuffer.allocateDirect(indices.length * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+			m_indices.put(indices).flip();
+			m_numIndices = indices.length;
+		}
+		
+		if(source != null)
+		{
+			try
+			{
+				MeshCache.write(source, m_numVertices, m_interleaved, indices);
+			}
+			catch(IOException e)
+			{
+				// The model still loaded; it will simply be parsed again next time.
+				System.err.println("Could not write mesh cache for " + filename + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Builds {@link Vertex3D} objects for every vertex on first use. The render path uses the float buffers instead.
+	 */
 	public Vertex3D[] getVertices()
 	{
+		if(m_vertices == null)
+		{
+			m_vertices = new Vertex3D[m_numVertices];
+			for(int i = 0; i < m_vertices.length; i++)
+			{
+				m_vertices[i] = new Vertex3D();
+				int base = i * Mesh.FLOATS_PER_VERTEX;
+				m_vertices[i].setLocation(m_interleaved.get(base), m_interleaved.get(base + 1), m_interleaved.get(base + 2));
+				m_vertices[i].setST(m_interleaved.get(base + 3), m_interleaved.get(base + 4));
+				m_vertices[i].setNormal(m_interleaved.get(base + 5), m_interleaved.get(base + 6), m_interleaved.get(base + 7));
+			}
+		}
 		return m_vertices;
 	}
 	
@@ -44,4 +147,82 @@ public class ImportedModel
 	{
 		return m_numVertices;
 	}
+	
+	/**
+	 * Returns the interleaved vertices (position, texture coordinates, normal) as a view with its own position.
+	 */
+	public FloatBuffer getInterleavedBuffer()
+	{
+		return m_interleaved.duplicate();
+	}
+	
+	public boolean isIndexed()
+	{
+		return m_indexed;
+	}
+	
+	/**
+	 * Returns the number of indices (three per triangle), or {@code 0} if the model is not indexed.
+	 */
+	public int getNumIndices()
+	{
+		return m_numIndices;
+	}
+	
+	/**
+	 * Whether {@link #getIndexBuffer()} holds 16-bit ({@code GL_UNSIGNED_SHORT}) rather than 32-bit
+	 * ({@code GL_UNSIGNED_INT}) indices.
+	 */
+	public boolean hasShortIndices()
+	{
+		return m_numVertices <= MAX_SHORT_INDEXED_VERTICES;
+	}
+	
+	/**
+	 * Returns the indices as a direct buffer ready for {@code glBufferData}: a {@link ShortBuffer} if
+	 * {@link #hasShortIndices()}, otherwise an {@link IntBuffer}. Returns {@code null} if the model is not indexed.
+	 */
+	public Buffer getIndexBuffer()
+	{
+		if(m_indices == null)
+		{
+			return null;
+		}
+		if(!hasShortIndices())
+		{
+			return m_indices.duplicate();
+		}
+		ShortBuffer shorts = ByteBuffer.allocateDirect(m_numIndices * Short.BYTES).order(ByteOrder.nativeOrder()).asShortBuffer();
+		for(int i = 0; i < m_numIndices; i++)
+		{
+			shorts.put(i, (short) m_indices.get(i));
+		}
+		return shorts;
+	}
+	
+	/**
+	 * Returns a copy of the indices, or {@code null} if the model is not indexed.
+	 */
+	public int[] getIndices()
+	{
+		if(m_indices == null)
+		{
+			return null;
+		}
+		int[] indices = new int[m_numIndices];
+		IntBuffer view = m_indices.duplicate();
+		view.rewind();
+		view.get(indices);
+		return indices;
+	}
+	
+	public boolean isLoadedFromCache()
+	{
+		return m_loadedFromCache;
+	}
+	
+	public long getLoadTimeNanos()
+	{
+		return m_loadTimeNanos;
+	}
 }
@@ -0,0 +1,198 @@
+package project3;
+
+import com.jogamp.opengl.GL4;
+import com.jogamp.opengl.GLContext;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * Many copies of one mesh, drawn with a single instanced draw call. The model matrix of every instance lives in an
+ * instance buffer that the vertex shaders read at {@link Mesh#INSTANCE_MATRIX_ATTRIBUTE} ({@code in mat4
+ * instance_matrix}), so no per-object uniforms are uploaded at draw time.
+ * <p>
+ * The instance matrices are relative to the scene node the batch belongs to: the shaders apply them before the node's
+ * model-view and shadow matrices. Ordinary draws do not enable the instance attribute, so the shaders read its current
+ * generic value instead, which {@link #resetInstanceMatrix} sets to the identity. An instanced draw leaves that value
+ * undefined, so {@link #draw} sets it again afterwards.
+ */
+public class InstanceBatch
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int FLOATS_PER_INSTANCE = 16;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private Mesh m_mesh;
+	private int[] m_buffer;
+	private int m_vao;
+	private FloatBuffer m_matrices;
+	private int m_capacity;
+	private int m_count;
+	private boolean m_dirty;
+	// Box around all instances in the node's space, only ever grown; the bounds are rebuilt from it when it changed.
+	private float[] m_box;
+	private float[] m_instanceBox;
+	private BoundingVolume m_bounds;
+	
+	/**
+	 * Creates a batch of up to {@code capacity} instances of {@code mesh}, all with the identity matrix.
+	 */
+	public InstanceBatch(Mesh mesh, int capacity)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_mesh = mesh;
+		m_capacity = capacity;
+		m_count = capacity;
+		m_matrices = ByteBuffer.allocateDirect(capacity * FLOATS_PER_INSTANCE * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		for(int instance = 0; instance < capacity; instance++)
+		{
+			for(int column = 0; column < 4; column++)
+			{
+				m_matrices.put(instance * FLOATS_PER_INSTANCE + column * 5, 1.0f);
+			}
+		}
+		
+		m_buffer = new int[1];
+		gl.glGenBuffers(1, m_buffer, 0);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, m_buffer[0]);
+		gl.glBufferData(GL_ARRAY_BUFFER, (long) capacity * FLOATS_PER_INSTANCE * Float.BYTES, null, GL_DYNAMIC_DRAW);
+		RenderStats.get().allocate(RenderStats.Resource.BUFFER, 1, (long) capacity * FLOATS_PER_INSTANCE * Float.BYTES);
+		m_vao = mesh.createInstancedVertexArray(m_buffer[0]);
+		m_dirty = true;
+		
+		// Every instance starts out at the identity.
+		m_bounds = mesh.getBounds();
+		m_box = new float[6];
+		m_instanceBox = new float[6];
+		System.arraycopy(m_bounds.getMin(), 0, m_box, 0, 3);
+		System.arraycopy(m_bounds.getMax(), 0, m_box, 3, 3);
+	}
+	
+	/**
+	 * Sets the current value of the instance matrix attribute to the identity, for draws that are not instanced. The
+	 * value is context state: it is needed after the context is created, and again after every draw that read the
+	 * attribute from an array, which leaves it undefined.
+	 */
+	public static void resetInstanceMatrix()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		for(int column = 0; column < 4; column++)
+		{
+			gl.glVertexAttrib4f(Mesh.INSTANCE_MATRIX_ATTRIBUTE + column, (column == 0) ? 1.0f : 0.0f, (column == 1) ? 1.0f : 0.0f,
+					(column == 2) ? 1.0f : 0.0f, (column == 3) ? 1.0f : 0.0f);
+		}
+	}
+	
+	/**
+	 * Sets the model matrix of one instance, relative to the batch's scene node. Changes are uploaded at the next draw.
+	 */
+	public void setMatrix(int instance, Mat4 matrix)
+	{
+		// Column-major, as glUniformMatrix4fv takes it; the shaders read each column as one vec4.
+		m_matrices.put(instance * FLOATS_PER_INSTANCE, matrix.getValues());
+		m_dirty = true;
+		
+		m_mesh.getBounds().transformBox(matrix, m_instanceBox);
+		for(int axis = 0; axis < 3; axis++)
+		{
+			if(m_instanceBox[axis] < m_box[axis] || m_instanceBox[axis + 3] > m_box[axis + 3])
+			{
+				m_box[axis] = Math.min(m_box[axis], m_instanceBox[axis]);
+				m_box[axis + 3] = Math.max(m_box[axis + 3], m_instanceBox[axis + 3]);
+				m_bounds = null;
+			}
+		}
+	}
+	
+	/**
+	 * Sets how many instances, from the first, are drawn.
+	 */
+	public void setCount(int count)
+	{
+		m_count = Math.min(Math.max(count, 0), m_capacity);
+	}
+	
+	public int getCount()
+	{
+		return m_count;
+	}
+	
+	public int getCapacity()
+	{
+		return m_capacity;
+	}
+	
+	/**
+	 * Returns bounds that enclose every instance, in the space of the batch's scene node.
+	 */
+	public BoundingVolume getBounds()
+	{
+		if(m_bounds == null)
+		{
+			m_bounds = BoundingVolume.fromBox(m_box);
+		}
+		return m_bounds;
+	}
+	
+	public Mesh getMesh()
+	{
+		return m_mesh;
+	}
+	
+	/**
+	 * Returns the name of the batch's vertex array object, which identifies it in render queue sort keys.
+	 */
+	public int getVertexArray()
+	{
+		return m_vao;
+	}
+	
+	/**
+	 * Uploads the instance matrices if they changed, and draws all instances with {@code program}, which must be in use.
+	 * Afterwards the instance matrix attribute is the identity again, for the ordinary draws that follow.
+	 */
+	public void draw(ShaderProgram program)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		m_mesh.setDequantizationUniforms(program);
+		gl.glBindVertexArray(m_vao);
+		RenderStats.get().countStateChange();
+		drawBound();
+	}
+	
+	/**
+	 * Like {@link #draw}, but through the batch's vertex array, which must be bound, with the mesh's dequantization
+	 * uniforms already set.
+	 */
+	public void drawBound()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		if(m_dirty)
+		{
+			m_matrices.rewind();
+			gl.glBindBuffer(GL_ARRAY_BUFFER, m_buffer[0]);
+			gl.glBufferSubData(GL_ARRAY_BUFFER, 0, (long) m_capacity * FLOATS_PER_INSTANCE * Float.BYTES, m_matrices);
+			RenderStats.get().countUpload(RenderStats.Resource.BUFFER, (long) m_capacity * FLOATS_PER_INSTANCE * Float.BYTES);
+			m_dirty = false;
+		}
+		m_mesh.drawBoundInstanced(m_count);
+		resetInstanceMatrix();
+	}
+	
+	public void dispose()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		int[] vao = {m_vao};
+		gl.glDeleteVertexArrays(1, vao, 0);
+		gl.glDeleteBuffers(1, m_buffer, 0);
+		RenderStats.get().free(RenderStats.Resource.BUFFER, 1, (long) m_capacity * FLOATS_PER_INSTANCE * Float.BYTES);
+	}
+}
@@ -0,0 +1,78 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive ints, used in place of {@code ArrayList<Integer>} so that loading large meshes does not
+ * box every index.
+ */
+final class IntList
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private int[] m_values;
+	private int m_size;
+	
+	IntList()
+	{
+		this(1024);
+	}
+	
+	IntList(int initialCapacity)
+	{
+		m_values = new int[Math.max(initialCapacity, 16)];
+	}
+	
+	void add(int value)
+	{
+		if(m_size == m_values.length)
+		{
+			m_values = Arrays.copyOf(m_values, m_size << 1);
+		}
+		m_values[m_size++] = value;
+	}
+	
+	void addAll(IntList other)
+	{
+		ensureCapacity(m_size + other.m_size);
+		System.arraycopy(other.m_values, 0, m_values, m_size, other.m_size);
+		m_size += other.m_size;
+	}
+	
+	void ensureCapacity(int capacity)
+	{
+		if(capacity > m_values.length)
+		{
+			m_values = Arrays.copyOf(m_values, Math.max(capacity, m_values.length << 1));
+		}
+	}
+	
+	void clear()
+	{
+		m_size = 0;
+	}
+	
+	int get(int index)
+	{
+		return m_values[index];
+	}
+	
+	int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Returns the backing array; only the first {@link #size()} entries are meaningful.
+	 */
+	int[] array()
+	{
+		return m_values;
+	}
+	
+	int[] toArray()
+	{
+		return Arrays.copyOf(m_values, m_size);
+	}
+}
@@ -0,0 +1,128 @@
+package project3;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with logarithmic buckets, in the manner of HdrHistogram: every power-of-two range of
+ * nanoseconds is split into {@link #SUB_BUCKETS} equal buckets, so any value is counted to within about 3% however small
+ * or large it is, from a nanosecond up to about 18 minutes, in a fixed {@value #BUCKET_COUNT} counters. Unlike the
+ * window of {@link FrameTimeStats}, it keeps every sample since it was created, so its high percentiles show the rare
+ * spikes of a long run.
+ * <p>
+ * One thread records; any thread may read.
+ */
+public final class LatencyHistogram
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values from 2^MAX_EXPONENT nanoseconds on go into the last bucket.
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	private static final double[] REPORTED_PERCENTILES = {50.0, 90.0, 99.0, 99.9, 99.99};
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private AtomicLongArray m_counts;
+	private volatile long m_count;
+	private volatile long m_max;
+	
+	public LatencyHistogram()
+	{
+		m_counts = new AtomicLongArray(BUCKET_COUNT);
+	}
+	
+	public void record(long nanos)
+	{
+		int bucket = getBucket(Math.max(nanos, 0));
+		// Only one thread records, so a plain increment is enough; the ordered write publishes it to readers.
+		m_counts.lazySet(bucket, m_counts.get(bucket) + 1);
+		m_max = Math.max(m_max, nanos);
+		m_count++;
+	}
+	
+	public long getCount()
+	{
+		return m_count;
+	}
+	
+	public long getMaxNanos()
+	{
+		return m_max;
+	}
+	
+	/**
+	 * Returns the value that {@code percentile} percent of the samples do not exceed, as the highest value of its bucket
+	 * (but no more than the largest sample), or 0 if there are no samples.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long count = m_count;
+		if(count == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max((long) Math.ceil(percentile / 100.0 * count), 1);
+		long seen = 0;
+		for(int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+		{
+			seen += m_counts.get(bucket);
+			if(seen >= rank)
+			{
+				return Math.min(getHighestValue(bucket), m_max);
+			}
+		}
+		return m_max;
+	}
+	
+	/**
+	 * Prints the count, the usual latency percentiles and the maximum, in milliseconds.
+	 */
+	public void print(PrintStream out, String name)
+	{
+		out.printf("%s: %d samples", name, getCount());
+		for(double percentile : REPORTED_PERCENTILES)
+		{
+			out.printf(", p%s %.3f ms", (percentile == Math.rint(percentile)) ? String.valueOf((int) percentile) : String.valueOf(percentile),
+					getValueAtPercentile(percentile) / 1e6);
+		}
+		out.printf(", max %.3f ms%n", getMaxNanos() / 1e6);
+	}
+	
+	/**
+	 * Returns the bucket of a non-negative value: values below {@link #SUB_BUCKETS} have one each, and every power of two
+	 * above is split into {@link #SUB_BUCKETS} buckets by the bits below its highest one.
+	 */
+	static int getBucket(long nanos)
+	{
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if(exponent < SUB_BUCKET_BITS)
+		{
+			return (int) nanos;
+		}
+		if(exponent >= MAX_EXPONENT)
+		{
+			return BUCKET_COUNT - 1;
+		}
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((nanos >> shift) - SUB_BUCKETS);
+	}
+	
+	/**
+	 * Returns the highest value that falls into {@code bucket}.
+	 */
+	static long getHighestValue(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
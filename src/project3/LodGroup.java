@@ -0,0 +1,178 @@
+package project3;
+
+import graphicslib3D.shape.Sphere;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Levels of detail of one object: the same shape as several meshes, from the full mesh (level 0) to the coarsest, and
+ * the projected sizes at which each is used.
+ * <p>
+ * A level is chosen from the diameter of the object's bounding sphere on screen, in pixels. Near a threshold, the
+ * level only changes once the size is past it by a margin (hysteresis), so an object hovering at the boundary does not
+ * switch back and forth every frame. Depth-only passes can use coarser levels than the lit pass, since shadows hide the
+ * difference.
+ * <p>
+ * A group holds no per-object state, so several scene nodes can share one; each node remembers its own current level.
+ */
+public class LodGroup
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private Mesh[] m_levels;
+	private float[] m_minScreenSizes;
+	private float m_hysteresis;
+	private int m_shadowBias;
+	
+	/**
+	 * @param levels         the meshes, from the finest to the coarsest
+	 * @param minScreenSizes for every level but the last, the smallest projected diameter in pixels at which it is used;
+	 *                       decreasing
+	 * @param hysteresis     how far past a threshold, as a fraction of it, the size must go before the level changes
+	 */
+	public LodGroup(Mesh[] levels, float[] minScreenSizes, float hysteresis)
+	{
+		if(minScreenSizes.length != levels.length - 1)
+		{
+			throw new IllegalArgumentException("Expected " + (levels.length - 1) + " screen sizes for " + levels.length + " levels");
+		}
+		m_levels = levels;
+		m_minScreenSizes = minScreenSizes;
+		m_hysteresis = hysteresis;
+	}
+	
+	/**
+	 * Creates a level per sphere precision (slices and stacks), from the finest to the coarsest.
+	 */
+	public static LodGroup fromSpheres(int[] precisions, float[] minScreenSizes, float hysteresis, VertexFormat format)
+	{
+		Mesh[] levels = new Mesh[precisions.length];
+		for(int i = 0; i < precisions.length; i++)
+		{
+			levels[i] = Mesh.fromSphere(new Sphere(precisions[i]), format);
+		}
+		return new LodGroup(levels, minScreenSizes, hysteresis);
+	}
+	
+	/**
+	 * Creates levels of an indexed model by simplifying it with {@link MeshSimplifier}.
+	 *
+	 * @param triangleRatios the fraction of the model's triangles each level keeps, starting with 1 for the full model
+	 */
+	public static LodGroup fromModel(ImportedModel model, float[] triangleRatios, float[] minScreenSizes, float hysteresis, VertexFormat format)
+	{
+		if(!model.isIndexed())
+		{
+			throw new IllegalArgumentException("Levels of detail need an indexed model");
+		}
+		int vertexCount = model.getNumVertices();
+		float[] vertices = new float[vertexCount * Mesh.FLOATS_PER_VERTEX];
+		model.getInterleavedBuffer().get(vertices);
+		int[] indices = model.getIndices();
+		
+		// The levels are simplified independently, on all cores; only the uploads need the GL thread.
+		int[][] simplified = new int[triangleRatios.length][];
+		IntStream.range(1, triangleRatios.length).parallel().forEach(i ->
+		{
+			int targetIndexCount = (int) (indices.length / 3 * triangleRatios[i]) * 3;
+			simplified[i] = MeshSimplifier.simplify(vertices, vertexCount, Mesh.FLOATS_PER_VERTEX, indices, targetIndexCount);
+		});
+		
+		Mesh[] levels = new Mesh[triangleRatios.length];
+		levels[0] = Mesh.fromModel(model, format);
+		for(int i = 1; i < triangleRatios.length; i++)
+		{
+			levels[i] = compactMesh(vertices, vertexCount, simplified[i], format);
+		}
+		return new LodGroup(levels, minScreenSizes, hysteresis);
+	}
+	
+	/**
+	 * Returns the level to use for an object whose bounding sphere covers {@code screenSize} pixels across, given the
+	 * level it used last.
+	 */
+	public int select(float screenSize, int currentLevel)
+	{
+		int level = Math.min(Math.max(currentLevel, 0), m_levels.length - 1);
+		while(level > 0 && screenSize > m_minScreenSizes[level - 1] * (1.0f + m_hysteresis))
+		{
+			level--;
+		}
+		while(level < m_levels.length - 1 && screenSize < m_minScreenSizes[level] * (1.0f - m_hysteresis))
+		{
+			level++;
+		}
+		return level;
+	}
+	
+	/**
+	 * Returns the level depth-only passes draw instead of {@code level}.
+	 */
+	public int getShadowLevel(int level)
+	{
+		return Math.min(level + m_shadowBias, m_levels.length - 1);
+	}
+	
+	/**
+	 * Sets how many levels coarser than the lit pass depth-only passes draw.
+	 */
+	public void setShadowBias(int shadowBias)
+	{
+		m_shadowBias = Math.max(shadowBias, 0);
+	}
+	
+	public int getShadowBias()
+	{
+		return m_shadowBias;
+	}
+	
+	public Mesh getLevel(int level)
+	{
+		return m_levels[level];
+	}
+	
+	public int getLevelCount()
+	{
+		return m_levels.length;
+	}
+	
+	/**
+	 * Returns the bounds of the full mesh, which contain every level.
+	 */
+	public BoundingVolume getBounds()
+	{
+		return m_levels[0].getBounds();
+	}
+	
+	public void dispose()
+	{
+		for(Mesh level : m_levels)
+		{
+			level.dispose();
+		}
+	}
+	
+	/**
+	 * Uploads the vertices {@code indices} uses, with the triangles in vertex cache order and the vertices in the order
+	 * they are first used.
+	 */
+	private static Mesh compactMesh(float[] vertices, int vertexCount, int[] indices, VertexFormat format)
+	{
+		int[] ordered = VertexCacheOptimizer.optimizeTriangleOrder(indices, vertexCount);
+		int[] remap = VertexCacheOptimizer.fetchOrderRemap(ordered, vertexCount);
+		int usedCount = 0;
+		for(int i = 0; i < ordered.length; i++)
+		{
+			ordered[i] = remap[ordered[i]];
+			usedCount = Math.max(usedCount, ordered[i] + 1);
+		}
+		float[] remapped = VertexCacheOptimizer.remapAttribute(vertices, Mesh.FLOATS_PER_VERTEX, remap);
+		FloatBuffer buffer = ByteBuffer.allocateDirect(usedCount * Mesh.FLOATS_PER_VERTEX * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		buffer.put(remapped, 0, usedCount * Mesh.FLOATS_PER_VERTEX).flip();
+		return Mesh.fromInterleaved(buffer, usedCount, ordered, format);
+	}
+}
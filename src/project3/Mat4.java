@@ -0,0 +1,339 @@
+package project3;
+
+/**
+ * A mutable 4x4 float matrix, stored column-major as {@code glUniformMatrix4fv} takes it.
+ * <p>
+ * Every operation writes into an existing matrix and returns it, so the render loop can keep its matrices in fields and
+ * never allocate. Transforming operations ({@link #translate}, {@link #rotateX} and so on) post-multiply like
+ * graphicslib3D's {@code Matrix3D}: {@code m.translate(...).rotateY(...)} rotates an object about its own origin and then
+ * moves it. The destination of {@link #multiply(Mat4, Mat4)}, {@link #invertAffine} and {@link #normalMatrix} may be one
+ * of the arguments.
+ */
+public final class Mat4
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	// Element (row, column) is at column * 4 + row.
+	private float[] m_values;
+	
+	/**
+	 * Creates an identity matrix.
+	 */
+	public Mat4()
+	{
+		m_values = new float[16];
+		identity();
+	}
+	
+	public Mat4 identity()
+	{
+		float[] m = m_values;
+		for(int i = 0; i < 16; i++)
+		{
+			m[i] = (i % 5 == 0) ? 1.0f : 0.0f;
+		}
+		return this;
+	}
+	
+	public Mat4 set(Mat4 other)
+	{
+		System.arraycopy(other.m_values, 0, m_values, 0, 16);
+		return this;
+	}
+	
+	public Mat4 set(int row, int column, float value)
+	{
+		m_values[column * 4 + row] = value;
+		return this;
+	}
+	
+	public float get(int row, int column)
+	{
+		return m_values[column * 4 + row];
+	}
+	
+	/**
+	 * Returns the elements in column-major order. The array is the matrix's own storage, to pass to GL without copying;
+	 * it must not be modified.
+	 */
+	public float[] getValues()
+	{
+		return m_values;
+	}
+	
+	/**
+	 * Sets this matrix to {@code this} x {@code right}.
+	 */
+	public Mat4 multiply(Mat4 right)
+	{
+		return multiply(this, right);
+	}
+	
+	/**
+	 * Sets this matrix to {@code left} x {@code right}; either may be this matrix.
+	 */
+	public Mat4 multiply(Mat4 left, Mat4 right)
+	{
+		float[] a = left.m_values;
+		float[] b = right.m_values;
+		float a00 = a[0], a10 = a[1], a20 = a[2], a30 = a[3];
+		float a01 = a[4], a11 = a[5], a21 = a[6], a31 = a[7];
+		float a02 = a[8], a12 = a[9], a22 = a[10], a32 = a[11];
+		float a03 = a[12], a13 = a[13], a23 = a[14], a33 = a[15];
+		float[] m = m_values;
+		// Each column of the product is left times the same column of right; b's column is read before it is written.
+		for(int column = 0; column < 16; column += 4)
+		{
+			float b0 = b[column];
+			float b1 = b[column + 1];
+			float b2 = b[column + 2];
+			float b3 = b[column + 3];
+			m[column] = a00 * b0 + a01 * b1 + a02 * b2 + a03 * b3;
+			m[column + 1] = a10 * b0 + a11 * b1 + a12 * b2 + a13 * b3;
+			m[column + 2] = a20 * b0 + a21 * b1 + a22 * b2 + a23 * b3;
+			m[column + 3] = a30 * b0 + a31 * b1 + a32 * b2 + a33 * b3;
+		}
+		return this;
+	}
+	
+	/**
+	 * Post-multiplies by a translation.
+	 */
+	public Mat4 translate(float x, float y, float z)
+	{
+		float[] m = m_values;
+		for(int row = 0; row < 4; row++)
+		{
+			m[12 + row] += m[row] * x + m[4 + row] * y + m[8 + row] * z;
+		}
+		return this;
+	}
+	
+	/**
+	 * Post-multiplies by a scale.
+	 */
+	public Mat4 scale(float x, float y, float z)
+	{
+		float[] m = m_values;
+		for(int row = 0; row < 4; row++)
+		{
+			m[row] *= x;
+			m[4 + row] *= y;
+			m[8 + row] *= z;
+		}
+		return this;
+	}
+	
+	/**
+	 * Post-multiplies by a rotation of {@code degrees} about the x axis.
+	 */
+	public Mat4 rotateX(float degrees)
+	{
+		return rotateColumns(4, 8, degrees);
+	}
+	
+	/**
+	 * Post-multiplies by a rotation of {@code degrees} about the y axis.
+	 */
+	public Mat4 rotateY(float degrees)
+	{
+		return rotateColumns(8, 0, degrees);
+	}
+	
+	/**
+	 * Post-multiplies by a rotation of {@code degrees} about the z axis.
+	 */
+	public Mat4 rotateZ(float degrees)
+	{
+		return rotateColumns(0, 4, degrees);
+	}
+	
+	/**
+	 * Post-multiplies by a rotation of {@code degrees} about the axis (x, y, z), which need not be normalized.
+	 */
+	public Mat4 rotate(float degrees, float x, float y, float z)
+	{
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		x /= length;
+		y /= length;
+		z /= length;
+		double radians = Math.toRadians(degrees);
+		float c = (float) Math.cos(radians);
+		float s = (float) Math.sin(radians);
+		float t = 1.0f - c;
+		// The rotation's columns, by Rodrigues' formula.
+		float r00 = t * x * x + c, r10 = t * x * y + s * z, r20 = t * x * z - s * y;
+		float r01 = t * x * y - s * z, r11 = t * y * y + c, r21 = t * y * z + s * x;
+		float r02 = t * x * z + s * y, r12 = t * y * z - s * x, r22 = t * z * z + c;
+		float[] m = m_values;
+		for(int row = 0; row < 4; row++)
+		{
+			float m0 = m[row];
+			float m1 = m[4 + row];
+			float m2 = m[8 + row];
+			m[row] = m0 * r00 + m1 * r10 + m2 * r20;
+			m[4 + row] = m0 * r01 + m1 * r11 + m2 * r21;
+			m[8 + row] = m0 * r02 + m1 * r12 + m2 * r22;
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets this matrix to the inverse of {@code source}, which must be affine (bottom row 0, 0, 0, 1), as model, view
+	 * and model-view matrices are. Cheaper and more accurate than a general inverse.
+	 */
+	public Mat4 invertAffine(Mat4 source)
+	{
+		float[] s = source.m_values;
+		float a = s[0], b = s[4], c = s[8], tx = s[12];
+		float d = s[1], e = s[5], f = s[9], ty = s[13];
+		float g = s[2], h = s[6], i = s[10], tz = s[14];
+		
+		// The inverse of the 3x3 part is its adjugate over its determinant.
+		float c00 = e * i - f * h, c01 = c * h - b * i, c02 = b * f - c * e;
+		float c10 = f * g - d * i, c11 = a * i - c * g, c12 = c * d - a * f;
+		float c20 = d * h - e * g, c21 = b * g - a * h, c22 = a * e - b * d;
+		float inverseDeterminant = 1.0f / (a * c00 + b * c10 + c * c20);
+		
+		float[] m = m_values;
+		m[0] = c00 * inverseDeterminant;
+		m[4] = c01 * inverseDeterminant;
+		m[8] = c02 * inverseDeterminant;
+		m[1] = c10 * inverseDeterminant;
+		m[5] = c11 * inverseDeterminant;
+		m[9] = c12 * inverseDeterminant;
+		m[2] = c20 * inverseDeterminant;
+		m[6] = c21 * inverseDeterminant;
+		m[10] = c22 * inverseDeterminant;
+		// The translation undoes the original one in the inverted basis.
+		m[12] = -(m[0] * tx + m[4] * ty + m[8] * tz);
+		m[13] = -(m[1] * tx + m[5] * ty + m[9] * tz);
+		m[14] = -(m[2] * tx + m[6] * ty + m[10] * tz);
+		m[3] = 0.0f;
+		m[7] = 0.0f;
+		m[11] = 0.0f;
+		m[15] = 1.0f;
+		return this;
+	}
+	
+	/**
+	 * Sets this matrix to the matrix that transforms normals for the affine {@code modelView}: the inverse transpose of
+	 * its 3x3 part, with no translation. It transforms direction vectors the same way as the full inverse transpose.
+	 */
+	public Mat4 normalMatrix(Mat4 modelView)
+	{
+		float[] s = modelView.m_values;
+		float a = s[0], b = s[4], c = s[8];
+		float d = s[1], e = s[5], f = s[9];
+		float g = s[2], h = s[6], i = s[10];
+		
+		// The inverse transpose is the cofactor matrix over the determinant.
+		float c00 = e * i - f * h, c01 = f * g - d * i, c02 = d * h - e * g;
+		float c10 = c * h - b * i, c11 = a * i - c * g, c12 = b * g - a * h;
+		float c20 = b * f - c * e, c21 = c * d - a * f, c22 = a * e - b * d;
+		float inverseDeterminant = 1.0f / (a * c00 + b * c01 + c * c02);
+		
+		float[] m = m_values;
+		m[0] = c00 * inverseDeterminant;
+		m[4] = c01 * inverseDeterminant;
+		m[8] = c02 * inverseDeterminant;
+		m[1] = c10 * inverseDeterminant;
+		m[5] = c11 * inverseDeterminant;
+		m[9] = c12 * inverseDeterminant;
+		m[2] = c20 * inverseDeterminant;
+		m[6] = c21 * inverseDeterminant;
+		m[10] = c22 * inverseDeterminant;
+		m[3] = 0.0f;
+		m[7] = 0.0f;
+		m[11] = 0.0f;
+		m[12] = 0.0f;
+		m[13] = 0.0f;
+		m[14] = 0.0f;
+		m[15] = 1.0f;
+		return this;
+	}
+	
+	/**
+	 * Sets this matrix to a perspective projection (like {@code gluPerspective}).
+	 *
+	 * @param fovy the vertical field of view, in degrees
+	 */
+	public Mat4 perspective(float fovy, float aspect, float near, float far)
+	{
+		float q = 1.0f / (float) Math.tan(Math.toRadians(0.5f * fovy));
+		identity();
+		set(0, 0, q / aspect);
+		set(1, 1, q);
+		set(2, 2, (near + far) / (near - far));
+		set(3, 2, -1.0f);
+		set(2, 3, 2.0f * near * far / (near - far));
+		set(3, 3, 0.0f);
+		return this;
+	}
+	
+	/**
+	 * Sets this matrix to a view matrix for a camera at the eye position looking at the target, with the given up
+	 * direction (like {@code gluLookAt}).
+	 */
+	public Mat4 lookAt(float eyeX, float eyeY, float eyeZ, float targetX, float targetY, float targetZ, float upX, float upY, float upZ)
+	{
+		// Forward, then side = forward x up, then the true up = side x forward.
+		float fx = targetX - eyeX;
+		float fy = targetY - eyeY;
+		float fz = targetZ - eyeZ;
+		float length = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+		fx /= length;
+		fy /= length;
+		fz /= length;
+		float sx = fy * upZ - fz * upY;
+		float sy = fz * upX - fx * upZ;
+		float sz = fx * upY - fy * upX;
+		length = (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+		sx /= length;
+		sy /= length;
+		sz /= length;
+		float ux = sy * fz - sz * fy;
+		float uy = sz * fx - sx * fz;
+		float uz = sx * fy - sy * fx;
+		
+		float[] m = m_values;
+		m[0] = sx;
+		m[4] = sy;
+		m[8] = sz;
+		m[12] = -(sx * eyeX + sy * eyeY + sz * eyeZ);
+		m[1] = ux;
+		m[5] = uy;
+		m[9] = uz;
+		m[13] = -(ux * eyeX + uy * eyeY + uz * eyeZ);
+		m[2] = -fx;
+		m[6] = -fy;
+		m[10] = -fz;
+		m[14] = fx * eyeX + fy * eyeY + fz * eyeZ;
+		m[3] = 0.0f;
+		m[7] = 0.0f;
+		m[11] = 0.0f;
+		m[15] = 1.0f;
+		return this;
+	}
+	
+	/**
+	 * Post-multiplies by a rotation in the plane of two basis axes: the columns at {@code first} and {@code second} turn
+	 * towards each other by {@code degrees}.
+	 */
+	private Mat4 rotateColumns(int first, int second, float degrees)
+	{
+		double radians = Math.toRadians(degrees);
+		float c = (float) Math.cos(radians);
+		float s = (float) Math.sin(radians);
+		float[] m = m_values;
+		for(int row = 0; row < 4; row++)
+		{
+			float a = m[first + row];
+			float b = m[second + row];
+			m[first + row] = a * c + b * s;
+			m[second + row] = b * c - a * s;
+		}
+		return this;
+	}
+}
@@ -0,0 +1,384 @@
+package project3;
+
+import com.jogamp.opengl.GL4;
+import com.jogamp.opengl.GLContext;
+import graphicslib3D.Vertex3D;
+import graphicslib3D.shape.Sphere;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * A mesh uploaded to the GPU: a single vertex buffer holding interleaved position, texture coordinate and normal
+ * values in a {@link VertexFormat}, an optional index buffer, and a vertex array object that records the attribute
+ * layout once at setup. Drawing a mesh is then one {@code glBindVertexArray} and one draw call.
+ */
+public class Mesh
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	public static final int POSITION_ATTRIBUTE = 0;
+	public static final int TEX_COORD_ATTRIBUTE = 1;
+	public static final int NORMAL_ATTRIBUTE = 2;
+	// A mat4 attribute takes four consecutive locations, one per column: 3 to 6.
+	public static final int INSTANCE_MATRIX_ATTRIBUTE = 3;
+	// Position (3), texture coordinates (2) and normal (3).
+	public static final int FLOATS_PER_VERTEX = 8;
+	private static final int MAX_SHORT_INDEXED_VERTICES = 0x10000;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private int[] m_vao;
+	private int[] m_buffers;
+	private int m_vertexCount;
+	private int m_indexCount;
+	private int m_indexType;
+	private VertexFormat m_format;
+	private VertexFormat.Encoded m_encoded;
+	private BoundingVolume m_bounds;
+	// The size of the vertex and index buffers together.
+	private long m_bufferBytes;
+	
+	/**
+	 * Uploads the given interleaved vertices in {@code format}, and indices if {@code indices} is not {@code null}.
+	 */
+	private Mesh(FloatBuffer vertices, int vertexCount, Buffer indices, int indexCount, int indexType, VertexFormat format)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_vertexCount = vertexCount;
+		m_indexCount = indexCount;
+		m_indexType = indexType;
+		m_format = format;
+		m_bounds = BoundingVolume.fromVertices(vertices, vertexCount, FLOATS_PER_VERTEX);
+		m_vao = new int[1];
+		m_buffers = new int[(indices == null) ? 1 : 2];
+		
+		gl.glGenVertexArrays(1, m_vao, 0);
+		gl.glBindVertexArray(m_vao[0]);
+		gl.glGenBuffers(m_buffers.length, m_buffers, 0);
+		
+		// Bind the interleaved vertex buffer and record its layout in the vertex array.
+		gl.glBindBuffer(GL_ARRAY_BUFFER, m_buffers[0]);
+		if(format.isQuantized())
+		{
+			m_encoded = format.encode(vertices, vertexCount);
+			m_bufferBytes = m_encoded.vertices.remaining();
+			gl.glBufferData(GL_ARRAY_BUFFER, m_encoded.vertices.remaining(), m_encoded.vertices, GL_STATIC_DRAW);
+			m_encoded.vertices = null;
+		}
+		else
+		{
+			m_encoded = new VertexFormat.Encoded();
+			m_bufferBytes = (long) vertices.remaining() * Float.BYTES;
+			gl.glBufferData(GL_ARRAY_BUFFER, (long) vertices.remaining() * Float.BYTES, vertices, GL_STATIC_DRAW);
+		}
+		format.setupAttributes(gl);
+		
+		// The element buffer binding is part of the vertex array state as well.
+		if(indices != null)
+		{
+			int indexSize = (indexType == GL_UNSIGNED_SHORT) ? Short.BYTES : Integer.BYTES;
+			gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, m_buffers[1]);
+			gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, (long) indexCount * indexSize, indices, GL_STATIC_DRAW);
+			m_bufferBytes += (long) indexCount * indexSize;
+		}
+		
+		gl.glBindVertexArray(0);
+		RenderStats.get().allocate(RenderStats.Resource.BUFFER, m_buffers.length, m_bufferBytes);
+		RenderStats.get().countUpload(RenderStats.Resource.BUFFER, m_bufferBytes);
+	}
+	
+	/**
+	 * Creates a mesh without GL objects (see {@link #forCulling}).
+	 */
+	private Mesh(BoundingVolume bounds, int vertexArray)
+	{
+		m_vao = new int[] {vertexArray};
+		m_buffers = new int[0];
+		m_format = VertexFormat.FULL;
+		m_encoded = new VertexFormat.Encoded();
+		m_bounds = bounds;
+	}
+	
+	/**
+	 * Uploads an imported model, indexed if the model is.
+	 */
+	public static Mesh fromModel(ImportedModel model, VertexFormat format)
+	{
+		if(!model.isIndexed())
+		{
+			return new Mesh(model.getInterleavedBuffer(), model.getNumVertices(), null, 0, 0, format);
+		}
+		return new Mesh(model.getInterleavedBuffer(), model.getNumVertices(), model.getIndexBuffer(), model.getNumIndices(),
+				model.hasShortIndices() ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT, format);
+	}
+	
+	/**
+	 * Uploads the shared vertices of a sphere together with its index list.
+	 */
+	public static Mesh fromSphere(Sphere sphere, VertexFormat format)
+	{
+		return fromIndexedVertices(sphere.getVertices(), sphere.getIndices(), format);
+	}
+	
+	/**
+	 * Uploads the shared vertices of a pentagonal prism together with its index list.
+	 */
+	public static Mesh fromPentagonalPrism(PentagonalPrism prism, VertexFormat format)
+	{
+		return fromIndexedVertices(prism.getVertices(), prism.getIndices(), format);
+	}
+	
+	private static Mesh fromIndexedVertices(Vertex3D[] vertices, int[] indices, VertexFormat format)
+	{
+		float[] pValues = new float[vertices.length * 3];
+		float[] tValues = new float[vertices.length * 2];
+		float[] nValues = new float[vertices.length * 3];
+		for(int i = 0; i < vertices.length; i++)
+		{
+			pValues[i * 3] = (float) vertices[i].getX();
+			pValues[i * 3 + 1] = (float) vertices[i].getY();
+			pValues[i * 3 + 2] = (float) vertices[i].getZ();
+			tValues[i * 2] = (float) vertices[i].getS();
+			tValues[i * 2 + 1] = (float) vertices[i].getT();
+			nValues[i * 3] = (float) vertices[i].getNormalX();
+			nValues[i * 3 + 1] = (float) vertices[i].getNormalY();
+			nValues[i * 3 + 2] = (float) vertices[i].getNormalZ();
+		}
+		
+		return fromInterleaved(interleave(vertices.length, pValues, tValues, nValues), vertices.length, indices, format);
+	}
+	
+	/**
+	 * Uploads interleaved vertices of {@link #FLOATS_PER_VERTEX} floats each with an index list, using 16-bit indices
+	 * when they suffice.
+	 */
+	public static Mesh fromInterleaved(FloatBuffer vertices, int vertexCount, int[] indices, VertexFormat format)
+	{
+		if(vertexCount <= MAX_SHORT_INDEXED_VERTICES)
+		{
+			ShortBuffer indexBuf = ByteBuffer.allocateDirect(indices.length * Short.BYTES).order(ByteOrder.nativeOrder()).asShortBuffer();
+			for(int index : indices)
+			{
+				indexBuf.put((short) index);
+			}
+			indexBuf.flip();
+			return new Mesh(vertices, vertexCount, indexBuf, indices.length, GL_UNSIGNED_SHORT, format);
+		}
+		IntBuffer indexBuf = ByteBuffer.allocateDirect(indices.length * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		indexBuf.put(indices).flip();
+		return new Mesh(vertices, vertexCount, indexBuf, indices.length, GL_UNSIGNED_INT, format);
+	}
+	
+	/**
+	 * Uploads a triangle list that is not indexed, given as separate position, texture coordinate and normal arrays.
+	 */
+	public static Mesh fromArrays(float[] positions, float[] texCoords, float[] normals, VertexFormat format)
+	{
+		int vertexCount = positions.length / 3;
+		return new Mesh(interleave(vertexCount, positions, texCoords, normals), vertexCount, null, 0, 0, format);
+	}
+	
+	/**
+	 * Returns a mesh that only has {@code bounds} and the vertex array name {@code vertexArray}, without a GL context, for
+	 * code that only culls and sorts meshes, such as {@link RenderLoopAllocationCheck}. It cannot be drawn or disposed.
+	 */
+	static Mesh forCulling(BoundingVolume bounds, int vertexArray)
+	{
+		return new Mesh(bounds, vertexArray);
+	}
+	
+	/**
+	 * Packs separate attribute arrays into one direct buffer of {@link #FLOATS_PER_VERTEX} floats per vertex.
+	 */
+	static FloatBuffer interleave(int vertexCount, float[] positions, float[] texCoords, float[] normals)
+	{
+		float[] interleaved = new float[vertexCount * FLOATS_PER_VERTEX];
+		for(int i = 0; i < vertexCount; i++)
+		{
+			int base = i * FLOATS_PER_VERTEX;
+			interleaved[base] = positions[i * 3];
+			interleaved[base + 1] = positions[i * 3 + 1];
+			interleaved[base + 2] = positions[i * 3 + 2];
+			interleaved[base + 3] = texCoords[i * 2];
+			interleaved[base + 4] = texCoords[i * 2 + 1];
+			interleaved[base + 5] = normals[i * 3];
+			interleaved[base + 6] = normals[i * 3 + 1];
+			interleaved[base + 7] = normals[i * 3 + 2];
+		}
+		FloatBuffer buffer = ByteBuffer.allocateDirect(interleaved.length * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		buffer.put(interleaved).flip();
+		return buffer;
+	}
+	
+	/**
+	 * Sets the dequantization uniforms of {@code program}, which must be in use, binds the mesh's vertex array and draws
+	 * the mesh. Loops over many draws bind and set uniforms only when the mesh changes, and call {@link #drawBound}.
+	 */
+	public void draw(ShaderProgram program)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		setDequantizationUniforms(program);
+		gl.glBindVertexArray(m_vao[0]);
+		RenderStats.get().countStateChange();
+		drawBound();
+	}
+	
+	/**
+	 * Draws the mesh through its vertex array, which must be bound, with the dequantization uniforms already set.
+	 */
+	public void drawBound()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		if(m_indexCount > 0)
+		{
+			gl.glDrawElements(GL_TRIANGLES, m_indexCount, m_indexType, 0);
+		}
+		else
+		{
+			gl.glDrawArrays(GL_TRIANGLES, 0, m_vertexCount);
+		}
+		RenderStats.get().countDraw(getTriangleCount());
+	}
+	
+	/**
+	 * Creates a second vertex array object over this mesh's buffers that also reads a model matrix per instance from
+	 * {@code instanceBuffer}, tightly packed column-major {@code mat4}s at {@link #INSTANCE_MATRIX_ATTRIBUTE}.
+	 */
+	int createInstancedVertexArray(int instanceBuffer)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		int[] vao = new int[1];
+		gl.glGenVertexArrays(1, vao, 0);
+		gl.glBindVertexArray(vao[0]);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, m_buffers[0]);
+		m_format.setupAttributes(gl);
+		if(m_indexCount > 0)
+		{
+			gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, m_buffers[1]);
+		}
+		
+		// One column per location, advancing once per instance instead of once per vertex.
+		gl.glBindBuffer(GL_ARRAY_BUFFER, instanceBuffer);
+		for(int column = 0; column < 4; column++)
+		{
+			int location = INSTANCE_MATRIX_ATTRIBUTE + column;
+			gl.glVertexAttribPointer(location, 4, GL_FLOAT, false, 16 * Float.BYTES, (long) column * 4 * Float.BYTES);
+			gl.glVertexAttribDivisor(location, 1);
+			gl.glEnableVertexAttribArray(location);
+		}
+		
+		gl.glBindVertexArray(0);
+		return vao[0];
+	}
+	
+	/**
+	 * Draws {@code instanceCount} instances of the mesh through a vertex array from {@link #createInstancedVertexArray},
+	 * which must be bound, with the dequantization uniforms already set.
+	 */
+	void drawBoundInstanced(int instanceCount)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		if(m_indexCount > 0)
+		{
+			gl.glDrawElementsInstanced(GL_TRIANGLES, m_indexCount, m_indexType, 0, instanceCount);
+		}
+		else
+		{
+			gl.glDrawArraysInstanced(GL_TRIANGLES, 0, m_vertexCount, instanceCount);
+		}
+		RenderStats.get().countDraw((long) getTriangleCount() * instanceCount);
+	}
+	
+	public void dispose()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		gl.glDeleteVertexArrays(1, m_vao, 0);
+		gl.glDeleteBuffers(m_buffers.length, m_buffers, 0);
+		RenderStats.get().free(RenderStats.Resource.BUFFER, m_buffers.length, m_bufferBytes);
+	}
+	
+	/**
+	 * Returns how many triangles one draw of the mesh draws.
+	 */
+	public int getTriangleCount()
+	{
+		return ((m_indexCount > 0) ? m_indexCount : m_vertexCount) / 3;
+	}
+	
+	/**
+	 * Returns the name of the vertex array object, which identifies the mesh in render queue sort keys.
+	 */
+	public int getVertexArray()
+	{
+		return m_vao[0];
+	}
+	
+	public int getVertexCount()
+	{
+		return m_vertexCount;
+	}
+	
+	public int getIndexCount()
+	{
+		return m_indexCount;
+	}
+	
+	/**
+	 * Returns the bounds of the mesh's vertices, computed when it was uploaded.
+	 */
+	public BoundingVolume getBounds()
+	{
+		return m_bounds;
+	}
+	
+	public VertexFormat getFormat()
+	{
+		return m_format;
+	}
+	
+	/**
+	 * Returns the size of the uploaded vertex buffer.
+	 */
+	public long getVertexBytes()
+	{
+		return (long) m_vertexCount * m_format.getStride();
+	}
+	
+	/**
+	 * Returns how many bytes the vertex buffer saves compared with {@link VertexFormat#FULL}.
+	 */
+	public long getVertexBytesSaved()
+	{
+		return (long) m_vertexCount * (VertexFormat.FULL.getStride() - m_format.getStride());
+	}
+	
+	/**
+	 * Sets the uniforms that decode this mesh's vertex format in {@code program}, which must be in use. Programs that do
+	 * not declare some of them simply ignore them. They are program state, so they stay set until the program draws
+	 * another mesh.
+	 */
+	public void setDequantizationUniforms(ShaderProgram program)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		gl.glUniform3fv(program.getUniformLocation("position_scale"), 1, m_encoded.positionScale, 0);
+		gl.glUniform3fv(program.getUniformLocation("position_offset"), 1, m_encoded.positionOffset, 0);
+		gl.glUniform2fv(program.getUniformLocation("tex_coord_scale"), 1, m_encoded.texCoordScale, 0);
+		gl.glUniform2fv(program.getUniformLocation("tex_coord_offset"), 1, m_encoded.texCoordOffset, 0);
+		gl.glUniform1i(program.getUniformLocation("octahedral_normals"), m_format.hasOctahedralNormals() ? 1 : 0);
+	}
+}
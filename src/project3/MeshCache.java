@@ -0,0 +1,233 @@
+package project3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary cache for imported meshes, stored next to the source model as {@code <model>.mesh}.
+ * <p>
+ * The file is little-endian and laid out as:
+ * <pre>
+ * int    magic ("P3MB")
+ * int    version
+ * long   source size in bytes
+ * long   source last-modified time in milliseconds
+ * int    source path length, followed by the UTF-8 path padded to a multiple of 4 bytes
+ * int    vertex count
+ * int    index count (0 for a mesh that is not indexed)
+ * int    block count
+ * block count x { int semantic, int components, int byte offset }
+ * raw blocks, each starting at its byte offset; the vertex block holds vertex count x components floats and the
+ * optional index block holds index count ints
+ * </pre>
+ * Vertices are stored interleaved in the layout of {@link Mesh#FLOATS_PER_VERTEX} (position, texture coordinates,
+ * normal), so the vertex block can be uploaded to a single vertex buffer as is.
+ * A cache file is only used if the stored path, size and modification time still match the source model, and if it
+ * is indexed exactly when the caller wants an indexed mesh. Reading memory-maps the file and returns buffer views onto
+ * the mapping, which can be passed straight to {@code glBufferData} without creating any per-vertex objects.
+ */
+final class MeshCache
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int VERTICES = 0;
+	private static final int INDICES = 1;
+	private static final int[] COMPONENTS = {Mesh.FLOATS_PER_VERTEX, 1};
+	private static final int MAGIC = 0x424D3350; // "P3MB" read as a little-endian int
+	private static final int VERSION = 4;
+	private static final String EXTENSION = ".mesh";
+	
+	private MeshCache()
+	{
+	}
+	
+	/**
+	 * Returns the cache file used for the given source model.
+	 */
+	static Path getCachePath(Path source)
+	{
+		return source.resolveSibling(source.getFileName() + EXTENSION);
+	}
+	
+	/**
+	 * Maps the cache file of {@code source} and returns its contents, or {@code null} if there is no valid, up-to-date
+	 * cache of the requested kind.
+	 */
+	static Entry read(Path source, boolean indexed) throws IOException
+	{
+		Path cache = getCachePath(source);
+		if(!Files.isRegularFile(cache))
+		{
+			return null;
+		}
+		
+		MappedByteBuffer mapping;
+		try(FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ))
+		{
+			mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer header = mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		try
+		{
+			if(header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != Files.size(source)
+					|| header.getLong() != Files.getLastModifiedTime(source).toMillis())
+			{
+				return null;
+			}
+			byte[] path = new byte[header.getInt()];
+			header.get(path);
+			header.position(align(header.position()));
+			if(!new String(path, StandardCharsets.UTF_8).equals(source.toAbsolutePath().toString()))
+			{
+				return null;
+			}
+			
+			Entry mesh = new Entry();
+			mesh.vertexCount = header.getInt();
+			mesh.indexCount = header.getInt();
+			if((mesh.indexCount > 0) != indexed)
+			{
+				return null;
+			}
+			int blockCount = header.getInt();
+			for(int i = 0; i < blockCount; i++)
+			{
+				int semantic = header.getInt();
+				int components = header.getInt();
+				int offset = header.getInt();
+				if(semantic < 0 || semantic >= COMPONENTS.length || components != COMPONENTS[semantic])
+				{
+					return null;
+				}
+				int elements = (semantic == INDICES) ? mesh.indexCount : mesh.vertexCount * components;
+				ByteBuffer block = mapping.slice(offset, elements * 4).order(ByteOrder.LITTLE_ENDIAN);
+				if(semantic == VERTICES)
+				{
+					mesh.vertices = nativeOrder(block.asFloatBuffer());
+				}
+				else
+				{
+					mesh.indices = nativeOrder(block.asIntBuffer());
+				}
+			}
+			if(mesh.vertices == null || (indexed && mesh.indices == null))
+			{
+				return null;
+			}
+			return mesh;
+		}
+		catch(RuntimeException e)
+		{
+			// A truncated or corrupt cache file is treated as a cache miss.
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes interleaved vertices and optional indices (which may be {@code null} for a mesh that is not indexed) to the
+	 * cache file of {@code source}. The file is written to a temporary name first and then moved into place, so a
+	 * reader never sees a partially written cache.
+	 */
+	static void write(Path source, int vertexCount, FloatBuffer vertices, int[] indices) throws IOException
+	{
+		int indexCount = (indices == null) ? 0 : indices.length;
+		int blockCount = (indices == null) ? 1 : 2;
+		int vertexBytes = vertexCount * COMPONENTS[VERTICES] * Float.BYTES;
+		byte[] path = source.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+		int headerSize = align(28 + path.length) + 12 + blockCount * 12;
+		int size = headerSize + vertexBytes + indexCount * Integer.BYTES;
+		
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(Files.size(source));
+		buffer.putLong(Files.getLastModifiedTime(source).toMillis());
+		buffer.putInt(path.length);
+		buffer.put(path);
+		buffer.position(align(buffer.position()));
+		buffer.putInt(vertexCount);
+		buffer.putInt(indexCount);
+		buffer.putInt(blockCount);
+		buffer.putInt(VERTICES);
+		buffer.putInt(COMPONENTS[VERTICES]);
+		buffer.putInt(headerSize);
+		if(indices != null)
+		{
+			buffer.putInt(INDICES);
+			buffer.putInt(COMPONENTS[INDICES]);
+			buffer.putInt(headerSize + vertexBytes);
+		}
+		buffer.asFloatBuffer().put(vertices.duplicate());
+		buffer.position(buffer.position() + vertexBytes);
+		if(indices != null)
+		{
+			buffer.asIntBuffer().put(indices);
+			buffer.position(buffer.position() + indexCount * Integer.BYTES);
+		}
+		buffer.flip();
+		
+		Path cache = getCachePath(source);
+		Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+		}
+		Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * OpenGL expects vertex data in the platform's byte order. On little-endian machines (all the ones we run on) the
+	 * mapped view is used as is; elsewhere it is copied once into a native-order buffer.
+	 */
+	private static FloatBuffer nativeOrder(FloatBuffer buffer)
+	{
+		if(buffer.order() == ByteOrder.nativeOrder())
+		{
+			return buffer;
+		}
+		FloatBuffer copy = ByteBuffer.allocateDirect(buffer.remaining() * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		copy.put(buffer).flip();
+		return copy;
+	}
+	
+	private static IntBuffer nativeOrder(IntBuffer buffer)
+	{
+		if(buffer.order() == ByteOrder.nativeOrder())
+		{
+			return buffer;
+		}
+		IntBuffer copy = ByteBuffer.allocateDirect(buffer.remaining() * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		copy.put(buffer).flip();
+		return copy;
+	}
+	
+	private static int align(int position)
+	{
+		return (position + 3) & ~3;
+	}
+	
+	/**
+	 * The contents of a cache file. {@link #indices} is {@code null} for a mesh that is not indexed.
+	 */
+	static final class Entry
+	{
+		int vertexCount;
+		int indexCount;
+		FloatBuffer vertices;
+		IntBuffer indices;
+	}
+}
@@ -0,0 +1,556 @@
+package project3;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reduces the triangle count of indexed meshes by quadric error edge collapse (Garland and Heckbert, "Surface
+ * Simplification Using Quadric Error Metrics"), for building coarser levels of detail.
+ * <p>
+ * Every vertex accumulates the planes of the triangles around it, weighted by their areas, as a quadric; the error of
+ * moving it somewhere is the sum of squared distances to those planes. The cheapest edge is collapsed repeatedly, each
+ * time merging one endpoint into the other, until the mesh is small enough. Collapses only ever move a vertex onto an
+ * existing one, so the simplified mesh indexes the original vertices and keeps their texture coordinates and normals.
+ * <p>
+ * Vertices that share a position (copies with different texture coordinates or normals along a seam, or the corners of
+ * flat-shaded faces) are welded into one group and collapse together, so seams do not tear. Each copy takes the
+ * attributes of a copy of the target it shares an edge with, which keeps seams intact; copies without one take those of
+ * the target's copy with the closest attributes. Open borders get extra planes perpendicular to them so that outlines
+ * keep their shape, and collapses that would fold a triangle over are rejected.
+ */
+final class MeshSimplifier
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// Weight of the planes along open borders, relative to the planes of the triangles themselves.
+	private static final double BORDER_WEIGHT = 100.0;
+	// Collapses that turn any remaining triangle's normal by more than about 78 degrees are rejected.
+	private static final double MIN_NORMAL_COSINE = 0.2;
+	private static final int QUADRIC_SIZE = 10;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float[] m_vertices;
+	private int m_floatsPerVertex;
+	private int[] m_triangles;
+	private boolean[] m_removedTriangles;
+	private int m_liveTriangleCount;
+	// Welded position groups: the group of every vertex, the vertices of every group (linked through m_nextInGroup)
+	// and the triangles around every group, which may include removed ones.
+	private int[] m_groups;
+	private int[] m_firstInGroup;
+	private int[] m_nextInGroup;
+	private IntList[] m_groupTriangles;
+	private double[] m_positions;
+	private double[] m_quadrics;
+	private boolean[] m_collapsed;
+	private int[] m_stamps;
+	// Binary min-heap of candidate collapses, invalidated lazily through the group stamps.
+	private double[] m_heapCosts;
+	private int[] m_heapFrom;
+	private int[] m_heapTo;
+	private int[] m_heapFromStamps;
+	private int[] m_heapToStamps;
+	private int m_heapSize;
+	private IntList m_collapseVertices;
+	private IntList m_collapseTargets;
+	
+	private MeshSimplifier(float[] vertices, int vertexCount, int floatsPerVertex, int[] indices)
+	{
+		m_vertices = vertices;
+		m_floatsPerVertex = floatsPerVertex;
+		m_triangles = indices.clone();
+		m_removedTriangles = new boolean[indices.length / 3];
+		m_liveTriangleCount = indices.length / 3;
+		m_heapCosts = new double[64];
+		m_heapFrom = new int[64];
+		m_heapTo = new int[64];
+		m_heapFromStamps = new int[64];
+		m_heapToStamps = new int[64];
+		m_collapseVertices = new IntList(16);
+		m_collapseTargets = new IntList(16);
+		weld(vertexCount);
+		computeQuadrics();
+	}
+	
+	/**
+	 * Returns the indices of a simplified copy of the triangle list {@code indices}, with at most
+	 * {@code targetIndexCount} indices if the mesh can be simplified that far.
+	 *
+	 * @param vertices        interleaved vertices, with the position in the first three of each {@code floatsPerVertex}
+	 * @param vertexCount     the number of vertices
+	 * @param floatsPerVertex the stride of {@code vertices}
+	 */
+	static int[] simplify(float[] vertices, int vertexCount, int floatsPerVertex, int[] indices, int targetIndexCount)
+	{
+		MeshSimplifier simplifier = new MeshSimplifier(vertices, vertexCount, floatsPerVertex, indices);
+		simplifier.collapseUntil(targetIndexCount / 3);
+		return simplifier.getIndices();
+	}
+	
+	private void collapseUntil(int targetTriangleCount)
+	{
+		for(int group = 0; group < m_collapsed.length; group++)
+		{
+			pushCandidates(group);
+		}
+		while(m_liveTriangleCount > targetTriangleCount && m_heapSize > 0)
+		{
+			int from = m_heapFrom[0];
+			int to = m_heapTo[0];
+			boolean current = !m_collapsed[from] && !m_collapsed[to] && m_heapFromStamps[0] == m_stamps[from] && m_heapToStamps[0] == m_stamps[to];
+			popHeap();
+			if(current)
+			{
+				collapse(from, to);
+			}
+		}
+	}
+	
+	private int[] getIndices()
+	{
+		IntList result = new IntList(m_liveTriangleCount * 3);
+		for(int triangle = 0; triangle < m_removedTriangles.length; triangle++)
+		{
+			if(!m_removedTriangles[triangle])
+			{
+				result.add(m_triangles[triangle * 3]);
+				result.add(m_triangles[triangle * 3 + 1]);
+				result.add(m_triangles[triangle * 3 + 2]);
+			}
+		}
+		return result.toArray();
+	}
+	
+	/**
+	 * Groups vertices with bitwise identical positions, with an open-addressing hash table over the position bits.
+	 */
+	private void weld(int vertexCount)
+	{
+		m_groups = new int[vertexCount];
+		m_nextInGroup = new int[vertexCount];
+		int tableSize = Integer.highestOneBit(Math.max(vertexCount, 1) * 2) * 2;
+		int[] table = new int[tableSize];
+		Arrays.fill(table, -1);
+		IntList firstInGroup = new IntList(vertexCount);
+		for(int vertex = 0; vertex < vertexCount; vertex++)
+		{
+			int base = vertex * m_floatsPerVertex;
+			int x = Float.floatToIntBits(m_vertices[base]);
+			int y = Float.floatToIntBits(m_vertices[base + 1]);
+			int z = Float.floatToIntBits(m_vertices[base + 2]);
+			int slot = ((x * 73856093) ^ (y * 19349663) ^ (z * 83492791)) & (tableSize - 1);
+			while(true)
+			{
+				int other = table[slot];
+				if(other < 0)
+				{
+					table[slot] = vertex;
+					m_groups[vertex] = firstInGroup.size();
+					m_nextInGroup[vertex] = -1;
+					firstInGroup.add(vertex);
+					break;
+				}
+				int otherBase = other * m_floatsPerVertex;
+				if(Float.floatToIntBits(m_vertices[otherBase]) == x && Float.floatToIntBits(m_vertices[otherBase + 1]) == y
+						&& Float.floatToIntBits(m_vertices[otherBase + 2]) == z)
+				{
+					int group = m_groups[other];
+					m_groups[vertex] = group;
+					m_nextInGroup[vertex] = firstInGroup.get(group);
+					firstInGroup.array()[group] = vertex;
+					break;
+				}
+				slot = (slot + 1) & (tableSize - 1);
+			}
+		}
+		
+		int groupCount = firstInGroup.size();
+		m_firstInGroup = firstInGroup.toArray();
+		m_positions = new double[groupCount * 3];
+		for(int group = 0; group < groupCount; group++)
+		{
+			int base = m_firstInGroup[group] * m_floatsPerVertex;
+			m_positions[group * 3] = m_vertices[base];
+			m_positions[group * 3 + 1] = m_vertices[base + 1];
+			m_positions[group * 3 + 2] = m_vertices[base + 2];
+		}
+		m_groupTriangles = new IntList[groupCount];
+		for(int group = 0; group < groupCount; group++)
+		{
+			m_groupTriangles[group] = new IntList(8);
+		}
+		for(int triangle = 0; triangle < m_removedTriangles.length; triangle++)
+		{
+			for(int corner = 0; corner < 3; corner++)
+			{
+				m_groupTriangles[m_groups[m_triangles[triangle * 3 + corner]]].add(triangle);
+			}
+		}
+		m_quadrics = new double[groupCount * QUADRIC_SIZE];
+		m_collapsed = new boolean[groupCount];
+		m_stamps = new int[groupCount];
+	}
+	
+	private void computeQuadrics()
+	{
+		// How many triangles use each edge between groups; edges used once are open borders.
+		Map<Long, Integer> edgeUses = new HashMap<Long, Integer>();
+		long groupCount = m_collapsed.length;
+		for(int triangle = 0; triangle < m_removedTriangles.length; triangle++)
+		{
+			for(int corner = 0; corner < 3; corner++)
+			{
+				int a = m_groups[m_triangles[triangle * 3 + corner]];
+				int b = m_groups[m_triangles[triangle * 3 + (corner + 1) % 3]];
+				edgeUses.merge(Math.min(a, b) * groupCount + Math.max(a, b), 1, Integer::sum);
+			}
+		}
+		
+		double[] normal = new double[3];
+		for(int triangle = 0; triangle < m_removedTriangles.length; triangle++)
+		{
+			int a = m_groups[m_triangles[triangle * 3]];
+			int b = m_groups[m_triangles[triangle * 3 + 1]];
+			int c = m_groups[m_triangles[triangle * 3 + 2]];
+			double doubleArea = normal(a, b, c, normal);
+			if(doubleArea == 0.0)
+			{
+				continue;
+			}
+			double nx = normal[0] / doubleArea;
+			double ny = normal[1] / doubleArea;
+			double nz = normal[2] / doubleArea;
+			double d = -(nx * m_positions[a * 3] + ny * m_positions[a * 3 + 1] + nz * m_positions[a * 3 + 2]);
+			double weight = doubleArea / 2.0;
+			addPlane(a, nx, ny, nz, d, weight);
+			addPlane(b, nx, ny, nz, d, weight);
+			addPlane(c, nx, ny, nz, d, weight);
+			
+			// A plane through each border edge, perpendicular to the triangle, holds the border in place.
+			int[] corners = {a, b, c};
+			for(int corner = 0; corner < 3; corner++)
+			{
+				int start = corners[corner];
+				int end = corners[(corner + 1) % 3];
+				if(edgeUses.get(Math.min(start, end) * groupCount + Math.max(start, end)) != 1)
+				{
+					continue;
+				}
+				double ex = m_positions[end * 3] - m_positions[start * 3];
+				double ey = m_positions[end * 3 + 1] - m_positions[start * 3 + 1];
+				double ez = m_positions[end * 3 + 2] - m_positions[start * 3 + 2];
+				double px = ey * nz - ez * ny;
+				double py = ez * nx - ex * nz;
+				double pz = ex * ny - ey * nx;
+				double length = Math.sqrt(px * px + py * py + pz * pz);
+				if(length == 0.0)
+				{
+					continue;
+				}
+				px /= length;
+				py /= length;
+				pz /= length;
+				double pd = -(px * m_positions[start * 3] + py * m_positions[start * 3 + 1] + pz * m_positions[start * 3 + 2]);
+				double edgeWeight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+				addPlane(start, px, py, pz, pd, edgeWeight);
+				addPlane(end, px, py, pz, pd, edgeWeight);
+			}
+		}
+	}
+	
+	private void addPlane(int group, double a, double b, double c, double d, double weight)
+	{
+		int q = group * QUADRIC_SIZE;
+		m_quadrics[q] += weight * a * a;
+		m_quadrics[q + 1] += weight * a * b;
+		m_quadrics[q + 2] += weight * a * c;
+		m_quadrics[q + 3] += weight * a * d;
+		m_quadrics[q + 4] += weight * b * b;
+		m_quadrics[q + 5] += weight * b * c;
+		m_quadrics[q + 6] += weight * b * d;
+		m_quadrics[q + 7] += weight * c * c;
+		m_quadrics[q + 8] += weight * c * d;
+		m_quadrics[q + 9] += weight * d * d;
+	}
+	
+	/**
+	 * Returns the error of moving both groups to the position of {@code to}: the sum of their quadrics evaluated there.
+	 */
+	private double cost(int from, int to)
+	{
+		double x = m_positions[to * 3];
+		double y = m_positions[to * 3 + 1];
+		double z = m_positions[to * 3 + 2];
+		int p = from * QUADRIC_SIZE;
+		int q = to * QUADRIC_SIZE;
+		double[] m = m_quadrics;
+		return (m[p] + m[q]) * x * x + 2.0 * (m[p + 1] + m[q + 1]) * x * y + 2.0 * (m[p + 2] + m[q + 2]) * x * z + 2.0 * (m[p + 3] + m[q + 3]) * x
+				+ (m[p + 4] + m[q + 4]) * y * y + 2.0 * (m[p + 5] + m[q + 5]) * y * z + 2.0 * (m[p + 6] + m[q + 6]) * y
+				+ (m[p + 7] + m[q + 7]) * z * z + 2.0 * (m[p + 8] + m[q + 8]) * z + (m[p + 9] + m[q + 9]);
+	}
+	
+	/**
+	 * Queues collapses in both directions between {@code group} and every group it shares a triangle with.
+	 */
+	private void pushCandidates(int group)
+	{
+		IntList triangles = m_groupTriangles[group];
+		for(int i = 0; i < triangles.size(); i++)
+		{
+			int triangle = triangles.get(i);
+			if(m_removedTriangles[triangle])
+			{
+				continue;
+			}
+			for(int corner = 0; corner < 3; corner++)
+			{
+				int other = m_groups[m_triangles[triangle * 3 + corner]];
+				if(other != group)
+				{
+					pushHeap(group, other);
+					pushHeap(other, group);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Merges group {@code from} into group {@code to} if every copy of {@code from} has an edge to a copy of {@code to}
+	 * and no remaining triangle folds over.
+	 */
+	private void collapse(int from, int to)
+	{
+		// Pick the copy of the target each copy of the collapsing vertex turns into.
+		m_collapseVertices.clear();
+		m_collapseTargets.clear();
+		IntList triangles = m_groupTriangles[from];
+		for(int vertex = m_firstInGroup[from]; vertex >= 0; vertex = m_nextInGroup[vertex])
+		{
+			int target = -1;
+			for(int i = 0; i < triangles.size() && target < 0; i++)
+			{
+				int triangle = triangles.get(i);
+				if(m_removedTriangles[triangle] || !hasVertex(triangle, vertex))
+				{
+					continue;
+				}
+				for(int corner = 0; corner < 3; corner++)
+				{
+					int other = m_triangles[triangle * 3 + corner];
+					if(m_groups[other] == to)
+					{
+						target = other;
+						break;
+					}
+				}
+			}
+			if(target < 0 && isUsed(vertex, triangles))
+			{
+				target = closestCopy(vertex, to);
+			}
+			m_collapseVertices.add(vertex);
+			m_collapseTargets.add(target);
+		}
+		
+		// Reject the collapse if any triangle that survives it would turn too far.
+		double[] before = new double[3];
+		double[] after = new double[3];
+		for(int i = 0; i < triangles.size(); i++)
+		{
+			int triangle = triangles.get(i);
+			if(m_removedTriangles[triangle] || hasGroup(triangle, to))
+			{
+				continue;
+			}
+			int a = m_groups[m_triangles[triangle * 3]];
+			int b = m_groups[m_triangles[triangle * 3 + 1]];
+			int c = m_groups[m_triangles[triangle * 3 + 2]];
+			double beforeLength = normal(a, b, c, before);
+			double afterLength = normal(a == from ? to : a, b == from ? to : b, c == from ? to : c, after);
+			double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+			if(afterLength == 0.0 || dot < MIN_NORMAL_COSINE * beforeLength * afterLength)
+			{
+				return;
+			}
+		}
+		
+		// Triangles along the collapsed edge disappear; the others take the target's vertices.
+		IntList targetTriangles = m_groupTriangles[to];
+		for(int i = 0; i < triangles.size(); i++)
+		{
+			int triangle = triangles.get(i);
+			if(m_removedTriangles[triangle])
+			{
+				continue;
+			}
+			if(hasGroup(triangle, to))
+			{
+				m_removedTriangles[triangle] = true;
+				m_liveTriangleCount--;
+				continue;
+			}
+			for(int corner = 0; corner < 3; corner++)
+			{
+				int vertex = m_triangles[triangle * 3 + corner];
+				if(m_groups[vertex] == from)
+				{
+					for(int j = 0; j < m_collapseVertices.size(); j++)
+					{
+						if(m_collapseVertices.get(j) == vertex)
+						{
+							m_triangles[triangle * 3 + corner] = m_collapseTargets.get(j);
+							break;
+						}
+					}
+				}
+			}
+			targetTriangles.add(triangle);
+		}
+		for(int i = 0; i < QUADRIC_SIZE; i++)
+		{
+			m_quadrics[to * QUADRIC_SIZE + i] += m_quadrics[from * QUADRIC_SIZE + i];
+		}
+		m_collapsed[from] = true;
+		m_groupTriangles[from] = null;
+		m_stamps[to]++;
+		pushCandidates(to);
+	}
+	
+	private boolean hasVertex(int triangle, int vertex)
+	{
+		return m_triangles[triangle * 3] == vertex || m_triangles[triangle * 3 + 1] == vertex || m_triangles[triangle * 3 + 2] == vertex;
+	}
+	
+	private boolean hasGroup(int triangle, int group)
+	{
+		return m_groups[m_triangles[triangle * 3]] == group || m_groups[m_triangles[triangle * 3 + 1]] == group
+				|| m_groups[m_triangles[triangle * 3 + 2]] == group;
+	}
+	
+	/**
+	 * Returns the copy of {@code group} whose texture coordinates and normal are closest to those of {@code vertex}.
+	 */
+	private int closestCopy(int vertex, int group)
+	{
+		int closest = m_firstInGroup[group];
+		double closestDistance = Double.MAX_VALUE;
+		for(int copy = m_firstInGroup[group]; copy >= 0; copy = m_nextInGroup[copy])
+		{
+			double distance = 0.0;
+			for(int i = 3; i < m_floatsPerVertex; i++)
+			{
+				double difference = m_vertices[copy * m_floatsPerVertex + i] - m_vertices[vertex * m_floatsPerVertex + i];
+				distance += difference * difference;
+			}
+			if(distance < closestDistance)
+			{
+				closestDistance = distance;
+				closest = copy;
+			}
+		}
+		return closest;
+	}
+	
+	/**
+	 * Returns whether any remaining triangle of the list uses {@code vertex}.
+	 */
+	private boolean isUsed(int vertex, IntList triangles)
+	{
+		for(int i = 0; i < triangles.size(); i++)
+		{
+			int triangle = triangles.get(i);
+			if(!m_removedTriangles[triangle] && hasVertex(triangle, vertex))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Writes the (unnormalized) normal of the triangle between three group positions to {@code result} and returns its
+	 * length, twice the triangle's area.
+	 */
+	private double normal(int a, int b, int c, double[] result)
+	{
+		double ux = m_positions[b * 3] - m_positions[a * 3];
+		double uy = m_positions[b * 3 + 1] - m_positions[a * 3 + 1];
+		double uz = m_positions[b * 3 + 2] - m_positions[a * 3 + 2];
+		double vx = m_positions[c * 3] - m_positions[a * 3];
+		double vy = m_positions[c * 3 + 1] - m_positions[a * 3 + 1];
+		double vz = m_positions[c * 3 + 2] - m_positions[a * 3 + 2];
+		result[0] = uy * vz - uz * vy;
+		result[1] = uz * vx - ux * vz;
+		result[2] = ux * vy - uy * vx;
+		return Math.sqrt(result[0] * result[0] + result[1] * result[1] + result[2] * result[2]);
+	}
+	
+	private void pushHeap(int from, int to)
+	{
+		if(m_heapSize == m_heapCosts.length)
+		{
+			int capacity = m_heapSize * 2;
+			m_heapCosts = Arrays.copyOf(m_heapCosts, capacity);
+			m_heapFrom = Arrays.copyOf(m_heapFrom, capacity);
+			m_heapTo = Arrays.copyOf(m_heapTo, capacity);
+			m_heapFromStamps = Arrays.copyOf(m_heapFromStamps, capacity);
+			m_heapToStamps = Arrays.copyOf(m_heapToStamps, capacity);
+		}
+		double cost = cost(from, to);
+		int i = m_heapSize++;
+		while(i > 0)
+		{
+			int parent = (i - 1) / 2;
+			if(m_heapCosts[parent] <= cost)
+			{
+				break;
+			}
+			moveHeapEntry(parent, i);
+			i = parent;
+		}
+		m_heapCosts[i] = cost;
+		m_heapFrom[i] = from;
+		m_heapTo[i] = to;
+		m_heapFromStamps[i] = m_stamps[from];
+		m_heapToStamps[i] = m_stamps[to];
+	}
+	
+	private void popHeap()
+	{
+		int last = --m_heapSize;
+		double cost = m_heapCosts[last];
+		int i = 0;
+		while(true)
+		{
+			int child = 2 * i + 1;
+			if(child >= last)
+			{
+				break;
+			}
+			if(child + 1 < last && m_heapCosts[child + 1] < m_heapCosts[child])
+			{
+				child++;
+			}
+			if(cost <= m_heapCosts[child])
+			{
+				break;
+			}
+			moveHeapEntry(child, i);
+			i = child;
+		}
+		moveHeapEntry(last, i);
+	}
+	
+	private void moveHeapEntry(int from, int to)
+	{
+		m_heapCosts[to] = m_heapCosts[from];
+		m_heapFrom[to] = m_heapFrom[from];
+		m_heapTo[to] = m_heapTo[from];
+		m_heapFromStamps[to] = m_heapFromStamps[from];
+		m_heapToStamps[to] = m_heapToStamps[from];
+	}
+}
@@ -1,108 +1,458 @@
 package project3;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Loads a Wavefront OBJ model into flat, fully expanded triangle arrays (three floats of position, two of texture
+ * coordinates and three of normal per triangle corner).
+ * <p>
+ * The file is read into memory once and tokenized by {@link ObjScanner} directly into primitive buffers, so importing
+ * does not allocate per line or per value. Very large files can instead be loaded with {@link #parseOBJParallel(String)},
+ * which memory-maps the file and scans it in chunks on the common {@link ForkJoinPool}.
+ * <p>
+ * An importer created with {@code indexed} set instead produces one vertex per distinct v/vt/vn triplet together with
+ * an index array of three indices per triangle, ready for {@code glDrawElements}. The triangles of an indexed model
+ * are reordered for the post-transform vertex cache and its vertices renumbered in order of first use (see
+ * {@link VertexCacheOptimizer}).
+ */
 public class ModelImporter
 {
-	private ArrayList<Float> m_vertVals = new ArrayList<Float>();
-	private ArrayList<Float> m_triangleVerts = new ArrayList<Float>();
-	private ArrayList<Float> m_textureCoords = new ArrayList<Float>();
-	private ArrayList<Float> m_stVals = new ArrayList<Float>();
-	private ArrayList<Float> m_normals = new ArrayList<Float>();
-	private ArrayList<Float> m_normVals = new ArrayList<Float>();
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// Chunks smaller than this are not worth a separate fork-join task.
+	private static final int MIN_CHUNK_SIZE = 256 * 1024;
+	// Chunks per worker thread, so that chunks with mostly faces do not leave other workers idle.
+	private static final int CHUNKS_PER_THREAD = 4;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float[] m_triangleVerts = new float[0];
+	private float[] m_textureCoords = new float[0];
+	private float[] m_normals = new float[0];
+	private int[] m_indices;
+	private VertexCacheOptimizer.Statistics m_cacheStatistics;
+	private final boolean m_indexed;
+	
+	public ModelImporter()
+	{
+		this(false);
+	}
+	
+	public ModelImporter(boolean indexed)
+	{
+		m_indexed = indexed;
+	}
 	
 	public void parseOBJ(String filename) throws IOException
 	{
-		InputStream input = ModelImporter.class.getResourceAsStream(filename);
-		BufferedReader br = new BufferedReader(new InputStreamReader(input));
-		String line;
-		while((line = br.readLine()) != null)
+		byte[] contents;
+		try(InputStream input = ModelImporter.class.getResourceAsStream(filename))
 		{
-			if(line.startsWith("v "))            // vertex position ("v" case)
+			if(input == null)
 			{
-				for(String s : (line.substring(2)).split(" "))
-				{
-					m_vertVals.add(Float.valueOf(s));
-				}
+				throw new IOException("Could not find model " + filename + ".");
 			}
-			else if(line.startsWith("vt"))            // texture coordinates ("vt" case)
+			contents = input.readAllBytes();
+		}
+		
+		ObjScanner scanner = new ObjScanner(ByteBuffer.wrap(contents), 0, contents.length);
+		scanner.scan();
+		buildTriangles(filename, scanner.getPositions(), scanner.getTextureCoordinates(), scanner.getNormals(), scanner.getCorners());
+	}
+	
+	/**
+	 * Loads the model like {@link #parseOBJ(String)}, but memory-maps the file, splits it at line boundaries and scans
+	 * the chunks in parallel. The per-chunk records are then merged in file order, so the resulting arrays are
+	 * identical to those of the sequential path.
+	 * <p>
+	 * Only models that exist as plain files (not inside a jar) can be mapped; anything else is loaded sequentially.
+	 */
+	public void parseOBJParallel(String filename) throws IOException
+	{
+		Path path = getModelPath(filename);
+		if(path == null)
+		{
+			parseOBJ(filename);
+			return;
+		}
+		
+		MappedByteBuffer contents;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			if(channel.size() > Integer.MAX_VALUE)
 			{
-				for(String s : (line.substring(3)).split(" "))
-				{
-					m_stVals.add(Float.valueOf(s));
-				}
+				throw new IOException("Model " + filename + " is too large to map (" + channel.size() + " bytes).");
 			}
-			else if(line.startsWith("vn"))            // vertex normals ("vn" case)
+			contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		
+		int[] bounds = splitAtLines(contents, ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD);
+		ObjScanner[] chunks = new ObjScanner[bounds.length - 1];
+		for(int i = 0; i < chunks.length; i++)
+		{
+			chunks[i] = new ObjScanner(contents.duplicate(), bounds[i], bounds[i + 1]);
+		}
+		ForkJoinPool.commonPool().invoke(new ScanChunks(chunks, 0, chunks.length));
+		
+		// Relative face indices can point into an earlier chunk, which a chunk scanner cannot resolve on its own.
+		for(int i = 1; i < chunks.length; i++)
+		{
+			if(chunks[i].hasRelativeIndices())
 			{
-				for(String s : (line.substring(3)).split(" "))
-				{
-					m_normVals.add(Float.valueOf(s));
-				}
+				ObjScanner scanner = new ObjScanner(contents, 0, contents.limit());
+				scanner.scan();
+				buildTriangles(filename, scanner.getPositions(), scanner.getTextureCoordinates(), scanner.getNormals(), scanner.getCorners());
+				return;
 			}
-			else if(line.startsWith("f"))            // triangle faces ("f" case)
+		}
+		
+		// Ordered merge: records are concatenated in chunk order, which is file order.
+		FloatList vertVals = new FloatList();
+		FloatList stVals = new FloatList();
+		FloatList normVals = new FloatList();
+		int[] cornerOffsets = new int[chunks.length + 1];
+		for(int i = 0; i < chunks.length; i++)
+		{
+			vertVals.addAll(chunks[i].getPositions());
+			stVals.addAll(chunks[i].getTextureCoordinates());
+			normVals.addAll(chunks[i].getNormals());
+			cornerOffsets[i + 1] = cornerOffsets[i] + chunks[i].getCorners().size() / 3;
+		}
+		
+		if(m_indexed)
+		{
+			// Deduplication has to see the corners in file order to number vertices like the sequential path does.
+			IntList corners = new IntList(cornerOffsets[chunks.length] * 3);
+			for(ObjScanner chunk : chunks)
 			{
-				for(String s : (line.substring(2)).split(" "))
-				{
-					String v = s.split("/")[0];
-					String vt = s.split("/")[1];
-					String vn = s.split("/")[2];
-					
-					int vertRef = (Integer.valueOf(v) - 1) * 3;
-					int tcRef = (Integer.valueOf(vt) - 1) * 2;
-					int normRef = (Integer.valueOf(vn) - 1) * 3;
-					
-					m_triangleVerts.add(m_vertVals.get(vertRef));
-					m_triangleVerts.add(m_vertVals.get((vertRef) + 1));
-					m_triangleVerts.add(m_vertVals.get((vertRef) + 2));
-					
-					m_textureCoords.add(m_stVals.get(tcRef));
-					m_textureCoords.add(m_stVals.get(tcRef + 1));
-					
-					m_normals.add(m_normVals.get(normRef));
-					m_normals.add(m_normVals.get(normRef + 1));
-					m_normals.add(m_normVals.get(normRef + 2));
-				}
+				corners.addAll(chunk.getCorners());
 			}
+			buildIndexed(filename, vertVals, stVals, normVals, corners);
+			return;
+		}
+		
+		allocateTriangles(cornerOffsets[chunks.length]);
+		ExpandChunks expand = new ExpandChunks(this, filename, chunks, cornerOffsets, vertVals, stVals, normVals, 0, chunks.length);
+		ForkJoinPool.commonPool().invoke(expand);
+		if(expand.m_error != null)
+		{
+			throw expand.m_error;
 		}
-		input.close();
 	}
 	
-	public int getNumVertices()
+	/**
+	 * Returns the size in bytes of the given model, or {@code -1} if it is not a plain file.
+	 */
+	public static long getModelSize(String filename) throws IOException
 	{
-		return (m_triangleVerts.size() / 3);
+		Path path = getModelPath(filename);
+		return path == null ? -1 : Files.size(path);
 	}
 	
-	public float[] getVertices()
+	/**
+	 * Returns the file behind the given model resource, or {@code null} if it is not a plain file.
+	 */
+	static Path getModelPath(String filename)
 	{
-		float[] p = new float[m_triangleVerts.size()];
-		for(int i = 0; i < m_triangleVerts.size(); i++)
+		URL url = ModelImporter.class.getResource(filename);
+		if(url == null || !"file".equals(url.getProtocol()))
+		{
+			return null;
+		}
+		try
 		{
-			p[i] = m_triangleVerts.get(i);
+			return Paths.get(url.toURI());
+		}
+		catch(URISyntaxException e)
+		{
+			return null;
 		}
-		return p;
 	}
 	
-	public float[] getTextureCoordinates()
+	/**
+	 * Splits {@code contents} into at most {@code maxChunks} ranges that each start at the beginning of a line. The
+	 * returned array holds the start of every range followed by the end of the last one.
+	 */
+	private static int[] splitAtLines(ByteBuffer contents, int maxChunks)
 	{
-		float[] t = new float[(m_textureCoords.size())];
-		for(int i = 0; i < m_textureCoords.size(); i++)
+		int size = contents.limit();
+		int numChunks = Math.max(1, Math.min(maxChunks, size / MIN_CHUNK_SIZE));
+		int[] bounds = new int[numChunks + 1];
+		int count = 1;
+		for(int i = 1; i < numChunks; i++)
 		{
-			t[i] = m_textureCoords.get(i);
+			int pos = Math.max((int) ((long) size * i / numChunks), bounds[count - 1]);
+			while(pos < size && contents.get(pos - 1) != '\n')
+			{
+				pos++;
+			}
+			if(pos < size && pos > bounds[count - 1])
+			{
+				bounds[count++] = pos;
+			}
 		}
-		return t;
+		bounds[count++] = size;
+		return Arrays.copyOf(bounds, count);
+	}
+	
+	/**
+	 * Expands every v/vt/vn corner into the flat triangle arrays. Missing texture coordinates and normals are filled
+	 * with zeros.
+	 */
+	private void buildTriangles(String filename, FloatList vertVals, FloatList stVals, FloatList normVals, IntList corners) throws IOException
+	{
+		if(m_indexed)
+		{
+			buildIndexed(filename, vertVals, stVals, normVals, corners);
+			return;
+		}
+		allocateTriangles(corners.size() / 3);
+		expandCorners(filename, vertVals, stVals, normVals, corners, 0);
+	}
+	
+	/**
+	 * Assigns every distinct v/vt/vn triplet a vertex, in order of first use, and records the vertex of every corner
+	 * in the index array. Only the distinct vertices are expanded into the vertex arrays.
+	 */
+	private void buildIndexed(String filename, FloatList vertVals, FloatList stVals, FloatList normVals, IntList corners) throws IOException
+	{
+		int numCorners = corners.size() / 3;
+		int[] c = corners.array();
+		// Smooth meshes share each vertex among about six triangles, so this is usually an over-estimate.
+		TripletIndexMap vertexOf = new TripletIndexMap(numCorners / 4);
+		IntList uniqueCorners = new IntList(numCorners);
+		m_indices = new int[numCorners];
+		for(int i = 0; i < numCorners; i++)
+		{
+			int v = c[i * 3], t = c[i * 3 + 1], n = c[i * 3 + 2];
+			int next = vertexOf.size();
+			int vertex = vertexOf.putIfAbsent(v, t, n, next);
+			if(vertex == next)
+			{
+				uniqueCorners.add(v);
+				uniqueCorners.add(t);
+				uniqueCorners.add(n);
+			}
+			m_indices[i] = vertex;
+		}
+		allocateTriangles(vertexOf.size());
+		expandCorners(filename, vertVals, stVals, normVals, uniqueCorners, 0);
+		optimizeVertexCache();
+	}
+	
+	/**
+	 * Reorders the indexed triangles for the post-transform cache, then renumbers the vertices so that they are fetched
+	 * in order.
+	 */
+	private void optimizeVertexCache()
+	{
+		int numVertices = getNumVertices();
+		int cacheSize = VertexCacheOptimizer.STATISTICS_CACHE_SIZE;
+		m_cacheStatistics = new VertexCacheOptimizer.Statistics();
+		m_cacheStatistics.acmrBefore = VertexCacheOptimizer.acmr(m_indices, numVertices, cacheSize);
+		m_cacheStatistics.atvrBefore = VertexCacheOptimizer.atvr(m_indices, numVertices, cacheSize);
+		
+		m_indices = VertexCacheOptimizer.optimizeTriangleOrder(m_indices, numVertices);
+		int[] remap = VertexCacheOptimizer.fetchOrderRemap(m_indices, numVertices);
+		for(int i = 0; i < m_indices.length; i++)
+		{
+			m_indices[i] = remap[m_indices[i]];
+		}
+		m_triangleVerts = VertexCacheOptimizer.remapAttribute(m_triangleVerts, 3, remap);
+		m_textureCoords = VertexCacheOptimizer.remapAttribute(m_textureCoords, 2, remap);
+		m_normals = VertexCacheOptimizer.remapAttribute(m_normals, 3, remap);
+		
+		m_cacheStatistics.acmrAfter = VertexCacheOptimizer.acmr(m_indices, numVertices, cacheSize);
+		m_cacheStatistics.atvrAfter = VertexCacheOptimizer.atvr(m_indices, numVertices, cacheSize);
+	}
+	
+	private void allocateTriangles(int numCorners)
+	{
+		m_triangleVerts = new float[numCorners * 3];
+		m_textureCoords = new float[numCorners * 2];
+		m_normals = new float[numCorners * 3];
+	}
+	
+	/**
+	 * Writes the corners of {@code corners} into the triangle arrays, starting at corner {@code firstCorner}.
+	 */
+	private void expandCorners(String filename, FloatList vertVals, FloatList stVals, FloatList normVals, IntList corners, int firstCorner)
+			throws IOException
+	{
+		int numCorners = corners.size() / 3;
+		int numVerts = vertVals.size() / 3;
+		int numST = stVals.size() / 2;
+		int numNorms = normVals.size() / 3;
+		float[] v = vertVals.array();
+		float[] st = stVals.array();
+		float[] n = normVals.array();
+		int[] c = corners.array();
+		
+		for(int i = 0; i < numCorners; i++)
+		{
+			int vertRef = c[i * 3];
+			int tcRef = c[i * 3 + 1];
+			int normRef = c[i * 3 + 2];
+			if(vertRef < 0 || vertRef >= numVerts || tcRef >= numST || normRef >= numNorms)
+			{
+				throw new IOException("Face in " + filename + " references a vertex that does not exist.");
+			}
+			
+			int out = firstCorner + i;
+			m_triangleVerts[out * 3] = v[vertRef * 3];
+			m_triangleVerts[out * 3 + 1] = v[vertRef * 3 + 1];
+			m_triangleVerts[out * 3 + 2] = v[vertRef * 3 + 2];
+			
+			if(tcRef >= 0)
+			{
+				m_textureCoords[out * 2] = st[tcRef * 2];
+				m_textureCoords[out * 2 + 1] = st[tcRef * 2 + 1];
+			}
+			
+			if(normRef >= 0)
+			{
+				m_normals[out * 3] = n[normRef * 3];
+				m_normals[out * 3 + 1] = n[normRef * 3 + 1];
+				m_normals[out * 3 + 2] = n[normRef * 3 + 2];
+			}
+		}
+	}
+	
+	public int getNumVertices()
+	{
+		return (m_triangleVerts.length / 3);
+	}
+	
+	public boolean isIndexed()
+	{
+		return m_indexed;
+	}
+	
+	/**
+	 * Returns three vertex indices per triangle, or {@code null} if this importer is not indexed.
+	 */
+	public int[] getIndices()
+	{
+		return (m_indices == null) ? null : m_indices.clone();
+	}
+	
+	/**
+	 * Returns the vertex cache statistics of the last indexed import, or {@code null} if it was not indexed.
+	 */
+	VertexCacheOptimizer.Statistics getVertexCacheStatistics()
+	{
+		return m_cacheStatistics;
+	}
+	
+	public float[] getVertices()
+	{
+		return m_triangleVerts.clone();
+	}
+	
+	public float[] getTextureCoordinates()
+	{
+		return m_textureCoords.clone();
 	}
 	
 	public float[] getNormals()
 	{
-		float[] n = new float[(m_normals.size())];
-		for(int i = 0; i < m_normals.size(); i++)
+		return m_normals.clone();
+	}
+	
+	/**
+	 * Scans a range of chunks, splitting it in half until a single chunk is left.
+	 */
+	private static class ScanChunks extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final ObjScanner[] m_chunks;
+		private final int m_from, m_to;
+		
+		ScanChunks(ObjScanner[] chunks, int from, int to)
+		{
+			m_chunks = chunks;
+			m_from = from;
+			m_to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(m_to - m_from == 1)
+			{
+				m_chunks[m_from].scan();
+				return;
+			}
+			int mid = (m_from + m_to) >>> 1;
+			invokeAll(new ScanChunks(m_chunks, m_from, mid), new ScanChunks(m_chunks, mid, m_to));
+		}
+	}
+	
+	/**
+	 * Expands the corners of a range of chunks into disjoint slices of the triangle arrays.
+	 */
+	private static class ExpandChunks extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final ModelImporter m_importer;
+		private final String m_filename;
+		private final ObjScanner[] m_chunks;
+		private final int[] m_cornerOffsets;
+		private final FloatList m_vertVals, m_stVals, m_normVals;
+		private final int m_from, m_to;
+		private volatile IOException m_error;
+		
+		ExpandChunks(ModelImporter importer, String filename, ObjScanner[] chunks, int[] cornerOffsets, FloatList vertVals, FloatList stVals, FloatList normVals,
+				int from, int to)
+		{
+			m_importer = importer;
+			m_filename = filename;
+			m_chunks = chunks;
+			m_cornerOffsets = cornerOffsets;
+			m_vertVals = vertVals;
+			m_stVals = stVals;
+			m_normVals = normVals;
+			m_from = from;
+			m_to = to;
+		}
+		
+		@Override
+		protected void compute()
 		{
-			n[i] = m_normals.get(i);
+			if(m_to - m_from == 1)
+			{
+				try
+				{
+					m_importer.expandCorners(m_filename, m_vertVals, m_stVals, m_normVals, m_chunks[m_from].getCorners(), m_cornerOffsets[m_from]);
+				}
+				catch(IOException e)
+				{
+					m_error = e;
+				}
+				return;
+			}
+			int mid = (m_from + m_to) >>> 1;
+			ExpandChunks left = new ExpandChunks(m_importer, m_filename, m_chunks, m_cornerOffsets, m_vertVals, m_stVals, m_normVals, m_from, mid);
+			ExpandChunks right = new ExpandChunks(m_importer, m_filename, m_chunks, m_cornerOffsets, m_vertVals, m_stVals, m_normVals, mid, m_to);
+			invokeAll(left, right);
+			m_error = left.m_error != null ? left.m_error : right.m_error;
 		}
-		return n;
 	}
 }
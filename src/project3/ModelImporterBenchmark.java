@@ -0,0 +1,186 @@
+package project3;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares {@link ModelImporter} with the original {@code ArrayList<Float>}/{@code String.split} importer, reporting
+ * the best wall-clock time and the bytes allocated per import, and checks that both produce identical arrays. The
+ * parallel path is measured as well and must match the sequential one exactly.
+ * <p>
+ * Usage: {@code java project3.ModelImporterBenchmark [model.obj] [iterations]}
+ */
+public class ModelImporterBenchmark
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final String DEFAULT_MODEL = "shuttle.obj";
+	private static final int DEFAULT_ITERATIONS = 20;
+	private static final int WARMUP_ITERATIONS = 10;
+	
+	public static void main(String[] args) throws IOException
+	{
+		String model = args.length > 0 ? args[0] : DEFAULT_MODEL;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+		
+		ModelImporter current = new ModelImporter();
+		current.parseOBJ(model);
+		LegacyModelImporter legacy = new LegacyModelImporter();
+		legacy.parseOBJ(model);
+		boolean identical = Arrays.equals(current.getVertices(), legacy.getVertices()) && Arrays.equals(current.getTextureCoordinates(),
+				legacy.getTextureCoordinates()) && Arrays.equals(current.getNormals(), legacy.getNormals());
+		System.out.println(model + ": " + current.getNumVertices() + " vertices, output identical to legacy importer: " + identical);
+		ModelImporter parallel = new ModelImporter();
+		parallel.parseOBJParallel(model);
+		boolean parallelIdentical = Arrays.equals(current.getVertices(), parallel.getVertices()) && Arrays.equals(current.getTextureCoordinates(),
+				parallel.getTextureCoordinates()) && Arrays.equals(current.getNormals(), parallel.getNormals());
+		System.out.println("parallel output identical to sequential: " + parallelIdentical);
+		
+		report("legacy", measure(() -> new LegacyModelImporter().parseOBJ(model), iterations));
+		report("primitive", measure(() -> new ModelImporter().parseOBJ(model), iterations));
+		report("parallel", measure(() -> new ModelImporter().parseOBJParallel(model), iterations));
+	}
+	
+	private static long[] measure(Import importer, int iterations) throws IOException
+	{
+		for(int i = 0; i < WARMUP_ITERATIONS; i++)
+		{
+			importer.run();
+		}
+		
+		long bestNanos = Long.MAX_VALUE;
+		long allocatedBefore = allocatedBytes();
+		for(int i = 0; i < iterations; i++)
+		{
+			long start = System.nanoTime();
+			importer.run();
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+		}
+		long allocated = (allocatedBytes() - allocatedBefore) / iterations;
+		return new long[] {bestNanos, allocated};
+	}
+	
+	/**
+	 * Returns the bytes allocated so far by all live threads, so that work done on fork-join workers is counted too.
+	 */
+	private static long allocatedBytes()
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for(long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+		{
+			total += Math.max(allocated, 0);
+		}
+		return total;
+	}
+	
+	private static void report(String name, long[] result)
+	{
+		System.out.printf("%-10s best %8.2f ms, %10.1f KiB allocated per import%n", name, result[0] / 1e6, result[1] / 1024.0);
+	}
+	
+	private interface Import
+	{
+		void run() throws IOException;
+	}
+	
+	/**
+	 * The importer as it was before it switched to primitive buffers, kept only as a baseline for this benchmark.
+	 */
+	private static class LegacyModelImporter
+	{
+		private ArrayList<Float> m_vertVals = new ArrayList<Float>();
+		private ArrayList<Float> m_triangleVerts = new ArrayList<Float>();
+		private ArrayList<Float> m_textureCoords = new ArrayList<Float>();
+		private ArrayList<Float> m_stVals = new ArrayList<Float>();
+		private ArrayList<Float> m_normals = new ArrayList<Float>();
+		private ArrayList<Float> m_normVals = new ArrayList<Float>();
+		
+		public void parseOBJ(String filename) throws IOException
+		{
+			InputStream input = ModelImporter.class.getResourceAsStream(filename);
+			BufferedReader br = new BufferedReader(new InputStreamReader(input));
+			String line;
+			while((line = br.readLine()) != null)
+			{
+				if(line.startsWith("v "))
+				{
+					for(String s : (line.substring(2)).split(" "))
+					{
+						m_vertVals.add(Float.valueOf(s));
+					}
+				}
+				else if(line.startsWith("vt"))
+				{
+					for(String s : (line.substring(3)).split(" "))
+					{
+						m_stVals.add(Float.valueOf(s));
+					}
+				}
+				else if(line.startsWith("vn"))
+				{
+					for(String s : (line.substring(3)).split(" "))
+					{
+						m_normVals.add(Float.valueOf(s));
+					}
+				}
+				else if(line.startsWith("f"))
+				{
+					for(String s : (line.substring(2)).split(" "))
+					{
+						String v = s.split("/")[0];
+						String vt = s.split("/")[1];
+						String vn = s.split("/")[2];
+						
+						int vertRef = (Integer.valueOf(v) - 1) * 3;
+						int tcRef = (Integer.valueOf(vt) - 1) * 2;
+						int normRef = (Integer.valueOf(vn) - 1) * 3;
+						
+						m_triangleVerts.add(m_vertVals.get(vertRef));
+						m_triangleVerts.add(m_vertVals.get((vertRef) + 1));
+						m_triangleVerts.add(m_vertVals.get((vertRef) + 2));
+						
+						m_textureCoords.add(m_stVals.get(tcRef));
+						m_textureCoords.add(m_stVals.get(tcRef + 1));
+						
+						m_normals.add(m_normVals.get(normRef));
+						m_normals.add(m_normVals.get(normRef + 1));
+						m_normals.add(m_normVals.get(normRef + 2));
+					}
+				}
+			}
+			input.close();
+		}
+		
+		public float[] getVertices()
+		{
+			return toArray(m_triangleVerts);
+		}
+		
+		public float[] getTextureCoordinates()
+		{
+			return toArray(m_textureCoords);
+		}
+		
+		public float[] getNormals()
+		{
+			return toArray(m_normals);
+		}
+		
+		private static float[] toArray(ArrayList<Float> values)
+		{
+			float[] result = new float[values.size()];
+			for(int i = 0; i < values.size(); i++)
+			{
+				result[i] = values.get(i);
+			}
+			return result;
+		}
+	}
+}
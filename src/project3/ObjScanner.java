@@ -0,0 +1,395 @@
+package project3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte-level scanner for the parts of a Wavefront OBJ file that we use ({@code v}, {@code vt}, {@code vn} and
+ * {@code f} records). Numbers are tokenized by hand straight out of the buffer, so no {@code String} is created per
+ * line or per value.
+ * <p>
+ * Face corners are recorded as zero-based v/vt/vn triplets, with {@code -1} marking a missing texture coordinate or
+ * normal. Faces with more than three corners are fan-triangulated.
+ */
+final class ObjScanner
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// Every power of ten up to 10^10 is exactly representable as a float.
+	private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+	// Mantissas below 2^24 fit in a float's 24 bits without rounding; longer ones need not be read further.
+	private static final int MAX_FAST_DIGITS = 8;
+	private static final long MAX_FAST_MANTISSA = 1L << 24;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private final ByteBuffer m_buffer;
+	private final int m_end;
+	private int m_pos;
+	private boolean m_hasRelativeIndices;
+	private final FloatList m_positions;
+	private final FloatList m_texCoords;
+	private final FloatList m_normals;
+	private final IntList m_corners;
+	
+	/**
+	 * Creates a scanner over the bytes of {@code buffer} in {@code [start, end)}. The range should begin at the start of
+	 * a line.
+	 */
+	ObjScanner(ByteBuffer buffer, int start, int end)
+	{
+		m_buffer = buffer;
+		m_pos = start;
+		m_end = end;
+		
+		// A typical OBJ line is 20-40 bytes long, so this avoids most regrowth without over-committing memory.
+		int estimatedLines = Math.max((end - start) / 32, 16);
+		m_positions = new FloatList(estimatedLines);
+		m_texCoords = new FloatList(estimatedLines / 2);
+		m_normals = new FloatList(estimatedLines);
+		m_corners = new IntList(estimatedLines * 2);
+	}
+	
+	void scan()
+	{
+		while(m_pos < m_end)
+		{
+			skipBlanks();
+			byte c = peek(0);
+			if(c == 'v')
+			{
+				byte next = peek(1);
+				if(isBlank(next))            // vertex position ("v" case)
+				{
+					m_pos += 1;
+					m_positions.add(nextFloat(0.0f));
+					m_positions.add(nextFloat(0.0f));
+					m_positions.add(nextFloat(0.0f));
+				}
+				else if(next == 't' && isBlank(peek(2)))            // texture coordinates ("vt" case)
+				{
+					m_pos += 2;
+					m_texCoords.add(nextFloat(0.0f));
+					m_texCoords.add(nextFloat(0.0f));
+				}
+				else if(next == 'n' && isBlank(peek(2)))            // vertex normals ("vn" case)
+				{
+					m_pos += 2;
+					m_normals.add(nextFloat(0.0f));
+					m_normals.add(nextFloat(0.0f));
+					m_normals.add(nextFloat(0.0f));
+				}
+			}
+			else if(c == 'f' && isBlank(peek(1)))            // triangle faces ("f" case)
+			{
+				m_pos += 1;
+				scanFace();
+			}
+			skipLine();
+		}
+	}
+	
+	FloatList getPositions()
+	{
+		return m_positions;
+	}
+	
+	FloatList getTextureCoordinates()
+	{
+		return m_texCoords;
+	}
+	
+	FloatList getNormals()
+	{
+		return m_normals;
+	}
+	
+	/**
+	 * Returns the triangle corners as consecutive v/vt/vn triplets.
+	 */
+	IntList getCorners()
+	{
+		return m_corners;
+	}
+	
+	/**
+	 * Whether any face used negative (relative) indices. These were resolved against the records seen by this scanner
+	 * only, which is wrong if the scanned range did not start at the beginning of the file.
+	 */
+	boolean hasRelativeIndices()
+	{
+		return m_hasRelativeIndices;
+	}
+	
+	private void scanFace()
+	{
+		int corner = 0;
+		int v0 = 0, t0 = 0, n0 = 0;
+		int v1 = 0, t1 = 0, n1 = 0;
+		while(true)
+		{
+			skipBlanks();
+			if(atLineEnd())
+			{
+				break;
+			}
+			
+			int v = resolveIndex(nextInt(), m_positions.size() / 3);
+			int t = -1;
+			int n = -1;
+			if(peek(0) == '/')
+			{
+				m_pos++;
+				if(peek(0) != '/')
+				{
+					t = resolveIndex(nextInt(), m_texCoords.size() / 2);
+				}
+				if(peek(0) == '/')
+				{
+					m_pos++;
+					n = resolveIndex(nextInt(), m_normals.size() / 3);
+				}
+			}
+			
+			// Fan-triangulate: every corner past the second closes a triangle with the first and previous corners.
+			if(corner >= 2)
+			{
+				addCorner(v0, t0, n0);
+				addCorner(v1, t1, n1);
+				addCorner(v, t, n);
+			}
+			if(corner == 0)
+			{
+				v0 = v;
+				t0 = t;
+				n0 = n;
+			}
+			v1 = v;
+			t1 = t;
+			n1 = n;
+			corner++;
+		}
+	}
+	
+	private void addCorner(int v, int t, int n)
+	{
+		m_corners.add(v);
+		m_corners.add(t);
+		m_corners.add(n);
+	}
+	
+	private int resolveIndex(int index, int count)
+	{
+		if(index > 0)
+		{
+			return index - 1;
+		}
+		if(index < 0)
+		{
+			m_hasRelativeIndices = true;
+			return count + index;
+		}
+		throw new NumberFormatException("OBJ indices start at 1, but found index 0.");
+	}
+	
+	private int nextInt()
+	{
+		skipBlanks();
+		boolean negative = false;
+		byte c = peek(0);
+		if(c == '-' || c == '+')
+		{
+			negative = (c == '-');
+			m_pos++;
+		}
+		
+		int start = m_pos;
+		int value = 0;
+		while(m_pos < m_end && isDigit(c = m_buffer.get(m_pos)))
+		{
+			value = value * 10 + (c - '0');
+			m_pos++;
+		}
+		if(m_pos == start)
+		{
+			throw new NumberFormatException("Expected an index in OBJ face at byte " + start + ".");
+		}
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Parses the next floating-point token on the current line, or returns {@code fallback} if the line has no more
+	 * tokens. Plain decimal numbers whose digits and power of ten are both exact in a float (a mantissa below 2^24, an
+	 * exponent of at most 10) are converted with a single correctly rounded division or multiplication; anything else
+	 * (long mantissas, large exponents, "nan", "inf") goes through {@link Float#parseFloat(String)}.
+	 */
+	private float nextFloat(float fallback)
+	{
+		skipBlanks();
+		if(atLineEnd())
+		{
+			return fallback;
+		}
+		
+		int start = m_pos;
+		boolean negative = false;
+		byte c = peek(0);
+		if(c == '-' || c == '+')
+		{
+			negative = (c == '-');
+			m_pos++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		while(m_pos < m_end)
+		{
+			c = m_buffer.get(m_pos);
+			if(isDigit(c))
+			{
+				seenDigit = true;
+				if(mantissa == 0 && c == '0')
+				{
+					// Leading zeros are not significant.
+					if(seenPoint)
+					{
+						exponent--;
+					}
+				}
+				else if(digits < MAX_FAST_DIGITS)
+				{
+					mantissa = mantissa * 10 + (c - '0');
+					digits++;
+					if(seenPoint)
+					{
+						exponent--;
+					}
+				}
+				else
+				{
+					return slowFloat(start);
+				}
+			}
+			else if(c == '.' && !seenPoint)
+			{
+				seenPoint = true;
+			}
+			else
+			{
+				break;
+			}
+			m_pos++;
+		}
+		if(!seenDigit)
+		{
+			return slowFloat(start);
+		}
+		
+		if(c == 'e' || c == 'E')
+		{
+			m_pos++;
+			boolean negativeExponent = false;
+			c = peek(0);
+			if(c == '-' || c == '+')
+			{
+				negativeExponent = (c == '-');
+				m_pos++;
+			}
+			int expStart = m_pos;
+			int explicitExponent = 0;
+			while(m_pos < m_end && isDigit(c = m_buffer.get(m_pos)))
+			{
+				if(explicitExponent < 10000)
+				{
+					explicitExponent = explicitExponent * 10 + (c - '0');
+				}
+				m_pos++;
+			}
+			if(m_pos == expStart)
+			{
+				return slowFloat(start);
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		
+		// An exact mantissa and an exact power of ten make one correctly rounded float operation; anything else would
+		// round twice and is left to Float.parseFloat.
+		if(mantissa >= MAX_FAST_MANTISSA || exponent < -10 || exponent > 10)
+		{
+			return (mantissa == 0) ? (negative ? -0.0f : 0.0f) : slowFloat(start);
+		}
+		float value = mantissa;
+		if(exponent < 0)
+		{
+			value /= POWERS_OF_TEN[-exponent];
+		}
+		else
+		{
+			value *= POWERS_OF_TEN[exponent];
+		}
+		return negative ? -value : value;
+	}
+	
+	private float slowFloat(int start)
+	{
+		m_pos = start;
+		while(m_pos < m_end && !isBlank(m_buffer.get(m_pos)) && !atLineEnd())
+		{
+			m_pos++;
+		}
+		byte[] token = new byte[m_pos - start];
+		for(int i = 0; i < token.length; i++)
+		{
+			token[i] = m_buffer.get(start + i);
+		}
+		return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+	}
+	
+	private void skipBlanks()
+	{
+		while(m_pos < m_end && isBlank(m_buffer.get(m_pos)))
+		{
+			m_pos++;
+		}
+	}
+	
+	private void skipLine()
+	{
+		while(m_pos < m_end && m_buffer.get(m_pos) != '\n')
+		{
+			m_pos++;
+		}
+		m_pos++;
+	}
+	
+	private boolean atLineEnd()
+	{
+		if(m_pos >= m_end)
+		{
+			return true;
+		}
+		byte c = m_buffer.get(m_pos);
+		return c == '\n' || c == '\r' || c == '#';
+	}
+	
+	private byte peek(int offset)
+	{
+		int index = m_pos + offset;
+		return index < m_end ? m_buffer.get(index) : 0;
+	}
+	
+	private static boolean isBlank(byte c)
+	{
+		return c == ' ' || c == '\t';
+	}
+	
+	private static boolean isDigit(byte c)
+	{
+		return c >= '0' && c <= '9';
+	}
+}
@@ -2,25 +2,21 @@ package project3;
 
 import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.GL4;
+import com.jogamp.opengl.GLAnimatorControl;
 import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLContext;
 import com.jogamp.opengl.GLEventListener;
 import com.jogamp.opengl.awt.GLCanvas;
-import com.jogamp.opengl.util.FPSAnimator;
-import com.jogamp.opengl.util.texture.Texture;
-import com.jogamp.opengl.util.texture.TextureIO;
-import graphicslib3D.*;
 import graphicslib3D.light.AmbientLight;
 import graphicslib3D.light.PositionalLight;
-import graphicslib3D.shape.Sphere;
 
 import javax.swing.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.io.File;
-import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static com.jogamp.opengl.GL4.*;
 
@@ -36,7 +32,17 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 	/* ********* *
 	 * Constants *
 	 * ********* */
-	private static final int SPHERE_PRECISION = 24;
+	private static final String TITLE = "Project 3 - Lights, Materials, Textures, Shadows, and Skyboxes";
+	// Sphere tessellations from the finest to the coarsest, and the projected diameters in pixels down to which each
+	// but the last is drawn.
+	private static final int[] SPHERE_LOD_PRECISIONS = {48, 24, 12, 6};
+	private static final float[] SPHERE_LOD_SCREEN_SIZES = {400.0f, 150.0f, 40.0f};
+	// Fractions of the shuttle's triangles its levels keep, and their projected diameters as above.
+	private static final float[] SHUTTLE_LOD_TRIANGLE_RATIOS = {1.0f, 0.5f, 0.25f, 0.1f};
+	private static final float[] SHUTTLE_LOD_SCREEN_SIZES = {300.0f, 120.0f, 40.0f};
+	private static final float LOD_HYSTERESIS = 0.15f;
+	// The shadow pass draws this many levels coarser than the lit pass.
+	private static final int SHADOW_LOD_BIAS = 1;
 	private static final float TRANSLATE_FACTOR = 0.5f;
 	private static final float YAW_FACTOR = 0.1f;
 	private static final float PITCH_FACTOR = 0.1f;
@@ -44,9 +50,41 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 	private static final String EARTH_TEXTURE_FILE = "textures/earth.jpg";
 	private static final String SUN_TEXTURE_FILE = "textures/sun.jpg";
 	private static final String SKYBOX_TEXTURE_FILE = "textures/interstellar.jpg";
+	// Faces in GL order: +X, -X, +Y, -Y, +Z, -Z.
+	private static final String[] SKYBOX_CUBE_MAP_FILES = {"textures/stormySkybox/right.jpg", "textures/stormySkybox/left.jpg", "textures/stormySkybox/top.jpg",
+			"textures/stormySkybox/bottom.jpg", "textures/stormySkybox/front.jpg", "textures/stormySkybox/back.jpg"};
 	private static final String SHUTTLE_TEXTURE_FILE = "textures/shuttle.jpg";
 	private static final String LIGHT_TEXTURE_FILE = "textures/light.jpg";
+	private static final String ASTEROID_TEXTURE_FILE = "textures/moon.jpg";
 	private static final String SHUTTLE_OBJ_FILE = "shuttle.obj";
+	private static final VertexFormat VERTEX_FORMAT = VertexFormat.COMPACT;
+	private static final float NEAR_PLANE = 0.1f;
+	private static final float FAR_PLANE = 1000.0f;
+	// Size of the instanced demo scene: an asteroid belt of spheres around the sun and a fleet of shuttles above it.
+	private static final int ASTEROID_COUNT = Integer.getInteger("project3.asteroids", 2000);
+	private static final int FLEET_COUNT = Integer.getInteger("project3.fleet", 100);
+	private static final long INSTANCE_SEED = 4613;
+	// The asteroids are only ever a few pixels across, so the belt always draws this sphere level.
+	private static final int ASTEROID_LOD_LEVEL = 2;
+	// How far a node may move before the scene index is refit, in world units.
+	private static final float SCENE_INDEX_MARGIN = 1.0f;
+	// How frames are paced (fixed, vsync, uncapped or adaptive), and the frame rate of the fixed and adaptive modes.
+	private static final FramePacer.Mode PACING = FramePacer.Mode.parse(System.getProperty("project3.pacing", "fixed"));
+	private static final int TARGET_FRAME_RATE = Integer.getInteger("project3.fps", 60);
+	// The simulation runs this many steps per second whatever the frame rate, and frames interpolate between steps.
+	private static final int SIMULATION_RATE = Integer.getInteger("project3.simulationRate", 120);
+	private static final int MAX_SIMULATION_STEPS_PER_FRAME = 8;
+	// The animated angles, as indices into the angle arrays, and their speeds in degrees per second.
+	private static final int SUN_SPIN = 0;
+	private static final int SHUTTLE_TUMBLE = 1;
+	private static final int EARTH_SPIN = 2;
+	private static final int BELT_ORBIT = 3;
+	private static final float[] ANGULAR_SPEEDS = {10.0f, 100.0f, 20.0f, 2.5f};
+	// The GPU profiler overlay: a bar per scope, in the scope's color, on a background as long as a frame's period.
+	private static final int OVERLAY_BAR_HEIGHT = 6;
+	private static final int OVERLAY_MARGIN = 8;
+	private static final float[] OVERLAY_BACKGROUND = {0.2f, 0.2f, 0.2f, 1.0f};
+	private static final float[][] OVERLAY_COLORS = {{0.9f, 0.9f, 0.9f, 1.0f}, {0.9f, 0.3f, 0.2f, 1.0f}, {0.3f, 0.5f, 1.0f, 1.0f}, {0.3f, 0.9f, 0.3f, 1.0f}};
 	private static final float[] POSITIONAL_LIGHT_ON = new float[] {1.0f, 1.0f, 1.0f, 1.0f};
 	private static final float[] POSITIONAL_LIGHT_OFF = new float[] {0.0f, 0.0f, 0.0f, 1.0f};
 	
@@ -54,55 +92,95 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 	 * Member Variables *
 	 * **************** */
 	private GLCanvas m_myCanvas;
-	private int m_renderingProgram1, m_renderingProgram2, m_renderingProgram3;
-	private int[] m_vao;
-	private int[] m_vbo;
-	private Matrix3D m_modelMatrix, m_viewMatrix, m_modelViewMatrix;
+	private ShaderProgram m_renderingProgram1, m_renderingProgram2, m_renderingProgram3, m_renderingProgram4;
+	private FrameUniforms m_frameUniforms;
+	private GpuProfiler m_gpuProfiler;
+	private int m_frameScope, m_shadowScope, m_skyboxScope, m_litScope;
+	private Mesh m_skyboxMesh, m_lightMesh;
+	private LodGroup m_sphereLods, m_shuttleLods;
+	private SceneNode m_scene, m_sunNode, m_shuttleNode, m_earthNode, m_lightNode, m_asteroidBeltNode, m_fleetNode;
+	private SceneIndex m_sceneIndex;
+	private FrameBuilder m_frameBuilder;
+	// Triple buffering between the frame preparation thread and the GL thread.
+	private SnapshotExchange m_snapshots;
+	private FrameWorker m_framePreparation;
+	private SimulationClock m_clock;
+	// The animated angles in degrees after the last simulation step, and before it.
+	private float[] m_angles, m_previousAngles;
+	// Key codes pressed on the AWT event thread, applied when the next frame preparation starts.
+	private ConcurrentLinkedQueue<Integer> m_pendingKeys;
+	private volatile int m_canvasWidth, m_canvasHeight;
+	private long m_lastTitleNanos;
+	// Frames since the last title update that drew the previous snapshot again because the next was not ready.
+	private int m_repeatedFrameCount;
+	// The most any frame since the last title update allocated, which should stay at zero once everything is loaded.
+	private AllocationCounter m_allocationCounter;
+	private long m_maxFrameAllocatedBytes;
+	// The flight recorder events of the render loop, each reused by the one thread that records it (see RenderEvents).
+	private RenderEvents.Frame m_frameEvent;
+	private RenderEvents.FramePreparation m_framePreparationEvent;
+	private RenderEvents.ShadowPass m_shadowPassEvent;
+	private RenderEvents.LitPass m_litPassEvent;
+	private RenderEvents.InstallLights m_installLightsEvent;
 	private float m_cameraX, m_cameraY, m_cameraZ, m_cameraPitch, m_cameraYaw;
-	private Vector3D m_forwardVector;
+	private Vec3 m_forwardVector, m_sideVector, m_topVector;
 	private float m_sunLocX, m_sunLocY, m_sunLocZ;
-	private FPSAnimator m_animator;
-	private Sphere m_sun, m_earth;
-	private int m_sunTexture, m_earthTexture, m_skyboxTexture, m_shuttleTexture, m_lightTexture;
+	private FramePacer m_framePacer;
+	private GLAnimatorControl m_animator;
+	private TextureManager m_textures;
+	private int m_sunTexture, m_earthTexture, m_skyboxTexture, m_skyboxCubeMap, m_shuttleTexture, m_lightTexture, m_asteroidTexture;
 	private boolean m_usePositionalLight;
+	private boolean m_useCubeMapSkybox;
+	private boolean m_showProfilerOverlay;
 	private ImportedModel m_shuttle;
 	private PositionalLight m_positionalLight;
-	private Point3D m_lightLocation;
+	// Whether the light colors in the frame uniforms are those of the light switched on.
+	private boolean m_lightColorsOn;
+	private Vec3 m_lightLocation;
 	private AmbientLight m_globalAmbient;
 	private int m_screenSizeX, m_screenSizeY;
 	private int[] m_shadowTex;
 	private int[] m_shadowBuffer;
-	private Matrix3D m_lightVMatrix;
-	private Matrix3D m_lightPMatrix;
-	private Matrix3D m_shadowMVP;
-	private Matrix3D m_shadowMVP2;
-	private Matrix3D m_b;
+	private Mat4 m_lightVMatrix;
+	private Mat4 m_lightPMatrix;
+	private FloatBuffer m_clearColor;
+	private long m_startNanos;
+	private boolean m_firstFrameShown, m_texturesResident;
 	
 	public Project3()
 	{
+		m_startNanos = System.nanoTime();
+		
 		// Initialize default member variable values.
-		m_vao = new int[1];
-		m_vbo = new int[27];
-		m_modelMatrix = new Matrix3D();
-		m_viewMatrix = new Matrix3D();
-		m_modelViewMatrix = new Matrix3D();
-		m_sun = new Sphere(SPHERE_PRECISION);
-		m_earth = new Sphere(SPHERE_PRECISION);
 		m_usePositionalLight = true;
+		m_useCubeMapSkybox = true;
 		m_positionalLight = new PositionalLight();
-		m_lightLocation = new Point3D(0.0f, 5.0f, 0.0f);
+		m_lightLocation = new Vec3(0.0f, 5.0f, 0.0f);
 		m_globalAmbient = AmbientLight.getAmbientLight();
 		m_globalAmbient.setValues(new float[] {0.7f, 0.7f, 0.7f, 1.0f});
 		m_shadowTex = new int[1];
 		m_shadowBuffer = new int[1];
-		m_lightVMatrix = new Matrix3D();
-		m_lightPMatrix = new Matrix3D();
-		m_shadowMVP = new Matrix3D();
-		m_shadowMVP2 = new Matrix3D();
-		m_b = new Matrix3D();
+		m_lightVMatrix = new Mat4();
+		m_lightPMatrix = new Mat4();
+		m_clearColor = Buffers.newDirectFloatBuffer(new float[] {0.0f, 0.0f, 0.0f, 1.0f});
+		m_forwardVector = new Vec3(0.0f, 0.0f, -1.0f);
+		m_sideVector = new Vec3();
+		m_topVector = new Vec3();
+		m_sceneIndex = new SceneIndex(SCENE_INDEX_MARGIN);
+		m_allocationCounter = new AllocationCounter();
+		m_snapshots = new SnapshotExchange();
+		m_pendingKeys = new ConcurrentLinkedQueue<Integer>();
+		m_clock = new SimulationClock(1_000_000_000L / SIMULATION_RATE, MAX_SIMULATION_STEPS_PER_FRAME);
+		m_angles = new float[ANGULAR_SPEEDS.length];
+		m_previousAngles = new float[ANGULAR_SPEEDS.length];
+		m_frameEvent = new RenderEvents.Frame();
+		m_framePreparationEvent = new RenderEvents.FramePreparation();
+		m_shadowPassEvent = new RenderEvents.ShadowPass();
+		m_litPassEvent = new RenderEvents.LitPass();
+		m_installLightsEvent = new RenderEvents.InstallLights();
 		
 		// Set up JFrame properties.
-		setTitle("Project 3 - Lights, Materials, Textures, Shadows, and Skyboxes");
+		setTitle(TITLE);
 		setSize(800, 800);
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setResizable(false);
@@ -111,29 +189,59 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 		m_myCanvas.addKeyListener(this);
 		getContentPane().add(m_myCanvas);
 		this.setVisible(true);
-		m_animator = new FPSAnimator(m_myCanvas, 60);
+		RenderStats.register();
+		m_framePacer = new FramePacer(PACING, TARGET_FRAME_RATE);
+		m_animator = m_framePacer.createAnimator(m_myCanvas);
 		m_animator.start();
 	}
 	
 	public void display(GLAutoDrawable drawable)
 	{
 		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_framePacer.beginFrame();
+		m_frameEvent.begin();
+		m_gpuProfiler.beginFrame();
+		m_gpuProfiler.begin(m_frameScope);
+		long allocatedBefore = m_allocationCounter.getAllocatedBytes();
+		
+		// Draw the newest frame the preparation thread has published, and have it prepare the next one meanwhile. If it
+		// has not finished one since the last display, the same frame is drawn again rather than waited for.
+		long preparedBytes = 0;
+		boolean repeated = !m_snapshots.acquire();
+		if(!repeated)
+		{
+			preparedBytes = m_snapshots.getFront().getAllocatedBytes();
+		}
+		else
+		{
+			m_repeatedFrameCount++;
+		}
+		m_framePreparation.start();
 		
-		m_positionalLight.setPosition(m_lightLocation);
-		
-		updateForward();
+		// Stream the next slice of any texture that is still loading, and report startup times.
+		m_textures.update();
+		if(!m_firstFrameShown)
+		{
+			m_firstFrameShown = true;
+			System.out.printf("First frame after %.1f ms%n", (System.nanoTime() - m_startNanos) / 1e6);
+		}
+		if(!m_texturesResident && !m_textures.isLoading())
+		{
+			m_texturesResident = true;
+			System.out.printf("All textures resident after %.1f ms, %.1f MiB of video memory (%.1f MiB as RGBA8)%n", (System.nanoTime() - m_startNanos) / 1e6,
+					m_textures.getTextureBytes() / 1048576.0, m_textures.getUncompressedTextureBytes() / 1048576.0);
+		}
 		
 		// Clear the depth buffer so no trails are left behind.
 		gl.glClear(GL_DEPTH_BUFFER_BIT);
-		float[] bkg = {0.0f, 0.0f, 0.0f, 1.0f};
-		FloatBuffer bkgBuffer = Buffers.newDirectFloatBuffer(bkg);
-		gl.glClearBufferfv(GL_COLOR, 0, bkgBuffer);
+		gl.glClearBufferfv(GL_COLOR, 0, m_clearColor);
 		
 		gl.glClear(GL_DEPTH_BUFFER_BIT);
 		
 		// Make the custom frame buffer current, and associate it with the shadow texture.
 		gl.glBindFramebuffer(GL_FRAMEBUFFER, m_shadowBuffer[0]);
 		gl.glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, m_shadowTex[0], 0);
+		RenderStats.get().countStateChange();
 		
 		// Disable drawing colors, but enable the depth computation.
 		gl.glDrawBuffer(GL_NONE);
@@ -141,502 +249,560 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 		gl.glEnable(GL_POLYGON_OFFSET_FILL);
 		gl.glPolygonOffset(2.0f, 4.0f);
 		
+		m_gpuProfiler.begin(m_shadowScope);
 		passOne();
+		m_gpuProfiler.end(m_shadowScope);
 		
 		gl.glDisable(GL_POLYGON_OFFSET_FILL);
 		
 		// Restore the default display buffer, and re-enable drawing.
 		gl.glBindFramebuffer(GL_FRAMEBUFFER, 0);
+		RenderStats.get().countStateChange();
 		gl.glActiveTexture(GL_TEXTURE0);
 		gl.glBindTexture(GL_TEXTURE_2D, m_shadowTex[0]);
+		RenderStats.get().countStateChange();
 		// Drawing only front faces allows back face culling.
 		gl.glDrawBuffer(GL_FRONT);
 		
 		passTwo();
+		m_gpuProfiler.end(m_frameScope);
+		if(m_snapshots.getFront().isProfilerOverlay())
+		{
+			drawProfilerOverlay();
+		}
+		// Counts what both threads allocated for the frame.
+		m_maxFrameAllocatedBytes = Math.max(m_maxFrameAllocatedBytes, m_allocationCounter.getAllocatedBytes() - allocatedBefore + preparedBytes);
+		
+		m_frameEvent.snapshot = m_snapshots.getFront().getFrame();
+		m_frameEvent.repeated = repeated;
+		m_frameEvent.commit();
+		RenderStats.get().endFrame();
+		m_framePacer.endFrame();
+		
+		// Show the frame times, how much each pass culled, how much the frames allocated and how many were repeated, once a
+		// second.
+		long now = System.nanoTime();
+		if(now - m_lastTitleNanos > 1_000_000_000L)
+		{
+			m_lastTitleNanos = now;
+			m_framePacer.update();
+			m_gpuProfiler.update();
+			FrameTimeStats frameTimes = m_framePacer.getFrameTimes();
+			FrameSnapshot snapshot = m_snapshots.getFront();
+			String title = String.format("%s - %s %d fps, frame ms p50 %.1f p95 %.1f p99 %.1f max %.1f, work ms p95 %.1f - culled %d of %d shadow casters, "
+					+ "%d of %d objects in view, %d bytes allocated per frame, %d repeated frames", TITLE, m_framePacer.getMode(),
+					Math.round(1000.0 / Math.max(frameTimes.getP50Millis(), 0.001)), frameTimes.getP50Millis(), frameTimes.getP95Millis(),
+					frameTimes.getP99Millis(), frameTimes.getMaxMillis(), m_framePacer.getWorkTimes().getP95Millis(), getShadowCulledCount(),
+					getShadowCulledCount() + snapshot.getShadowDraws().size(), getViewCulledCount(), getViewCulledCount() + snapshot.getDraws().size(), m_maxFrameAllocatedBytes, m_repeatedFrameCount);
+			SwingUtilities.invokeLater(() -> setTitle(title));
+			m_maxFrameAllocatedBytes = 0;
+			m_repeatedFrameCount = 0;
+		}
+	}
+	
+	/**
+	 * Returns the frame pacer, whose frame and work time distributions are updated once a second.
+	 */
+	public FramePacer getFramePacer()
+	{
+		return m_framePacer;
+	}
+	
+	/**
+	 * Returns how many shadow casters the last frame's shadow pass skipped because they were outside the light's frustum.
+	 */
+	public int getShadowCulledCount()
+	{
+		return m_snapshots.getFront().getShadowDraws().getCulledCount();
+	}
+	
+	/**
+	 * Returns how many objects the last frame's lit pass skipped because they were outside the camera's frustum.
+	 */
+	public int getViewCulledCount()
+	{
+		return m_snapshots.getFront().getDraws().getCulledCount();
 	}
 	
 	public void passOne()
 	{
 		GL4 gl = (GL4) GLContext.getCurrentGL();
+		DrawList draws = m_snapshots.getFront().getShadowDraws();
+		m_shadowPassEvent.begin();
 		
 		// m_renderingProgram1 contains only the pass one vertex shader.
-		gl.glUseProgram(m_renderingProgram1);
+		m_renderingProgram1.use();
 		
-		// Build the light's P and V matrices to look-at the origin.
-		Point3D origin = new Point3D(0.0, 0.0, 0.0);
-		Vector3D up = new Vector3D(0.0, 1.0, 0.0);
-		m_lightVMatrix.setToIdentity();
-		m_lightPMatrix.setToIdentity();
-		// Vector from light to origin.
-		m_lightVMatrix = lookAt(m_positionalLight.getPosition(), origin, up);
-		float aspect = (float) m_myCanvas.getWidth() / (float) m_myCanvas.getHeight();
-		m_lightPMatrix = perspective(60.0f, aspect, 0.1f, 1000.0f);
-		
-		int shadowLoc = gl.glGetUniformLocation(m_renderingProgram1, "shadowMVP");
-		
-		/* *** *
-		 * Sun *
-		 * *** */
-		
-		m_modelMatrix.setToIdentity();
-		m_modelMatrix.translate(m_sunLocX, m_sunLocY, m_sunLocZ);
-		m_modelMatrix.rotateY(((System.currentTimeMillis()) / 100.0) % 360);
-		
-		// We are drawing from the light's point of view, so we use the light's P and V matrices.
-		m_shadowMVP.setToIdentity();
-		m_shadowMVP.concatenate(m_lightPMatrix);
-		m_shadowMVP.concatenate(m_lightVMatrix);
-		m_shadowMVP.concatenate(m_modelMatrix);
-		gl.glUniformMatrix4fv(shadowLoc, 1, false, m_shadowMVP.getFloatValues(), 0);
-		
-		// Bind the vertex buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[0]);
-		gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(0);
+		int shadowLoc = m_renderingProgram1.getUniformLocation("shadowMVP");
 		
 		// Enable depth test and face-culling.
 		gl.glClear(GL_DEPTH_BUFFER_BIT);
 		gl.glEnable(GL_DEPTH_TEST);
 		gl.glEnable(GL_CULL_FACE);
-		gl.glFrontFace(GL_CCW);
-		gl.glDepthFunc(GL_LEQUAL);
-		
-		// Draw the object.
-		int numVerts = m_sun.getIndices().length;
-		gl.glDrawArrays(GL_TRIANGLES, 0, numVerts);
-		
-		/* ******* *
-		 * Shuttle *
-		 * ******* */
-		
-		m_modelMatrix.setToIdentity();
-		m_modelMatrix.translate(-5.0, 0.0, 0.0);
-		m_modelMatrix.rotateX((System.currentTimeMillis()) % 360);
-		m_modelMatrix.rotateY((System.currentTimeMillis()) % 360);
-		m_modelMatrix.rotateZ((System.currentTimeMillis()) % 360);
-		
-		// We are drawing from the light's point of view, so we use the light's P and V matrices.
-		m_shadowMVP.setToIdentity();
-		m_shadowMVP.concatenate(m_lightPMatrix);
-		m_shadowMVP.concatenate(m_lightVMatrix);
-		m_shadowMVP.concatenate(m_modelMatrix);
-		gl.glUniformMatrix4fv(shadowLoc, 1, false, m_shadowMVP.getFloatValues(), 0);
-		
-		// Bind the vertex buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[21]);
-		gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(0);
-		
-		// Enable depth test and face-culling.
-		gl.glEnable(GL_DEPTH_TEST);
-		gl.glEnable(GL_CULL_FACE);
-		gl.glFrontFace(GL_CCW);
-		gl.glDepthFunc(GL_LEQUAL);
-		
-		// Draw the object.
-		numVerts = m_shuttle.getVertices().length;
-		gl.glDrawArrays(GL_TRIANGLES, 0, numVerts);
-		
-		/* ***** *
-		 * Earth *
-		 * ***** */
-		
-		m_modelMatrix.setToIdentity();
-		m_modelMatrix.translate(5.0, 0.0, 0.0);
-		m_modelMatrix.rotateY(((System.currentTimeMillis()) / 50.0) % 360);
-		m_modelMatrix.scale(0.75, 0.75, 0.75);
-		
-		// We are drawing from the light's point of view, so we use the light's P and V matrices.
-		m_shadowMVP.setToIdentity();
-		m_shadowMVP.concatenate(m_lightPMatrix);
-		m_shadowMVP.concatenate(m_lightVMatrix);
-		m_shadowMVP.concatenate(m_modelMatrix);
-		gl.glUniformMatrix4fv(shadowLoc, 1, false, m_shadowMVP.getFloatValues(), 0);
-		
-		// Bind the vertex buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[3]);
-		gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(0);
-		
-		// Enable depth test and face-culling.
-		gl.glEnable(GL_DEPTH_TEST);
-		gl.glEnable(GL_CULL_FACE);
-		gl.glFrontFace(GL_CCW);
 		gl.glDepthFunc(GL_LEQUAL);
 		
-		// Draw the object.
-		numVerts = m_earth.getIndices().length;
-		gl.glDrawArrays(GL_TRIANGLES, 0, numVerts);
+		// Draw the shadow casters from the light's point of view, grouped by mesh and nearest first.
+		float[] shadowMVPs = draws.getMatrices(FrameSnapshot.SHADOW_MVP);
+		int frontFace = 0;
+		int vertexArray = -1;
+		Mesh mesh = null;
+		for(int i = 0; i < draws.size(); i++)
+		{
+			SceneNode node = draws.getNode(i);
+			if(node.getFrontFace() != frontFace)
+			{
+				frontFace = node.getFrontFace();
+				gl.glFrontFace(frontFace);
+				RenderStats.get().countStateChange();
+			}
+			if(draws.getVertexArray(i) != vertexArray)
+			{
+				vertexArray = draws.getVertexArray(i);
+				gl.glBindVertexArray(vertexArray);
+				RenderStats.get().countStateChange();
+			}
+			if(draws.getMesh(i) != mesh)
+			{
+				mesh = draws.getMesh(i);
+				mesh.setDequantizationUniforms(m_renderingProgram1);
+			}
+			
+			// We are drawing from the light's point of view, so we use the light's P and V matrices.
+			gl.glUniformMatrix4fv(shadowLoc, 1, false, shadowMVPs, i * 16);
+			
+			draws.draw(i);
+		}
+		m_shadowPassEvent.draws = draws.size();
+		m_shadowPassEvent.commit();
 	}
 	
 	public void passTwo()
 	{
 		GL4 gl = (GL4) GLContext.getCurrentGL();
+		FrameSnapshot snapshot = m_snapshots.getFront();
+		m_litPassEvent.begin();
 		
-		// m_renderingProgram2 includes the vertex and fragment shader which ignore lighting and shadows.
-		gl.glUseProgram(m_renderingProgram2);
-		
-		// Get the memory locations of the uniforms in the shaders.
-		int mvLoc2 = gl.glGetUniformLocation(m_renderingProgram2, "mv_matrix");
-		int projLoc2 = gl.glGetUniformLocation(m_renderingProgram2, "proj_matrix");
-		
-		// Construct perspective projection matrix.
-		float aspect = (float) m_myCanvas.getWidth() / (float) m_myCanvas.getHeight();
-		Matrix3D pMat = perspective(60.0f, aspect, 0.1f, 1000.0f);
-		
-		// Set up view matrix.
-		m_viewMatrix.setToIdentity();
-		m_viewMatrix =
-				lookAt(new Point3D(m_cameraX, m_cameraY, m_cameraZ), new Point3D(m_cameraX + m_forwardVector.getX(), m_cameraY + m_forwardVector.getY(), m_cameraZ + m_forwardVector.getZ()),
-						new Vector3D(0.0f, 1.0f, 0.0f));
-		
-		// Pass the projection matrix to a uniform in the shader.
-		gl.glUniformMatrix4fv(projLoc2, 1, false, pMat.getFloatValues(), 0);
+		// Everything that stays the same for the rest of the frame goes into the shared uniform buffer.
+		m_frameUniforms.setProjection(snapshot.getProjection());
+		m_frameUniforms.setView(snapshot.getView());
+		installLights(snapshot);
+		m_frameUniforms.upload();
 		
 		/* ****** *
 		 * Skybox *
 		 * ****** */
 		
-		// Pass the model-view matrix to a uniform in the shader.
-		gl.glUniformMatrix4fv(mvLoc2, 1, false, m_viewMatrix.getFloatValues(), 0);
+		// The cross-layout skybox is drawn first, under everything else; the cube map is drawn last, below.
+		if(!snapshot.isCubeMapSkybox())
+		{
+			m_gpuProfiler.begin(m_skyboxScope);
+			
+			// m_renderingProgram2 includes the vertex and fragment shader which ignore lighting and shadows.
+			m_renderingProgram2.use();
+			
+			// Pass the model-view matrix to a uniform in the shader.
+			gl.glUniformMatrix4fv(m_renderingProgram2.getUniformLocation("mv_matrix"), 1, false, snapshot.getView().getValues(), 0);
+			
+			// Activate the skybox texture.
+			m_textures.bind(m_skyboxTexture);
+			gl.glEnable(GL_CULL_FACE);
+			gl.glFrontFace(GL_CCW); // Cube is CW, but we are viewing its interior.
+			RenderStats.get().countStateChange();
+			gl.glDisable(GL_DEPTH_TEST);
+			m_skyboxMesh.draw(m_renderingProgram2); // Draw skybox without depth testing.
+			m_gpuProfiler.end(m_skyboxScope);
+		}
 		
-		// Bind the vertex buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[18]);
-		gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(0);
+		/* ***** *
+		 * Scene *
+		 * ***** */
 		
-		// Bind the texture buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[19]);
-		gl.glVertexAttribPointer(1, 2, GL_DOUBLE, false, 0, 0);
-		gl.glEnableVertexAttribArray(1);
+		m_gpuProfiler.begin(m_litScope);
 		
-		// Activate the skybox texture.
-		gl.glActiveTexture(GL_TEXTURE1);
-		gl.glBindTexture(GL_TEXTURE_2D, m_skyboxTexture);
-		gl.glEnable(GL_CULL_FACE);
-		gl.glFrontFace(GL_CCW); // Cube is CW, but we are viewing its interior.
-		gl.glDisable(GL_DEPTH_TEST);
-		gl.glDrawArrays(GL_TRIANGLES, 0, 36); // Draw skybox without depth testing.
+		// Enable depth test and face-culling.
 		gl.glEnable(GL_DEPTH_TEST);
+		gl.glEnable(GL_CULL_FACE);
+		gl.glDepthFunc(GL_LEQUAL);
 		
-		/* **************** *
-		 * Positional Light *
-		 * **************** */
-		
-		if(m_usePositionalLight)
+		// Draw the scene sorted by program, texture and mesh, so each of them is only switched when it changes.
+		DrawList draws = snapshot.getDraws();
+		float[] modelViews = draws.getMatrices(FrameSnapshot.MODEL_VIEW);
+		float[] normals = draws.getMatrices(FrameSnapshot.NORMAL);
+		float[] shadows = draws.getMatrices(FrameSnapshot.SHADOW);
+		
+		ShaderProgram program = null;
+		int texture = -1;
+		int frontFace = 0;
+		int vertexArray = -1;
+		Mesh mesh = null;
+		int mvLoc = -1;
+		int nLoc = -1;
+		int shadowLoc = -1;
+		for(int i = 0; i < draws.size(); i++)
 		{
-			m_modelMatrix.setToIdentity();
-			m_modelViewMatrix.setToIdentity();
-			
-			// Apply transformations to the model-view matrix.
-			m_modelMatrix.translate(m_lightLocation.getX(), m_lightLocation.getY(), m_lightLocation.getZ());
-			m_modelViewMatrix.concatenate(m_viewMatrix);
-			m_modelViewMatrix.concatenate(m_modelMatrix);
+			SceneNode node = draws.getNode(i);
+			if(node.getProgram() != program)
+			{
+				// Get the locations of the uniforms in the shader.
+				program = node.getProgram();
+				program.use();
+				mvLoc = program.getUniformLocation("mv_matrix");
+				nLoc = program.getUniformLocation("norm_matrix");
+				shadowLoc = program.getUniformLocation("shadowMVP2");
+				// The dequantization uniforms belong to the program, so the new one needs them again.
+				mesh = null;
+			}
+			if(node.getTexture() != texture)
+			{
+				texture = node.getTexture();
+				m_textures.bind(texture);
+			}
+			if(node.getFrontFace() != frontFace)
+			{
+				frontFace = node.getFrontFace();
+				gl.glFrontFace(frontFace);
+				RenderStats.get().countStateChange();
+			}
+			if(draws.getVertexArray(i) != vertexArray)
+			{
+				vertexArray = draws.getVertexArray(i);
+				gl.glBindVertexArray(vertexArray);
+				RenderStats.get().countStateChange();
+			}
+			if(draws.getMesh(i) != mesh)
+			{
+				mesh = draws.getMesh(i);
+				mesh.setDequantizationUniforms(program);
+			}
 			
 			// Pass the model-view matrix to a uniform in the shader.
-			gl.glUniformMatrix4fv(mvLoc2, 1, false, m_modelViewMatrix.getFloatValues(), 0);
-			
-			// Bind the vertex buffer to a vertex attribute.
-			gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[24]);
-			gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-			gl.glEnableVertexAttribArray(0);
+			gl.glUniformMatrix4fv(mvLoc, 1, false, modelViews, i * 16);
 			
-			// Bind the texture buffer to a vertex attribute.
-			gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[25]);
-			gl.glVertexAttribPointer(1, 2, GL_DOUBLE, false, 0, 0);
-			gl.glEnableVertexAttribArray(1);
-			
-			// Set up texture.
-			gl.glActiveTexture(GL_TEXTURE1);
-			gl.glBindTexture(GL_TEXTURE_2D, m_lightTexture);
-			gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-			gl.glGenerateMipmap(GL_TEXTURE_2D);
-			if(gl.isExtensionAvailable("GL_EXT_texture_filer_anisotropic"))
+			// Lit programs also take the normal matrix and the MVP matrix from the light's point of view.
+			if(nLoc != -1)
 			{
-				float[] max = new float[1];
-				gl.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, max, 0);
-				gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAX_ANISOTROPY_EXT, max[0]);
+				gl.glUniformMatrix4fv(nLoc, 1, false, normals, i * 16);
+			}
+			if(shadowLoc != -1)
+			{
+				gl.glUniformMatrix4fv(shadowLoc, 1, false, shadows, i * 16);
 			}
 			
-			// Enable depth test and face-culling.
-			gl.glEnable(GL_DEPTH_TEST);
-			gl.glEnable(GL_CULL_FACE);
-			gl.glFrontFace(GL_CW);
-			
-			// Draw the object.
-			gl.glDrawArrays(GL_TRIANGLES, 0, 36);
+			draws.draw(i);
 		}
+		m_gpuProfiler.end(m_litScope);
 		
-		// Switch rendering programs.
-		gl.glUseProgram(m_renderingProgram3);
+		/* *************** *
+		 * Cube Map Skybox *
+		 * *************** */
 		
-		// Set up lights based on the light's current position.
-		installLights(m_viewMatrix);
+		if(snapshot.isCubeMapSkybox())
+		{
+			// The shader places the sky at depth 1, so with GL_LEQUAL it only shades the pixels nothing else covered.
+			m_gpuProfiler.begin(m_skyboxScope);
+			m_renderingProgram4.use();
+			m_textures.bind(m_skyboxCubeMap);
+			gl.glFrontFace(GL_CCW); // Cube is CW, but we are viewing its interior.
+			RenderStats.get().countStateChange();
+			m_skyboxMesh.draw(m_renderingProgram4);
+			m_gpuProfiler.end(m_skyboxScope);
+		}
+		m_litPassEvent.draws = draws.size();
+		m_litPassEvent.commit();
+	}
+	
+	/**
+	 * Prepares the next frame in the back snapshot and publishes it. Runs on the frame preparation thread, apart from the
+	 * first frame, which init() prepares; after init(), only this method and what it calls touch the camera, the light's
+	 * location, the scene's nodes, the scene index and the render queues.
+	 */
+	private void prepareFrame()
+	{
+		long allocatedBefore = m_allocationCounter.getAllocatedBytes();
+		FrameSnapshot snapshot = m_snapshots.getBack();
+		m_framePreparationEvent.begin();
 		
-		// Get the locations of the uniforms in the shader.
-		int mvLoc = gl.glGetUniformLocation(m_renderingProgram3, "mv_matrix");
-		int projLoc = gl.glGetUniformLocation(m_renderingProgram3, "proj_matrix");
-		int nLoc = gl.glGetUniformLocation(m_renderingProgram3, "norm_matrix");
-		int shadowLoc = gl.glGetUniformLocation(m_renderingProgram3, "shadowMVP2");
+		// Keys pressed since the last frame take effect before anything else, so the whole frame sees the same input.
+		applyPendingKeys();
+		updateForward();
 		
-		// Pass the projection matrix to a uniform in the shader.
-		gl.glUniformMatrix4fv(projLoc, 1, false, pMat.getFloatValues(), 0);
-
-		/* *** *
-		 * Sun *
-		 * *** */
-		
-		m_modelMatrix.setToIdentity();
-		m_modelViewMatrix.setToIdentity();
-		
-		// Apply transformations to the model-view matrix.
-		m_modelMatrix.translate(m_sunLocX, m_sunLocY, m_sunLocZ);
-		m_modelMatrix.rotateY((System.currentTimeMillis()) / 100.0 % 360);
-		m_modelViewMatrix.concatenate(m_viewMatrix);
-		m_modelViewMatrix.concatenate(m_modelMatrix);
-		
-		// Build the MVP matrix from the light's point of view.
-		m_shadowMVP2.setToIdentity();
-		m_shadowMVP2.concatenate(m_b);
-		m_shadowMVP2.concatenate(m_lightPMatrix);
-		m_shadowMVP2.concatenate(m_lightVMatrix);
-		m_shadowMVP2.concatenate(m_modelMatrix);
-
-		// Pass the model-view and normal matrices to uniforms in the shader.
-		gl.glUniformMatrix4fv(mvLoc, 1, false, m_modelViewMatrix.getFloatValues(), 0);
-		gl.glUniformMatrix4fv(nLoc, 1, false, m_modelViewMatrix.inverse().transpose().getFloatValues(), 0);
-		gl.glUniformMatrix4fv(shadowLoc, 1, false, m_shadowMVP2.getFloatValues(), 0);
-
-		// Bind the vertex buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[0]);
-		gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(0);
-
-		// Bind the texture buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[1]);
-		gl.glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(1);
-
-		// Bind the normal buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[2]);
-		gl.glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(2);
-
-		// Set up texture.
-		gl.glActiveTexture(GL_TEXTURE1);
-		gl.glBindTexture(GL_TEXTURE_2D, m_sunTexture);
-		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-		gl.glGenerateMipmap(GL_TEXTURE_2D);
-		if(gl.isExtensionAvailable("GL_EXT_texture_filer_anisotropic"))
+		// Run the simulation steps that are due by this frame's time, which is the only clock reading of the frame.
+		int steps = m_clock.advance(System.nanoTime());
+		for(int i = 0; i < steps; i++)
 		{
-			float[] max = new float[1];
-			gl.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, max, 0);
-			gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAX_ANISOTROPY_EXT, max[0]);
+			stepSimulation();
 		}
-
-		// Enable depth test and face-culling.
-		//gl.glClear(GL_DEPTH_BUFFER_BIT);
-		gl.glEnable(GL_DEPTH_TEST);
-		gl.glEnable(GL_CULL_FACE);
-		gl.glFrontFace(GL_CCW);
-		gl.glDepthFunc(GL_LEQUAL);
-
-		// Draw the object.
-		int numVerts = m_sun.getIndices().length;
-		gl.glDrawArrays(GL_TRIANGLES, 0, numVerts);
-
-		/* ******* *
-		 * Shuttle *
-		 * ******* */
-		
-		m_modelMatrix.setToIdentity();
-		m_modelViewMatrix.setToIdentity();
-		
-		// Apply transformations to the model-view matrix.
-		m_modelMatrix.translate(-5.0, 0.0, 0.0);
-		m_modelMatrix.rotateX((System.currentTimeMillis() / 10.0) % 360);
-		m_modelMatrix.rotateY((System.currentTimeMillis() / 10.0) % 360);
-		m_modelMatrix.rotateZ((System.currentTimeMillis() / 10.0) % 360);
-		m_modelViewMatrix.concatenate(m_viewMatrix);
-		m_modelViewMatrix.concatenate(m_modelMatrix);
-		
-		// Build the MVP matrix from the light's point of view.
-		m_shadowMVP2.setToIdentity();
-		m_shadowMVP2.concatenate(m_b);
-		m_shadowMVP2.concatenate(m_lightPMatrix);
-		m_shadowMVP2.concatenate(m_lightVMatrix);
-		m_shadowMVP2.concatenate(m_modelMatrix);
-		
-		// Pass the model-view and normal matrices to uniforms in the shader.
-		gl.glUniformMatrix4fv(mvLoc, 1, false, m_modelViewMatrix.getFloatValues(), 0);
-		gl.glUniformMatrix4fv(nLoc, 1, false, m_modelViewMatrix.inverse().transpose().getFloatValues(), 0);
-		gl.glUniformMatrix4fv(shadowLoc, 1, false, m_shadowMVP2.getFloatValues(), 0);
-
-		// Bind the vertex buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[21]);
-		gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(0);
-
-		// Bind the texture buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[22]);
-		gl.glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(1);
-
-		// Bind the normal buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[23]);
-		gl.glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(2);
-
-		// Set up texture.
-		gl.glActiveTexture(GL_TEXTURE1);
-		gl.glBindTexture(GL_TEXTURE_2D, m_shuttleTexture);
-		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-		gl.glGenerateMipmap(GL_TEXTURE_2D);
-		if(gl.isExtensionAvailable("GL_EXT_texture_filer_anisotropic"))
+		
+		// Both passes draw the scene as it is at this point, between the last two steps.
+		updateScene(m_clock.getAlpha());
+		
+		// Build the light's P and V matrices to look-at the origin.
+		float aspect = (float) m_canvasWidth / (float) m_canvasHeight;
+		m_lightVMatrix.lookAt(m_lightLocation.getX(), m_lightLocation.getY(), m_lightLocation.getZ(), 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+		m_lightPMatrix.perspective(60.0f, aspect, NEAR_PLANE, FAR_PLANE);
+		
+		// Construct the camera's perspective projection and view matrices.
+		Mat4 projection = snapshot.getProjection().perspective(60.0f, aspect, NEAR_PLANE, FAR_PLANE);
+		Mat4 view = snapshot.getView().lookAt(m_cameraX, m_cameraY, m_cameraZ, m_cameraX + m_forwardVector.getX(), m_cameraY + m_forwardVector.getY(),
+				m_cameraZ + m_forwardVector.getZ(), 0.0f, 1.0f, 0.0f);
+		
+		// The light's position goes in in view space.
+		snapshot.getLightViewPosition().set(m_lightLocation).transformPoint(view);
+		snapshot.setLightOn(m_usePositionalLight);
+		snapshot.setCubeMapSkybox(m_useCubeMapSkybox);
+		snapshot.setProfilerOverlay(m_showProfilerOverlay);
+		
+		// Cull both passes, sort their draws and compute their per-object matrices.
+		float lightProjectionScale = m_screenSizeY / 2.0f * m_lightPMatrix.get(1, 1);
+		float projectionScale = m_canvasHeight / 2.0f * projection.get(1, 1);
+		m_frameBuilder.build(m_sceneIndex, m_lightPMatrix, m_lightVMatrix, lightProjectionScale, projectionScale, snapshot);
+		
+		// Publish the snapshot, and take the one it replaces, which the GL thread no longer reads, for the next frame.
+		snapshot.setAllocatedBytes(m_allocationCounter.getAllocatedBytes() - allocatedBefore);
+		m_framePreparationEvent.snapshot = m_snapshots.publish();
+		m_framePreparationEvent.simulationSteps = steps;
+		m_framePreparationEvent.commit();
+	}
+	
+	/**
+	 * Advances the animation by one step of the simulation clock.
+	 */
+	private void stepSimulation()
+	{
+		float stepSeconds = m_clock.getStepSeconds();
+		for(int i = 0; i < m_angles.length; i++)
 		{
-			float[] max = new float[1];
-			gl.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, max, 0);
-			gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAX_ANISOTROPY_EXT, max[0]);
+			m_previousAngles[i] = m_angles[i];
+			m_angles[i] += ANGULAR_SPEEDS[i] * stepSeconds;
+			if(m_angles[i] >= 360.0f)
+			{
+				// Both go back a full turn, so that interpolating between them does not sweep back through the circle.
+				m_angles[i] -= 360.0f;
+				m_previousAngles[i] -= 360.0f;
+			}
 		}
+	}
+	
+	/**
+	 * Moves the scene's nodes to where they are {@code alpha} of the way from the state before the last simulation step
+	 * to the state after it.
+	 */
+	private void updateScene(float alpha)
+	{
+		m_sunNode.getTransform().identity().translate(m_sunLocX, m_sunLocY, m_sunLocZ).rotateY(interpolateAngle(SUN_SPIN, alpha));
 		
-		// Enable depth test and face-culling.
-		gl.glEnable(GL_DEPTH_TEST);
-		gl.glEnable(GL_CULL_FACE);
-		gl.glFrontFace(GL_CCW);
-		gl.glDepthFunc(GL_LEQUAL);
-
-		// Draw the object.
-		numVerts = m_shuttle.getVertices().length;
-		gl.glDrawArrays(GL_TRIANGLES, 0, numVerts);
+		float shuttleAngle = interpolateAngle(SHUTTLE_TUMBLE, alpha);
+		m_shuttleNode.getTransform().identity().translate(-5.0f, 0.0f, 0.0f).rotateX(shuttleAngle).rotateY(shuttleAngle).rotateZ(shuttleAngle);
 		
-		/* ***** *
-		 * Earth *
-		 * ***** */
+		m_earthNode.getTransform().identity().translate(5.0f, 0.0f, 0.0f).rotateY(interpolateAngle(EARTH_SPIN, alpha)).scale(0.75f, 0.75f, 0.75f);
 		
-		m_modelMatrix.setToIdentity();
-		m_modelViewMatrix.setToIdentity();
-		
-		// Apply transformations to the model-view matrix.
-		m_modelMatrix.translate(5.0, 0.0, 0.0);
-		m_modelMatrix.rotateY(((System.currentTimeMillis()) / 50.0) % 360);
-		m_modelMatrix.scale(0.75, 0.75, 0.75);
-		m_modelViewMatrix.concatenate(m_viewMatrix);
-		m_modelViewMatrix.concatenate(m_modelMatrix);
-		
-		// Build the MVP matrix from the light's point of view.
-		m_shadowMVP2.setToIdentity();
-		m_shadowMVP2.concatenate(m_b);
-		m_shadowMVP2.concatenate(m_lightPMatrix);
-		m_shadowMVP2.concatenate(m_lightVMatrix);
-		m_shadowMVP2.concatenate(m_modelMatrix);
-		
-		// Pass the model-view and normal matrices to uniforms in the shader.
-		gl.glUniformMatrix4fv(mvLoc, 1, false, m_modelViewMatrix.getFloatValues(), 0);
-		gl.glUniformMatrix4fv(nLoc, 1, false, m_modelViewMatrix.inverse().transpose().getFloatValues(), 0);
-		gl.glUniformMatrix4fv(shadowLoc, 1, false, m_shadowMVP2.getFloatValues(), 0);
-
-		// Bind the vertex buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[3]);
-		gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(0);
-		
-		// Bind the texture buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[4]);
-		gl.glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(1);
-		
-		// Bind the normal buffer to a vertex attribute.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[5]);
-		gl.glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
-		gl.glEnableVertexAttribArray(2);
-		
-		// Set up texture.
-		gl.glActiveTexture(GL_TEXTURE1);
-		gl.glBindTexture(GL_TEXTURE_2D, m_earthTexture);
-		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-		gl.glGenerateMipmap(GL_TEXTURE_2D);
-		if(gl.isExtensionAvailable("GL_EXT_texture_filer_anisotropic"))
+		m_lightNode.getTransform().identity().translate(m_lightLocation.getX(), m_lightLocation.getY(), m_lightLocation.getZ());
+		m_lightNode.setVisible(m_usePositionalLight);
+		
+		m_asteroidBeltNode.getTransform().identity().rotateY(interpolateAngle(BELT_ORBIT, alpha));
+		
+		m_scene.updateWorldTransforms(null);
+		m_sceneIndex.update(m_scene);
+	}
+	
+	/**
+	 * Draws a bar per GPU profiler scope in the top left corner: its length is the scope's median time and the tick at
+	 * its end its 95th percentile, against a background as long as a frame's period. The bars are scissored clears, so
+	 * the overlay needs no program or geometry.
+	 */
+	private void drawProfilerOverlay()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		int rate = (m_framePacer.getCurrentRate() > 0) ? m_framePacer.getCurrentRate() : TARGET_FRAME_RATE;
+		float pixelsPerMilli = m_canvasWidth / 2.0f * rate / 1000.0f;
+		int maxLength = m_canvasWidth - 2 * OVERLAY_MARGIN;
+		gl.glEnable(GL_SCISSOR_TEST);
+		for(int scope = 0; scope < m_gpuProfiler.getScopeCount(); scope++)
 		{
-			float[] max = new float[1];
-			gl.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, max, 0);
-			gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAX_ANISOTROPY_EXT, max[0]);
+			FrameTimeStats stats = m_gpuProfiler.getStats(scope);
+			float[] color = OVERLAY_COLORS[scope % OVERLAY_COLORS.length];
+			int y = m_canvasHeight - (scope + 1) * (OVERLAY_BAR_HEIGHT + OVERLAY_MARGIN);
+			int median = Math.min((int) (stats.getP50Millis() * pixelsPerMilli), maxLength);
+			int tail = Math.min((int) (stats.getP95Millis() * pixelsPerMilli), maxLength);
+			fillRectangle(OVERLAY_MARGIN, y, m_canvasWidth / 2, OVERLAY_BACKGROUND);
+			fillRectangle(OVERLAY_MARGIN, y, median, color);
+			fillRectangle(OVERLAY_MARGIN + Math.max(tail - 2, 0), y, 2, color);
 		}
-		
-		// Enable depth test and face-culling.
-		gl.glEnable(GL_DEPTH_TEST);
-		gl.glEnable(GL_CULL_FACE);
-		gl.glFrontFace(GL_CCW);
-		gl.glDepthFunc(GL_LEQUAL);
-
-		// Draw the object.
-		numVerts = m_earth.getIndices().length;
-		gl.glDrawArrays(GL_TRIANGLES, 0, numVerts);
+		gl.glDisable(GL_SCISSOR_TEST);
 	}
 	
-	private void installLights(Matrix3D viewMatrix)
+	private void fillRectangle(int x, int y, int width, float[] color)
 	{
 		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glScissor(x, y, width, OVERLAY_BAR_HEIGHT);
+		gl.glClearBufferfv(GL_COLOR, 0, color, 0);
+	}
+	
+	private float interpolateAngle(int index, float alpha)
+	{
+		return m_previousAngles[index] + (m_angles[index] - m_previousAngles[index]) * alpha;
+	}
+	
+	private void installLights(FrameSnapshot snapshot)
+	{
+		m_installLightsEvent.begin();
 		
-		Point3D lightP = m_positionalLight.getPosition();
-		Point3D lightPv = lightP.mult(viewMatrix);
-		float[] viewspaceLightPos = new float[] {(float) lightPv.getX(), (float) lightPv.getY(), (float) lightPv.getZ()};
-		
-		// Set the current globalAmbient settings.
-		int globalAmbLoc = gl.glGetUniformLocation(m_renderingProgram3, "globalAmbient");
-		gl.glProgramUniform4fv(m_renderingProgram3, globalAmbLoc, 1, m_globalAmbient.getValues(), 0);
-		
-		// Get the locations of the light fields in the shader.
-		int ambLoc = gl.glGetUniformLocation(m_renderingProgram3, "light.ambient");
-		int diffLoc = gl.glGetUniformLocation(m_renderingProgram3, "light.diffuse");
-		int specLoc = gl.glGetUniformLocation(m_renderingProgram3, "light.specular");
-		int posLoc = gl.glGetUniformLocation(m_renderingProgram3, "light.position");
-		
-		// Set the uniform light values in the shader.
-		gl.glProgramUniform4fv(m_renderingProgram3, ambLoc, 1, m_positionalLight.getAmbient(), 0);
-		gl.glProgramUniform4fv(m_renderingProgram3, diffLoc, 1, m_positionalLight.getDiffuse(), 0);
-		gl.glProgramUniform4fv(m_renderingProgram3, specLoc, 1, m_positionalLight.getSpecular(), 0);
-		gl.glProgramUniform3fv(m_renderingProgram3, posLoc, 1, viewspaceLightPos, 0);
+		// The colors only change when the light is toggled; the global ambient was set once in init().
+		boolean colorsChanged = m_lightColorsOn != snapshot.isLightOn();
+		if(colorsChanged)
+		{
+			m_lightColorsOn = snapshot.isLightOn();
+			float[] color = m_lightColorsOn ? POSITIONAL_LIGHT_ON : POSITIONAL_LIGHT_OFF;
+			m_frameUniforms.setLightColors(m_positionalLight.getAmbient(), color, color);
+		}
 		
+		Vec3 position = snapshot.getLightViewPosition();
+		m_frameUniforms.setLightPosition(position.getX(), position.getY(), position.getZ());
+		m_installLightsEvent.lightOn = m_lightColorsOn;
+		m_installLightsEvent.colorsChanged = colorsChanged;
+		m_installLightsEvent.commit();
+	}
+	
+	/**
+	 * Applies the keys pressed since the last frame preparation, in the order they were pressed.
+	 */
+	private void applyPendingKeys()
+	{
+		Integer keyCode;
+		while((keyCode = m_pendingKeys.poll()) != null)
+		{
+			applyKey(keyCode);
+		}
+	}
+	
+	private void applyKey(int keyCode)
+	{
+		switch(keyCode)
+		{
+			// Camera Movement
+			case KeyEvent.VK_W:
+				moveCamera(m_forwardVector, TRANSLATE_FACTOR);
+				break;
+			case KeyEvent.VK_S:
+				moveCamera(m_forwardVector, -TRANSLATE_FACTOR);
+				break;
+			case KeyEvent.VK_A:
+				moveCamera(updateSide(), -TRANSLATE_FACTOR);
+				break;
+			case KeyEvent.VK_D:
+				moveCamera(updateSide(), TRANSLATE_FACTOR);
+				break;
+			case KeyEvent.VK_E:
+				moveCamera(m_topVector.cross(m_forwardVector, updateSide()), TRANSLATE_FACTOR);
+				break;
+			case KeyEvent.VK_Q:
+				moveCamera(m_topVector.cross(m_forwardVector, updateSide()), -TRANSLATE_FACTOR);
+				break;
+			case KeyEvent.VK_LEFT:
+				m_cameraYaw -= YAW_FACTOR;
+				break;
+			case KeyEvent.VK_RIGHT:
+				m_cameraYaw += YAW_FACTOR;
+				break;
+			case KeyEvent.VK_UP:
+				m_cameraPitch += PITCH_FACTOR;
+				break;
+			case KeyEvent.VK_DOWN:
+				m_cameraPitch -= PITCH_FACTOR;
+				break;
+			// Positional Light Movement
+			case KeyEvent.VK_I:
+				m_lightLocation.setZ(m_lightLocation.getZ() - LIGHT_MOVEMENT_FACTOR);
+				break;
+			case KeyEvent.VK_K:
+				m_lightLocation.setZ(m_lightLocation.getZ() + LIGHT_MOVEMENT_FACTOR);
+				break;
+			case KeyEvent.VK_J:
+				m_lightLocation.setX(m_lightLocation.getX() - LIGHT_MOVEMENT_FACTOR);
+				break;
+			case KeyEvent.VK_L:
+				m_lightLocation.setX(m_lightLocation.getX() + LIGHT_MOVEMENT_FACTOR);
+				break;
+			case KeyEvent.VK_O:
+				m_lightLocation.setY(m_lightLocation.getY() - LIGHT_MOVEMENT_FACTOR);
+				break;
+			case KeyEvent.VK_U:
+				m_lightLocation.setY(m_lightLocation.getY() + LIGHT_MOVEMENT_FACTOR);
+				break;
+			// Positional Light Toggle
+			case KeyEvent.VK_P:
+				// installLights() switches the light's diffuse and specular colors to match.
+				m_usePositionalLight = !m_usePositionalLight;
+				break;
+			// Skybox Toggle (cube map or cross-layout texture)
+			case KeyEvent.VK_B:
+				m_useCubeMapSkybox = !m_useCubeMapSkybox;
+				break;
+			// GPU Profiler Overlay Toggle, and Dump of the GPU Times and Frame Time Histograms
+			case KeyEvent.VK_G:
+				m_showProfilerOverlay = !m_showProfilerOverlay;
+				break;
+			case KeyEvent.VK_H:
+				m_gpuProfiler.dump(System.out);
+				m_framePacer.getFrameHistogram().print(System.out, "Frame time");
+				m_framePacer.getWorkHistogram().print(System.out, "Work time");
+				break;
+		}
 	}
 	
 	private void updateForward()
 	{
-		m_forwardVector.setX(Math.cos(m_cameraPitch) * Math.sin(m_cameraYaw));
-		m_forwardVector.setY(Math.sin(m_cameraPitch));
-		m_forwardVector.setZ(Math.cos(m_cameraPitch) * -Math.cos(m_cameraYaw));
-		m_forwardVector.normalize();
+		float x = (float) (Math.cos(m_cameraPitch) * Math.sin(m_cameraYaw));
+		float y = (float) Math.sin(m_cameraPitch);
+		float z = (float) (Math.cos(m_cameraPitch) * -Math.cos(m_cameraYaw));
+		m_forwardVector.set(x, y, z).normalize();
+	}
+	
+	/**
+	 * Sets the side vector to forward x (0, 1, 0), pointing to the camera's right, and returns it.
+	 */
+	private Vec3 updateSide()
+	{
+		return m_sideVector.set(-m_forwardVector.getZ(), 0.0f, m_forwardVector.getX());
+	}
+	
+	private void moveCamera(Vec3 direction, float distance)
+	{
+		m_cameraX += direction.getX() * distance;
+		m_cameraY += direction.getY() * distance;
+		m_cameraZ += direction.getZ() * distance;
 	}
 	
 	public void init(GLAutoDrawable drawable)
 	{
 		GL4 gl = (GL4) GLContext.getCurrentGL();
-		m_renderingProgram1 = createVertexProgram("shaders/pass1vert.glsl");
-		//m_renderingProgram1 = createShaderProgram("shaders/pass1vert.glsl", "shaders/pass1frag.glsl");
-		m_renderingProgram2 = createShaderProgram("shaders/oldvert.glsl", "shaders/oldfrag.glsl");
-		m_renderingProgram3 = createShaderProgram("shaders/vert.glsl", "shaders/frag.glsl");
-		
-		m_shuttle = new ImportedModel(SHUTTLE_OBJ_FILE);
+		gl.setSwapInterval(m_framePacer.getSwapInterval());
+		System.out.println("Frame pacing: " + m_framePacer.getMode() + ((m_framePacer.getCurrentRate() > 0) ? " at " + m_framePacer.getCurrentRate() + " fps" : ""));
+		m_canvasWidth = m_myCanvas.getWidth();
+		m_canvasHeight = m_myCanvas.getHeight();
+		m_renderingProgram1 = ShaderProgram.create("shaders/pass1vert.glsl", null);
+		//m_renderingProgram1 = ShaderProgram.create("shaders/pass1vert.glsl", "shaders/pass1frag.glsl");
+		m_renderingProgram2 = ShaderProgram.create("shaders/oldvert.glsl", "shaders/oldfrag.glsl");
+		m_renderingProgram3 = ShaderProgram.create("shaders/vert.glsl", "shaders/frag.glsl");
+		m_renderingProgram4 = ShaderProgram.create("shaders/cubemapvert.glsl", "shaders/cubemapfrag.glsl");
+		m_frameUniforms = new FrameUniforms();
+		m_frameUniforms.setGlobalAmbient(m_globalAmbient.getValues());
+		m_frameUniforms.setLightColors(m_positionalLight.getAmbient(), POSITIONAL_LIGHT_ON, POSITIONAL_LIGHT_ON);
+		m_lightColorsOn = true;
+		m_gpuProfiler = new GpuProfiler();
+		m_frameScope = m_gpuProfiler.addScope("frame");
+		m_shadowScope = m_gpuProfiler.addScope("shadow pass");
+		m_skyboxScope = m_gpuProfiler.addScope("skybox");
+		m_litScope = m_gpuProfiler.addScope("lit objects");
+		System.out.println("GPU profiler: G toggles the overlay, H prints the timings");
+		
+		m_shuttle = new ImportedModel(SHUTTLE_OBJ_FILE, true);
+		System.out.printf("Loaded %s in %.2f ms (%s): %d vertices, %d indices%n", SHUTTLE_OBJ_FILE, m_shuttle.getLoadTimeNanos() / 1e6,
+				m_shuttle.isLoadedFromCache() ? "mesh cache" : "parsed OBJ", m_shuttle.getNumVertices(), m_shuttle.getNumIndices());
 		
 		setupVertices();
 		setupShadowBuffers();
 		
-		m_b.setElementAt(0, 0, 0.5);
-		m_b.setElementAt(0, 1, 0.0);
-		m_b.setElementAt(0, 2, 0.0);
-		m_b.setElementAt(0, 3, 0.5f);
-		m_b.setElementAt(1, 0, 0.0);
-		m_b.setElementAt(1, 1, 0.5);
-		m_b.setElementAt(1, 2, 0.0);
-		m_b.setElementAt(1, 3, 0.5f);
-		m_b.setElementAt(2, 0, 0.0);
-		m_b.setElementAt(2, 1, 0.0);
-		m_b.setElementAt(2, 2, 0.5);
-		m_b.setElementAt(2, 3, 0.5f);
-		m_b.setElementAt(3, 0, 0.0);
-		m_b.setElementAt(3, 1, 0.0);
-		m_b.setElementAt(3, 2, 0.0);
-		m_b.setElementAt(3, 3, 1.0f);
-		
 		// Camera Position
 		m_cameraX = 0.0f;
 		m_cameraY = 0.0f;
@@ -645,20 +811,96 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 		m_cameraYaw = 0.0f;
 		
 		// Forward vector is looking down negative z-axis.
-		m_forwardVector = new Vector3D(0.0f, 0.0f, -1.0f);
+		m_forwardVector.set(0.0f, 0.0f, -1.0f);
 		
 		// Sun Position
 		m_sunLocX = 0.0f;
 		m_sunLocY = 0.0f;
 		m_sunLocZ = 0.0f;
 		
-		// Load textures.
-		m_sunTexture = loadTexture(SUN_TEXTURE_FILE).getTextureObject();
-		m_earthTexture = loadTexture(EARTH_TEXTURE_FILE).getTextureObject();
-		m_skyboxTexture = loadTexture(SKYBOX_TEXTURE_FILE).getTextureObject();
-		m_shuttleTexture = loadTexture(SHUTTLE_TEXTURE_FILE).getTextureObject();
-		m_lightTexture = loadTexture(LIGHT_TEXTURE_FILE).getTextureObject();
+		// Start loading textures; they are decoded in the background and streamed in by display().
+		m_textures = new TextureManager();
+		m_sunTexture = m_textures.load(SUN_TEXTURE_FILE);
+		m_earthTexture = m_textures.load(EARTH_TEXTURE_FILE);
+		m_skyboxTexture = m_textures.load(SKYBOX_TEXTURE_FILE);
+		m_skyboxCubeMap = m_textures.loadCubeMap(SKYBOX_CUBE_MAP_FILES);
+		m_shuttleTexture = m_textures.load(SHUTTLE_TEXTURE_FILE);
+		m_lightTexture = m_textures.load(LIGHT_TEXTURE_FILE);
+		m_asteroidTexture = m_textures.load(ASTEROID_TEXTURE_FILE);
+		System.out.println("Anisotropic filtering: " + m_textures.getMaxAnisotropy() + "x");
+		System.out.println("Simulation: " + SIMULATION_RATE + " steps per second");
+		System.out.println("Batched transforms: " + (TransformBatch.isVectorAvailable() ? "Vector API, " + TransformBatch.getVectorLength()
+				+ " matrices at a time" : "scalar"));
 		gl.glEnable(GL_TEXTURE_CUBE_MAP_SEAMLESS);
+		InstanceBatch.resetInstanceMatrix();
+		
+		setupScene();
+		m_frameBuilder = new FrameBuilder(FAR_PLANE, m_renderingProgram1);
+		
+		// Prepare the first frame here, and every following one on the preparation thread while the last one is drawn.
+		prepareFrame();
+		m_framePreparation = new FrameWorker("frame-preparation", this::prepareFrame);
+	}
+	
+	/**
+	 * Builds the scene graph; the skybox is not part of it, since it is drawn differently from everything else.
+	 */
+	private void setupScene()
+	{
+		m_scene = new SceneNode("scene");
+		
+		m_sunNode = new SceneNode("sun", m_sphereLods, m_renderingProgram3, m_sunTexture);
+		m_sunNode.setCastsShadow(true);
+		m_scene.addChild(m_sunNode);
+		
+		m_shuttleNode = new SceneNode("shuttle", m_shuttleLods, m_renderingProgram3, m_shuttleTexture);
+		m_shuttleNode.setCastsShadow(true);
+		m_scene.addChild(m_shuttleNode);
+		
+		m_earthNode = new SceneNode("earth", m_sphereLods, m_renderingProgram3, m_earthTexture);
+		m_earthNode.setCastsShadow(true);
+		m_scene.addChild(m_earthNode);
+		
+		// The light cube ignores lighting and shadows, and its triangles are wound clockwise.
+		m_lightNode = new SceneNode("light", m_lightMesh, m_renderingProgram2, m_lightTexture);
+		m_lightNode.setFrontFace(GL_CW);
+		m_scene.addChild(m_lightNode);
+		
+		// Instanced demo scene: each node below is a single draw call per pass, however many instances it has.
+		Random random = new Random(INSTANCE_SEED);
+		Mat4 instance = new Mat4();
+		InstanceBatch asteroids = new InstanceBatch(m_sphereLods.getLevel(ASTEROID_LOD_LEVEL), ASTEROID_COUNT);
+		for(int i = 0; i < ASTEROID_COUNT; i++)
+		{
+			float angle = (float) (random.nextDouble() * 2.0 * Math.PI);
+			float radius = (float) (20.0 + random.nextDouble() * 8.0);
+			float size = (float) (0.05 + random.nextDouble() * 0.2);
+			instance.identity().translate(radius * (float) Math.cos(angle), (float) random.nextGaussian() * 0.5f, radius * (float) Math.sin(angle));
+			instance.rotate((float) (random.nextDouble() * 360.0), (float) random.nextGaussian(), (float) random.nextGaussian(), (float) random.nextGaussian());
+			instance.scale(size, size, size);
+			asteroids.setMatrix(i, instance);
+		}
+		m_asteroidBeltNode = new SceneNode("asteroid belt", asteroids, m_renderingProgram3, m_asteroidTexture);
+		m_asteroidBeltNode.setCastsShadow(true);
+		m_scene.addChild(m_asteroidBeltNode);
+		
+		InstanceBatch fleet = new InstanceBatch(m_shuttleLods.getLevel(0), FLEET_COUNT);
+		for(int i = 0; i < FLEET_COUNT; i++)
+		{
+			instance.identity().translate((float) ((random.nextDouble() - 0.5) * 40.0), (float) (10.0 + random.nextDouble() * 10.0),
+					(float) (-20.0 - random.nextDouble() * 40.0));
+			instance.rotateY((float) (random.nextGaussian() * 10.0));
+			instance.scale(0.5f, 0.5f, 0.5f);
+			fleet.setMatrix(i, instance);
+		}
+		m_fleetNode = new SceneNode("fleet", fleet, m_renderingProgram3, m_shuttleTexture);
+		m_fleetNode.setCastsShadow(true);
+		m_scene.addChild(m_fleetNode);
+		System.out.println("Instanced demo scene: " + ASTEROID_COUNT + " asteroids, " + FLEET_COUNT + " shuttles");
+		
+		// Index the drawable nodes where they start out; updateScene() refits the ones that move.
+		m_scene.updateWorldTransforms(null);
+		m_sceneIndex.add(m_scene);
 	}
 	
 	private void setupShadowBuffers()
@@ -669,11 +911,13 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 		
 		// Create the custom frame buffer.
 		gl.glGenFramebuffers(1, m_shadowBuffer, 0);
+		RenderStats.get().allocate(RenderStats.Resource.FRAMEBUFFER, 1, 0);
 		
 		// Create the shadow texture and configure it to hold depth information.
 		gl.glGenTextures(1, m_shadowTex, 0);
 		gl.glBindTexture(GL_TEXTURE_2D, m_shadowTex[0]);
 		gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT32, m_screenSizeX, m_screenSizeY, 0, GL_DEPTH_COMPONENT, GL_FLOAT, null);
+		RenderStats.get().allocate(RenderStats.Resource.TEXTURE, 1, (long) m_screenSizeX * m_screenSizeY * Float.BYTES);
 		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
 		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
 		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_COMPARE_MODE, GL_COMPARE_REF_TO_TEXTURE);
@@ -682,47 +926,44 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 	
 	private void setupVertices()
 	{
-		GL4 gl = (GL4) GLContext.getCurrentGL();
-		
-		// Set up vertex array.
-		gl.glGenVertexArrays(m_vao.length, m_vao, 0);
-		gl.glBindVertexArray(m_vao[0]);
-		gl.glGenBuffers(m_vbo.length, m_vbo, 0);
-		
-		// Planets and Moons
-		setupSphereVertices(m_sun, 0);
-		setupSphereVertices(m_earth, 3);
-		
-		// World Axes
-		float[] xAxisVertices = {0.0f, 0.0f, 0.0f, 5.0f, 0.0f, 0.0f};
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[15]);
-		FloatBuffer xAxisVertBuf = Buffers.newDirectFloatBuffer(xAxisVertices);
-		gl.glBufferData(GL_ARRAY_BUFFER, xAxisVertBuf.limit() * 4, xAxisVertBuf, GL_STATIC_DRAW);
-		
-		float[] yAxisVertices = {0.0f, 0.0f, 0.0f, 0.0f, 5.0f, 0.0f};
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[16]);
-		FloatBuffer yAxisVertBuf = Buffers.newDirectFloatBuffer(yAxisVertices);
-		gl.glBufferData(GL_ARRAY_BUFFER, yAxisVertBuf.limit() * 4, yAxisVertBuf, GL_STATIC_DRAW);
-		
-		float[] zAxisVertices = {0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 5.0f};
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[17]);
-		FloatBuffer zAxisVertBuf = Buffers.newDirectFloatBuffer(zAxisVertices);
-		gl.glBufferData(GL_ARRAY_BUFFER, zAxisVertBuf.limit() * 4, zAxisVertBuf, GL_STATIC_DRAW);
+		// Planets and Moons, which share their levels of detail
+		m_sphereLods = LodGroup.fromSpheres(SPHERE_LOD_PRECISIONS, SPHERE_LOD_SCREEN_SIZES, LOD_HYSTERESIS, VERTEX_FORMAT);
+		m_sphereLods.setShadowBias(SHADOW_LOD_BIAS);
 		
 		// Skybox
-		setupSkyboxVertices(18);
+		m_skyboxMesh = setupSkyboxVertices();
 		
 		// Shuttle
-		setupObjectVertices(m_shuttle, 21);
+		long lodStart = System.nanoTime();
+		m_shuttleLods = LodGroup.fromModel(m_shuttle, SHUTTLE_LOD_TRIANGLE_RATIOS, SHUTTLE_LOD_SCREEN_SIZES, LOD_HYSTERESIS, VERTEX_FORMAT);
+		m_shuttleLods.setShadowBias(SHADOW_LOD_BIAS);
+		System.out.printf("Simplified %s to %d levels of detail in %.1f ms%n", SHUTTLE_OBJ_FILE, m_shuttleLods.getLevelCount(), (System.nanoTime() - lodStart) / 1e6);
 		
 		// Positional Light Cube
-		setupCubeVertices(24);
+		m_lightMesh = setupCubeVertices();
+		
+		System.out.println("Vertex format: " + VERTEX_FORMAT);
+		for(int level = 0; level < m_sphereLods.getLevelCount(); level++)
+		{
+			reportVertexBytes("sphere " + level, m_sphereLods.getLevel(level));
+		}
+		reportVertexBytes("skybox", m_skyboxMesh);
+		for(int level = 0; level < m_shuttleLods.getLevelCount(); level++)
+		{
+			reportVertexBytes("shuttle " + level, m_shuttleLods.getLevel(level));
+		}
+		reportVertexBytes("light", m_lightMesh);
 	}
 	
-	private void setupCubeVertices(int startingVBOIndex)
+	private void reportVertexBytes(String name, Mesh mesh)
+	{
+		long full = mesh.getVertexBytes() + mesh.getVertexBytesSaved();
+		System.out.printf("  %-12s %8d vertex bytes, %8d saved (%.0f%%)%n", name, mesh.getVertexBytes(), mesh.getVertexBytesSaved(),
+				(full == 0) ? 0.0 : 100.0 * mesh.getVertexBytesSaved() / full);
+	}
+	
+	private Mesh setupCubeVertices()
 	{
-		GL4 gl = (GL4) GLContext.getCurrentGL();
-		
 		float[] cubeVertices = {-1.0f, 1.0f, -1.0f, -1.0f, -1.0f, -1.0f, 1.0f, -1.0f, -1.0f, // Back Face Triangle 1
 				1.0f, -1.0f, -1.0f, 1.0f, 1.0f, -1.0f, -1.0f, 1.0f, -1.0f, // Back Face Triangle 2
 				1.0f, -1.0f, -1.0f, 1.0f, -1.0f, 1.0f, 1.0f, 1.0f, -1.0f, // Right Face Triangle 1
@@ -741,18 +982,18 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 			cubeVertices[i] *= 0.1f;
 		}
 		
-		double[] cubeTextureCoord = {.25, (double) 2 / 3, .25, (double) 1 / 3, .50, (double) 1 / 3, // front triangles
-				.50, (double) 1 / 3, .50, (double) 2 / 3, .25, (double) 2 / 3, //
-				.50, (double) 1 / 3, .75, (double) 1 / 3, .50, (double) 2 / 3, // right triangles
-				.75, (double) 1 / 3, .75, (double) 2 / 3, .50, (double) 2 / 3, //
-				.75, (double) 1 / 3, 1.0, (double) 1 / 3, .75, (double) 2 / 3, // back triangles
-				1.0, (double) 1 / 3, 1.0, (double) 2 / 3, .75, (double) 2 / 3, //
-				0.0, (double) 1 / 3, .25, (double) 1 / 3, 0.0, (double) 2 / 3, // left triangles
-				.25, (double) 1 / 3, .25, (double) 2 / 3, 0.0, (double) 2 / 3, //
-				.25, 0.0, .50, 0.0, .50, (double) 1 / 3, // bottom triangles
-				.50, (double) 1 / 3, .25, (double) 1 / 3, .25, 0.0, //
-				.25, (double) 2 / 3, .50, (double) 2 / 3, .50, 1.0, // top triangles
-				.50, 1.0, .25, 1.0, .25, (double) 2 / 3  //
+		float[] cubeTextureCoord = {.25f, (float) 2 / 3, .25f, (float) 1 / 3, .50f, (float) 1 / 3, // front triangles
+				.50f, (float) 1 / 3, .50f, (float) 2 / 3, .25f, (float) 2 / 3, //
+				.50f, (float) 1 / 3, .75f, (float) 1 / 3, .50f, (float) 2 / 3, // right triangles
+				.75f, (float) 1 / 3, .75f, (float) 2 / 3, .50f, (float) 2 / 3, //
+				.75f, (float) 1 / 3, 1.0f, (float) 1 / 3, .75f, (float) 2 / 3, // back triangles
+				1.0f, (float) 1 / 3, 1.0f, (float) 2 / 3, .75f, (float) 2 / 3, //
+				0.0f, (float) 1 / 3, .25f, (float) 1 / 3, 0.0f, (float) 2 / 3, // left triangles
+				.25f, (float) 1 / 3, .25f, (float) 2 / 3, 0.0f, (float) 2 / 3, //
+				.25f, 0.0f, .50f, 0.0f, .50f, (float) 1 / 3, // bottom triangles
+				.50f, (float) 1 / 3, .25f, (float) 1 / 3, .25f, 0.0f, //
+				.25f, (float) 2 / 3, .50f, (float) 2 / 3, .50f, 1.0f, // top triangles
+				.50f, 1.0f, .25f, 1.0f, .25f, (float) 2 / 3  //
 		};
 		
 		float[] cubeNormals = {0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, // Back Face Triangle 1
@@ -769,68 +1010,11 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 				0.0f, -1.0f, 0.0f, 0.0f, -1.0f, 0.0f, 0.0f, -1.0f, 0.0f // Top Face Triangle 2
 		};
 		
-		// Bind vertex buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex]);
-		FloatBuffer vertBuf = Buffers.newDirectFloatBuffer(cubeVertices);
-		gl.glBufferData(GL_ARRAY_BUFFER, vertBuf.limit() * 4, vertBuf, GL_STATIC_DRAW);
-		
-		// Bind texture buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 1]);
-		DoubleBuffer texBuf = Buffers.newDirectDoubleBuffer(cubeTextureCoord);
-		gl.glBufferData(GL_ARRAY_BUFFER, texBuf.limit() * 8, texBuf, GL_STATIC_DRAW);
-		
-		// Bind normal buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 2]);
-		FloatBuffer normalBuf = Buffers.newDirectFloatBuffer(cubeNormals);
-		gl.glBufferData(GL_ARRAY_BUFFER, normalBuf.limit() * 4, normalBuf, GL_STATIC_DRAW);
+		return Mesh.fromArrays(cubeVertices, cubeTextureCoord, cubeNormals, VERTEX_FORMAT);
 	}
 	
-	private void setupObjectVertices(ImportedModel model, int startingVBOIndex)
+	private Mesh setupSkyboxVertices()
 	{
-		GL4 gl = (GL4) GLContext.getCurrentGL();
-		
-		// Get vertices and number of vertices.
-		Vertex3D[] vertices = model.getVertices();
-		int numVertices = model.getNumVertices();
-		
-		// Create vertex, texture, and normal buffers.
-		float[] pValues = new float[numVertices * 3];
-		float[] tValues = new float[numVertices * 2];
-		float[] nValues = new float[numVertices * 3];
-		
-		// Populate the buffers with the proper values.
-		for(int i = 0; i < numVertices; i++)
-		{
-			pValues[i * 3] = (float) (vertices[i]).getX();
-			pValues[i * 3 + 1] = (float) (vertices[i]).getY();
-			pValues[i * 3 + 2] = (float) (vertices[i]).getZ();
-			tValues[i * 2] = (float) (vertices[i]).getS();
-			tValues[i * 2 + 1] = (float) (vertices[i]).getT();
-			nValues[i * 3] = (float) (vertices[i]).getNormalX();
-			nValues[i * 3 + 1] = (float) (vertices[i]).getNormalY();
-			nValues[i * 3 + 2] = (float) (vertices[i]).getNormalZ();
-		}
-		
-		// Bind vertex buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex]);
-		FloatBuffer vertBuf = Buffers.newDirectFloatBuffer(pValues);
-		gl.glBufferData(GL_ARRAY_BUFFER, vertBuf.limit() * 4, vertBuf, GL_STATIC_DRAW);
-		
-		// Bind texture buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 1]);
-		FloatBuffer texBuf = Buffers.newDirectFloatBuffer(tValues);
-		gl.glBufferData(GL_ARRAY_BUFFER, texBuf.limit() * 4, texBuf, GL_STATIC_DRAW);
-		
-		// Bind normal buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 2]);
-		FloatBuffer normalBuf = Buffers.newDirectFloatBuffer(nValues);
-		gl.glBufferData(GL_ARRAY_BUFFER, normalBuf.limit() * 4, normalBuf, GL_STATIC_DRAW);
-	}
-	
-	private void setupSkyboxVertices(int startingVBOIndex)
-	{
-		GL4 gl = (GL4) GLContext.getCurrentGL();
-		
 		float[] cubeVertices =
 				{-1.0f, 1.0f, -1.0f, -1.0f, -1.0f, -1.0f, 1.0f, -1.0f, -1.0f, 1.0f, -1.0f, -1.0f, 1.0f, 1.0f, -1.0f, -1.0f, 1.0f, -1.0f, 1.0f, -1.0f, -1.0f, 1.0f, -1.0f, 1.0f, 1.0f, 1.0f,
 						-1.0f, 1.0f, -1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, -1.0f, 1.0f, -1.0f, 1.0f, -1.0f, -1.0f, 1.0f, 1.0f, 1.0f, 1.0f, -1.0f, -1.0f, 1.0f, -1.0f, 1.0f, 1.0f, 1.0f,
@@ -842,18 +1026,18 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 			cubeVertices[i] *= 250.0f;
 		}
 		
-		double[] cubeTextureCoord = {.25, (double) 2 / 3, .25, (double) 1 / 3, .50, (double) 1 / 3, // front triangles
-				.50, (double) 1 / 3, .50, (double) 2 / 3, .25, (double) 2 / 3, //
-				.50, (double) 1 / 3, .75, (double) 1 / 3, .50, (double) 2 / 3, // right triangles
-				.75, (double) 1 / 3, .75, (double) 2 / 3, .50, (double) 2 / 3, //
-				.75, (double) 1 / 3, 1.0, (double) 1 / 3, .75, (double) 2 / 3, // back triangles
-				1.0, (double) 1 / 3, 1.0, (double) 2 / 3, .75, (double) 2 / 3, //
-				0.0, (double) 1 / 3, .25, (double) 1 / 3, 0.0, (double) 2 / 3, // left triangles
-				.25, (double) 1 / 3, .25, (double) 2 / 3, 0.0, (double) 2 / 3, //
-				.25, 0.0, .50, 0.0, .50, (double) 1 / 3, // bottom triangles
-				.50, (double) 1 / 3, .25, (double) 1 / 3, .25, 0.0, //
-				.25, (double) 2 / 3, .50, (double) 2 / 3, .50, 1.0, // top triangles
-				.50, 1.0, .25, 1.0, .25, (double) 2 / 3  //
+		float[] cubeTextureCoord = {.25f, (float) 2 / 3, .25f, (float) 1 / 3, .50f, (float) 1 / 3, // front triangles
+				.50f, (float) 1 / 3, .50f, (float) 2 / 3, .25f, (float) 2 / 3, //
+				.50f, (float) 1 / 3, .75f, (float) 1 / 3, .50f, (float) 2 / 3, // right triangles
+				.75f, (float) 1 / 3, .75f, (float) 2 / 3, .50f, (float) 2 / 3, //
+				.75f, (float) 1 / 3, 1.0f, (float) 1 / 3, .75f, (float) 2 / 3, // back triangles
+				1.0f, (float) 1 / 3, 1.0f, (float) 2 / 3, .75f, (float) 2 / 3, //
+				0.0f, (float) 1 / 3, .25f, (float) 1 / 3, 0.0f, (float) 2 / 3, // left triangles
+				.25f, (float) 1 / 3, .25f, (float) 2 / 3, 0.0f, (float) 2 / 3, //
+				.25f, 0.0f, .50f, 0.0f, .50f, (float) 1 / 3, // bottom triangles
+				.50f, (float) 1 / 3, .25f, (float) 1 / 3, .25f, 0.0f, //
+				.25f, (float) 2 / 3, .50f, (float) 2 / 3, .50f, 1.0f, // top triangles
+				.50f, 1.0f, .25f, 1.0f, .25f, (float) 2 / 3  //
 		};
 		
 		float[] cubeNormals = {0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, // Back Face Triangle 1
@@ -870,80 +1054,7 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 				0.0f, -1.0f, 0.0f, 0.0f, -1.0f, 0.0f, 0.0f, -1.0f, 0.0f // Top Face Triangle 2
 		};
 		
-		// Bind vertex buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex]);
-		FloatBuffer vertBuf = Buffers.newDirectFloatBuffer(cubeVertices);
-		gl.glBufferData(GL_ARRAY_BUFFER, vertBuf.limit() * 4, vertBuf, GL_STATIC_DRAW);
-		
-		// Bind texture buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 1]);
-		DoubleBuffer texBuf = Buffers.newDirectDoubleBuffer(cubeTextureCoord);
-		gl.glBufferData(GL_ARRAY_BUFFER, texBuf.limit() * 8, texBuf, GL_STATIC_DRAW);
-		
-		// Bind normal buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 2]);
-		FloatBuffer normalBuf = Buffers.newDirectFloatBuffer(cubeNormals);
-		gl.glBufferData(GL_ARRAY_BUFFER, normalBuf.limit() * 4, normalBuf, GL_STATIC_DRAW);
-	}
-	
-	private void setupSphereVertices(Sphere sphere, int startingVBOIndex)
-	{
-		GL4 gl = (GL4) GLContext.getCurrentGL();
-		
-		// Get vertices and indices.
-		Vertex3D[] vertices = sphere.getVertices();
-		int[] indices = sphere.getIndices();
-		
-		// Create vertex, texture, and normal buffers.
-		float[] pValues = new float[indices.length * 3];
-		float[] tValues = new float[indices.length * 2];
-		float[] nValues = new float[indices.length * 3];
-		
-		// Populate the buffers with the proper values.
-		for(int i = 0; i < indices.length; i++)
-		{
-			pValues[i * 3] = (float) (vertices[indices[i]]).getX();
-			pValues[i * 3 + 1] = (float) (vertices[indices[i]]).getY();
-			pValues[i * 3 + 2] = (float) (vertices[indices[i]]).getZ();
-			tValues[i * 2] = (float) (vertices[indices[i]]).getS();
-			tValues[i * 2 + 1] = (float) (vertices[indices[i]]).getT();
-			nValues[i * 3] = (float) (vertices[indices[i]]).getNormalX();
-			nValues[i * 3 + 1] = (float) (vertices[indices[i]]).getNormalY();
-			nValues[i * 3 + 2] = (float) (vertices[indices[i]]).getNormalZ();
-		}
-		
-		// Bind vertex buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex]);
-		FloatBuffer vertBuf = Buffers.newDirectFloatBuffer(pValues);
-		gl.glBufferData(GL_ARRAY_BUFFER, vertBuf.limit() * 4, vertBuf, GL_STATIC_DRAW);
-		
-		// Bind texture buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 1]);
-		FloatBuffer texBuf = Buffers.newDirectFloatBuffer(tValues);
-		gl.glBufferData(GL_ARRAY_BUFFER, texBuf.limit() * 4, texBuf, GL_STATIC_DRAW);
-		
-		// Bind normal buffer with a vbo entry.
-		gl.glBindBuffer(GL_ARRAY_BUFFER, m_vbo[startingVBOIndex + 2]);
-		FloatBuffer normalBuf = Buffers.newDirectFloatBuffer(nValues);
-		gl.glBufferData(GL_ARRAY_BUFFER, normalBuf.limit() * 4, normalBuf, GL_STATIC_DRAW);
-		
-		GLSLUtils.checkOpenGLError();
-	}
-	
-	private Matrix3D perspective(float fovy, float aspect, float n, float f)
-	{
-		float q = 1.0f / ((float) Math.tan(Math.toRadians(0.5f * fovy)));
-		float A = q / aspect;
-		float B = (n + f) / (n - f);
-		float C = (2.0f * n * f) / (n - f);
-		Matrix3D r = new Matrix3D();
-		r.setElementAt(0, 0, A);
-		r.setElementAt(1, 1, q);
-		r.setElementAt(2, 2, B);
-		r.setElementAt(3, 2, -1.0f);
-		r.setElementAt(2, 3, C);
-		r.setElementAt(3, 3, 0.0f);
-		return r;
+		return Mesh.fromArrays(cubeVertices, cubeTextureCoord, cubeNormals, VERTEX_FORMAT);
 	}
 	
 	public static void main(String[] args)
@@ -955,196 +1066,54 @@ public class Project3 extends JFrame implements GLEventListener, KeyListener
 	
 	public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height)
 	{
+		m_canvasWidth = width;
+		m_canvasHeight = height;
 	}
 	
 	public void dispose(GLAutoDrawable drawable)
-	{
-	}
-	
-	private int createShaderProgram(String vertLoc, String fragLoc)
-	{
-		GL4 gl = (GL4) GLContext.getCurrentGL();
-		
-		String[] vshaderSource = GLSLUtils.readShaderSource(vertLoc);
-		String[] fshaderSource = GLSLUtils.readShaderSource(fragLoc);
-		
-		int vShader = gl.glCreateShader(GL_VERTEX_SHADER);
-		int fShader = gl.glCreateShader(GL_FRAGMENT_SHADER);
-		
-		gl.glShaderSource(vShader, vshaderSource.length, vshaderSource, null, 0);
-		gl.glShaderSource(fShader, fshaderSource.length, fshaderSource, null, 0);
-		
-		gl.glCompileShader(vShader);
-		gl.glCompileShader(fShader);
-		
-		int vfprogram = gl.glCreateProgram();
-		gl.glAttachShader(vfprogram, vShader);
-		gl.glAttachShader(vfprogram, fShader);
-		gl.glLinkProgram(vfprogram);
-		return vfprogram;
-	}
-	
-	private int createVertexProgram(String vertLoc)
 	{
 		GL4 gl = (GL4) GLContext.getCurrentGL();
 		
-		String[] vshaderSource = GLSLUtils.readShaderSource(vertLoc);
-		
-		int vShader = gl.glCreateShader(GL_VERTEX_SHADER);
-		
-		gl.glShaderSource(vShader, vshaderSource.length, vshaderSource, null, 0);
-		
-		gl.glCompileShader(vShader);
-		
-		int vprogram = gl.glCreateProgram();
-		gl.glAttachShader(vprogram, vShader);
-		gl.glLinkProgram(vprogram);
-		return vprogram;
-	}
-	
-	private Texture loadTexture(String textureFileName)
-	{
-		Texture tex = null;
-		try
-		{
-			tex = TextureIO.newTexture(new File(textureFileName), false);
-		}
-		catch(Exception e)
-		{
-			e.printStackTrace();
-		}
-		return tex;
-	}
-	
-	private Matrix3D lookAt(Point3D eye, Point3D target, Vector3D y)
-	{
-		Vector3D eyeV = new Vector3D(eye);
-		Vector3D targetV = new Vector3D(target);
-		Vector3D fwd = (targetV.minus(eyeV)).normalize();
-		Vector3D side = (fwd.cross(y)).normalize();
-		Vector3D up = (side.cross(fwd)).normalize();
-		
-		Matrix3D look = new Matrix3D();
-		look.setElementAt(0, 0, side.getX());
-		look.setElementAt(1, 0, up.getX());
-		look.setElementAt(2, 0, -fwd.getX());
-		look.setElementAt(3, 0, 0.0f);
-		look.setElementAt(0, 1, side.getY());
-		look.setElementAt(1, 1, up.getY());
-		look.setElementAt(2, 1, -fwd.getY());
-		look.setElementAt(3, 1, 0.0f);
-		look.setElementAt(0, 2, side.getZ());
-		look.setElementAt(1, 2, up.getZ());
-		look.setElementAt(2, 2, -fwd.getZ());
-		look.setElementAt(3, 2, 0.0f);
-		look.setElementAt(0, 3, side.dot(eyeV.mult(-1)));
-		look.setElementAt(1, 3, up.dot(eyeV.mult(-1)));
-		look.setElementAt(2, 3, (fwd.mult(-1)).dot(eyeV.mult(-1)));
-		look.setElementAt(3, 3, 1.0f);
-		return look;
+		// Stop preparing frames first, so that nothing touches the scene while it is taken apart.
+		m_framePreparation.stop();
+		
+		// Delete everything init() created on the GPU, so that RenderStats shows what is left over.
+		m_asteroidBeltNode.getInstances().dispose();
+		m_fleetNode.getInstances().dispose();
+		m_sphereLods.dispose();
+		m_shuttleLods.dispose();
+		m_skyboxMesh.dispose();
+		m_lightMesh.dispose();
+		m_textures.dispose();
+		m_frameUniforms.dispose();
+		m_gpuProfiler.dispose();
+		m_renderingProgram1.dispose();
+		m_renderingProgram2.dispose();
+		m_renderingProgram3.dispose();
+		m_renderingProgram4.dispose();
+		
+		gl.glDeleteFramebuffers(1, m_shadowBuffer, 0);
+		gl.glDeleteTextures(1, m_shadowTex, 0);
+		RenderStats.get().free(RenderStats.Resource.FRAMEBUFFER, 1, 0);
+		RenderStats.get().free(RenderStats.Resource.TEXTURE, 1, (long) m_screenSizeX * m_screenSizeY * Float.BYTES);
 	}
 	
 	@Override
 	public void keyTyped(KeyEvent e)
 	{
-	
+		
 	}
 	
 	@Override
 	public void keyPressed(KeyEvent e)
 	{
-		int keyCode = e.getExtendedKeyCode();
-		switch(keyCode)
-		{
-			// Camera Movement
-			case KeyEvent.VK_W:
-				m_cameraX += m_forwardVector.getX() * TRANSLATE_FACTOR;
-				m_cameraY += m_forwardVector.getY() * TRANSLATE_FACTOR;
-				m_cameraZ += m_forwardVector.getZ() * TRANSLATE_FACTOR;
-				break;
-			case KeyEvent.VK_S:
-				m_cameraX -= m_forwardVector.getX() * TRANSLATE_FACTOR;
-				m_cameraY -= m_forwardVector.getY() * TRANSLATE_FACTOR;
-				m_cameraZ -= m_forwardVector.getZ() * TRANSLATE_FACTOR;
-				break;
-			case KeyEvent.VK_A:
-				Vector3D sideVector = m_forwardVector.cross(new Vector3D(0.0f, 1.0f, 0.0f));
-				m_cameraX -= sideVector.getX() * TRANSLATE_FACTOR;
-				m_cameraY -= sideVector.getY() * TRANSLATE_FACTOR;
-				m_cameraZ -= sideVector.getZ() * TRANSLATE_FACTOR;
-				break;
-			case KeyEvent.VK_D:
-				sideVector = m_forwardVector.cross(new Vector3D(0.0f, 1.0f, 0.0f));
-				m_cameraX += sideVector.getX() * TRANSLATE_FACTOR;
-				m_cameraY += sideVector.getY() * TRANSLATE_FACTOR;
-				m_cameraZ += sideVector.getZ() * TRANSLATE_FACTOR;
-				break;
-			case KeyEvent.VK_E:
-				sideVector = m_forwardVector.cross(new Vector3D(0.0f, 1.0f, 0.0f));
-				Vector3D topVector = m_forwardVector.cross(sideVector);
-				m_cameraX += topVector.getX() * TRANSLATE_FACTOR;
-				m_cameraY += topVector.getY() * TRANSLATE_FACTOR;
-				m_cameraZ += topVector.getZ() * TRANSLATE_FACTOR;
-				break;
-			case KeyEvent.VK_Q:
-				sideVector = m_forwardVector.cross(new Vector3D(0.0f, 1.0f, 0.0f));
-				topVector = m_forwardVector.cross(sideVector);
-				m_cameraX -= topVector.getX() * TRANSLATE_FACTOR;
-				m_cameraY -= topVector.getY() * TRANSLATE_FACTOR;
-				m_cameraZ -= topVector.getZ() * TRANSLATE_FACTOR;
-				break;
-			case KeyEvent.VK_LEFT:
-				m_cameraYaw -= YAW_FACTOR;
-				break;
-			case KeyEvent.VK_RIGHT:
-				m_cameraYaw += YAW_FACTOR;
-				break;
-			case KeyEvent.VK_UP:
-				m_cameraPitch += PITCH_FACTOR;
-				break;
-			case KeyEvent.VK_DOWN:
-				m_cameraPitch -= PITCH_FACTOR;
-				break;
-			// Positional Light Movement
-			case KeyEvent.VK_I:
-				m_lightLocation.setZ(m_lightLocation.getZ() - LIGHT_MOVEMENT_FACTOR);
-				break;
-			case KeyEvent.VK_K:
-				m_lightLocation.setZ(m_lightLocation.getZ() + LIGHT_MOVEMENT_FACTOR);
-				break;
-			case KeyEvent.VK_J:
-				m_lightLocation.setX(m_lightLocation.getX() - LIGHT_MOVEMENT_FACTOR);
-				break;
-			case KeyEvent.VK_L:
-				m_lightLocation.setX(m_lightLocation.getX() + LIGHT_MOVEMENT_FACTOR);
-				break;
-			case KeyEvent.VK_O:
-				m_lightLocation.setY(m_lightLocation.getY() - LIGHT_MOVEMENT_FACTOR);
-				break;
-			case KeyEvent.VK_U:
-				m_lightLocation.setY(m_lightLocation.getY() + LIGHT_MOVEMENT_FACTOR);
-				break;
-			// Positional Light Toggle
-			case KeyEvent.VK_P:
-				m_usePositionalLight = !m_usePositionalLight;
-				// Turn light on or off based on boolean.
-				if(m_usePositionalLight)
-				{
-					m_positionalLight.setDiffuse(POSITIONAL_LIGHT_ON);
-					m_positionalLight.setSpecular(POSITIONAL_LIGHT_ON);
-				}
-				else
-				{
-					m_positionalLight.setDiffuse(POSITIONAL_LIGHT_OFF);
-					m_positionalLight.setSpecular(POSITIONAL_LIGHT_OFF);
-				}
-				break;
-		}
+		// Keys arrive on the AWT event thread; the frame preparation applies them when it starts the next frame.
+		m_pendingKeys.add(e.getExtendedKeyCode());
 	}
 	
 	@Override
 	public void keyReleased(KeyEvent e)
 	{
-	
+		
 	}
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package project3;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder events of the renderer, so that a recording shows frames, passes and loading next to the
+ * garbage collections, safepoints and deoptimizations that happened at the same time. Start a recording with
+ * {@code -XX:StartFlightRecording=filename=project3.jfr} or {@code jcmd <pid> JFR.start}.
+ * <p>
+ * While nothing is recording, {@code begin()} and {@code commit()} do nothing, so the render loop keeps one instance of
+ * each per-frame event per thread and reuses it rather than creating one per frame.
+ */
+final class RenderEvents
+{
+	private RenderEvents()
+	{
+	}
+	
+	@Name("project3.Frame")
+	@Label("Frame")
+	@Category({"Project3", "Rendering"})
+	@Description("One call of display() on the GL thread")
+	static final class Frame extends Event
+	{
+		@Label("Snapshot")
+		@Description("The number of the prepared frame that was drawn")
+		long snapshot;
+		
+		@Label("Repeated")
+		@Description("Whether the snapshot had already been drawn, because the next one was not ready")
+		boolean repeated;
+	}
+	
+	@Name("project3.FramePreparation")
+	@Label("Frame Preparation")
+	@Category({"Project3", "Rendering"})
+	@Description("Simulation, culling and per-object matrices of one frame, on the frame preparation thread")
+	static final class FramePreparation extends Event
+	{
+		@Label("Snapshot")
+		long snapshot;
+		
+		@Label("Simulation Steps")
+		int simulationSteps;
+	}
+	
+	@Name("project3.ShadowPass")
+	@Label("Shadow Pass")
+	@Category({"Project3", "Rendering"})
+	@Description("Submitting the shadow casters to the shadow map (passOne)")
+	static final class ShadowPass extends Event
+	{
+		@Label("Draws")
+		int draws;
+	}
+	
+	@Name("project3.LitPass")
+	@Label("Lit Pass")
+	@Category({"Project3", "Rendering"})
+	@Description("Submitting the skybox and the lit objects (passTwo)")
+	static final class LitPass extends Event
+	{
+		@Label("Draws")
+		int draws;
+	}
+	
+	@Name("project3.InstallLights")
+	@Label("Install Lights")
+	@Category({"Project3", "Rendering"})
+	static final class InstallLights extends Event
+	{
+		@Label("Light On")
+		boolean lightOn;
+		
+		@Label("Colors Changed")
+		boolean colorsChanged;
+	}
+	
+	@Name("project3.ModelImport")
+	@Label("Model Import")
+	@Category({"Project3", "Loading"})
+	static final class ModelImport extends Event
+	{
+		@Label("File")
+		String file;
+		
+		@Label("From Cache")
+		boolean fromCache;
+		
+		@Label("Vertices")
+		int vertices;
+		
+		@Label("Indices")
+		int indices;
+	}
+	
+	@Name("project3.TextureDecode")
+	@Label("Texture Decode")
+	@Category({"Project3", "Loading"})
+	@Description("Reading one image file, on a decoder thread: from the texture cache, or decoded and compressed")
+	static final class TextureDecode extends Event
+	{
+		@Label("File")
+		String file;
+		
+		@Label("Width")
+		int width;
+		
+		@Label("Height")
+		int height;
+		
+		@Label("From Cache")
+		boolean fromCache;
+	}
+	
+	@Name("project3.TextureLoad")
+	@Label("Texture Load")
+	@Category({"Project3", "Loading"})
+	@Description("A texture from the request to load it until it is resident, across decoding and streaming")
+	static final class TextureLoad extends Event
+	{
+		@Label("Texture")
+		String texture;
+		
+		@Label("Format")
+		String format;
+		
+		@Label("Video Memory")
+		@DataAmount
+		long bytes;
+	}
+}
@@ -0,0 +1,308 @@
+package project3;
+
+import graphicslib3D.Matrix3D;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that preparing a frame allocates nothing once it is warmed up, and compares the per-object matrix work with
+ * {@link Mat4} to the same work with graphicslib3D's {@code Matrix3D}, which it replaced.
+ * <p>
+ * A frame here is what the frame preparation thread does, on the same classes, apart from the simulation: it animates
+ * the transforms of a scene graph, updates the world transforms and the {@link SceneIndex}, and has a
+ * {@link FrameBuilder} cull, sort and compute the matrices of both passes into a {@link FrameSnapshot}, which it
+ * publishes through a {@link SnapshotExchange}. It then takes the snapshot as the GL thread does and walks its
+ * {@link DrawList}s the way the passes do, without the GL calls. The scene's meshes and programs stand in for GL objects
+ * ({@link Mesh#forCulling}, {@link ShaderProgram#forSorting}), so no context is needed; a quarter of the objects pick
+ * levels of detail. The lit pass's matrices are then computed as they were with {@code Matrix3D}, to check that both
+ * agree and to show what that allocated. Exits with status 1 if a frame allocated anything.
+ * <p>
+ * Usage: {@code java project3.RenderLoopAllocationCheck [objects]}
+ */
+public class RenderLoopAllocationCheck
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int DEFAULT_OBJECT_COUNT = 1000;
+	private static final int WARMUP_FRAMES = 2000;
+	private static final int FRAMES = 500;
+	private static final float WORLD_SIZE = 100.0f;
+	private static final float MARGIN = 1.0f;
+	private static final float NEAR_PLANE = 0.1f;
+	private static final float FAR_PLANE = 1000.0f;
+	private static final int VIEWPORT_SIZE = 800;
+	// How many distinct meshes, programs and textures the objects share, so that sorting has groups to form.
+	private static final int MESH_COUNT = 4;
+	private static final int PROGRAM_COUNT = 2;
+	private static final int TEXTURE_COUNT = 4;
+	private static final float[] LOD_SCREEN_SIZES = {200.0f, 50.0f};
+	private static final float LOD_HYSTERESIS = 0.1f;
+	private static final long SEED = 18;
+	// float against double, after a handful of multiplications of values up to the world size
+	private static final float TOLERANCE = 1e-3f;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private int m_objectCount;
+	private float[] m_positions;
+	private float[] m_spins;
+	private SceneNode m_scene;
+	private SceneNode[] m_nodes;
+	private Map<SceneNode, Integer> m_objectIndices;
+	private SceneIndex m_sceneIndex;
+	private FrameBuilder m_frameBuilder;
+	private SnapshotExchange m_snapshots;
+	private Mat4 m_lightProjection, m_lightView, m_b;
+	private int m_uploadCount;
+	private int m_vertexArrayBinds;
+	
+	private RenderLoopAllocationCheck(int objectCount)
+	{
+		m_objectCount = objectCount;
+		Random random = new Random(SEED);
+		BoundingVolume bounds = BoundingVolume.fromBox(new float[] {-1.0f, -1.0f, -1.0f, 1.0f, 1.0f, 1.0f});
+		Mesh[] meshes = new Mesh[MESH_COUNT];
+		for(int i = 0; i < MESH_COUNT; i++)
+		{
+			meshes[i] = Mesh.forCulling(bounds, i + 1);
+		}
+		ShaderProgram[] programs = new ShaderProgram[PROGRAM_COUNT];
+		for(int i = 0; i < PROGRAM_COUNT; i++)
+		{
+			programs[i] = ShaderProgram.forSorting(i + 1);
+		}
+		LodGroup lods = new LodGroup(Arrays.copyOf(meshes, LOD_SCREEN_SIZES.length + 1), LOD_SCREEN_SIZES, LOD_HYSTERESIS);
+		
+		m_positions = new float[objectCount * 3];
+		m_spins = new float[objectCount];
+		m_scene = new SceneNode("scene");
+		m_nodes = new SceneNode[objectCount];
+		m_objectIndices = new IdentityHashMap<SceneNode, Integer>();
+		for(int i = 0; i < objectCount; i++)
+		{
+			for(int axis = 0; axis < 3; axis++)
+			{
+				m_positions[i * 3 + axis] = (random.nextFloat() - 0.5f) * WORLD_SIZE;
+			}
+			m_spins[i] = random.nextFloat();
+			ShaderProgram program = programs[random.nextInt(PROGRAM_COUNT)];
+			int texture = random.nextInt(TEXTURE_COUNT);
+			if(i % 4 == 0)
+			{
+				m_nodes[i] = new SceneNode("object " + i, lods, program, texture);
+			}
+			else
+			{
+				m_nodes[i] = new SceneNode("object " + i, meshes[random.nextInt(MESH_COUNT)], program, texture);
+			}
+			m_nodes[i].setCastsShadow(i % 2 == 0);
+			m_scene.addChild(m_nodes[i]);
+			m_objectIndices.put(m_nodes[i], i);
+		}
+		
+		m_sceneIndex = new SceneIndex(MARGIN);
+		m_frameBuilder = new FrameBuilder(FAR_PLANE, ShaderProgram.forSorting(PROGRAM_COUNT + 1));
+		m_snapshots = new SnapshotExchange();
+		m_lightProjection = new Mat4();
+		m_lightView = new Mat4();
+		m_b = new Mat4().translate(0.5f, 0.5f, 0.5f).scale(0.5f, 0.5f, 0.5f);
+		animate(0);
+		m_sceneIndex.add(m_scene);
+	}
+	
+	public static void main(String[] args)
+	{
+		int objectCount = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_OBJECT_COUNT;
+		AllocationCounter counter = new AllocationCounter();
+		if(!counter.isSupported())
+		{
+			System.out.println("This JVM cannot count allocated bytes per thread");
+			System.exit(1);
+		}
+		RenderLoopAllocationCheck check = new RenderLoopAllocationCheck(objectCount);
+		
+		for(int frame = 0; frame < WARMUP_FRAMES; frame++)
+		{
+			check.frame(frame);
+		}
+		long[] nanos = new long[FRAMES];
+		long allocatedBefore = counter.getAllocatedBytes();
+		for(int frame = 0; frame < FRAMES; frame++)
+		{
+			long start = System.nanoTime();
+			check.frame(WARMUP_FRAMES + frame);
+			nanos[frame] = System.nanoTime() - start;
+		}
+		long allocated = counter.getAllocatedBytes() - allocatedBefore;
+		Arrays.sort(nanos);
+		System.out.printf("%d objects, %d matrices uploaded, %d vertex array binds: frame %.3f ms, %d bytes allocated in %d frames%n", objectCount,
+				check.m_uploadCount, check.m_vertexArrayBinds, nanos[FRAMES / 2] / 1e6, allocated, FRAMES);
+		
+		// The same per-object matrices with Matrix3D, for the last frame's transforms.
+		for(int frame = 0; frame < WARMUP_FRAMES; frame++)
+		{
+			check.legacyMatrices(WARMUP_FRAMES + FRAMES - 1);
+		}
+		long legacyAllocatedBefore = counter.getAllocatedBytes();
+		for(int frame = 0; frame < FRAMES; frame++)
+		{
+			long start = System.nanoTime();
+			check.legacyMatrices(WARMUP_FRAMES + FRAMES - 1);
+			nanos[frame] = System.nanoTime() - start;
+		}
+		long legacyAllocated = counter.getAllocatedBytes() - legacyAllocatedBefore;
+		Arrays.sort(nanos);
+		float difference = check.legacyMatrices(WARMUP_FRAMES + FRAMES - 1);
+		System.out.printf("  Matrix3D matrices alone %.3f ms, %d bytes allocated per frame; largest difference %.2e%n", nanos[FRAMES / 2] / 1e6,
+				legacyAllocated / FRAMES, difference);
+		
+		boolean passed = allocated == 0 && difference <= TOLERANCE;
+		System.out.println(passed ? "PASSED" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+	
+	/**
+	 * Prepares and publishes one frame, and reads it back as the GL thread does.
+	 */
+	private void frame(int frame)
+	{
+		animate(frame);
+		
+		// The camera circles the world; the light stays above it.
+		FrameSnapshot snapshot = m_snapshots.getBack();
+		float angle = frame * 0.01f;
+		Mat4 projection = snapshot.getProjection().perspective(60.0f, 1.0f, NEAR_PLANE, FAR_PLANE);
+		Mat4 view = snapshot.getView().lookAt(WORLD_SIZE * (float) Math.sin(angle), 10.0f, WORLD_SIZE * (float) Math.cos(angle), 0.0f, 0.0f, 0.0f, 0.0f,
+				1.0f, 0.0f);
+		snapshot.getLightViewPosition().set(0.0f, WORLD_SIZE, 0.0f).transformPoint(view);
+		m_lightView.lookAt(0.0f, WORLD_SIZE, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+		m_lightProjection.perspective(60.0f, 1.0f, NEAR_PLANE, FAR_PLANE);
+		m_frameBuilder.build(m_sceneIndex, m_lightProjection, m_lightView, VIEWPORT_SIZE / 2.0f * m_lightProjection.get(1, 1),
+				VIEWPORT_SIZE / 2.0f * projection.get(1, 1), snapshot);
+		m_snapshots.publish();
+		
+		m_snapshots.acquire();
+		FrameSnapshot front = m_snapshots.getFront();
+		m_vertexArrayBinds = walk(front.getShadowDraws()) + walk(front.getDraws());
+		m_uploadCount = front.getShadowDraws().size() + front.getDraws().size() * 3;
+	}
+	
+	/**
+	 * Reads what {@link Project3#passOne} and {@link Project3#passTwo} read of each item of {@code draws}, and returns how
+	 * many times the bound vertex array would change.
+	 */
+	private static int walk(DrawList draws)
+	{
+		int binds = 0;
+		int vertexArray = -1;
+		for(int i = 0; i < draws.size(); i++)
+		{
+			SceneNode node = draws.getNode(i);
+			if(node.getProgram() == null || node.getFrontFace() == 0 || draws.getMesh(i) == null)
+			{
+				throw new IllegalStateException("Item " + i + " has no program, winding or mesh");
+			}
+			if(draws.getVertexArray(i) != vertexArray)
+			{
+				vertexArray = draws.getVertexArray(i);
+				binds++;
+			}
+		}
+		return binds;
+	}
+	
+	/**
+	 * Moves every object to where it is in {@code frame}, updates the world transforms and refits the scene index.
+	 */
+	private void animate(int frame)
+	{
+		for(int i = 0; i < m_objectCount; i++)
+		{
+			float angle = (frame * m_spins[i]) % 360.0f;
+			m_nodes[i].getTransform().identity().translate(m_positions[i * 3], m_positions[i * 3 + 1], m_positions[i * 3 + 2]).rotateY(angle)
+					.rotateX(angle).scale(0.5f, 0.5f, 0.5f);
+		}
+		m_scene.updateWorldTransforms(null);
+		m_sceneIndex.update(m_scene);
+	}
+	
+	/**
+	 * Computes the lit pass's matrices of the objects the last frame drew the way they were computed with Matrix3D, and
+	 * returns the largest difference from the batched results.
+	 */
+	private float legacyMatrices(int frame)
+	{
+		FrameSnapshot snapshot = m_snapshots.getFront();
+		DrawList draws = snapshot.getDraws();
+		Matrix3D view = toMatrix3D(snapshot.getView());
+		Matrix3D b = toMatrix3D(m_b);
+		Matrix3D lightProjection = toMatrix3D(m_lightProjection);
+		Matrix3D lightView = toMatrix3D(m_lightView);
+		Matrix3D world = new Matrix3D();
+		Matrix3D modelView = new Matrix3D();
+		Matrix3D shadowMVP = new Matrix3D();
+		float difference = 0.0f;
+		for(int i = 0; i < draws.size(); i++)
+		{
+			int object = m_objectIndices.get(draws.getNode(i));
+			double angle = (frame * m_spins[object]) % 360.0f;
+			world.setToIdentity();
+			world.translate(m_positions[object * 3], m_positions[object * 3 + 1], m_positions[object * 3 + 2]);
+			world.rotateY(angle);
+			world.rotateX(angle);
+			world.scale(0.5, 0.5, 0.5);
+			
+			modelView.setToIdentity();
+			modelView.concatenate(view);
+			modelView.concatenate(world);
+			float[] modelViewValues = modelView.getFloatValues();
+			float[] normalValues = modelView.inverse().transpose().getFloatValues();
+			shadowMVP.setToIdentity();
+			shadowMVP.concatenate(b);
+			shadowMVP.concatenate(lightProjection);
+			shadowMVP.concatenate(lightView);
+			shadowMVP.concatenate(world);
+			float[] shadowValues = shadowMVP.getFloatValues();
+			
+			difference = Math.max(difference, maxDifference(modelViewValues, draws.getMatrices(FrameSnapshot.MODEL_VIEW), i * 16, false));
+			// Only the 3x3 part of the normal matrix reaches the shaders' normals.
+			difference = Math.max(difference, maxDifference(normalValues, draws.getMatrices(FrameSnapshot.NORMAL), i * 16, true));
+			difference = Math.max(difference, maxDifference(shadowValues, draws.getMatrices(FrameSnapshot.SHADOW), i * 16, false));
+		}
+		return difference;
+	}
+	
+	private static float maxDifference(float[] expected, float[] actual, int offset, boolean upperLeftOnly)
+	{
+		float difference = 0.0f;
+		for(int column = 0; column < 4; column++)
+		{
+			for(int row = 0; row < 4; row++)
+			{
+				if(!upperLeftOnly || (row < 3 && column < 3))
+				{
+					difference = Math.max(difference, Math.abs(expected[column * 4 + row] - actual[offset + column * 4 + row]));
+				}
+			}
+		}
+		return difference;
+	}
+	
+	private static Matrix3D toMatrix3D(Mat4 matrix)
+	{
+		Matrix3D result = new Matrix3D();
+		for(int row = 0; row < 4; row++)
+		{
+			for(int column = 0; column < 4; column++)
+			{
+				result.setElementAt(row, column, matrix.get(row, column));
+			}
+		}
+		return result;
+	}
+}
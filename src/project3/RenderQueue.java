@@ -0,0 +1,206 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * The draw items of one pass, sorted so that consecutive items share as much GL state as possible.
+ * <p>
+ * Each item is described by a 64-bit sort key, most significant field first:
+ * <pre>
+ * bits 63-56  program
+ * bits 55-44  color texture
+ * bits 43-32  vertex array object
+ * bits 31-16  view depth, front to back
+ * bits 15-0   index of the node in this queue
+ * </pre>
+ * Sorting the keys as plain {@code long}s groups items by program, then by texture and then by mesh, so each of them
+ * only changes when the next group starts; within a group, nearer items are drawn first so that the depth test rejects
+ * more of the hidden fragments. The node index in the low bits makes every key unique and lets the queue sort a
+ * primitive array without creating objects.
+ */
+public class RenderQueue
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int INDEX_BITS = 16;
+	private static final int DEPTH_BITS = 16;
+	private static final int VAO_BITS = 12;
+	private static final int TEXTURE_BITS = 12;
+	private static final int PROGRAM_BITS = 8;
+	private static final int DEPTH_SHIFT = INDEX_BITS;
+	private static final int VAO_SHIFT = DEPTH_SHIFT + DEPTH_BITS;
+	private static final int TEXTURE_SHIFT = VAO_SHIFT + VAO_BITS;
+	private static final int PROGRAM_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+	private static final int MAX_ITEMS = 1 << INDEX_BITS;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float m_farPlane;
+	private long[] m_keys;
+	private SceneNode[] m_nodes;
+	private int m_size;
+	private int m_culledCount;
+	private IntList m_candidates;
+	
+	/**
+	 * @param farPlane the distance at which depths stop being told apart; items farther away sort as if at this distance
+	 */
+	public RenderQueue(float farPlane)
+	{
+		m_farPlane = farPlane;
+		m_keys = new long[INITIAL_CAPACITY];
+		m_nodes = new SceneNode[INITIAL_CAPACITY];
+		m_candidates = new IntList(INITIAL_CAPACITY);
+	}
+	
+	public void clear()
+	{
+		Arrays.fill(m_nodes, 0, m_size, null);
+		m_size = 0;
+		m_culledCount = 0;
+	}
+	
+	/**
+	 * Queues every node of {@code index} that is visible and whose bounds intersect {@code frustum}. The index finds the
+	 * candidates hierarchically; only they are tested against the frustum one by one. Nodes with levels of detail pick
+	 * theirs for this pass from their projected size.
+	 *
+	 * @param view             the view matrix of the pass, to sort by depth
+	 * @param frustum          the view volume of the pass, in world space
+	 * @param projectionScale  how many pixels one world unit covers at a view depth of one: half the viewport height
+	 *                         times element [1][1] of the projection matrix
+	 * @param depthOnlyProgram for a depth-only pass, the program every item is drawn with; only shadow casters are queued
+	 *                         and textures are ignored. {@code null} for a color pass, which uses each node's program and
+	 *                         texture.
+	 */
+	public void collect(SceneIndex index, Mat4 view, Frustum frustum, float projectionScale, ShaderProgram depthOnlyProgram)
+	{
+		m_candidates.clear();
+		index.queryFrustum(frustum, m_candidates);
+		int eligibleCount = (depthOnlyProgram != null) ? index.getShadowCasterCount() : index.size();
+		int insideCount = 0;
+		for(int i = 0; i < m_candidates.size(); i++)
+		{
+			SceneNode node = index.getNode(m_candidates.get(i));
+			if(depthOnlyProgram != null && !node.castsShadow())
+			{
+				continue;
+			}
+			if(isCulled(node, frustum))
+			{
+				continue;
+			}
+			insideCount++;
+			if(!node.isVisibleInWorld())
+			{
+				continue;
+			}
+			
+			// The view-space z of the node's origin; the camera looks down -z.
+			Mat4 world = node.getWorldTransform();
+			float x = world.get(0, 3);
+			float y = world.get(1, 3);
+			float z = world.get(2, 3);
+			float viewZ = view.get(2, 0) * x + view.get(2, 1) * y + view.get(2, 2) * z + view.get(2, 3);
+			
+			if(node.getLods() != null)
+			{
+				// Clamped to the radius, so that the size stays finite when the camera is inside the bounds.
+				float radius = node.getWorldSphere()[3];
+				float distance = Math.max(-viewZ, radius);
+				node.selectLevelOfDetail(2.0f * radius * projectionScale / distance, depthOnlyProgram != null);
+			}
+			
+			if(depthOnlyProgram != null)
+			{
+				add(node, depthOnlyProgram, node.getShadowVertexArray(), 0, -viewZ);
+			}
+			else
+			{
+				add(node, node.getProgram(), node.getVertexArray(), Math.max(node.getTexture() + 1, 0), -viewZ);
+			}
+		}
+		
+		// Everything eligible that the index did not return was culled as well.
+		m_culledCount += eligibleCount - insideCount;
+	}
+	
+	/**
+	 * Queues a single item.
+	 *
+	 * @param vertexArray the vertex array object the item is drawn with
+	 * @param textureKey  a small number identifying the bound texture, 0 for none
+	 */
+	public void add(SceneNode node, ShaderProgram program, int vertexArray, int textureKey, float depth)
+	{
+		if(m_size == MAX_ITEMS)
+		{
+			throw new IllegalStateException("A render queue holds at most " + MAX_ITEMS + " items");
+		}
+		if(m_size == m_keys.length)
+		{
+			m_keys = Arrays.copyOf(m_keys, m_size * 2);
+			m_nodes = Arrays.copyOf(m_nodes, m_size * 2);
+		}
+		m_nodes[m_size] = node;
+		m_keys[m_size] = makeKey(program.getId(), textureKey, vertexArray, depth, m_size);
+		m_size++;
+	}
+	
+	/**
+	 * Returns how many nodes {@link #collect} left out since the last {@link #clear} because they were outside the
+	 * frustum.
+	 */
+	public int getCulledCount()
+	{
+		return m_culledCount;
+	}
+	
+	public void sort()
+	{
+		Arrays.sort(m_keys, 0, m_size);
+	}
+	
+	public int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Returns the node of the {@code i}th item in key order (after {@link #sort}).
+	 */
+	public SceneNode get(int i)
+	{
+		return m_nodes[(int) (m_keys[i] & (MAX_ITEMS - 1))];
+	}
+	
+	/**
+	 * Tests the node's bounding sphere first, since that is cheapest, and its box only if the sphere is not outside. The
+	 * index only compares the frustum with boxes grown by its margin.
+	 */
+	private static boolean isCulled(SceneNode node, Frustum frustum)
+	{
+		float[] sphere = node.getWorldSphere();
+		return !frustum.intersectsSphere(sphere[0], sphere[1], sphere[2], sphere[3]) || !frustum.intersectsBox(node.getWorldBox());
+	}
+	
+	private long makeKey(int program, int texture, int vao, float depth, int index)
+	{
+		float normalizedDepth = Math.min(Math.max(depth / m_farPlane, 0.0f), 1.0f);
+		long quantizedDepth = (long) (normalizedDepth * ((1 << DEPTH_BITS) - 1));
+		return field(program, PROGRAM_BITS) << PROGRAM_SHIFT | field(texture, TEXTURE_BITS) << TEXTURE_SHIFT | field(vao, VAO_BITS) << VAO_SHIFT
+				| quantizedDepth << DEPTH_SHIFT | index;
+	}
+	
+	/**
+	 * Keeps the low {@code bits} of a GL object name. Names are small, consecutive integers in practice, so this only
+	 * merges groups (costing a redundant state change) in scenes with thousands of objects.
+	 */
+	private static long field(int value, int bits)
+	{
+		return value & ((1L << bits) - 1);
+	}
+}
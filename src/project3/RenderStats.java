@@ -0,0 +1,261 @@
+package project3;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the renderer asks of the GPU: per frame, the draw calls, triangles, state changes (program, texture,
+ * vertex array and framebuffer binds and front face changes) and bytes uploaded to buffers and textures, and over the
+ * whole run their totals; and at any time the buffer, texture and framebuffer objects that are alive and the video
+ * memory they hold. Live counts that keep growing while the scene stays the same are a leak.
+ * <p>
+ * There is one instance, which {@link #register} publishes as a platform MBean. The counting methods belong to the GL
+ * thread and allocate nothing; the getters may be called from any thread.
+ */
+public final class RenderStats implements RenderStatsMBean
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	public static final String OBJECT_NAME = "project3:type=RenderStats";
+	private static final RenderStats INSTANCE = new RenderStats();
+	// The per-frame counters, indices into the counter arrays.
+	private static final int DRAW_CALLS = 0;
+	private static final int TRIANGLES = 1;
+	private static final int STATE_CHANGES = 2;
+	private static final int BUFFER_UPLOAD_BYTES = 3;
+	private static final int TEXTURE_UPLOAD_BYTES = 4;
+	private static final int COUNTER_COUNT = 5;
+	
+	/**
+	 * The kinds of GPU objects whose allocations are tracked.
+	 */
+	public enum Resource
+	{
+		BUFFER, TEXTURE, FRAMEBUFFER
+	}
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	// The counts of the frame in progress, and those of the last complete frame and of all complete frames.
+	private long[] m_frame;
+	private AtomicLongArray m_lastFrame;
+	private AtomicLongArray m_totals;
+	private volatile long m_frameCount;
+	// Per resource kind.
+	private AtomicLongArray m_liveObjects;
+	private AtomicLongArray m_liveBytes;
+	private AtomicLongArray m_createdObjects;
+	
+	private RenderStats()
+	{
+		m_frame = new long[COUNTER_COUNT];
+		m_lastFrame = new AtomicLongArray(COUNTER_COUNT);
+		m_totals = new AtomicLongArray(COUNTER_COUNT);
+		m_liveObjects = new AtomicLongArray(Resource.values().length);
+		m_liveBytes = new AtomicLongArray(Resource.values().length);
+		m_createdObjects = new AtomicLongArray(Resource.values().length);
+	}
+	
+	public static RenderStats get()
+	{
+		return INSTANCE;
+	}
+	
+	/**
+	 * Publishes the statistics in the platform MBean server under {@link #OBJECT_NAME}.
+	 */
+	public static void register()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		}
+		catch(JMException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Counts a draw call of {@code triangles} triangles, all instances included.
+	 */
+	public void countDraw(long triangles)
+	{
+		m_frame[DRAW_CALLS]++;
+		m_frame[TRIANGLES] += triangles;
+	}
+	
+	public void countStateChange()
+	{
+		m_frame[STATE_CHANGES]++;
+	}
+	
+	/**
+	 * Counts {@code bytes} copied from the CPU into a buffer or texture during the frame.
+	 */
+	public void countUpload(Resource kind, long bytes)
+	{
+		m_frame[(kind == Resource.TEXTURE) ? TEXTURE_UPLOAD_BYTES : BUFFER_UPLOAD_BYTES] += bytes;
+	}
+	
+	/**
+	 * Counts {@code count} new objects of a kind, holding {@code bytes} of video memory between them.
+	 */
+	public void allocate(Resource kind, int count, long bytes)
+	{
+		m_liveObjects.addAndGet(kind.ordinal(), count);
+		m_liveBytes.addAndGet(kind.ordinal(), bytes);
+		m_createdObjects.addAndGet(kind.ordinal(), count);
+	}
+	
+	/**
+	 * Counts a change of {@code bytes} in the video memory an existing object of a kind holds, when its storage is
+	 * specified again.
+	 */
+	public void resize(Resource kind, long bytes)
+	{
+		m_liveBytes.addAndGet(kind.ordinal(), bytes);
+	}
+	
+	/**
+	 * Counts {@code count} deleted objects of a kind, which held {@code bytes} of video memory between them.
+	 */
+	public void free(Resource kind, int count, long bytes)
+	{
+		m_liveObjects.addAndGet(kind.ordinal(), -count);
+		m_liveBytes.addAndGet(kind.ordinal(), -bytes);
+	}
+	
+	/**
+	 * Call at the end of each frame: publishes its counts and adds them to the totals.
+	 */
+	public void endFrame()
+	{
+		for(int counter = 0; counter < COUNTER_COUNT; counter++)
+		{
+			m_lastFrame.lazySet(counter, m_frame[counter]);
+			m_totals.lazySet(counter, m_totals.get(counter) + m_frame[counter]);
+			m_frame[counter] = 0;
+		}
+		m_frameCount++;
+	}
+	
+	@Override
+	public long getFrameCount()
+	{
+		return m_frameCount;
+	}
+	
+	@Override
+	public long getDrawCallsPerFrame()
+	{
+		return m_lastFrame.get(DRAW_CALLS);
+	}
+	
+	@Override
+	public long getTrianglesPerFrame()
+	{
+		return m_lastFrame.get(TRIANGLES);
+	}
+	
+	@Override
+	public long getStateChangesPerFrame()
+	{
+		return m_lastFrame.get(STATE_CHANGES);
+	}
+	
+	@Override
+	public long getBufferUploadBytesPerFrame()
+	{
+		return m_lastFrame.get(BUFFER_UPLOAD_BYTES);
+	}
+	
+	@Override
+	public long getTextureUploadBytesPerFrame()
+	{
+		return m_lastFrame.get(TEXTURE_UPLOAD_BYTES);
+	}
+	
+	@Override
+	public long getTotalDrawCalls()
+	{
+		return m_totals.get(DRAW_CALLS);
+	}
+	
+	@Override
+	public long getTotalTriangles()
+	{
+		return m_totals.get(TRIANGLES);
+	}
+	
+	@Override
+	public long getTotalStateChanges()
+	{
+		return m_totals.get(STATE_CHANGES);
+	}
+	
+	@Override
+	public long getTotalBufferUploadBytes()
+	{
+		return m_totals.get(BUFFER_UPLOAD_BYTES);
+	}
+	
+	@Override
+	public long getTotalTextureUploadBytes()
+	{
+		return m_totals.get(TEXTURE_UPLOAD_BYTES);
+	}
+	
+	@Override
+	public long getLiveBuffers()
+	{
+		return m_liveObjects.get(Resource.BUFFER.ordinal());
+	}
+	
+	@Override
+	public long getLiveBufferBytes()
+	{
+		return m_liveBytes.get(Resource.BUFFER.ordinal());
+	}
+	
+	@Override
+	public long getLiveTextures()
+	{
+		return m_liveObjects.get(Resource.TEXTURE.ordinal());
+	}
+	
+	@Override
+	public long getLiveTextureBytes()
+	{
+		return m_liveBytes.get(Resource.TEXTURE.ordinal());
+	}
+	
+	@Override
+	public long getLiveFramebuffers()
+	{
+		return m_liveObjects.get(Resource.FRAMEBUFFER.ordinal());
+	}
+	
+	@Override
+	public long getCreatedBuffers()
+	{
+		return m_createdObjects.get(Resource.BUFFER.ordinal());
+	}
+	
+	@Override
+	public long getCreatedTextures()
+	{
+		return m_createdObjects.get(Resource.TEXTURE.ordinal());
+	}
+	
+	@Override
+	public long getCreatedFramebuffers()
+	{
+		return m_createdObjects.get(Resource.FRAMEBUFFER.ordinal());
+	}
+}
@@ -0,0 +1,46 @@
+package project3;
+
+/**
+ * The management interface of {@link RenderStats}, as it appears to {@code jconsole} and other JMX clients under
+ * {@value RenderStats#OBJECT_NAME}. The per-frame values are those of the last complete frame.
+ */
+public interface RenderStatsMBean
+{
+	long getFrameCount();
+	
+	long getDrawCallsPerFrame();
+	
+	long getTrianglesPerFrame();
+	
+	long getStateChangesPerFrame();
+	
+	long getBufferUploadBytesPerFrame();
+	
+	long getTextureUploadBytesPerFrame();
+	
+	long getTotalDrawCalls();
+	
+	long getTotalTriangles();
+	
+	long getTotalStateChanges();
+	
+	long getTotalBufferUploadBytes();
+	
+	long getTotalTextureUploadBytes();
+	
+	long getLiveBuffers();
+	
+	long getLiveBufferBytes();
+	
+	long getLiveTextures();
+	
+	long getLiveTextureBytes();
+	
+	long getLiveFramebuffers();
+	
+	long getCreatedBuffers();
+	
+	long getCreatedTextures();
+	
+	long getCreatedFramebuffers();
+}
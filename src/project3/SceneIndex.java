@@ -0,0 +1,170 @@
+package project3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A spatial index of the scene nodes that draw something, kept in a {@link BoundingVolumeHierarchy} over their world
+ * boxes. Render queues collect from it instead of walking the whole scene graph, so the cost of culling grows with what
+ * is in view rather than with the size of the scene.
+ * <p>
+ * Nodes are indexed with their world boxes as of the last {@link SceneNode#updateWorldTransforms}; after each update,
+ * {@link #update} refits the nodes that moved. Results are conservative: a node may be reported when it is slightly
+ * outside the query, by up to the index's margin, but never left out when it is inside.
+ */
+public class SceneIndex
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private BoundingVolumeHierarchy m_tree;
+	// Indexed nodes by their data in the tree; removed nodes leave a null.
+	private List<SceneNode> m_nodes;
+	private IntList m_results;
+	private int m_shadowCasterCount;
+	
+	/**
+	 * @param margin how far a node may move before the index has to be refit, in world units
+	 */
+	public SceneIndex(float margin)
+	{
+		m_tree = new BoundingVolumeHierarchy(margin);
+		m_nodes = new ArrayList<SceneNode>();
+		m_results = new IntList(64);
+	}
+	
+	/**
+	 * Indexes every node below and including {@code root} that draws something and is not indexed yet. Their world
+	 * transforms must be up to date.
+	 */
+	public void add(SceneNode root)
+	{
+		if(root.getMesh() != null && root.getIndexProxy() == BoundingVolumeHierarchy.NULL_NODE)
+		{
+			root.setIndexProxy(m_tree.insert(root.getWorldBox(), m_nodes.size()));
+			m_nodes.add(root);
+			if(root.castsShadow())
+			{
+				m_shadowCasterCount++;
+			}
+		}
+		for(SceneNode child : root.getChildren())
+		{
+			add(child);
+		}
+	}
+	
+	/**
+	 * Removes every indexed node below and including {@code root} from the index.
+	 */
+	public void remove(SceneNode root)
+	{
+		int proxy = root.getIndexProxy();
+		if(proxy != BoundingVolumeHierarchy.NULL_NODE)
+		{
+			m_nodes.set(m_tree.getData(proxy), null);
+			m_tree.remove(proxy);
+			root.setIndexProxy(BoundingVolumeHierarchy.NULL_NODE);
+			if(root.castsShadow())
+			{
+				m_shadowCasterCount--;
+			}
+		}
+		for(SceneNode child : root.getChildren())
+		{
+			remove(child);
+		}
+	}
+	
+	/**
+	 * Refits the indexed nodes below and including {@code root} to their current world boxes; call after
+	 * {@link SceneNode#updateWorldTransforms}. Nodes that stayed within the margin cost a box comparison each.
+	 *
+	 * @return how many nodes moved far enough to refit the tree
+	 */
+	public int update(SceneNode root)
+	{
+		int refitCount = 0;
+		int proxy = root.getIndexProxy();
+		if(proxy != BoundingVolumeHierarchy.NULL_NODE && m_tree.move(proxy, root.getWorldBox()))
+		{
+			refitCount++;
+		}
+		List<SceneNode> children = root.getChildren();
+		for(int i = 0; i < children.size(); i++)
+		{
+			refitCount += update(children.get(i));
+		}
+		return refitCount;
+	}
+	
+	/**
+	 * Returns the number of indexed nodes.
+	 */
+	public int size()
+	{
+		return m_tree.size();
+	}
+	
+	/**
+	 * Returns the number of indexed nodes that cast shadows, as of when they were added.
+	 */
+	public int getShadowCasterCount()
+	{
+		return m_shadowCasterCount;
+	}
+	
+	/**
+	 * Returns the number of levels of the underlying tree.
+	 */
+	public int getHeight()
+	{
+		return m_tree.getHeight();
+	}
+	
+	/**
+	 * Adds the indexed nodes whose boxes intersect the sphere to {@code results}.
+	 */
+	public void querySphere(float x, float y, float z, float radius, List<SceneNode> results)
+	{
+		m_results.clear();
+		m_tree.querySphere(x, y, z, radius, m_results);
+		addNodes(m_results, results);
+	}
+	
+	/**
+	 * Adds the indexed nodes whose boxes the ray hits within {@code maxDistance} to {@code results}, in no particular
+	 * order.
+	 *
+	 * @param maxDistance how far along the ray to look, in multiples of the direction's length
+	 */
+	public void queryRay(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance,
+			List<SceneNode> results)
+	{
+		m_results.clear();
+		m_tree.queryRay(originX, originY, originZ, directionX, directionY, directionZ, maxDistance, m_results);
+		addNodes(m_results, results);
+	}
+	
+	/**
+	 * Writes the data of the indexed nodes whose boxes intersect {@code frustum} to {@code results}, without clearing it;
+	 * {@link #getNode} maps them back to nodes.
+	 */
+	void queryFrustum(Frustum frustum, IntList results)
+	{
+		m_tree.queryFrustum(frustum, results);
+	}
+	
+	SceneNode getNode(int data)
+	{
+		return m_nodes.get(data);
+	}
+	
+	private void addNodes(IntList data, List<SceneNode> results)
+	{
+		for(int i = 0; i < data.size(); i++)
+		{
+			results.add(m_nodes.get(data.get(i)));
+		}
+	}
+}
@@ -0,0 +1,361 @@
+package project3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * A node of the scene graph. Every node has a transform relative to its parent; nodes that draw something also carry
+ * the mesh, the program and the color texture (a {@link TextureManager} handle) they are drawn with. A node can also
+ * draw a whole {@link InstanceBatch} of its mesh, placed relative to the node, in one draw call, or pick one of the
+ * meshes of a {@link LodGroup} by how large it appears in each pass.
+ * <p>
+ * The scene is described once as a tree of nodes; each frame only the transforms change. {@link #updateWorldTransforms}
+ * then walks the tree once to combine them, and a {@link RenderQueue} collects the nodes to draw in each pass.
+ */
+public class SceneNode
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private String m_name;
+	private Mesh m_mesh;
+	private InstanceBatch m_instances;
+	private LodGroup m_lods;
+	// Current levels of detail of the lit and depth-only passes, kept separately so each has its own hysteresis.
+	private int m_lodLevel;
+	private int m_shadowLodLevel;
+	private ShaderProgram m_program;
+	private int m_texture;
+	private boolean m_castsShadow;
+	private boolean m_visible;
+	private boolean m_visibleInWorld;
+	private int m_frontFace;
+	private Mat4 m_transform;
+	private Mat4 m_worldTransform;
+	// World-space bounds as of the last update: sphere center and radius, and box min and max.
+	private float[] m_worldSphere;
+	private float[] m_worldBox;
+	private List<SceneNode> m_children;
+	// The node's leaf in the scene index, or BoundingVolumeHierarchy.NULL_NODE if it is not indexed.
+	private int m_indexProxy;
+	
+	/**
+	 * Creates a node that draws nothing itself, to group and transform its children.
+	 */
+	public SceneNode(String name)
+	{
+		this(name, (Mesh) null, null, -1);
+	}
+	
+	/**
+	 * Creates a node that draws {@code mesh} with {@code program}, and with {@code texture} bound to the color unit (-1
+	 * for none).
+	 */
+	public SceneNode(String name, Mesh mesh, ShaderProgram program, int texture)
+	{
+		m_name = name;
+		m_mesh = mesh;
+		m_program = program;
+		m_texture = texture;
+		m_visible = true;
+		m_frontFace = GL_CCW;
+		m_transform = new Mat4();
+		m_worldTransform = new Mat4();
+		m_worldSphere = new float[4];
+		m_worldBox = new float[6];
+		m_children = new ArrayList<SceneNode>();
+		m_indexProxy = BoundingVolumeHierarchy.NULL_NODE;
+	}
+	
+	/**
+	 * Creates a node that draws all instances of {@code instances} with {@code program}, and with {@code texture} bound
+	 * to the color unit (-1 for none).
+	 */
+	public SceneNode(String name, InstanceBatch instances, ShaderProgram program, int texture)
+	{
+		this(name, instances.getMesh(), program, texture);
+		m_instances = instances;
+	}
+	
+	/**
+	 * Creates a node that draws one level of {@code lods} at a time with {@code program}, and with {@code texture} bound
+	 * to the color unit (-1 for none). It starts out at the finest level.
+	 */
+	public SceneNode(String name, LodGroup lods, ShaderProgram program, int texture)
+	{
+		this(name, lods.getLevel(0), program, texture);
+		m_lods = lods;
+	}
+	
+	public void addChild(SceneNode child)
+	{
+		m_children.add(child);
+	}
+	
+	public List<SceneNode> getChildren()
+	{
+		return m_children;
+	}
+	
+	/**
+	 * Combines the transforms from the root down; call once per frame, after the transforms were updated and before the
+	 * nodes are queued.
+	 *
+	 * @param parentWorldTransform the parent's world transform, {@code null} for the root
+	 */
+	public void updateWorldTransforms(Mat4 parentWorldTransform)
+	{
+		updateWorldTransforms(parentWorldTransform, true);
+	}
+	
+	/**
+	 * Picks the level of detail for the next lit or depth-only pass, if the node has levels.
+	 *
+	 * @param screenSize the projected diameter of the node's bounding sphere in the pass, in pixels
+	 * @param depthOnly  whether the level is for a depth-only pass, which draws {@link LodGroup#getShadowLevel} of it
+	 */
+	public void selectLevelOfDetail(float screenSize, boolean depthOnly)
+	{
+		if(m_lods == null)
+		{
+			return;
+		}
+		if(depthOnly)
+		{
+			m_shadowLodLevel = m_lods.select(screenSize, m_shadowLodLevel);
+		}
+		else
+		{
+			m_lodLevel = m_lods.select(screenSize, m_lodLevel);
+			m_mesh = m_lods.getLevel(m_lodLevel);
+		}
+	}
+	
+	/**
+	 * Draws the node's mesh, or all of its instances, with {@code program}, which must be in use and have its
+	 * per-object uniforms set.
+	 */
+	public void draw(ShaderProgram program)
+	{
+		if(m_instances != null)
+		{
+			m_instances.draw(program);
+		}
+		else
+		{
+			m_mesh.draw(program);
+		}
+	}
+	
+	/**
+	 * Draws the node for a depth-only pass: like {@link #draw}, but with the depth-only level of detail.
+	 */
+	public void drawShadow(ShaderProgram program)
+	{
+		if(m_instances != null)
+		{
+			m_instances.draw(program);
+		}
+		else
+		{
+			getShadowMesh().draw(program);
+		}
+	}
+	
+	public String getName()
+	{
+		return m_name;
+	}
+	
+	/**
+	 * Returns the mesh the lit pass draws: the current level of detail if the node has levels.
+	 */
+	public Mesh getMesh()
+	{
+		return m_mesh;
+	}
+	
+	/**
+	 * Returns the mesh depth-only passes draw.
+	 */
+	public Mesh getShadowMesh()
+	{
+		return (m_lods != null) ? m_lods.getLevel(m_lods.getShadowLevel(m_shadowLodLevel)) : m_mesh;
+	}
+	
+	/**
+	 * Returns the node's levels of detail, or {@code null} if it always draws the same mesh.
+	 */
+	public LodGroup getLods()
+	{
+		return m_lods;
+	}
+	
+	/**
+	 * Returns the lit pass's current level of detail, 0 for nodes without levels.
+	 */
+	public int getLodLevel()
+	{
+		return m_lodLevel;
+	}
+	
+	/**
+	 * Returns the instances the node draws, or {@code null} if it draws its mesh once.
+	 */
+	public InstanceBatch getInstances()
+	{
+		return m_instances;
+	}
+	
+	/**
+	 * Returns the vertex array object the node is drawn with in the lit pass.
+	 */
+	public int getVertexArray()
+	{
+		return (m_instances != null) ? m_instances.getVertexArray() : m_mesh.getVertexArray();
+	}
+	
+	/**
+	 * Returns the vertex array object the node is drawn with in depth-only passes.
+	 */
+	public int getShadowVertexArray()
+	{
+		return (m_instances != null) ? m_instances.getVertexArray() : getShadowMesh().getVertexArray();
+	}
+	
+	/**
+	 * Returns the bounds of what the node draws in its own space: its mesh, all of its levels of detail, or all of its
+	 * instances.
+	 */
+	public BoundingVolume getBounds()
+	{
+		if(m_instances != null)
+		{
+			return m_instances.getBounds();
+		}
+		return (m_lods != null) ? m_lods.getBounds() : m_mesh.getBounds();
+	}
+	
+	/**
+	 * Returns the world-space bounding sphere as of the last {@link #updateWorldTransforms}: center x, y, z and radius.
+	 */
+	public float[] getWorldSphere()
+	{
+		return m_worldSphere;
+	}
+	
+	/**
+	 * Returns the world-space axis-aligned box as of the last {@link #updateWorldTransforms}: min x, y, z and max x, y,
+	 * z.
+	 */
+	public float[] getWorldBox()
+	{
+		return m_worldBox;
+	}
+	
+	public ShaderProgram getProgram()
+	{
+		return m_program;
+	}
+	
+	public int getTexture()
+	{
+		return m_texture;
+	}
+	
+	/**
+	 * Returns the transform relative to the parent node, which may be modified in place.
+	 */
+	public Mat4 getTransform()
+	{
+		return m_transform;
+	}
+	
+	/**
+	 * Returns the transform to world space as of the last {@link #updateWorldTransforms}.
+	 */
+	public Mat4 getWorldTransform()
+	{
+		return m_worldTransform;
+	}
+	
+	public boolean castsShadow()
+	{
+		return m_castsShadow;
+	}
+	
+	public void setCastsShadow(boolean castsShadow)
+	{
+		m_castsShadow = castsShadow;
+	}
+	
+	/**
+	 * Returns whether this node is drawn. Hiding a node hides its children as well.
+	 */
+	public boolean isVisible()
+	{
+		return m_visible;
+	}
+	
+	public void setVisible(boolean visible)
+	{
+		m_visible = visible;
+	}
+	
+	/**
+	 * Returns whether this node and all of its ancestors were visible as of the last {@link #updateWorldTransforms}.
+	 */
+	public boolean isVisibleInWorld()
+	{
+		return m_visibleInWorld;
+	}
+	
+	/**
+	 * Returns the winding of the mesh's front faces, {@code GL_CCW} (the default) or {@code GL_CW}.
+	 */
+	public int getFrontFace()
+	{
+		return m_frontFace;
+	}
+	
+	public void setFrontFace(int frontFace)
+	{
+		m_frontFace = frontFace;
+	}
+	
+	int getIndexProxy()
+	{
+		return m_indexProxy;
+	}
+	
+	void setIndexProxy(int indexProxy)
+	{
+		m_indexProxy = indexProxy;
+	}
+	
+	private void updateWorldTransforms(Mat4 parentWorldTransform, boolean parentVisible)
+	{
+		m_visibleInWorld = parentVisible && m_visible;
+		if(parentWorldTransform != null)
+		{
+			m_worldTransform.multiply(parentWorldTransform, m_transform);
+		}
+		else
+		{
+			m_worldTransform.set(m_transform);
+		}
+		if(m_mesh != null)
+		{
+			BoundingVolume bounds = getBounds();
+			bounds.transformSphere(m_worldTransform, m_worldSphere);
+			bounds.transformBox(m_worldTransform, m_worldBox);
+		}
+		// Indexed rather than for-each, so that walking the tree every frame creates no iterators.
+		for(int i = 0; i < m_children.size(); i++)
+		{
+			m_children.get(i).updateWorldTransforms(m_worldTransform, m_visibleInWorld);
+		}
+	}
+}
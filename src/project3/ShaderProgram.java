@@ -0,0 +1,193 @@
+package project3;
+
+import com.jogamp.opengl.GL4;
+import com.jogamp.opengl.GLContext;
+import com.jogamp.opengl.GLException;
+import graphicslib3D.GLSLUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * A linked GLSL program. Compile and link errors are raised with the driver's info log instead of surfacing later as a
+ * black screen, and the locations of all active uniforms are read once after linking, so rendering code never has to
+ * ask the driver for a location by name.
+ */
+public class ShaderProgram
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private int m_id;
+	private Map<String, Integer> m_uniforms;
+	
+	private ShaderProgram(int id)
+	{
+		m_id = id;
+		m_uniforms = new HashMap<String, Integer>();
+	}
+	
+	/**
+	 * Compiles and links a program from a vertex shader and an optional fragment shader ({@code null} for a depth-only
+	 * program).
+	 *
+	 * @throws GLException if a shader does not compile or the program does not link
+	 */
+	public static ShaderProgram create(String vertLoc, String fragLoc)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		int vShader = compileShader(GL_VERTEX_SHADER, vertLoc);
+		int fShader = 0;
+		if(fragLoc != null)
+		{
+			try
+			{
+				fShader = compileShader(GL_FRAGMENT_SHADER, fragLoc);
+			}
+			catch(GLException e)
+			{
+				gl.glDeleteShader(vShader);
+				throw e;
+			}
+		}
+		
+		int program = gl.glCreateProgram();
+		gl.glAttachShader(program, vShader);
+		if(fShader != 0)
+		{
+			gl.glAttachShader(program, fShader);
+		}
+		gl.glLinkProgram(program);
+		
+		// The program keeps its own copy of the compiled code.
+		gl.glDetachShader(program, vShader);
+		gl.glDeleteShader(vShader);
+		if(fShader != 0)
+		{
+			gl.glDetachShader(program, fShader);
+			gl.glDeleteShader(fShader);
+		}
+		
+		int[] status = new int[1];
+		gl.glGetProgramiv(program, GL_LINK_STATUS, status, 0);
+		if(status[0] == GL_FALSE)
+		{
+			String log = getProgramLog(program);
+			gl.glDeleteProgram(program);
+			throw new GLException("Linking " + vertLoc + (fragLoc == null ? "" : " and " + fragLoc) + " failed:\n" + log);
+		}
+		ShaderProgram result = new ShaderProgram(program);
+		result.reflectUniforms();
+		return result;
+	}
+	
+	/**
+	 * Returns a program that only has the name {@code id}, and no uniforms, without a GL context, for code that only sorts
+	 * by program, such as {@link RenderLoopAllocationCheck}. It cannot be used or disposed.
+	 */
+	static ShaderProgram forSorting(int id)
+	{
+		return new ShaderProgram(id);
+	}
+	
+	public int getId()
+	{
+		return m_id;
+	}
+	
+	public void use()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glUseProgram(m_id);
+		RenderStats.get().countStateChange();
+	}
+	
+	/**
+	 * Returns the location of an active uniform, or -1 (which {@code glUniform*} ignores) if the program does not use it.
+	 */
+	public int getUniformLocation(String name)
+	{
+		Integer location = m_uniforms.get(name);
+		return (location == null) ? -1 : location;
+	}
+	
+	public void dispose()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glDeleteProgram(m_id);
+	}
+	
+	private void reflectUniforms()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		int[] count = new int[1];
+		int[] maxLength = new int[1];
+		gl.glGetProgramiv(m_id, GL_ACTIVE_UNIFORMS, count, 0);
+		gl.glGetProgramiv(m_id, GL_ACTIVE_UNIFORM_MAX_LENGTH, maxLength, 0);
+		
+		byte[] nameBytes = new byte[Math.max(maxLength[0], 1)];
+		int[] length = new int[1];
+		int[] size = new int[1];
+		int[] type = new int[1];
+		for(int i = 0; i < count[0]; i++)
+		{
+			gl.glGetActiveUniform(m_id, i, nameBytes.length, length, 0, size, 0, type, 0, nameBytes, 0);
+			String name = new String(nameBytes, 0, length[0], StandardCharsets.US_ASCII);
+			
+			// Members of uniform blocks have no location; they are set through the block's buffer.
+			int location = gl.glGetUniformLocation(m_id, name);
+			if(location < 0)
+			{
+				continue;
+			}
+			m_uniforms.put(name, location);
+			
+			// Arrays are reported as "name[0]", but are usually looked up by their plain name.
+			if(name.endsWith("[0]"))
+			{
+				m_uniforms.put(name.substring(0, name.length() - 3), location);
+			}
+		}
+	}
+	
+	private static int compileShader(int type, String location)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		String[] source = GLSLUtils.readShaderSource(location);
+		int shader = gl.glCreateShader(type);
+		gl.glShaderSource(shader, source.length, source, null, 0);
+		gl.glCompileShader(shader);
+		
+		int[] status = new int[1];
+		gl.glGetShaderiv(shader, GL_COMPILE_STATUS, status, 0);
+		if(status[0] == GL_FALSE)
+		{
+			int[] logLength = new int[1];
+			gl.glGetShaderiv(shader, GL_INFO_LOG_LENGTH, logLength, 0);
+			byte[] log = new byte[Math.max(logLength[0], 1)];
+			int[] written = new int[1];
+			gl.glGetShaderInfoLog(shader, log.length, written, 0, log, 0);
+			gl.glDeleteShader(shader);
+			throw new GLException("Compiling " + location + " failed:\n" + new String(log, 0, written[0], StandardCharsets.US_ASCII));
+		}
+		return shader;
+	}
+	
+	private static String getProgramLog(int program)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		
+		int[] logLength = new int[1];
+		gl.glGetProgramiv(program, GL_INFO_LOG_LENGTH, logLength, 0);
+		byte[] log = new byte[Math.max(logLength[0], 1)];
+		int[] written = new int[1];
+		gl.glGetProgramInfoLog(program, log.length, written, 0, log, 0);
+		return new String(log, 0, written[0], StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,80 @@
+package project3;
+
+/**
+ * Runs the simulation on a fixed timestep, decoupled from how often frames are drawn. Each frame takes one
+ * {@code System.nanoTime} reading and passes it to {@link #advance}, which adds the time since the last frame to an
+ * accumulator and returns how many whole steps to simulate to catch up with it. What is left over, less than a step, is
+ * {@link #getAlpha}: how far the frame lies between the last two simulated states, so that rendering can interpolate
+ * between them instead of showing the simulation's step pattern.
+ * <p>
+ * The simulation therefore advances by the same amount per step whatever the frame rate, and a frame that comes late is
+ * made up for with more steps. After a long stall (a breakpoint, a window drag), at most {@code maxStepsPerFrame} steps
+ * are run and the rest of the backlog is dropped, so that catching up cannot take longer than the time it is making up
+ * for.
+ */
+public final class SimulationClock
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private long m_stepNanos;
+	private int m_maxStepsPerFrame;
+	private boolean m_started;
+	private long m_lastNanos;
+	private long m_accumulatorNanos;
+	private float m_alpha;
+	
+	/**
+	 * @param stepNanos        the simulated time per step
+	 * @param maxStepsPerFrame the most steps {@link #advance} returns at once
+	 */
+	public SimulationClock(long stepNanos, int maxStepsPerFrame)
+	{
+		m_stepNanos = stepNanos;
+		m_maxStepsPerFrame = maxStepsPerFrame;
+	}
+	
+	/**
+	 * Takes the frame's time and returns how many steps to simulate before drawing it. The first call only starts the
+	 * clock and returns 0.
+	 *
+	 * @param nowNanos the frame's {@code System.nanoTime}
+	 */
+	public int advance(long nowNanos)
+	{
+		if(!m_started)
+		{
+			m_started = true;
+			m_lastNanos = nowNanos;
+		}
+		m_accumulatorNanos += nowNanos - m_lastNanos;
+		m_lastNanos = nowNanos;
+		
+		int steps = (int) Math.min(m_accumulatorNanos / m_stepNanos, m_maxStepsPerFrame);
+		m_accumulatorNanos -= steps * m_stepNanos;
+		if(m_accumulatorNanos >= m_stepNanos)
+		{
+			// Too far behind: keep only the fraction of a step, so the next frames start from a normal backlog.
+			m_accumulatorNanos %= m_stepNanos;
+		}
+		m_alpha = (float) m_accumulatorNanos / m_stepNanos;
+		return steps;
+	}
+	
+	/**
+	 * Returns the length of a step in seconds.
+	 */
+	public float getStepSeconds()
+	{
+		return m_stepNanos / 1e9f;
+	}
+	
+	/**
+	 * Returns how far the last frame passed to {@link #advance} lies between the states before and after the last step,
+	 * from 0 (at the one before) to just below 1.
+	 */
+	public float getAlpha()
+	{
+		return m_alpha;
+	}
+}
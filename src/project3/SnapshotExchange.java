@@ -0,0 +1,69 @@
+package project3;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Passes {@link FrameSnapshot}s from the frame preparation thread to the GL thread through three of them: the
+ * preparation thread fills the back snapshot and publishes it as the ready one, taking the ready one it replaces as its
+ * next back snapshot, and the GL thread swaps its front snapshot for the ready one whenever that is newer. Neither
+ * thread waits for the other, and neither ever gets a snapshot the other is using.
+ */
+final class SnapshotExchange
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	// The front snapshot belongs to the GL thread and the back snapshot to the preparation thread.
+	private FrameSnapshot m_front;
+	private FrameSnapshot m_back;
+	private AtomicReference<FrameSnapshot> m_ready;
+	private long m_publishedCount;
+	
+	SnapshotExchange()
+	{
+		m_front = new FrameSnapshot();
+		m_back = new FrameSnapshot();
+		m_ready = new AtomicReference<FrameSnapshot>(new FrameSnapshot());
+	}
+	
+	/**
+	 * Returns the snapshot the preparation thread fills next.
+	 */
+	FrameSnapshot getBack()
+	{
+		return m_back;
+	}
+	
+	/**
+	 * Numbers the back snapshot and publishes it, and takes the one it replaces, which the GL thread no longer reads, as
+	 * the next back snapshot. Returns the number, counting from 1.
+	 */
+	long publish()
+	{
+		m_back.setFrame(++m_publishedCount);
+		m_back = m_ready.getAndSet(m_back);
+		return m_publishedCount;
+	}
+	
+	/**
+	 * Makes the newest published snapshot the front one, unless it already is. Returns whether the front snapshot
+	 * changed; if not, the same frame is drawn again.
+	 */
+	boolean acquire()
+	{
+		if(m_ready.get().getFrame() <= m_front.getFrame())
+		{
+			return false;
+		}
+		m_front = m_ready.getAndSet(m_front);
+		return true;
+	}
+	
+	/**
+	 * Returns the snapshot the GL thread draws.
+	 */
+	FrameSnapshot getFront()
+	{
+		return m_front;
+	}
+}
@@ -0,0 +1,189 @@
+package project3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cache of block-compressed textures, stored next to the source image as {@code <image>.tex}.
+ * <p>
+ * The file is little-endian and laid out as:
+ * <pre>
+ * int    magic ("P3TX")
+ * int    version
+ * long   source size in bytes
+ * long   source last-modified time in milliseconds
+ * int    source path length, followed by the UTF-8 path padded to a multiple of 4 bytes
+ * int    GL internal format of the compressed data
+ * int    width of level 0
+ * int    height of level 0
+ * int    level count
+ * level count x { int byte offset, int byte size }
+ * the compressed levels, largest first
+ * </pre>
+ * As with {@link MeshCache}, an entry is only used while the stored path, size and modification time match the source
+ * image, and reading memory-maps the file so the levels go to {@code glCompressedTexImage2D} without being copied.
+ * <p>
+ * Running this class compresses the images given on the command line ahead of time, so the first start does not have
+ * to: {@code java project3.TextureCache textures/*.jpg}
+ */
+final class TextureCache
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int MAGIC = 0x58543350; // "P3TX" read as a little-endian int
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".tex";
+	
+	private TextureCache()
+	{
+	}
+	
+	public static void main(String[] args) throws IOException
+	{
+		for(String file : args)
+		{
+			long start = System.nanoTime();
+			TextureManager.DecodedImage decoded = TextureManager.decode(file);
+			TextureCompressor.CompressedImage image = TextureCompressor.compress(decoded.pixels.asIntBuffer(), decoded.width, decoded.height);
+			write(Paths.get(file), image);
+			System.out.printf("%s: %dx%d, %d levels, %.1f MiB -> %.1f MiB in %.0f ms%n", file, image.width, image.height, image.levelCount,
+					TextureManager.uncompressedBytes(image.width, image.height) / 1048576.0, image.data.capacity() / 1048576.0,
+					(System.nanoTime() - start) / 1e6);
+		}
+	}
+	
+	/**
+	 * Returns the cache file used for the given source image.
+	 */
+	static Path getCachePath(Path source)
+	{
+		return source.resolveSibling(source.getFileName() + EXTENSION);
+	}
+	
+	/**
+	 * Maps the cache file of {@code source} and returns its contents, or {@code null} if there is no valid, up-to-date
+	 * cache in the given format.
+	 */
+	static TextureCompressor.CompressedImage read(Path source, int format) throws IOException
+	{
+		Path cache = getCachePath(source);
+		if(!Files.isRegularFile(cache))
+		{
+			return null;
+		}
+		
+		MappedByteBuffer mapping;
+		try(FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ))
+		{
+			mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer header = mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		try
+		{
+			if(header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != Files.size(source)
+					|| header.getLong() != Files.getLastModifiedTime(source).toMillis())
+			{
+				return null;
+			}
+			byte[] path = new byte[header.getInt()];
+			header.get(path);
+			header.position(align(header.position()));
+			if(!new String(path, StandardCharsets.UTF_8).equals(source.toAbsolutePath().toString()) || header.getInt() != format)
+			{
+				return null;
+			}
+			
+			TextureCompressor.CompressedImage image = new TextureCompressor.CompressedImage();
+			image.width = header.getInt();
+			image.height = header.getInt();
+			image.levelCount = header.getInt();
+			image.offsets = new int[image.levelCount];
+			image.sizes = new int[image.levelCount];
+			int dataStart = Integer.MAX_VALUE;
+			int dataEnd = 0;
+			for(int level = 0; level < image.levelCount; level++)
+			{
+				image.offsets[level] = header.getInt();
+				image.sizes[level] = header.getInt();
+				if(image.sizes[level] != TextureCompressor.levelSize(image.levelWidth(level), image.levelHeight(level)))
+				{
+					return null;
+				}
+				dataStart = Math.min(dataStart, image.offsets[level]);
+				dataEnd = Math.max(dataEnd, image.offsets[level] + image.sizes[level]);
+			}
+			if(image.levelCount == 0 || dataEnd > mapping.capacity())
+			{
+				return null;
+			}
+			
+			// Level offsets are relative to the start of the data.
+			image.data = mapping.slice(dataStart, dataEnd - dataStart);
+			for(int level = 0; level < image.levelCount; level++)
+			{
+				image.offsets[level] -= dataStart;
+			}
+			return image;
+		}
+		catch(RuntimeException e)
+		{
+			// A truncated or corrupt cache file is treated as a cache miss.
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes a compressed image to the cache file of {@code source}, through a temporary file that is moved into place.
+	 */
+	static void write(Path source, TextureCompressor.CompressedImage image) throws IOException
+	{
+		byte[] path = source.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+		int headerSize = align(28 + path.length) + 16 + image.levelCount * 8;
+		
+		ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(Files.size(source));
+		header.putLong(Files.getLastModifiedTime(source).toMillis());
+		header.putInt(path.length);
+		header.put(path);
+		header.position(align(header.position()));
+		header.putInt(TextureCompressor.FORMAT);
+		header.putInt(image.width);
+		header.putInt(image.height);
+		header.putInt(image.levelCount);
+		for(int level = 0; level < image.levelCount; level++)
+		{
+			header.putInt(headerSize + image.offsets[level]);
+			header.putInt(image.sizes[level]);
+		}
+		header.flip();
+		
+		Path cache = getCachePath(source);
+		Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer data = image.data.duplicate().rewind();
+			while(header.hasRemaining() || data.hasRemaining())
+			{
+				channel.write(new ByteBuffer[] {header, data});
+			}
+		}
+		Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private static int align(int position)
+	{
+		return (position + 3) & ~3;
+	}
+}
@@ -0,0 +1,353 @@
+package project3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * Builds a full mip chain for an opaque image and encodes every level as BC1 (S3TC DXT1): 4x4 texel blocks of two RGB565
+ * endpoints and sixteen 2-bit indices, 8 bytes per block, an eighth of the size of RGBA8.
+ * <p>
+ * Endpoints are chosen along the principal axis of each block's colors and then refined once by least squares against
+ * the chosen indices, which is close to what offline encoders produce for photographic textures at a fraction of the
+ * cost.
+ */
+final class TextureCompressor
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	static final int FORMAT = GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+	static final int BLOCK_BYTES = 8;
+	private static final int POWER_ITERATIONS = 4;
+	
+	private TextureCompressor()
+	{
+	}
+	
+	/**
+	 * Compresses an image given as packed ARGB texels, top row first.
+	 */
+	static CompressedImage compress(IntBuffer argb, int width, int height)
+	{
+		CompressedImage image = new CompressedImage();
+		image.width = width;
+		image.height = height;
+		image.levelCount = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+		image.offsets = new int[image.levelCount];
+		image.sizes = new int[image.levelCount];
+		int total = 0;
+		for(int level = 0; level < image.levelCount; level++)
+		{
+			image.offsets[level] = total;
+			image.sizes[level] = levelSize(Math.max(width >> level, 1), Math.max(height >> level, 1));
+			total += image.sizes[level];
+		}
+		image.data = ByteBuffer.allocateDirect(total).order(ByteOrder.LITTLE_ENDIAN);
+		
+		int[] texels = new int[width * height];
+		argb.duplicate().rewind().get(texels);
+		int levelWidth = width, levelHeight = height;
+		for(int level = 0; level < image.levelCount; level++)
+		{
+			if(level > 0)
+			{
+				texels = downsample(texels, levelWidth, levelHeight);
+				levelWidth = Math.max(levelWidth >> 1, 1);
+				levelHeight = Math.max(levelHeight >> 1, 1);
+			}
+			encodeLevel(texels, levelWidth, levelHeight, image.data, image.offsets[level]);
+		}
+		return image;
+	}
+	
+	/**
+	 * Returns the number of bytes of one BC1 level.
+	 */
+	static int levelSize(int width, int height)
+	{
+		return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_BYTES;
+	}
+	
+	/**
+	 * Halves an image with a 2x2 box filter; an odd last row or column is averaged with itself.
+	 */
+	private static int[] downsample(int[] texels, int width, int height)
+	{
+		int outWidth = Math.max(width >> 1, 1);
+		int outHeight = Math.max(height >> 1, 1);
+		int[] out = new int[outWidth * outHeight];
+		for(int y = 0; y < outHeight; y++)
+		{
+			int y0 = Math.min(y * 2, height - 1), y1 = Math.min(y * 2 + 1, height - 1);
+			for(int x = 0; x < outWidth; x++)
+			{
+				int x0 = Math.min(x * 2, width - 1), x1 = Math.min(x * 2 + 1, width - 1);
+				int a = texels[y0 * width + x0], b = texels[y0 * width + x1], c = texels[y1 * width + x0], d = texels[y1 * width + x1];
+				int result = 0;
+				for(int shift = 0; shift < 32; shift += 8)
+				{
+					int sum = ((a >>> shift) & 0xFF) + ((b >>> shift) & 0xFF) + ((c >>> shift) & 0xFF) + ((d >>> shift) & 0xFF);
+					result |= ((sum + 2) >> 2) << shift;
+				}
+				out[y * outWidth + x] = result;
+			}
+		}
+		return out;
+	}
+	
+	private static void encodeLevel(int[] texels, int width, int height, ByteBuffer out, int offset)
+	{
+		int[] block = new int[48];
+		int position = offset;
+		for(int by = 0; by < height; by += 4)
+		{
+			for(int bx = 0; bx < width; bx += 4)
+			{
+				// Blocks reaching past the edge repeat the last row and column.
+				for(int i = 0; i < 16; i++)
+				{
+					int x = Math.min(bx + (i & 3), width - 1);
+					int y = Math.min(by + (i >> 2), height - 1);
+					int texel = texels[y * width + x];
+					block[i * 3] = (texel >> 16) & 0xFF;
+					block[i * 3 + 1] = (texel >> 8) & 0xFF;
+					block[i * 3 + 2] = texel & 0xFF;
+				}
+				encodeBlock(block, out, position);
+				position += BLOCK_BYTES;
+			}
+		}
+	}
+	
+	/**
+	 * Encodes sixteen RGB colors (r, g, b interleaved) as one BC1 block in four-color mode.
+	 */
+	static void encodeBlock(int[] block, ByteBuffer out, int position)
+	{
+		// Mean and covariance of the block's colors.
+		float mr = 0, mg = 0, mb = 0;
+		for(int i = 0; i < 16; i++)
+		{
+			mr += block[i * 3];
+			mg += block[i * 3 + 1];
+			mb += block[i * 3 + 2];
+		}
+		mr /= 16;
+		mg /= 16;
+		mb /= 16;
+		float crr = 0, crg = 0, crb = 0, cgg = 0, cgb = 0, cbb = 0;
+		for(int i = 0; i < 16; i++)
+		{
+			float r = block[i * 3] - mr, g = block[i * 3 + 1] - mg, b = block[i * 3 + 2] - mb;
+			crr += r * r;
+			crg += r * g;
+			crb += r * b;
+			cgg += g * g;
+			cgb += g * b;
+			cbb += b * b;
+		}
+		
+		// The principal axis, by power iteration from the luminance direction.
+		float ar = 1, ag = 1, ab = 1;
+		for(int k = 0; k < POWER_ITERATIONS; k++)
+		{
+			float nr = crr * ar + crg * ag + crb * ab;
+			float ng = crg * ar + cgg * ag + cgb * ab;
+			float nb = crb * ar + cgb * ag + cbb * ab;
+			float length = Math.max(Math.abs(nr), Math.max(Math.abs(ng), Math.abs(nb)));
+			if(length < 1e-6f)
+			{
+				break;
+			}
+			ar = nr / length;
+			ag = ng / length;
+			ab = nb / length;
+		}
+		
+		// Endpoints at the extremes of the colors projected onto the axis.
+		float minT = Float.POSITIVE_INFINITY, maxT = Float.NEGATIVE_INFINITY;
+		for(int i = 0; i < 16; i++)
+		{
+			float t = (block[i * 3] - mr) * ar + (block[i * 3 + 1] - mg) * ag + (block[i * 3 + 2] - mb) * ab;
+			minT = Math.min(minT, t);
+			maxT = Math.max(maxT, t);
+		}
+		float axisLength = ar * ar + ag * ag + ab * ab;
+		if(axisLength > 0)
+		{
+			minT /= axisLength;
+			maxT /= axisLength;
+		}
+		int c0 = toRgb565(mr + ar * maxT, mg + ag * maxT, mb + ab * maxT);
+		int c1 = toRgb565(mr + ar * minT, mg + ag * minT, mb + ab * minT);
+		
+		int[] palette = new int[12];
+		int indices = chooseIndices(block, c0, c1, palette);
+		long error = blockError(block, indices, palette);
+		
+		// Refine the endpoints by least squares for the chosen indices, and keep the result if it is better.
+		int[] refined = refineEndpoints(block, indices);
+		if(refined != null)
+		{
+			int[] refinedPalette = new int[12];
+			int refinedIndices = chooseIndices(block, refined[0], refined[1], refinedPalette);
+			long refinedError = blockError(block, refinedIndices, refinedPalette);
+			if(refinedError < error)
+			{
+				c0 = refined[0];
+				c1 = refined[1];
+				indices = refinedIndices;
+			}
+		}
+		
+		// Four-color mode requires c0 > c1; swapping the endpoints maps index 0<->1 and 2<->3.
+		if(c0 < c1)
+		{
+			int swap = c0;
+			c0 = c1;
+			c1 = swap;
+			indices ^= 0x55555555;
+		}
+		else if(c0 == c1)
+		{
+			indices = 0;
+		}
+		out.putShort(position, (short) c0);
+		out.putShort(position + 2, (short) c1);
+		out.putInt(position + 4, indices);
+	}
+	
+	/**
+	 * Fills {@code palette} with the four colors of the endpoints and returns the nearest palette entry of every texel,
+	 * two bits each.
+	 */
+	private static int chooseIndices(int[] block, int c0, int c1, int[] palette)
+	{
+		expand565(c0, palette, 0);
+		expand565(c1, palette, 3);
+		for(int c = 0; c < 3; c++)
+		{
+			palette[6 + c] = (2 * palette[c] + palette[3 + c] + 1) / 3;
+			palette[9 + c] = (palette[c] + 2 * palette[3 + c] + 1) / 3;
+		}
+		
+		// Palette order 0, 1, 2, 3 is endpoint 0, endpoint 1, 2/3 0 + 1/3 1, 1/3 0 + 2/3 1.
+		int indices = 0;
+		for(int i = 0; i < 16; i++)
+		{
+			int best = 0;
+			int bestDistance = Integer.MAX_VALUE;
+			for(int p = 0; p < 4; p++)
+			{
+				int dr = block[i * 3] - palette[p * 3], dg = block[i * 3 + 1] - palette[p * 3 + 1], db = block[i * 3 + 2] - palette[p * 3 + 2];
+				int distance = dr * dr + dg * dg + db * db;
+				if(distance < bestDistance)
+				{
+					bestDistance = distance;
+					best = p;
+				}
+			}
+			indices |= best << (i * 2);
+		}
+		return indices;
+	}
+	
+	private static long blockError(int[] block, int indices, int[] palette)
+	{
+		long error = 0;
+		for(int i = 0; i < 16; i++)
+		{
+			int p = (indices >>> (i * 2)) & 3;
+			for(int c = 0; c < 3; c++)
+			{
+				int d = block[i * 3 + c] - palette[p * 3 + c];
+				error += d * d;
+			}
+		}
+		return error;
+	}
+	
+	/**
+	 * Solves for the two endpoints that best reproduce the block with the given indices, or returns {@code null} if all
+	 * texels use the same weight.
+	 */
+	private static int[] refineEndpoints(int[] block, int indices)
+	{
+		// Weight of endpoint 0 for palette entries 0 to 3.
+		final float[] weights = {1.0f, 0.0f, 2.0f / 3.0f, 1.0f / 3.0f};
+		float aa = 0, ab = 0, bb = 0;
+		float[] ax = new float[3], bx = new float[3];
+		for(int i = 0; i < 16; i++)
+		{
+			float a = weights[(indices >>> (i * 2)) & 3];
+			float b = 1.0f - a;
+			aa += a * a;
+			ab += a * b;
+			bb += b * b;
+			for(int c = 0; c < 3; c++)
+			{
+				ax[c] += a * block[i * 3 + c];
+				bx[c] += b * block[i * 3 + c];
+			}
+		}
+		float determinant = aa * bb - ab * ab;
+		if(Math.abs(determinant) < 1e-6f)
+		{
+			return null;
+		}
+		float[] e0 = new float[3], e1 = new float[3];
+		for(int c = 0; c < 3; c++)
+		{
+			e0[c] = (bb * ax[c] - ab * bx[c]) / determinant;
+			e1[c] = (aa * bx[c] - ab * ax[c]) / determinant;
+		}
+		return new int[] {toRgb565(e0[0], e0[1], e0[2]), toRgb565(e1[0], e1[1], e1[2])};
+	}
+	
+	private static int toRgb565(float r, float g, float b)
+	{
+		int r5 = Math.round(Math.max(0.0f, Math.min(255.0f, r)) * 31.0f / 255.0f);
+		int g6 = Math.round(Math.max(0.0f, Math.min(255.0f, g)) * 63.0f / 255.0f);
+		int b5 = Math.round(Math.max(0.0f, Math.min(255.0f, b)) * 31.0f / 255.0f);
+		return (r5 << 11) | (g6 << 5) | b5;
+	}
+	
+	private static void expand565(int color, int[] out, int offset)
+	{
+		int r5 = (color >> 11) & 0x1F, g6 = (color >> 5) & 0x3F, b5 = color & 0x1F;
+		out[offset] = (r5 << 3) | (r5 >> 2);
+		out[offset + 1] = (g6 << 2) | (g6 >> 4);
+		out[offset + 2] = (b5 << 3) | (b5 >> 2);
+	}
+	
+	/**
+	 * A BC1 image with all of its mip levels in one buffer.
+	 */
+	static final class CompressedImage
+	{
+		int width;
+		int height;
+		int levelCount;
+		int[] offsets;
+		int[] sizes;
+		ByteBuffer data;
+		
+		ByteBuffer level(int level)
+		{
+			return data.slice(offsets[level], sizes[level]);
+		}
+		
+		int levelWidth(int level)
+		{
+			return Math.max(width >> level, 1);
+		}
+		
+		int levelHeight(int level)
+		{
+			return Math.max(height >> level, 1);
+		}
+	}
+}
@@ -0,0 +1,604 @@
+package project3;
+
+import com.jogamp.opengl.GL4;
+import com.jogamp.opengl.GLContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * Loads the color textures and owns the sampler object they are read through. Everything that does not change between
+ * frames happens outside the draw loop: the texture filtering capabilities are probed when the manager is created, and
+ * each texture's mip chain is built once when its image has been uploaded.
+ * <p>
+ * Loading is asynchronous. {@link #load} only queues the image file for decoding on a background thread and returns a
+ * handle that binds a 1x1 placeholder until the real texture is resident. {@link #update}, called once per frame on the
+ * GL thread, streams decoded pixels to the GPU through a pair of pixel buffer objects, at most
+ * {@link #UPLOAD_BYTES_PER_FRAME} bytes per frame, so a large image never stalls a single frame. Cube maps load the same
+ * way, one face after the other.
+ * <p>
+ * Where the driver supports S3TC, textures are kept block-compressed in video memory (BC1, 8:1 against RGBA8 with the
+ * full mip chain). The compressed chain is read from the {@link TextureCache} file next to the image, or built with
+ * {@link TextureCompressor} and written there on the first load, and is then uploaded level by level with
+ * {@code glCompressedTexImage2D}. Without S3TC the images are uploaded as RGBA8 and their mipmaps generated on the GPU.
+ */
+public class TextureManager
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// The texture unit the shaders sample color textures from ("layout (binding = 1) uniform sampler2D s").
+	public static final int COLOR_UNIT = 1;
+	// Size of each pixel buffer object, and so the most pixel data handed to the driver in one frame.
+	private static final int UPLOAD_BYTES_PER_FRAME = 4 * 1024 * 1024;
+	private static final int PIXEL_BUFFER_COUNT = 2;
+	// Mid grey, so untextured objects are still lit and visible while they load.
+	private static final int PLACEHOLDER_COLOR = 0xFF808080;
+	private static final String[] ANISOTROPY_EXTENSIONS = {"GL_ARB_texture_filter_anisotropic", "GL_EXT_texture_filter_anisotropic"};
+	private static final String COMPRESSION_EXTENSION = "GL_EXT_texture_compression_s3tc";
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float m_maxAnisotropy;
+	private boolean m_compressionSupported;
+	private int[] m_colorSampler;
+	private int[] m_placeholder;
+	private int[] m_placeholderCube;
+	private int[] m_pixelBuffers;
+	// The size each pixel buffer was last given.
+	private long[] m_pixelBufferBytes;
+	private int m_nextPixelBuffer;
+	private ExecutorService m_decoder;
+	// Indexed by handle: the texture target and object to bind, and the load still in progress (null once resident or
+	// failed).
+	private List<Integer> m_targets;
+	private List<Integer> m_objects;
+	private List<PendingTexture> m_pending;
+	private int m_pendingCount;
+	// Video memory used by the resident textures, and what they would use as RGBA8.
+	private long m_textureBytes;
+	private long m_uncompressedTextureBytes;
+	// The texture objects created so far, placeholders included, and their video memory.
+	private int m_textureObjectCount;
+	private long m_textureObjectBytes;
+	
+	public TextureManager()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_targets = new ArrayList<Integer>();
+		m_objects = new ArrayList<Integer>();
+		m_pending = new ArrayList<PendingTexture>();
+		m_decoder = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable ->
+		{
+			Thread thread = new Thread(runnable, "texture-decoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		// Probe the optional capabilities once.
+		m_maxAnisotropy = 1.0f;
+		for(String extension : ANISOTROPY_EXTENSIONS)
+		{
+			if(gl.isExtensionAvailable(extension))
+			{
+				float[] max = new float[1];
+				gl.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, max, 0);
+				m_maxAnisotropy = max[0];
+				break;
+			}
+		}
+		m_compressionSupported = gl.isExtensionAvailable(COMPRESSION_EXTENSION);
+		
+		// Trilinear filtering, plus as much anisotropic filtering as the driver offers.
+		m_colorSampler = new int[1];
+		gl.glGenSamplers(1, m_colorSampler, 0);
+		gl.glSamplerParameteri(m_colorSampler[0], GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+		gl.glSamplerParameteri(m_colorSampler[0], GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+		gl.glSamplerParameteri(m_colorSampler[0], GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		gl.glSamplerParameteri(m_colorSampler[0], GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+		if(m_maxAnisotropy > 1.0f)
+		{
+			gl.glSamplerParameterf(m_colorSampler[0], GL_TEXTURE_MAX_ANISOTROPY_EXT, m_maxAnisotropy);
+		}
+		
+		// A sampler bound to a unit overrides the filtering of every texture bound there.
+		gl.glBindSampler(COLOR_UNIT, m_colorSampler[0]);
+		
+		// The placeholders are a single texel per face, which is its own complete mip chain.
+		IntBuffer texel = ByteBuffer.allocateDirect(Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer().put(0, PLACEHOLDER_COLOR);
+		m_placeholder = new int[1];
+		gl.glGenTextures(1, m_placeholder, 0);
+		gl.glBindTexture(GL_TEXTURE_2D, m_placeholder[0]);
+		gl.glTexStorage2D(GL_TEXTURE_2D, 1, GL_RGBA8, 1, 1);
+		gl.glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, 1, 1, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, texel);
+		gl.glBindTexture(GL_TEXTURE_2D, 0);
+		m_placeholderCube = new int[1];
+		gl.glGenTextures(1, m_placeholderCube, 0);
+		gl.glBindTexture(GL_TEXTURE_CUBE_MAP, m_placeholderCube[0]);
+		gl.glTexStorage2D(GL_TEXTURE_CUBE_MAP, 1, GL_RGBA8, 1, 1);
+		for(int face = 0; face < 6; face++)
+		{
+			gl.glTexSubImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + face, 0, 0, 0, 1, 1, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, texel);
+		}
+		gl.glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+		// One texel for the 2D placeholder, and one per face for the cube map one.
+		m_textureObjectCount = 2;
+		m_textureObjectBytes = 7 * Integer.BYTES;
+		RenderStats.get().allocate(RenderStats.Resource.TEXTURE, m_textureObjectCount, m_textureObjectBytes);
+		
+		m_pixelBuffers = new int[PIXEL_BUFFER_COUNT];
+		m_pixelBufferBytes = new long[PIXEL_BUFFER_COUNT];
+		gl.glGenBuffers(PIXEL_BUFFER_COUNT, m_pixelBuffers, 0);
+		RenderStats.get().allocate(RenderStats.Resource.BUFFER, PIXEL_BUFFER_COUNT, 0);
+	}
+	
+	/**
+	 * Starts loading an image file in the background.
+	 *
+	 * @return the handle to pass to {@link #bind}
+	 */
+	public int load(String textureFileName)
+	{
+		return load(GL_TEXTURE_2D, textureFileName, textureFileName);
+	}
+	
+	/**
+	 * Starts loading the six square faces of a cube map in the background, in the order of the GL face targets: +X
+	 * (right), -X (left), +Y (top), -Y (bottom), +Z (front), -Z (back).
+	 *
+	 * @return the handle to pass to {@link #bind}
+	 */
+	public int loadCubeMap(String... faceFileNames)
+	{
+		return load(GL_TEXTURE_CUBE_MAP, new File(faceFileNames[0]).getParent(), faceFileNames);
+	}
+	
+	/**
+	 * Binds a texture to the color unit, or its placeholder while it is still loading.
+	 */
+	public void bind(int handle)
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glActiveTexture(GL_TEXTURE0 + COLOR_UNIT);
+		gl.glBindTexture(m_targets.get(handle), m_objects.get(handle));
+		RenderStats.get().countStateChange();
+	}
+	
+	/**
+	 * Uploads the next slice of decoded pixels. Call once per frame on the GL thread.
+	 */
+	public void update()
+	{
+		if(m_pendingCount == 0)
+		{
+			return;
+		}
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		gl.glActiveTexture(GL_TEXTURE0 + COLOR_UNIT);
+		
+		int budget = UPLOAD_BYTES_PER_FRAME;
+		for(int handle = 0; handle < m_pending.size() && budget > 0; handle++)
+		{
+			PendingTexture pending = m_pending.get(handle);
+			if(pending == null || !isDecoded(pending))
+			{
+				continue;
+			}
+			
+			int target = m_targets.get(handle);
+			if(pending.faces == null)
+			{
+				try
+				{
+					pending.faces = new DecodedImage[pending.images.size()];
+					for(int face = 0; face < pending.faces.length; face++)
+					{
+						pending.faces[face] = pending.images.get(face).get();
+					}
+				}
+				catch(InterruptedException | ExecutionException e)
+				{
+					// Keep showing the placeholder.
+					e.printStackTrace();
+					finish(handle);
+					continue;
+				}
+				pending.texture = createTexture(gl, target, pending.faces[0]);
+				long bytes = getVideoMemoryBytes(pending.faces);
+				m_textureObjectCount++;
+				m_textureObjectBytes += bytes;
+				RenderStats.get().allocate(RenderStats.Resource.TEXTURE, 1, bytes);
+			}
+			
+			// Faces go up one after the other; a 2D texture is a single face.
+			gl.glBindTexture(target, pending.texture);
+			while(budget > 0 && pending.face < pending.faces.length)
+			{
+				DecodedImage image = pending.faces[pending.face];
+				int faceTarget = (target == GL_TEXTURE_CUBE_MAP) ? GL_TEXTURE_CUBE_MAP_POSITIVE_X + pending.face : target;
+				boolean uploaded;
+				if(image.compressed != null)
+				{
+					budget = uploadCompressedLevels(gl, faceTarget, image.compressed, pending, budget);
+					uploaded = pending.uploadedLevels == image.compressed.levelCount;
+				}
+				else
+				{
+					budget = uploadRows(gl, faceTarget, image, pending, budget);
+					uploaded = pending.uploadedRows == image.height;
+				}
+				if(uploaded)
+				{
+					pending.face++;
+					pending.uploadedLevels = 0;
+					pending.uploadedRows = 0;
+				}
+			}
+			
+			if(pending.face == pending.faces.length)
+			{
+				if(pending.faces[0].compressed == null)
+				{
+					gl.glGenerateMipmap(target);
+				}
+				resident(handle, pending);
+			}
+		}
+		gl.glBindTexture(GL_TEXTURE_2D, 0);
+		gl.glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+	}
+	
+	/**
+	 * Returns {@code true} while any texture is still decoding or uploading.
+	 */
+	public boolean isLoading()
+	{
+		return m_pendingCount > 0;
+	}
+	
+	/**
+	 * Returns the anisotropy applied to color textures, 1 if anisotropic filtering is not supported.
+	 */
+	public float getMaxAnisotropy()
+	{
+		return m_maxAnisotropy;
+	}
+	
+	/**
+	 * Returns the video memory used by the textures loaded so far, in bytes.
+	 */
+	public long getTextureBytes()
+	{
+		return m_textureBytes;
+	}
+	
+	/**
+	 * Returns the video memory the textures loaded so far would use as uncompressed RGBA8 with mipmaps, in bytes.
+	 */
+	public long getUncompressedTextureBytes()
+	{
+		return m_uncompressedTextureBytes;
+	}
+	
+	public void dispose()
+	{
+		GL4 gl = (GL4) GLContext.getCurrentGL();
+		m_decoder.shutdownNow();
+		gl.glDeleteSamplers(1, m_colorSampler, 0);
+		gl.glDeleteBuffers(PIXEL_BUFFER_COUNT, m_pixelBuffers, 0);
+		long pixelBufferBytes = 0;
+		for(long bytes : m_pixelBufferBytes)
+		{
+			pixelBufferBytes += bytes;
+		}
+		RenderStats.get().free(RenderStats.Resource.BUFFER, PIXEL_BUFFER_COUNT, pixelBufferBytes);
+		for(int handle = 0; handle < m_objects.size(); handle++)
+		{
+			PendingTexture pending = m_pending.get(handle);
+			int[] texture = {(pending != null) ? pending.texture : m_objects.get(handle)};
+			if(texture[0] != 0 && texture[0] != m_placeholder[0] && texture[0] != m_placeholderCube[0])
+			{
+				gl.glDeleteTextures(1, texture, 0);
+			}
+		}
+		gl.glDeleteTextures(1, m_placeholder, 0);
+		gl.glDeleteTextures(1, m_placeholderCube, 0);
+		RenderStats.get().free(RenderStats.Resource.TEXTURE, m_textureObjectCount, m_textureObjectBytes);
+		m_textureObjectCount = 0;
+		m_textureObjectBytes = 0;
+		m_targets.clear();
+		m_objects.clear();
+		m_pending.clear();
+		m_pendingCount = 0;
+	}
+	
+	private int load(int target, String name, String... fileNames)
+	{
+		PendingTexture pending = new PendingTexture();
+		pending.name = name;
+		pending.event = new RenderEvents.TextureLoad();
+		pending.event.begin();
+		pending.startNanos = System.nanoTime();
+		pending.images = new ArrayList<Future<DecodedImage>>(fileNames.length);
+		for(int face = 0; face < fileNames.length; face++)
+		{
+			String fileName = fileNames[face];
+			pending.images.add(m_decoder.submit(() -> loadImage(fileName, m_compressionSupported)));
+		}
+		m_targets.add(target);
+		m_objects.add((target == GL_TEXTURE_CUBE_MAP) ? m_placeholderCube[0] : m_placeholder[0]);
+		m_pending.add(pending);
+		m_pendingCount++;
+		return m_objects.size() - 1;
+	}
+	
+	private static boolean isDecoded(PendingTexture pending)
+	{
+		for(Future<DecodedImage> image : pending.images)
+		{
+			if(!image.isDone())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static int createTexture(GL4 gl, int target, DecodedImage image)
+	{
+		int[] texture = new int[1];
+		gl.glGenTextures(1, texture, 0);
+		gl.glBindTexture(target, texture[0]);
+		if(image.compressed != null)
+		{
+			// glCompressedTexImage2D defines one level at a time, so the chain is limited to the levels there are.
+			gl.glTexParameteri(target, GL_TEXTURE_BASE_LEVEL, 0);
+			gl.glTexParameteri(target, GL_TEXTURE_MAX_LEVEL, image.compressed.levelCount - 1);
+		}
+		else
+		{
+			// Immutable storage for the whole mip chain; level 0 is filled in slices, the rest generated at the end.
+			int levels = 32 - Integer.numberOfLeadingZeros(Math.max(image.width, image.height));
+			gl.glTexStorage2D(target, levels, GL_RGBA8, image.width, image.height);
+		}
+		return texture[0];
+	}
+	
+	/**
+	 * Uploads whole compressed levels, largest first, through the pixel buffers. At least one level goes up per call so
+	 * a level larger than the budget cannot stall the load.
+	 *
+	 * @return the budget left, 0 if levels remain
+	 */
+	private int uploadCompressedLevels(GL4 gl, int target, TextureCompressor.CompressedImage image, PendingTexture pending, int budget)
+	{
+		boolean first = true;
+		while(pending.uploadedLevels < image.levelCount && (first || budget >= image.sizes[pending.uploadedLevels]))
+		{
+			int level = pending.uploadedLevels;
+			int bytes = image.sizes[level];
+			bindNextPixelBuffer(gl, bytes, image.level(level));
+			RenderStats.get().countUpload(RenderStats.Resource.TEXTURE, bytes);
+			gl.glCompressedTexImage2D(target, level, TextureCompressor.FORMAT, image.levelWidth(level), image.levelHeight(level), 0, bytes, 0L);
+			pending.uploadedLevels++;
+			budget -= bytes;
+			first = false;
+		}
+		gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+		return (pending.uploadedLevels < image.levelCount) ? 0 : Math.max(budget, 0);
+	}
+	
+	/**
+	 * Uploads as many rows of level 0 as fit in the budget through the pixel buffers.
+	 *
+	 * @return the budget left, 0 if rows remain
+	 */
+	private int uploadRows(GL4 gl, int target, DecodedImage image, PendingTexture pending, int budget)
+	{
+		int rowBytes = image.width * Integer.BYTES;
+		while(budget >= rowBytes && pending.uploadedRows < image.height)
+		{
+			// Orphan the next pixel buffer so the driver never waits on a transfer still reading it.
+			int rows = Math.min(budget / rowBytes, image.height - pending.uploadedRows);
+			int bytes = rows * rowBytes;
+			bindNextPixelBuffer(gl, UPLOAD_BYTES_PER_FRAME, null);
+			ByteBuffer mapped = gl.glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, bytes, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+			ByteBuffer slice = image.pixels.duplicate();
+			slice.position(pending.uploadedRows * rowBytes).limit(pending.uploadedRows * rowBytes + bytes);
+			mapped.put(slice);
+			gl.glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+			
+			// With a pixel buffer bound, the last argument is an offset into it.
+			gl.glTexSubImage2D(target, 0, 0, pending.uploadedRows, image.width, rows, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, 0L);
+			RenderStats.get().countUpload(RenderStats.Resource.TEXTURE, bytes);
+			pending.uploadedRows += rows;
+			budget -= bytes;
+		}
+		gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+		return (pending.uploadedRows < image.height) ? 0 : budget;
+	}
+	
+	/**
+	 * Binds the next pixel buffer to {@code GL_PIXEL_UNPACK_BUFFER} and gives it new storage of {@code bytes}, filled
+	 * from {@code data} if it is not {@code null}.
+	 */
+	private void bindNextPixelBuffer(GL4 gl, long bytes, Buffer data)
+	{
+		int buffer = m_nextPixelBuffer;
+		m_nextPixelBuffer = (m_nextPixelBuffer + 1) % PIXEL_BUFFER_COUNT;
+		gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, m_pixelBuffers[buffer]);
+		gl.glBufferData(GL_PIXEL_UNPACK_BUFFER, bytes, data, GL_STREAM_DRAW);
+		RenderStats.get().resize(RenderStats.Resource.BUFFER, bytes - m_pixelBufferBytes[buffer]);
+		m_pixelBufferBytes[buffer] = bytes;
+	}
+	
+	private void resident(int handle, PendingTexture pending)
+	{
+		long bytes = getVideoMemoryBytes(pending.faces);
+		long uncompressed = 0;
+		for(DecodedImage image : pending.faces)
+		{
+			uncompressed += uncompressedBytes(image.width, image.height);
+		}
+		m_textureBytes += bytes;
+		m_uncompressedTextureBytes += uncompressed;
+		m_objects.set(handle, pending.texture);
+		finish(handle);
+		
+		DecodedImage image = pending.faces[0];
+		String source = (image.compressed == null) ? "RGBA8" : image.fromCache ? "BC1 from cache" : "BC1, compressed";
+		System.out.printf("Loaded %s (%s) in %.0f ms: %.1f MiB of video memory instead of %.1f MiB%n", pending.name, source,
+				(System.nanoTime() - pending.startNanos) / 1e6, bytes / 1048576.0, uncompressed / 1048576.0);
+		pending.event.texture = pending.name;
+		pending.event.format = (image.compressed == null) ? "RGBA8" : "BC1";
+		pending.event.bytes = bytes;
+		pending.event.commit();
+	}
+	
+	private void finish(int handle)
+	{
+		m_pending.set(handle, null);
+		m_pendingCount--;
+	}
+	
+	/**
+	 * Runs on a decoder thread: loads one image, compressed or not, and records it as a flight recorder event.
+	 */
+	private static DecodedImage loadImage(String textureFileName, boolean compressed) throws IOException
+	{
+		RenderEvents.TextureDecode event = new RenderEvents.TextureDecode();
+		event.begin();
+		DecodedImage image = compressed ? loadCompressed(textureFileName) : decode(textureFileName);
+		event.file = textureFileName;
+		event.width = image.width;
+		event.height = image.height;
+		event.fromCache = image.fromCache;
+		event.commit();
+		return image;
+	}
+	
+	/**
+	 * Runs on a decoder thread: returns the compressed mip chain from the texture cache, or decodes and compresses the
+	 * image and caches the result for the next start.
+	 */
+	private static DecodedImage loadCompressed(String textureFileName) throws IOException
+	{
+		DecodedImage decoded = new DecodedImage();
+		decoded.compressed = TextureCache.read(Paths.get(textureFileName), TextureCompressor.FORMAT);
+		decoded.fromCache = decoded.compressed != null;
+		if(decoded.compressed == null)
+		{
+			DecodedImage image = decode(textureFileName);
+			decoded.compressed = TextureCompressor.compress(image.pixels.asIntBuffer(), image.width, image.height);
+			try
+			{
+				TextureCache.write(Paths.get(textureFileName), decoded.compressed);
+			}
+			catch(IOException e)
+			{
+				// Not fatal, the texture is compressed again on the next start.
+				e.printStackTrace();
+			}
+		}
+		decoded.width = decoded.compressed.width;
+		decoded.height = decoded.compressed.height;
+		return decoded;
+	}
+	
+	/**
+	 * Runs on a decoder thread: reads the image into a direct buffer of packed ARGB texels, top row first.
+	 */
+	static DecodedImage decode(String textureFileName) throws IOException
+	{
+		BufferedImage image = ImageIO.read(new File(textureFileName));
+		if(image == null)
+		{
+			throw new IOException("No image reader for " + textureFileName);
+		}
+		
+		DecodedImage decoded = new DecodedImage();
+		decoded.width = image.getWidth();
+		decoded.height = image.getHeight();
+		decoded.pixels = ByteBuffer.allocateDirect(decoded.width * decoded.height * Integer.BYTES).order(ByteOrder.nativeOrder());
+		IntBuffer texels = decoded.pixels.asIntBuffer();
+		int[] row = new int[decoded.width];
+		for(int y = 0; y < decoded.height; y++)
+		{
+			image.getRGB(0, y, decoded.width, 1, row, 0, decoded.width);
+			texels.put(row);
+		}
+		return decoded;
+	}
+	
+	/**
+	 * Returns the video memory a texture of these faces uses, in bytes.
+	 */
+	private static long getVideoMemoryBytes(DecodedImage[] faces)
+	{
+		long bytes = 0;
+		for(DecodedImage image : faces)
+		{
+			bytes += (image.compressed == null) ? uncompressedBytes(image.width, image.height) : image.compressed.data.capacity();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Returns the size of an RGBA8 texture with its full mip chain, in bytes.
+	 */
+	static long uncompressedBytes(int width, int height)
+	{
+		long bytes = 0;
+		while(true)
+		{
+			bytes += (long) width * height * Integer.BYTES;
+			if(width == 1 && height == 1)
+			{
+				return bytes;
+			}
+			width = Math.max(width / 2, 1);
+			height = Math.max(height / 2, 1);
+		}
+	}
+	
+	static final class DecodedImage
+	{
+		int width;
+		int height;
+		// Either the packed ARGB texels or, on the compressed path, the compressed mip chain.
+		ByteBuffer pixels;
+		TextureCompressor.CompressedImage compressed;
+		boolean fromCache;
+	}
+	
+	private static final class PendingTexture
+	{
+		String name;
+		// Spans the whole load, from load() until resident().
+		RenderEvents.TextureLoad event;
+		long startNanos;
+		// One image per face.
+		List<Future<DecodedImage>> images;
+		DecodedImage[] faces;
+		int texture;
+		int face;
+		int uploadedRows;
+		int uploadedLevels;
+	}
+}
@@ -0,0 +1,284 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * The 4x4 matrices of many objects, stored as structure of arrays: one array per matrix element, indexed by object. The
+ * same element of consecutive objects is contiguous, so a whole batch can be multiplied or inverted with SIMD
+ * instructions, several objects at a time, instead of one matrix chain per object.
+ * <p>
+ * The batch operations use the Vector API ({@code jdk.incubator.vector}) when the {@code src-vector} source root was
+ * compiled and the JVM was started with {@code --add-modules jdk.incubator.vector} (see {@link TransformKernels}), and an
+ * equivalent scalar loop otherwise, or when the {@code project3.scalarTransforms} system property is {@code true}. Both
+ * give the same results up to rounding.
+ */
+public final class TransformBatch
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final TransformKernels VECTOR_KERNELS = loadVectorKernels();
+	private static final boolean VECTORIZED = VECTOR_KERNELS != null;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	// Element (row, column) of every matrix is in m_elements[column * 4 + row].
+	private float[][] m_elements;
+	private int m_size;
+	private boolean m_vectorized;
+	
+	public TransformBatch()
+	{
+		this(INITIAL_CAPACITY);
+	}
+	
+	public TransformBatch(int capacity)
+	{
+		m_elements = new float[16][Math.max(capacity, 1)];
+		m_vectorized = VECTORIZED;
+	}
+	
+	/**
+	 * Returns whether batches use the Vector API by default in this JVM.
+	 */
+	public static boolean isVectorAvailable()
+	{
+		return VECTORIZED;
+	}
+	
+	/**
+	 * Returns how many matrices the Vector API operations process at once, or 1 without it.
+	 */
+	public static int getVectorLength()
+	{
+		return VECTORIZED ? VECTOR_KERNELS.length() : 1;
+	}
+	
+	/**
+	 * Returns the Vector API form of the operations, or {@code null} if it is turned off, the module is missing or the
+	 * {@code src-vector} classes are not on the class path.
+	 */
+	private static TransformKernels loadVectorKernels()
+	{
+		if(Boolean.getBoolean("project3.scalarTransforms") || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+		{
+			return null;
+		}
+		try
+		{
+			return (TransformKernels) Class.forName("project3.VectorTransforms").getDeclaredConstructor().newInstance();
+		}
+		catch(ClassNotFoundException e)
+		{
+			// Built without src-vector.
+			return null;
+		}
+		catch(ReflectiveOperationException | LinkageError e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Chooses between the Vector API and the scalar loop for this batch's operations; only possible if the Vector API is
+	 * available.
+	 */
+	public void setVectorized(boolean vectorized)
+	{
+		m_vectorized = vectorized && VECTORIZED;
+	}
+	
+	public boolean isVectorized()
+	{
+		return m_vectorized;
+	}
+	
+	public void clear()
+	{
+		m_size = 0;
+	}
+	
+	public int size()
+	{
+		return m_size;
+	}
+	
+	/**
+	 * Appends a copy of {@code matrix} and returns its index.
+	 */
+	public int add(Mat4 matrix)
+	{
+		ensureCapacity(m_size + 1);
+		float[] values = matrix.getValues();
+		for(int element = 0; element < 16; element++)
+		{
+			m_elements[element][m_size] = values[element];
+		}
+		return m_size++;
+	}
+	
+	/**
+	 * Copies matrix {@code index} to {@code values} in column-major order, as {@code glUniformMatrix4fv} takes it.
+	 */
+	public void get(int index, float[] values)
+	{
+		for(int element = 0; element < 16; element++)
+		{
+			values[element] = m_elements[element][index];
+		}
+	}
+	
+	/**
+	 * Copies all matrices to {@code values}, one after the other in column-major order, so that matrix {@code i} can be
+	 * uploaded from offset {@code i * 16}. Faster than {@link #get} for every matrix, since it copies blocks of matrices
+	 * an element array at a time.
+	 *
+	 * @return {@code values}, or a new, larger array if it is too small
+	 */
+	public float[] getAll(float[] values)
+	{
+		if(values.length < m_size * 16)
+		{
+			values = new float[Math.max(m_size, m_elements[0].length) * 16];
+		}
+		for(int block = 0; block < m_size; block += 16)
+		{
+			int end = Math.min(block + 16, m_size);
+			for(int element = 0; element < 16; element++)
+			{
+				float[] elements = m_elements[element];
+				for(int i = block; i < end; i++)
+				{
+					values[i * 16 + element] = elements[i];
+				}
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * Sets every matrix of this batch to {@code left} x the matrix at the same index of {@code right}, which must be
+	 * another batch; this batch takes the size of {@code right}.
+	 */
+	public void multiply(Mat4 left, TransformBatch right)
+	{
+		checkDistinct(right);
+		ensureCapacity(right.m_size);
+		m_size = right.m_size;
+		if(m_vectorized)
+		{
+			VECTOR_KERNELS.multiply(left.getValues(), right.m_elements, m_elements, m_size);
+		}
+		else
+		{
+			multiply(left.getValues(), right.m_elements, m_elements, 0, m_size);
+		}
+	}
+	
+	/**
+	 * Sets every matrix of this batch to the normal matrix ({@link Mat4#normalMatrix}) of the affine matrix at the same
+	 * index of {@code modelViews}, which must be another batch; this batch takes its size.
+	 */
+	public void normalMatrices(TransformBatch modelViews)
+	{
+		checkDistinct(modelViews);
+		ensureCapacity(modelViews.m_size);
+		m_size = modelViews.m_size;
+		if(m_vectorized)
+		{
+			VECTOR_KERNELS.normalMatrices(modelViews.m_elements, m_elements, m_size);
+		}
+		else
+		{
+			normalMatrices(modelViews.m_elements, m_elements, 0, m_size);
+		}
+	}
+	
+	/**
+	 * The scalar form of {@link #multiply(Mat4, TransformBatch)}, for the objects from {@code start} to {@code end}; the
+	 * Vector API form uses it for the objects left over after the last full vector.
+	 */
+	static void multiply(float[] left, float[][] right, float[][] result, int start, int end)
+	{
+		// One result element of all objects at a time: the inner loop streams through five arrays, which the JIT can
+		// vectorize on its own.
+		for(int column = 0; column < 16; column += 4)
+		{
+			float[] b0 = right[column];
+			float[] b1 = right[column + 1];
+			float[] b2 = right[column + 2];
+			float[] b3 = right[column + 3];
+			for(int row = 0; row < 4; row++)
+			{
+				float a0 = left[row];
+				float a1 = left[4 + row];
+				float a2 = left[8 + row];
+				float a3 = left[12 + row];
+				float[] elements = result[column + row];
+				for(int i = start; i < end; i++)
+				{
+					elements[i] = a0 * b0[i] + a1 * b1[i] + a2 * b2[i] + a3 * b3[i];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The scalar form of {@link #normalMatrices}, for the objects from {@code start} to {@code end}.
+	 */
+	static void normalMatrices(float[][] source, float[][] result, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			float a = source[0][i], b = source[4][i], c = source[8][i];
+			float d = source[1][i], e = source[5][i], f = source[9][i];
+			float g = source[2][i], h = source[6][i], k = source[10][i];
+			
+			// The inverse transpose is the cofactor matrix over the determinant.
+			float c00 = e * k - f * h, c01 = f * g - d * k, c02 = d * h - e * g;
+			float c10 = c * h - b * k, c11 = a * k - c * g, c12 = b * g - a * h;
+			float c20 = b * f - c * e, c21 = c * d - a * f, c22 = a * e - b * d;
+			float inverseDeterminant = 1.0f / (a * c00 + b * c01 + c * c02);
+			
+			result[0][i] = c00 * inverseDeterminant;
+			result[4][i] = c01 * inverseDeterminant;
+			result[8][i] = c02 * inverseDeterminant;
+			result[1][i] = c10 * inverseDeterminant;
+			result[5][i] = c11 * inverseDeterminant;
+			result[9][i] = c12 * inverseDeterminant;
+			result[2][i] = c20 * inverseDeterminant;
+			result[6][i] = c21 * inverseDeterminant;
+			result[10][i] = c22 * inverseDeterminant;
+			result[3][i] = 0.0f;
+			result[7][i] = 0.0f;
+			result[11][i] = 0.0f;
+			result[12][i] = 0.0f;
+			result[13][i] = 0.0f;
+			result[14][i] = 0.0f;
+			result[15][i] = 1.0f;
+		}
+	}
+	
+	private void checkDistinct(TransformBatch source)
+	{
+		if(source == this)
+		{
+			throw new IllegalArgumentException("A batch cannot be computed in place");
+		}
+	}
+	
+	private void ensureCapacity(int capacity)
+	{
+		if(capacity > m_elements[0].length)
+		{
+			int newCapacity = Math.max(capacity, m_elements[0].length * 2);
+			for(int element = 0; element < 16; element++)
+			{
+				m_elements[element] = Arrays.copyOf(m_elements[element], newCapacity);
+			}
+		}
+	}
+}
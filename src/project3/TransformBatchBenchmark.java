@@ -0,0 +1,212 @@
+package project3;
+
+import graphicslib3D.Matrix3D;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares ways of computing the per-object matrices of a frame: the model-view matrix, its normal matrix and the
+ * shadow matrix (bias x light projection x light view x model) of every object. The candidates are the Matrix3D chains
+ * the passes used to run per object, one {@link Mat4} at a time, and a {@link TransformBatch} with its scalar loops and
+ * with the Vector API. Checks that all of them agree.
+ * <p>
+ * To include the Vector API, compile {@code src-vector} as well and run with {@code --add-modules jdk.incubator.vector}
+ * (see README.md).
+ * <p>
+ * Usage: {@code java --add-modules jdk.incubator.vector project3.TransformBatchBenchmark [objects...]}
+ */
+public class TransformBatchBenchmark
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int[] DEFAULT_OBJECT_COUNTS = {100, 1000, 10000, 100000};
+	private static final int ITERATIONS = 50;
+	private static final int WARMUP_ITERATIONS = 500;
+	private static final float WORLD_SIZE = 100.0f;
+	private static final long SEED = 19;
+	
+	public static void main(String[] args)
+	{
+		int[] objectCounts = DEFAULT_OBJECT_COUNTS;
+		if(args.length > 0)
+		{
+			objectCounts = Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+		}
+		System.out.println("Vector API: " + (TransformBatch.isVectorAvailable() ? TransformBatch.getVectorLength() + " floats per vector"
+				: "not available, compile src-vector and start with --add-modules jdk.incubator.vector"));
+		for(int objectCount : objectCounts)
+		{
+			run(objectCount);
+		}
+	}
+	
+	private static void run(int objectCount)
+	{
+		Random random = new Random(SEED);
+		Mat4[] worlds = new Mat4[objectCount];
+		Matrix3D[] legacyWorlds = new Matrix3D[objectCount];
+		TransformBatch worldBatch = new TransformBatch(objectCount);
+		for(int i = 0; i < objectCount; i++)
+		{
+			worlds[i] = new Mat4().translate((random.nextFloat() - 0.5f) * WORLD_SIZE, (random.nextFloat() - 0.5f) * WORLD_SIZE,
+					(random.nextFloat() - 0.5f) * WORLD_SIZE).rotate(random.nextFloat() * 360.0f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+					random.nextFloat() - 0.5f).scale(0.5f + random.nextFloat(), 0.5f + random.nextFloat(), 0.5f + random.nextFloat());
+			legacyWorlds[i] = toMatrix3D(worlds[i]);
+			worldBatch.add(worlds[i]);
+		}
+		Mat4 view = new Mat4().lookAt(10.0f, 20.0f, 150.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+		Mat4 lightProjection = new Mat4().perspective(60.0f, 1.0f, 0.1f, 1000.0f);
+		Mat4 lightView = new Mat4().lookAt(0.0f, 100.0f, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+		Mat4 b = new Mat4().translate(0.5f, 0.5f, 0.5f).scale(0.5f, 0.5f, 0.5f);
+		Mat4 shadowViewProjection = new Mat4().multiply(b, lightProjection).multiply(lightView);
+		Matrix3D legacyView = toMatrix3D(view);
+		Matrix3D legacyLightProjection = toMatrix3D(lightProjection);
+		Matrix3D legacyLightView = toMatrix3D(lightView);
+		Matrix3D legacyB = toMatrix3D(b);
+		
+		// Where the results go, as the passes upload them: three column-major matrices per object.
+		float[] legacyResults = new float[objectCount * 48];
+		float[] mat4Results = new float[objectCount * 48];
+		float[] scalarResults = new float[objectCount * 48];
+		float[] vectorResults = new float[objectCount * 48];
+		
+		Matrix3D legacyModelView = new Matrix3D();
+		Matrix3D legacyShadow = new Matrix3D();
+		long legacyNanos = measure(() ->
+		{
+			for(int i = 0; i < objectCount; i++)
+			{
+				legacyModelView.setToIdentity();
+				legacyModelView.concatenate(legacyView);
+				legacyModelView.concatenate(legacyWorlds[i]);
+				System.arraycopy(legacyModelView.getFloatValues(), 0, legacyResults, i * 48, 16);
+				System.arraycopy(legacyModelView.inverse().transpose().getFloatValues(), 0, legacyResults, i * 48 + 16, 16);
+				legacyShadow.setToIdentity();
+				legacyShadow.concatenate(legacyB);
+				legacyShadow.concatenate(legacyLightProjection);
+				legacyShadow.concatenate(legacyLightView);
+				legacyShadow.concatenate(legacyWorlds[i]);
+				System.arraycopy(legacyShadow.getFloatValues(), 0, legacyResults, i * 48 + 32, 16);
+			}
+		});
+		
+		Mat4 modelView = new Mat4();
+		Mat4 normal = new Mat4();
+		Mat4 shadow = new Mat4();
+		long mat4Nanos = measure(() ->
+		{
+			for(int i = 0; i < objectCount; i++)
+			{
+				modelView.multiply(view, worlds[i]);
+				System.arraycopy(modelView.getValues(), 0, mat4Results, i * 48, 16);
+				System.arraycopy(normal.normalMatrix(modelView).getValues(), 0, mat4Results, i * 48 + 16, 16);
+				System.arraycopy(shadow.multiply(shadowViewProjection, worlds[i]).getValues(), 0, mat4Results, i * 48 + 32, 16);
+			}
+		});
+		
+		long scalarNanos = measureBatch(worldBatch, view, shadowViewProjection, false, scalarResults);
+		System.out.printf("%d objects:%n", objectCount);
+		report("Matrix3D", legacyNanos, legacyNanos, objectCount);
+		report("Mat4", mat4Nanos, legacyNanos, objectCount);
+		report("scalar", scalarNanos, legacyNanos, objectCount);
+		float difference = Math.max(maxDifference(mat4Results, legacyResults), maxDifference(scalarResults, mat4Results));
+		if(TransformBatch.isVectorAvailable())
+		{
+			long vectorNanos = measureBatch(worldBatch, view, shadowViewProjection, true, vectorResults);
+			report("vector", vectorNanos, legacyNanos, objectCount);
+			difference = Math.max(difference, maxDifference(vectorResults, mat4Results));
+		}
+		System.out.printf("  largest difference between the results: %.2e%n", difference);
+	}
+	
+	/**
+	 * Times a batch computing all matrices, including copying them out for upload, and returns the median.
+	 */
+	private static long measureBatch(TransformBatch worlds, Mat4 view, Mat4 shadowViewProjection, boolean vectorized, float[] results)
+	{
+		TransformBatch modelViews = new TransformBatch(worlds.size());
+		TransformBatch normals = new TransformBatch(worlds.size());
+		TransformBatch shadows = new TransformBatch(worlds.size());
+		modelViews.setVectorized(vectorized);
+		normals.setVectorized(vectorized);
+		shadows.setVectorized(vectorized);
+		float[][] values = {new float[worlds.size() * 16], new float[worlds.size() * 16], new float[worlds.size() * 16]};
+		long nanos = measure(() ->
+		{
+			modelViews.multiply(view, worlds);
+			normals.normalMatrices(modelViews);
+			shadows.multiply(shadowViewProjection, worlds);
+			modelViews.getAll(values[0]);
+			normals.getAll(values[1]);
+			shadows.getAll(values[2]);
+		});
+		for(int i = 0; i < worlds.size(); i++)
+		{
+			for(int matrix = 0; matrix < 3; matrix++)
+			{
+				System.arraycopy(values[matrix], i * 16, results, i * 48 + matrix * 16, 16);
+			}
+		}
+		return nanos;
+	}
+	
+	/**
+	 * Returns the median time of one run, after warming up.
+	 */
+	private static long measure(Runnable work)
+	{
+		for(int i = 0; i < WARMUP_ITERATIONS; i++)
+		{
+			work.run();
+		}
+		long[] nanos = new long[ITERATIONS];
+		for(int i = 0; i < ITERATIONS; i++)
+		{
+			long start = System.nanoTime();
+			work.run();
+			nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		return nanos[ITERATIONS / 2];
+	}
+	
+	private static void report(String name, long nanos, long legacyNanos, int objectCount)
+	{
+		System.out.printf("  %-8s %9.3f ms, %7.1f ns per object (%5.1fx)%n", name, nanos / 1e6, nanos / (double) objectCount, legacyNanos / (double) nanos);
+	}
+	
+	/**
+	 * Returns the largest difference between corresponding elements, relative to the element's size where that is above
+	 * one, and ignoring the translations of normal matrices, which the shaders never use.
+	 */
+	private static float maxDifference(float[] first, float[] second)
+	{
+		float difference = 0.0f;
+		for(int i = 0; i < first.length; i++)
+		{
+			int element = i % 16;
+			boolean normalMatrix = (i % 48) / 16 == 1;
+			if(normalMatrix && (element % 4 == 3 || element >= 12))
+			{
+				continue;
+			}
+			difference = Math.max(difference, Math.abs(first[i] - second[i]) / Math.max(Math.abs(second[i]), 1.0f));
+		}
+		return difference;
+	}
+	
+	private static Matrix3D toMatrix3D(Mat4 matrix)
+	{
+		Matrix3D result = new Matrix3D();
+		for(int row = 0; row < 4; row++)
+		{
+			for(int column = 0; column < 4; column++)
+			{
+				result.setElementAt(row, column, matrix.get(row, column));
+			}
+		}
+		return result;
+	}
+}
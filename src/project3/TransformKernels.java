@@ -0,0 +1,27 @@
+package project3;
+
+/**
+ * The batch operations of {@link TransformBatch} in a faster form than its scalar loops. The one implementation,
+ * {@code VectorTransforms}, uses the Vector API and so lives in the separate {@code src-vector} source root, which only
+ * compiles with {@code --add-modules jdk.incubator.vector}; {@link TransformBatch} looks it up by name, so that
+ * {@code src} builds and runs on a stock JDK without it.
+ */
+interface TransformKernels
+{
+	/**
+	 * Returns how many matrices the operations process at once.
+	 */
+	int length();
+	
+	/**
+	 * Sets {@code result[i]} to {@code left} x {@code right[i]} for every object below {@code count}; see
+	 * {@link TransformBatch#multiply(Mat4, TransformBatch)}.
+	 */
+	void multiply(float[] left, float[][] right, float[][] result, int count);
+	
+	/**
+	 * Sets {@code result[i]} to the normal matrix of {@code source[i]} for every object below {@code count}; see
+	 * {@link TransformBatch#normalMatrices}.
+	 */
+	void normalMatrices(float[][] source, float[][] result, int count);
+}
@@ -0,0 +1,104 @@
+package project3;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from a v/vt/vn index triplet to the index of the unique vertex built from it. Keys and
+ * values live in flat {@code int[]} arrays, so deduplicating a large mesh does not box anything.
+ */
+final class TripletIndexMap
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	private static final int EMPTY = -1;
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private int[] m_keys;
+	private int[] m_values;
+	private int m_mask;
+	private int m_size;
+	
+	TripletIndexMap(int expectedSize)
+	{
+		// Keep the load factor at or below one half.
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+		allocate(capacity);
+	}
+	
+	/**
+	 * Returns the value stored for the triplet, or stores {@code value} for it and returns {@code value} if it is not in
+	 * the map yet.
+	 */
+	int putIfAbsent(int v, int t, int n, int value)
+	{
+		int slot = hash(v, t, n) & m_mask;
+		while(true)
+		{
+			int stored = m_values[slot];
+			if(stored == EMPTY)
+			{
+				m_keys[slot * 3] = v;
+				m_keys[slot * 3 + 1] = t;
+				m_keys[slot * 3 + 2] = n;
+				m_values[slot] = value;
+				if(++m_size * 2 > m_values.length)
+				{
+					grow();
+				}
+				return value;
+			}
+			if(m_keys[slot * 3] == v && m_keys[slot * 3 + 1] == t && m_keys[slot * 3 + 2] == n)
+			{
+				return stored;
+			}
+			slot = (slot + 1) & m_mask;
+		}
+	}
+	
+	int size()
+	{
+		return m_size;
+	}
+	
+	private void grow()
+	{
+		int[] keys = m_keys;
+		int[] values = m_values;
+		allocate(values.length << 1);
+		for(int i = 0; i < values.length; i++)
+		{
+			if(values[i] != EMPTY)
+			{
+				int v = keys[i * 3], t = keys[i * 3 + 1], n = keys[i * 3 + 2];
+				int slot = hash(v, t, n) & m_mask;
+				while(m_values[slot] != EMPTY)
+				{
+					slot = (slot + 1) & m_mask;
+				}
+				m_keys[slot * 3] = v;
+				m_keys[slot * 3 + 1] = t;
+				m_keys[slot * 3 + 2] = n;
+				m_values[slot] = values[i];
+			}
+		}
+	}
+	
+	private void allocate(int capacity)
+	{
+		m_keys = new int[capacity * 3];
+		m_values = new int[capacity];
+		Arrays.fill(m_values, EMPTY);
+		m_mask = capacity - 1;
+	}
+	
+	private static int hash(int v, int t, int n)
+	{
+		int h = v * 0x9E3779B1;
+		h = (h ^ (h >>> 15) ^ t) * 0x85EBCA77;
+		h = (h ^ (h >>> 13) ^ n) * 0xC2B2AE3D;
+		return h ^ (h >>> 16);
+	}
+}
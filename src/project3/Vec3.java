@@ -0,0 +1,120 @@
+package project3;
+
+/**
+ * A mutable 3D float vector or point. Like {@link Mat4}, every operation changes this vector and returns it, so vectors
+ * can be kept in fields and reused instead of allocated.
+ */
+public final class Vec3
+{
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private float m_x;
+	private float m_y;
+	private float m_z;
+	
+	public Vec3()
+	{
+	}
+	
+	public Vec3(float x, float y, float z)
+	{
+		set(x, y, z);
+	}
+	
+	public Vec3 set(float x, float y, float z)
+	{
+		m_x = x;
+		m_y = y;
+		m_z = z;
+		return this;
+	}
+	
+	public Vec3 set(Vec3 other)
+	{
+		return set(other.m_x, other.m_y, other.m_z);
+	}
+	
+	public float getX()
+	{
+		return m_x;
+	}
+	
+	public float getY()
+	{
+		return m_y;
+	}
+	
+	public float getZ()
+	{
+		return m_z;
+	}
+	
+	public Vec3 setX(float x)
+	{
+		m_x = x;
+		return this;
+	}
+	
+	public Vec3 setY(float y)
+	{
+		m_y = y;
+		return this;
+	}
+	
+	public Vec3 setZ(float z)
+	{
+		m_z = z;
+		return this;
+	}
+	
+	/**
+	 * Adds {@code other} times {@code factor}.
+	 */
+	public Vec3 add(Vec3 other, float factor)
+	{
+		return set(m_x + other.m_x * factor, m_y + other.m_y * factor, m_z + other.m_z * factor);
+	}
+	
+	public Vec3 scale(float factor)
+	{
+		return set(m_x * factor, m_y * factor, m_z * factor);
+	}
+	
+	/**
+	 * Sets this vector to {@code a} x {@code b}; either may be this vector.
+	 */
+	public Vec3 cross(Vec3 a, Vec3 b)
+	{
+		return set(a.m_y * b.m_z - a.m_z * b.m_y, a.m_z * b.m_x - a.m_x * b.m_z, a.m_x * b.m_y - a.m_y * b.m_x);
+	}
+	
+	public float dot(Vec3 other)
+	{
+		return m_x * other.m_x + m_y * other.m_y + m_z * other.m_z;
+	}
+	
+	public float length()
+	{
+		return (float) Math.sqrt(dot(this));
+	}
+	
+	/**
+	 * Scales this vector to unit length; the zero vector stays as it is.
+	 */
+	public Vec3 normalize()
+	{
+		float length = length();
+		return (length == 0.0f) ? this : scale(1.0f / length);
+	}
+	
+	/**
+	 * Transforms this vector as a point (w = 1) by the affine {@code transform}.
+	 */
+	public Vec3 transformPoint(Mat4 transform)
+	{
+		return set(transform.get(0, 0) * m_x + transform.get(0, 1) * m_y + transform.get(0, 2) * m_z + transform.get(0, 3),
+				transform.get(1, 0) * m_x + transform.get(1, 1) * m_y + transform.get(1, 2) * m_z + transform.get(1, 3),
+				transform.get(2, 0) * m_x + transform.get(2, 1) * m_y + transform.get(2, 2) * m_z + transform.get(2, 3));
+	}
+}
@@ -0,0 +1,338 @@
+package project3;
+
+import com.jogamp.opengl.GL4;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static com.jogamp.opengl.GL4.*;
+
+/**
+ * The encoding of each vertex attribute in a mesh's vertex buffer. Meshes are built from the interleaved float layout of
+ * {@link Mesh#FLOATS_PER_VERTEX} and quantized into this format when they are uploaded.
+ * <p>
+ * Quantized positions and texture coordinates are stored relative to the mesh's bounding box, in [-1, 1] and [0, 1]
+ * respectively, and the shaders map them back with a per-mesh scale and offset (see {@link Encoded}). Octahedral
+ * normals are decoded in the shaders as well; the other encodings are expanded by the vertex fetch itself.
+ */
+public final class VertexFormat
+{
+	/* ********* *
+	 * Constants *
+	 * ********* */
+	// 32-bit floats everywhere: 32 bytes per vertex.
+	public static final VertexFormat FULL = new VertexFormat(PositionEncoding.FLOAT, NormalEncoding.FLOAT, TexCoordEncoding.FLOAT);
+	// Normalized shorts for positions and texture coordinates and 10-bit normals: 16 bytes per vertex.
+	public static final VertexFormat COMPACT = new VertexFormat(PositionEncoding.SNORM16, NormalEncoding.INT_2_10_10_10_REV, TexCoordEncoding.UNORM16);
+	
+	/* **************** *
+	 * Member Variables *
+	 * **************** */
+	private final PositionEncoding m_position;
+	private final NormalEncoding m_normal;
+	private final TexCoordEncoding m_texCoord;
+	private final int m_texCoordOffset;
+	private final int m_normalOffset;
+	private final int m_stride;
+	
+	public VertexFormat(PositionEncoding position, NormalEncoding normal, TexCoordEncoding texCoord)
+	{
+		m_position = position;
+		m_normal = normal;
+		m_texCoord = texCoord;
+		m_texCoordOffset = position.m_bytes;
+		m_normalOffset = m_texCoordOffset + texCoord.m_bytes;
+		m_stride = m_normalOffset + normal.m_bytes;
+	}
+	
+	public int getStride()
+	{
+		return m_stride;
+	}
+	
+	/**
+	 * Returns {@code false} if this format is the plain float layout, which is uploaded without re-encoding.
+	 */
+	public boolean isQuantized()
+	{
+		return m_position != PositionEncoding.FLOAT || m_normal != NormalEncoding.FLOAT || m_texCoord != TexCoordEncoding.FLOAT;
+	}
+	
+	public boolean hasOctahedralNormals()
+	{
+		return m_normal == NormalEncoding.OCTAHEDRAL;
+	}
+	
+	/**
+	 * Describes the attributes of the vertex buffer currently bound to {@code GL_ARRAY_BUFFER} to the bound vertex array.
+	 */
+	void setupAttributes(GL4 gl)
+	{
+		switch(m_position)
+		{
+			case FLOAT:
+				gl.glVertexAttribPointer(Mesh.POSITION_ATTRIBUTE, 3, GL_FLOAT, false, m_stride, 0);
+				break;
+			case HALF_FLOAT:
+				gl.glVertexAttribPointer(Mesh.POSITION_ATTRIBUTE, 3, GL_HALF_FLOAT, false, m_stride, 0);
+				break;
+			case SNORM16:
+				gl.glVertexAttribPointer(Mesh.POSITION_ATTRIBUTE, 3, GL_SHORT, true, m_stride, 0);
+				break;
+		}
+		switch(m_texCoord)
+		{
+			case FLOAT:
+				gl.glVertexAttribPointer(Mesh.TEX_COORD_ATTRIBUTE, 2, GL_FLOAT, false, m_stride, m_texCoordOffset);
+				break;
+			case UNORM16:
+				gl.glVertexAttribPointer(Mesh.TEX_COORD_ATTRIBUTE, 2, GL_UNSIGNED_SHORT, true, m_stride, m_texCoordOffset);
+				break;
+		}
+		switch(m_normal)
+		{
+			case FLOAT:
+				gl.glVertexAttribPointer(Mesh.NORMAL_ATTRIBUTE, 3, GL_FLOAT, false, m_stride, m_normalOffset);
+				break;
+			case INT_2_10_10_10_REV:
+				gl.glVertexAttribPointer(Mesh.NORMAL_ATTRIBUTE, 4, GL_INT_2_10_10_10_REV, true, m_stride, m_normalOffset);
+				break;
+			case OCTAHEDRAL:
+				gl.glVertexAttribPointer(Mesh.NORMAL_ATTRIBUTE, 2, GL_SHORT, true, m_stride, m_normalOffset);
+				break;
+		}
+		gl.glEnableVertexAttribArray(Mesh.POSITION_ATTRIBUTE);
+		gl.glEnableVertexAttribArray(Mesh.TEX_COORD_ATTRIBUTE);
+		gl.glEnableVertexAttribArray(Mesh.NORMAL_ATTRIBUTE);
+	}
+	
+	/**
+	 * Quantizes {@code vertexCount} interleaved float vertices into this format. The returned dequantization parameters
+	 * are the identity for attributes that are stored as floats.
+	 */
+	Encoded encode(FloatBuffer vertices, int vertexCount)
+	{
+		FloatBuffer source = vertices.duplicate();
+		int base = source.position();
+		float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+		float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		for(int i = 0; i < vertexCount; i++)
+		{
+			for(int c = 0; c < 5; c++)
+			{
+				float value = source.get(base + i * Mesh.FLOATS_PER_VERTEX + c);
+				min[c] = Math.min(min[c], value);
+				max[c] = Math.max(max[c], value);
+			}
+		}
+		
+		Encoded encoded = new Encoded();
+		if(m_position != PositionEncoding.FLOAT && vertexCount > 0)
+		{
+			// Positions are stored in [-1, 1] across the bounding box.
+			for(int c = 0; c < 3; c++)
+			{
+				encoded.positionOffset[c] = (min[c] + max[c]) * 0.5f;
+				encoded.positionScale[c] = nonZero((max[c] - min[c]) * 0.5f);
+			}
+		}
+		if(m_texCoord != TexCoordEncoding.FLOAT && vertexCount > 0)
+		{
+			// Texture coordinates are stored in [0, 1] across their range, which need not be [0, 1] itself.
+			for(int c = 0; c < 2; c++)
+			{
+				encoded.texCoordOffset[c] = min[3 + c];
+				encoded.texCoordScale[c] = nonZero(max[3 + c] - min[3 + c]);
+			}
+		}
+		
+		ByteBuffer out = ByteBuffer.allocateDirect(vertexCount * m_stride).order(ByteOrder.nativeOrder());
+		for(int i = 0; i < vertexCount; i++)
+		{
+			int in = base + i * Mesh.FLOATS_PER_VERTEX;
+			int at = i * m_stride;
+			for(int c = 0; c < 3; c++)
+			{
+				float value = source.get(in + c);
+				switch(m_position)
+				{
+					case FLOAT:
+						out.putFloat(at + c * 4, value);
+						break;
+					case HALF_FLOAT:
+						out.putShort(at + c * 2, toHalfFloat((value - encoded.positionOffset[c]) / encoded.positionScale[c]));
+						break;
+					case SNORM16:
+						out.putShort(at + c * 2, toSnorm16((value - encoded.positionOffset[c]) / encoded.positionScale[c]));
+						break;
+				}
+			}
+			
+			at = i * m_stride + m_texCoordOffset;
+			for(int c = 0; c < 2; c++)
+			{
+				float value = source.get(in + 3 + c);
+				if(m_texCoord == TexCoordEncoding.FLOAT)
+				{
+					out.putFloat(at + c * 4, value);
+				}
+				else
+				{
+					out.putShort(at + c * 2, toUnorm16((value - encoded.texCoordOffset[c]) / encoded.texCoordScale[c]));
+				}
+			}
+			
+			at = i * m_stride + m_normalOffset;
+			float nx = source.get(in + 5), ny = source.get(in + 6), nz = source.get(in + 7);
+			switch(m_normal)
+			{
+				case FLOAT:
+					out.putFloat(at, nx);
+					out.putFloat(at + 4, ny);
+					out.putFloat(at + 8, nz);
+					break;
+				case INT_2_10_10_10_REV:
+					out.putInt(at, toSnorm10(nx) | (toSnorm10(ny) << 10) | (toSnorm10(nz) << 20));
+					break;
+				case OCTAHEDRAL:
+					// Project onto the octahedron |x| + |y| + |z| = 1 and fold the lower half over the diagonals.
+					float length = Math.abs(nx) + Math.abs(ny) + Math.abs(nz);
+					float ox = (length > 0.0f) ? nx / length : 0.0f;
+					float oy = (length > 0.0f) ? ny / length : 0.0f;
+					if(nz < 0.0f)
+					{
+						float fx = (1.0f - Math.abs(oy)) * Math.copySign(1.0f, ox);
+						float fy = (1.0f - Math.abs(ox)) * Math.copySign(1.0f, oy);
+						ox = fx;
+						oy = fy;
+					}
+					out.putShort(at, toSnorm16(ox));
+					out.putShort(at + 2, toSnorm16(oy));
+					break;
+			}
+		}
+		encoded.vertices = out;
+		return encoded;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return m_position + "/" + m_texCoord + "/" + m_normal + " (" + m_stride + " bytes)";
+	}
+	
+	private static float nonZero(float extent)
+	{
+		return (extent > 0.0f) ? extent : 1.0f;
+	}
+	
+	private static short toSnorm16(float value)
+	{
+		return (short) Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * 32767.0f);
+	}
+	
+	private static short toUnorm16(float value)
+	{
+		return (short) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 65535.0f);
+	}
+	
+	private static int toSnorm10(float value)
+	{
+		return Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * 511.0f) & 0x3FF;
+	}
+	
+	/**
+	 * Converts to an IEEE 754 half-precision float, rounding to nearest even. Values here are in [-1, 1], but the
+	 * conversion handles the full range.
+	 */
+	static short toHalfFloat(float value)
+	{
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+		int mantissa = bits & 0x7FFFFF;
+		if(exponent >= 0x1F)
+		{
+			// Overflow, infinity or NaN.
+			boolean nan = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+			return (short) (sign | 0x7C00 | (nan ? 0x200 : 0));
+		}
+		if(exponent <= 0)
+		{
+			if(exponent < -10)
+			{
+				return (short) sign;
+			}
+			// Subnormal half: shift in the implicit leading one.
+			mantissa |= 0x800000;
+			int shift = 14 - exponent;
+			int half = mantissa >>> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if(remainder > halfway || (remainder == halfway && (half & 1) != 0))
+			{
+				half++;
+			}
+			return (short) (sign | half);
+		}
+		int half = (exponent << 10) | (mantissa >>> 13);
+		int remainder = mantissa & 0x1FFF;
+		if(remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0))
+		{
+			// A carry out of the mantissa correctly bumps the exponent, up to infinity.
+			half++;
+		}
+		return (short) (sign | half);
+	}
+	
+	public enum PositionEncoding
+	{
+		FLOAT(12), HALF_FLOAT(8), SNORM16(8);
+		
+		// Three components, padded to a multiple of four bytes.
+		private final int m_bytes;
+		
+		PositionEncoding(int bytes)
+		{
+			m_bytes = bytes;
+		}
+	}
+	
+	public enum NormalEncoding
+	{
+		FLOAT(12), INT_2_10_10_10_REV(4), OCTAHEDRAL(4);
+		
+		private final int m_bytes;
+		
+		NormalEncoding(int bytes)
+		{
+			m_bytes = bytes;
+		}
+	}
+	
+	public enum TexCoordEncoding
+	{
+		FLOAT(8), UNORM16(4);
+		
+		private final int m_bytes;
+		
+		TexCoordEncoding(int bytes)
+		{
+			m_bytes = bytes;
+		}
+	}
+	
+	/**
+	 * Vertices quantized into a format, together with the scale and offset that map stored positions and texture
+	 * coordinates back to model space ({@code value = stored * scale + offset}).
+	 */
+	static final class Encoded
+	{
+		ByteBuffer vertices;
+		float[] positionScale = {1.0f, 1.0f, 1.0f};
+		float[] positionOffset = new float[3];
+		float[] texCoordScale = {1.0f, 1.0f};
+		float[] texCoordOffset = new float[2];
+	}
+}